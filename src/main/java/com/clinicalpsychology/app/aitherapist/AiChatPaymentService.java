@@ -4,16 +4,15 @@ import com.clinicalpsychology.app.enums.PaymentStatus;
 import com.clinicalpsychology.app.exception.ResourceNotFoundException;
 import com.clinicalpsychology.app.exception.UnexpectedServerException;
 import com.clinicalpsychology.app.model.ClientProfile;
+import com.clinicalpsychology.app.payment.CheckoutSessionEvent;
+import com.clinicalpsychology.app.payment.CheckoutSessionHandler;
 import com.clinicalpsychology.app.payment.PaymentRequest;
 import com.clinicalpsychology.app.payment.PaymentResponse;
 import com.clinicalpsychology.app.repository.ClientProfileRepository;
 import com.clinicalpsychology.app.response.CommonResponse;
 import com.clinicalpsychology.app.service.EmailService;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.stripe.Stripe;
 import com.stripe.exception.StripeException;
-import com.stripe.model.Event;
 import com.stripe.model.Refund;
 import com.stripe.model.checkout.Session;
 import com.stripe.param.RefundCreateParams;
@@ -22,7 +21,6 @@ import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -32,7 +30,7 @@ import static com.clinicalpsychology.app.util.Constant.*;
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class AiChatPaymentService {
+public class AiChatPaymentService implements CheckoutSessionHandler {
 
     @Value("${stripe.apikey}")
     private String stripeApiKey;
@@ -45,7 +43,6 @@ public class AiChatPaymentService {
 
     private final ClientProfileRepository clientProfileRepository;
     private final AiChatPaymentRepository aiChatPaymentRepository;
-    private final ObjectMapper objectMapper;
     private final EmailService emailService;
 
     // set the api key globally, if used refund method in a separate file and mark it as @Component no need to once again set apiKey in that file.
@@ -94,7 +91,7 @@ public class AiChatPaymentService {
                     .setCancelUrl(cancelUrl + "/{CHECKOUT_SESSION_ID}")
                     .addLineItem(lineItem)
                     .putMetadata("clientEmail", clientProfile.getEmail())
-                    .putMetadata("purchaseType", "ai-chat");
+                    .putMetadata("purchaseType", AI_CHAT_PURCHASE_TYPE);
             //.addPaymentMethodType(SessionCreateParams.PaymentMethodType.CARD)
 
             SessionCreateParams params = builder.build();
@@ -141,20 +138,17 @@ public class AiChatPaymentService {
         return refund.getId();
     }
 
-    @Async
-    public void handleSessionEventAsync(Event event, PaymentStatus paymentStatus) {
+    @Override
+    public String purchaseType() {
+        return AI_CHAT_PURCHASE_TYPE;
+    }
 
-        String stripeSessionId = null;
-        String paymentIntentId = null;
+    // Runs on StripeWebhookWorker, which retries the event when this throws
+    @Override
+    public void handleSessionEvent(CheckoutSessionEvent event, PaymentStatus paymentStatus) {
 
-        try {
-            JsonNode data = objectMapper.readTree(event.getData().getObject().toJson());
-            stripeSessionId = data.get("id").asText();
-            paymentIntentId = data.has("payment_intent") && !data.get("payment_intent").isNull() ? data.get("payment_intent").asText() : null;
-        } catch (Exception e) {
-            log.info("Unable to get clientEmail from webhook payload");
-            return;
-        }
+        String stripeSessionId = event.sessionId();
+        String paymentIntentId = event.paymentIntentId();
 
         AiChatPayment aiChatPayment = aiChatPaymentRepository.findByStripeSessionId(stripeSessionId);
 
@@ -0,0 +1,99 @@
+package com.clinicalpsychology.app.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// One bounded pool per kind of background work, so a slow SMTP server ties up the mail pool only and can't take the threads
+// other @Async work needs. Stripe webhooks run on StripeWebhookWorker's own partitions, meeting jobs on MeetingProvisioningQueue's
+// pool and the Stripe checkout calls on PaymentService's pool, all separate from these.
+// Spring Boot publishes executor.active / executor.queued / executor.pool.size / executor.completed for every pool here, tagged
+// with the bean name, and executor.rejected below counts what a full pool turned away.
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class AsyncExecutorConfig implements AsyncConfigurer {
+
+    public static final String MAIL_EXECUTOR = "mailExecutor";
+
+    // Boot's own name for the default executor, spring mvc async requests use it too
+    public static final String DEFAULT_EXECUTOR = "applicationTaskExecutor";
+
+    private final MeterRegistry meterRegistry;
+    private final ThreadingMode threadingMode;
+
+    @Value("${async.mail.pool-size:4}")
+    private int mailPoolSize;
+
+    @Value("${async.mail.queue-capacity:500}")
+    private int mailQueueCapacity;
+
+    @Value("${async.default.pool-size:8}")
+    private int defaultPoolSize;
+
+    @Value("${async.default.queue-capacity:200}")
+    private int defaultQueueCapacity;
+
+    // Runs the EmailDispatcher drains. The mails themselves wait in the outbox table, so a full queue just rejects the drain
+    // (counted) and the dispatcher's poller tries again
+    @Bean(name = MAIL_EXECUTOR)
+    public ThreadPoolTaskExecutor mailExecutor() {
+        return boundedExecutor("mail-", mailPoolSize, mailQueueCapacity, rejected(MAIL_EXECUTOR, new ThreadPoolExecutor.AbortPolicy()));
+    }
+
+    // Everything @Async without a named executor. A full queue runs the task on the caller, which slows it down instead of losing work
+    @Bean(name = DEFAULT_EXECUTOR)
+    public ThreadPoolTaskExecutor applicationTaskExecutor() {
+        return boundedExecutor("async-", defaultPoolSize, defaultQueueCapacity, rejected(DEFAULT_EXECUTOR, new ThreadPoolExecutor.CallerRunsPolicy()));
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return applicationTaskExecutor();
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (ex, method, params) -> log.error("@Async {}.{} failed: {}", method.getDeclaringClass().getSimpleName(), method.getName(), ex.getMessage(), ex);
+    }
+
+    private ThreadPoolTaskExecutor boundedExecutor(String threadNamePrefix, int poolSize, int queueCapacity, RejectedExecutionHandler rejectedExecutionHandler) {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        // Still bounded on virtual threads, the pool size is then the concurrency limit towards SMTP etc.
+        executor.setVirtualThreads(threadingMode.isVirtual());
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler(rejectedExecutionHandler);
+        executor.setTaskDecorator(new MdcTaskDecorator());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // Counts and logs every rejection, then applies the pool's own policy
+    private RejectedExecutionHandler rejected(String executorName, RejectedExecutionHandler policy) {
+
+        Counter counter = Counter.builder("executor.rejected").tag("name", executorName).description("Tasks turned away by a full executor").register(meterRegistry);
+
+        return (task, executor) -> {
+            counter.increment();
+            log.warn("{} is full ({} queued), applying {}", executorName, executor.getQueue().size(), policy.getClass().getSimpleName());
+            policy.rejectedExecution(task, executor);
+        };
+    }
+}
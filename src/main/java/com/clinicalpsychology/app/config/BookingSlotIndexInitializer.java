@@ -0,0 +1,59 @@
+package com.clinicalpsychology.app.config;
+
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.payment.SlotHoldRegistry;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+// One HOLD or COMPLETED booking per (therapist, slot, session start). This is what makes two parallel checkouts of the same slot
+// have exactly one winner: the loser's insert fails with a unique violation, CheckoutReservationService turns it into "slot already booked / held".
+// Partial, so EXPIRED / REFUNDED / FAILURE rows don't block the slot. Hibernate ddl-auto can't create partial indexes, so it is created here.
+// Without it nothing stops a double booking, so startup fails when it can't be created
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookingSlotIndexInitializer {
+
+    public static final String ACTIVE_SLOT_INDEX = "uk_bookings_active_slot";
+
+    private static final String CREATE_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS " + ACTIVE_SLOT_INDEX
+            + " ON bookings (therapist_id, time_slot_id, session_start_time) WHERE payment_status IN ('HOLD', 'COMPLETED')";
+
+    // What blocks the index, reported so it can be cleaned up by hand
+    private static final String CONFLICTS = """
+            SELECT therapist_id, time_slot_id, session_start_time, string_agg(id || ':' || payment_status, ', ' ORDER BY id) AS bookings
+            FROM bookings WHERE payment_status IN ('HOLD', 'COMPLETED')
+            GROUP BY therapist_id, time_slot_id, session_start_time HAVING count(*) > 1
+            LIMIT 20
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BookingRepository bookingRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createActiveSlotIndex() {
+
+        // HOLDs past their TTL that the expiry job hasn't reached yet (e.g. left over from before a downtime) would block the index
+        int expired = bookingRepository.expireStaleHolds(Instant.now().minus(SlotHoldRegistry.HOLD_TTL), PaymentStatus.HOLD, PaymentStatus.EXPIRED);
+        if (expired > 0) {
+            log.info("Expired {} stale HOLD booking(s) before creating {}", expired, ACTIVE_SLOT_INDEX);
+        }
+
+        try {
+            jdbcTemplate.execute(CREATE_INDEX);
+        } catch (Exception e) {
+            List<Map<String, Object>> conflicts = jdbcTemplate.queryForList(CONFLICTS);
+            throw new IllegalStateException("Could not create " + ACTIVE_SLOT_INDEX + ", double booking would not be prevented. "
+                    + "Slots with more than one HOLD / COMPLETED booking: " + conflicts, e);
+        }
+    }
+}
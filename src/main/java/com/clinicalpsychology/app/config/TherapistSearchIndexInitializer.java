@@ -0,0 +1,105 @@
+package com.clinicalpsychology.app.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Hibernate ddl-auto can't create GIN / expression indexes, so we create the search indexes here on startup.
+// Every statement is idempotent, so it is safe to run on every deploy. Startup fails when pg_trgm is missing, the search query
+// can't run without it. search.index.init.enabled=false skips the DDL, not the backfill or the check. See docs/therapist-search-index.md
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TherapistSearchIndexInitializer {
+
+    // Plain btree, no extension needed. The backfill and the per-row category / language aggregates of the search look rows up
+    // by therapist, hibernate doesn't index the element collection tables
+    private static final List<String> COLLECTION_INDEX_STATEMENTS = List.of(
+            "CREATE INDEX IF NOT EXISTS idx_therapist_profile_categories_profile ON therapist_profile_categories (therapist_profile_id)",
+            "CREATE INDEX IF NOT EXISTS idx_therapist_profile_languages_profile ON therapist_profile_languages (therapist_profile_id)"
+    );
+
+    private static final String CREATE_EXTENSION = "CREATE EXTENSION IF NOT EXISTS pg_trgm";
+
+    private static final String EXTENSION_INSTALLED = "SELECT count(*) FROM pg_extension WHERE extname = 'pg_trgm'";
+
+    private static final List<String> INDEX_STATEMENTS = List.of(
+            "CREATE INDEX IF NOT EXISTS idx_therapist_profile_name_trgm ON therapist_profile USING gin (lower(name) gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_therapist_profile_location_trgm ON therapist_profile USING gin (lower(location) gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_therapist_profile_categories_trgm ON therapist_profile USING gin (search_categories gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_therapist_profile_document_trgm ON therapist_profile USING gin (search_document gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_therapist_profile_document_fts ON therapist_profile USING gin (to_tsvector('simple', coalesce(search_document, '')))",
+            "CREATE INDEX IF NOT EXISTS idx_therapist_profile_amount ON therapist_profile (amount)"
+    );
+
+    // Fills the search columns for rows created before they existed
+    private static final String BACKFILL = """
+            UPDATE therapist_profile t SET
+                search_categories = (SELECT lower(string_agg(c.category, '|')) FROM therapist_profile_categories c WHERE c.therapist_profile_id = t.id),
+                search_document = lower(concat_ws(' ', t.name, t.location,
+                    (SELECT string_agg(c.category, ' ') FROM therapist_profile_categories c WHERE c.therapist_profile_id = t.id),
+                    (SELECT string_agg(l.language, ' ') FROM therapist_profile_languages l WHERE l.therapist_profile_id = t.id)))
+            WHERE t.search_document IS NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${search.index.init.enabled:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createSearchIndexes() {
+
+        if (enabled) {
+            executeEach(COLLECTION_INDEX_STATEMENTS);
+        }
+
+        // On its own: a profile with NULL search columns is left out of every search, whatever happens to the indexes
+        try {
+            int updated = jdbcTemplate.update(BACKFILL);
+            log.info("Therapist search columns backfilled for {} profile(s)", updated);
+        } catch (Exception e) {
+            log.error("Could not backfill the therapist search columns: {}", e.getMessage(), e);
+        }
+
+        if (enabled) {
+            // Needs a role that can create extensions, otherwise it has to be created once by hand (checked below)
+            try {
+                jdbcTemplate.execute(CREATE_EXTENSION);
+            } catch (Exception e) {
+                log.warn("Could not create the pg_trgm extension: {}", e.getMessage());
+            }
+        }
+
+        // The search query uses the % operator and similarity() from pg_trgm, without it every name / q search would be a 500
+        Long installed = jdbcTemplate.queryForObject(EXTENSION_INSTALLED, Long.class);
+        if (installed == null || installed == 0) {
+            throw new IllegalStateException("The pg_trgm extension is missing, therapist search needs it. Run CREATE EXTENSION pg_trgm "
+                    + "as a superuser (see docs/therapist-search-index.md)");
+        }
+
+        if (!enabled) {
+            return;
+        }
+
+        executeEach(INDEX_STATEMENTS);
+        log.info("Therapist search indexes ready");
+    }
+
+    // Search works without any of these, just with sequential scans
+    private void executeEach(List<String> statements) {
+        for (String statement : statements) {
+            try {
+                jdbcTemplate.execute(statement);
+            } catch (Exception e) {
+                log.warn("Could not create therapist search index ({}): {}", statement, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.clinicalpsychology.app.config;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+
+// Platform or virtual threads for our own pools, following Spring Boot's spring.threads.virtual.enabled (which already moves
+// tomcat and the scheduler). Virtual threads need a Java 21 runtime (mvn -Pjava21), on 17 the flag is ignored with a warning.
+// The pools stay bounded either way, virtual threads only stop a blocked JDBC / SMTP / Stripe / Zoom call from holding an OS thread
+@Component
+@Slf4j
+public class ThreadingMode {
+
+    @Getter
+    private final boolean virtual;
+
+    public ThreadingMode(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled) {
+
+        boolean supported = Runtime.version().feature() >= 21;
+        if (virtualThreadsEnabled && !supported) {
+            log.warn("spring.threads.virtual.enabled is set but the JVM is {}, staying on platform threads (needs Java 21)", Runtime.version());
+        }
+
+        this.virtual = virtualThreadsEnabled && supported;
+        log.info("Threading mode: {} threads", virtual ? "virtual" : "platform");
+    }
+
+    public ThreadFactory threadFactory(String threadNamePrefix) {
+        return virtual ? new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory() : new CustomizableThreadFactory(threadNamePrefix);
+    }
+}
@@ -0,0 +1,72 @@
+package com.clinicalpsychology.app.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+// One pooled HTTP client for every Zoom call (OAuth token + meetings), so a booking confirmation reuses kept-alive TLS connections
+// instead of two fresh handshakes. Reactor Netty pools per host, so zoom.http.max-connections is the limit towards zoom.us and
+// towards api.zoom.us each. Built from Spring Boot's RestClient.Builder, so every call is timed as http.client.requests
+// (client.name, method, uri template, status), see management.metrics.distribution.* in application.properties for the histogram.
+// The pool itself shows up as reactor.netty.connection.provider.* (active, idle, pending connections)
+@Configuration
+public class ZoomHttpClientConfig {
+
+    @Value("${zoom.http.max-connections:20}")
+    private int maxConnections;
+
+    // Callers waiting for a connection when all of them are busy, past that the call fails fast
+    @Value("${zoom.http.pending-acquire-max-count:100}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${zoom.http.pending-acquire-timeout-ms:5000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${zoom.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${zoom.http.read-timeout-ms:15000}")
+    private long readTimeoutMs;
+
+    // Below the idle timeout of Zoom's load balancers, so we never write on a connection they already closed
+    @Value("${zoom.http.max-idle-ms:30000}")
+    private long maxIdleMs;
+
+    @Value("${zoom.http.max-life-ms:300000}")
+    private long maxLifeMs;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider zoomConnectionProvider() {
+        return ConnectionProvider.builder("zoom")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeMs))
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public RestClient zoomRestClient(RestClient.Builder restClientBuilder, ConnectionProvider zoomConnectionProvider) {
+
+        HttpClient httpClient = HttpClient.create(zoomConnectionProvider)
+                .keepAlive(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs);
+
+        ReactorClientHttpRequestFactory requestFactory = new ReactorClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+
+        return restClientBuilder
+                .requestFactory(requestFactory)
+                .build();
+    }
+}
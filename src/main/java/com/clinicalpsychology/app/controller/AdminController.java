@@ -8,8 +8,6 @@ import com.clinicalpsychology.app.service.AdminService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/admin")
 @RequiredArgsConstructor
@@ -22,24 +20,42 @@ public class AdminController{
         return adminService.getAdminDashboardDetails();
     }
 
+    // All list apis below are cursor paginated. Pass nextCursor from the previous response as cursor to get the next page.
+    // sort is id or createdAt, direction is asc or desc, size defaults to 20 (max 100)
     @GetMapping("/getAllTherapistSessions")
-    public CommonResponse<List<TherapistAppointmentsDTO>> getAllTherapistSessions() throws UnexpectedServerException, ResourceNotFoundException {
-        return adminService.getAllTherapistSessions();
+    public CommonResponse<KeysetPageDTO<TherapistAppointmentsDTO>> getAllTherapistSessions(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false, defaultValue = "id") String sort,
+            @RequestParam(required = false, defaultValue = "asc") String direction) throws UnexpectedServerException, ResourceNotFoundException {
+        return adminService.getAllTherapistSessions(cursor, size, sort, direction);
     }
 
     @GetMapping("/getAllClientSessions")
-    public CommonResponse<List<ClientAppointmentsDTO>> getAllClientSessions() throws UnexpectedServerException, ResourceNotFoundException {
-        return adminService.getAllClientSessions();
+    public CommonResponse<KeysetPageDTO<ClientAppointmentsDTO>> getAllClientSessions(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false, defaultValue = "id") String sort,
+            @RequestParam(required = false, defaultValue = "asc") String direction) throws UnexpectedServerException, ResourceNotFoundException {
+        return adminService.getAllClientSessions(cursor, size, sort, direction);
     }
 
     @GetMapping("/therapists/overview")
-    public CommonResponse<List<TherapistOverviewDTO>> getTherapistsOverview() throws UnexpectedServerException {
-        return adminService.getTherapistsOverview();
+    public CommonResponse<KeysetPageDTO<TherapistOverviewDTO>> getTherapistsOverview(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false, defaultValue = "id") String sort,
+            @RequestParam(required = false, defaultValue = "asc") String direction) throws UnexpectedServerException {
+        return adminService.getTherapistsOverview(cursor, size, sort, direction);
     }
 
     @GetMapping("/clients/overview")
-    public CommonResponse<List<ClientOverviewDTO>> getClientsOverview() throws UnexpectedServerException {
-        return adminService.getClientsOverview();
+    public CommonResponse<KeysetPageDTO<ClientOverviewDTO>> getClientsOverview(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false, defaultValue = "id") String sort,
+            @RequestParam(required = false, defaultValue = "asc") String direction) throws UnexpectedServerException {
+        return adminService.getClientsOverview(cursor, size, sort, direction);
     }
 
     @PatchMapping("/therapists/{therapistId}/approval-status")
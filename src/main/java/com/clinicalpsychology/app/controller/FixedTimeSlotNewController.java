@@ -1,5 +1,7 @@
 package com.clinicalpsychology.app.controller;
 
+import com.clinicalpsychology.app.dto.AvailableTherapistDTO;
+import com.clinicalpsychology.app.dto.DayTimeSlotsDTO;
 import com.clinicalpsychology.app.dto.TimeSlotDTO;
 import com.clinicalpsychology.app.exception.ResourceNotFoundException;
 import com.clinicalpsychology.app.exception.UnexpectedServerException;
@@ -28,4 +30,26 @@ public class FixedTimeSlotNewController {
             @RequestParam String date) throws UnexpectedServerException, ResourceNotFoundException {
         return fixedTimeSlotNewService.getTimeSlotsOfTherapist(therapistId, clientId, date);
     }
+
+    // Same as above for every day from startDate to endDate (both inclusive, max 31 days), for the calendar view
+    @GetMapping("/getTimeSlotsForTherapistRange")
+    public CommonResponse<List<DayTimeSlotsDTO>> getTimeSlotsOfTherapistForRange(
+            @RequestParam Long therapistId,
+            @RequestParam Long clientId,
+            @RequestParam String startDate,
+            @RequestParam String endDate) throws UnexpectedServerException, ResourceNotFoundException {
+        return fixedTimeSlotNewService.getTimeSlotsOfTherapistForRange(therapistId, clientId, startDate, endDate);
+    }
+
+    // Approved therapists with a free session inside the client's local window, e.g. from=2025-07-15T18:00&to=2025-07-15T20:00 (max 7 days)
+    @GetMapping("/getAvailableTherapists")
+    public CommonResponse<List<AvailableTherapistDTO>> getAvailableTherapists(
+            @RequestParam Long clientId,
+            @RequestParam String from,
+            @RequestParam String to,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice) throws UnexpectedServerException, ResourceNotFoundException {
+        return fixedTimeSlotNewService.getAvailableTherapists(clientId, from, to, category, minPrice, maxPrice);
+    }
 }
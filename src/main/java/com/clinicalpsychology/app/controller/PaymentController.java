@@ -6,7 +6,6 @@ import com.clinicalpsychology.app.exception.UnexpectedServerException;
 import com.clinicalpsychology.app.payment.PaymentResponse;
 import com.clinicalpsychology.app.payment.PaymentService;
 import com.clinicalpsychology.app.response.CommonResponse;
-import com.stripe.exception.StripeException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -14,6 +13,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api")
 @RequiredArgsConstructor
@@ -23,7 +24,8 @@ public class PaymentController {
 
     @PreAuthorize("hasAnyAuthority('ROLE_CLIENT', 'ROLE_THERAPIST')")
     @PostMapping("/checkout")
-    public CommonResponse<PaymentResponse> checkoutProducts(@RequestBody BookingDTO bookingDTO) throws StripeException, UnexpectedServerException, ResourceNotFoundException {
+    // Async: the request thread is released while the Stripe session is created
+    public CompletableFuture<CommonResponse<PaymentResponse>> checkoutProducts(@RequestBody BookingDTO bookingDTO) throws UnexpectedServerException, ResourceNotFoundException {
         return paymentService.checkoutProducts(bookingDTO);
     }
 }
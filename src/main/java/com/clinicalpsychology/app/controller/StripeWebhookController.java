@@ -1,12 +1,9 @@
 package com.clinicalpsychology.app.controller;
 
-import com.clinicalpsychology.app.aitherapist.AiChatPaymentService;
-import com.clinicalpsychology.app.enums.PaymentStatus;
-import com.clinicalpsychology.app.payment.StripeWebhookHandlerService;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.clinicalpsychology.app.payment.CheckoutSessionEvent;
+import com.clinicalpsychology.app.payment.StripeWebhookDispatcher;
+import com.clinicalpsychology.app.payment.StripeWebhookInbox;
 import com.stripe.exception.SignatureVerificationException;
-import com.stripe.model.Event;
 import com.stripe.net.Webhook;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -24,23 +21,28 @@ public class StripeWebhookController {
     @Value("${stripe.webhook.secret}")
     private String endpointSecret;
 
-    private final StripeWebhookHandlerService stripeWebhookHandlerService;
-    private final ObjectMapper objectMapper;
-    private final AiChatPaymentService aiChatPaymentService;
+    // Same default as Webhook.constructEvent
+    private static final long SIGNATURE_TOLERANCE_SECONDS = 300;
+
+    private final StripeWebhookInbox stripeWebhookInbox;
+    private final StripeWebhookDispatcher stripeWebhookDispatcher;
 
     private static final Logger logger = LoggerFactory.getLogger(StripeWebhookController.class);
 
     // Make sure you Immediately send a 200 OK as soon as you get the event
     // Then process the event and logics like Db update, email sending in the background (asynchronously)
+    // The event is written to the webhook inbox first, so it survives a restart and a redelivery is not processed twice
     @PostMapping("/stripe/webhook")
     public ResponseEntity<String> handleStripeWebhook(
             @RequestBody String payload,
             @RequestHeader("Stripe-Signature") String sigHeader) {
 
-        Event event;
+        CheckoutSessionEvent event;
 
+        // Only the signature check here, the payload is then bound once into CheckoutSessionEvent
         try {
-            event = Webhook.constructEvent(payload, sigHeader, endpointSecret);
+            Webhook.Signature.verifyHeader(payload, sigHeader, endpointSecret, SIGNATURE_TOLERANCE_SECONDS);
+            event = stripeWebhookDispatcher.parse(payload);
         } catch (SignatureVerificationException e) {
             logger.warn("⚠️ Invalid Stripe signature: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid Stripe signature");
@@ -49,59 +51,20 @@ public class StripeWebhookController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Webhook error: " + e.getMessage());
         }
 
-        String eventType = event.getType();
+        String eventType = event.type();
         logger.info("Received Stripe event: {}", eventType);
 
-        String purchaseType = null;
+        if (!stripeWebhookDispatcher.isHandled(eventType)) {
+            logger.warn("Unhandled Stripe event type: {}", eventType);
+            return ResponseEntity.ok("✅ Webhook processed: " + eventType);
+        }
 
+        // Stored before answering, the processing happens on StripeWebhookWorker. If the insert fails Stripe gets a 500 and redelivers
         try {
-            JsonNode data = objectMapper.readTree(event.getData().getObject().toJson());
-            purchaseType = data.get("metadata").get("purchaseType").asText();
+            stripeWebhookInbox.receive(event, payload);
         } catch (Exception e) {
-            logger.info("Unable to get session id or purchase type from webhook payload");
-        }
-
-        switch (eventType) {
-            case "checkout.session.completed":
-            case "checkout.session.async_payment_succeeded":
-                if(purchaseType != null){
-                    if("book-therapist".equalsIgnoreCase(purchaseType)){
-                        logger.info("🔄 Processing completed payment for book therapist");
-                        stripeWebhookHandlerService.handleSessionEventAsync(event, PaymentStatus.COMPLETED);
-                    } else if ("ai-chat".equalsIgnoreCase(purchaseType)) {
-                        logger.info("🔄 Processing completed payment for ai chat");
-                        aiChatPaymentService.handleSessionEventAsync(event, PaymentStatus.COMPLETED);
-                    }
-                }
-                break;
-
-            case "checkout.session.expired":
-                if (purchaseType != null) {
-                    if ("book-therapist".equalsIgnoreCase(purchaseType)) {
-                        logger.info("⚠️ Payment expired for book therapist");
-                        stripeWebhookHandlerService.handleSessionEventAsync(event, PaymentStatus.EXPIRED);
-                    } else if ("ai-chat".equalsIgnoreCase(purchaseType)) {
-                        logger.info("⚠️ Payment expired for ai chat");
-                        aiChatPaymentService.handleSessionEventAsync(event, PaymentStatus.EXPIRED);
-                    }
-                }
-                break;
-
-            case "checkout.session.async_payment_failed":
-                if (purchaseType != null) {
-                    if ("book-therapist".equalsIgnoreCase(purchaseType)) {
-                        logger.info("❌ Payment failed for book therapist");
-                        stripeWebhookHandlerService.handleSessionEventAsync(event, PaymentStatus.FAILURE);
-                    } else if ("ai-chat".equalsIgnoreCase(purchaseType)) {
-                        logger.info("❌ Payment failed for ai chat");
-                        aiChatPaymentService.handleSessionEventAsync(event, PaymentStatus.FAILURE);
-                    }
-                }
-                break;
-
-            default:
-                logger.warn("Unhandled Stripe event type: {}", eventType);
-                break;
+            logger.error("Could not store Stripe event {}: {}", event.eventId(), e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Webhook not stored");
         }
 
         return ResponseEntity.ok("✅ Webhook processed: " + eventType);
@@ -2,10 +2,10 @@ package com.clinicalpsychology.app.controller;
 
 import com.clinicalpsychology.app.dto.AllTherapistsResponseDTO;
 import com.clinicalpsychology.app.dto.TherapistDashboardDTO;
+import com.clinicalpsychology.app.dto.TherapistSearchResultDTO;
 import com.clinicalpsychology.app.dto.TherapistProfileDTO;
 import com.clinicalpsychology.app.exception.ResourceNotFoundException;
 import com.clinicalpsychology.app.exception.UnexpectedServerException;
-import com.clinicalpsychology.app.model.TherapistProfile;
 import com.clinicalpsychology.app.response.CommonResponse;
 import com.clinicalpsychology.app.service.TherapistProfileService;
 import lombok.RequiredArgsConstructor;
@@ -46,9 +46,12 @@ public class TherapistProfileController {
 //        return therapistProfileService.getTherapistsByCategoryName(category);
 //    }
 
+    // q is a free text search over name, location, categories and languages, results are ranked by relevance
     @GetMapping("/search")
-    public CommonResponse<List<TherapistProfile>> searchTherapists(@RequestParam(required = false) String name, @RequestParam(required = false) String location, @RequestParam(required = false) String category, @RequestParam(required = false) String price) throws UnexpectedServerException {
-        return therapistProfileService.search(name, location, category, price);
+    public CommonResponse<TherapistSearchResultDTO> searchTherapists(@RequestParam(required = false) String name, @RequestParam(required = false) String location, @RequestParam(required = false) String category, @RequestParam(required = false) String price, @RequestParam(required = false) String q,
+                                                                     @RequestParam(required = false) Integer page, @RequestParam(required = false) Integer size, @RequestParam(defaultValue = "false") boolean includeTotal,
+                                                                     @RequestParam(defaultValue = "false") boolean includeFacets) throws UnexpectedServerException {
+        return therapistProfileService.search(name, location, category, price, q, page, size, includeTotal, includeFacets);
     }
 
     // It returns only approved therapists, other apis may not, clarify
@@ -0,0 +1,19 @@
+package com.clinicalpsychology.app.dto;
+
+import java.time.Instant;
+
+// One row per booking with therapist and client names already joined, used by the admin session pages
+public interface AdminSessionRowDTO {
+
+    Long getBookingId();
+    Long getTherapistId();
+    String getTherapistName();
+    String getTherapistTimezone();
+    Long getClientId();
+    String getClientName();
+    String getClientTimezone();
+    Instant getSessionStartTime();
+    String getCategory();
+    String getConnectMethod();
+    String getTherapistMeetLink();
+}
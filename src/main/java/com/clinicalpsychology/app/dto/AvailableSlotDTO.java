@@ -0,0 +1,20 @@
+package com.clinicalpsychology.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class AvailableSlotDTO {
+
+    private Long slotId;
+    // Client's local date and times
+    private String date;
+    private String timeStart;
+    private String timeEnd;
+
+}
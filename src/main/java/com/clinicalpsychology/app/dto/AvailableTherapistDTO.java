@@ -0,0 +1,19 @@
+package com.clinicalpsychology.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class AvailableTherapistDTO {
+
+    private TherapistDirectoryEntryDTO therapist;
+    private List<AvailableSlotDTO> freeSlots;
+
+}
@@ -0,0 +1,20 @@
+package com.clinicalpsychology.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class DayTimeSlotsDTO {
+
+    // yyyy-MM-dd in the client's timezone
+    private String date;
+    private List<TimeSlotDTO> timeSlots;
+
+}
@@ -0,0 +1,24 @@
+package com.clinicalpsychology.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+public class KeysetPageDTO<T> {
+
+    private List<T> items;
+
+    // Send this back as ?cursor= to load the next page, null when there is no next page
+    private String nextCursor;
+
+    private boolean hasNext;
+
+    private Integer size;
+}
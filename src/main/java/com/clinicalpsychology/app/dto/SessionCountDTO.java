@@ -0,0 +1,9 @@
+package com.clinicalpsychology.app.dto;
+
+// Per therapist or per client session counters, computed with GROUP BY in the database
+public interface SessionCountDTO {
+
+    Long getOwnerId();
+    Long getFutureSessions();
+    Long getCompletedSessions();
+}
@@ -0,0 +1,11 @@
+package com.clinicalpsychology.app.dto;
+
+import java.time.Instant;
+
+// Just the slot id, owner and start time, used to build the availability index
+public interface SlotTimeDTO {
+
+    Long getSlotId();
+    Long getTherapistId();
+    Instant getTimeStart();
+}
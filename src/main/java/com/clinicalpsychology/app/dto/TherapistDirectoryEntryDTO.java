@@ -0,0 +1,51 @@
+package com.clinicalpsychology.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Public, cacheable view of an approved therapist, used by the listing and search apis
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+public class TherapistDirectoryEntryDTO {
+
+    private Long therapistId;
+
+    private String name;
+
+    private String profileUrl;
+
+    private List<String> categories;
+
+    private List<String> languages;
+
+    private Double amount;
+
+    private String location;
+
+    private String summary;
+
+    public static TherapistDirectoryEntryDTO from(TherapistSearchRowDTO row) {
+
+        return TherapistDirectoryEntryDTO.builder()
+                .therapistId(row.getTherapistId())
+                .name(row.getName())
+                .profileUrl(row.getProfileUrl())
+                .categories(orEmpty(row.getCategories()))
+                .languages(orEmpty(row.getLanguages()))
+                .amount(row.getAmount())
+                .location(row.getLocation())
+                .summary(row.getSummary())
+                .build();
+    }
+
+    private static List<String> orEmpty(String[] aggregated) {
+        return aggregated == null ? List.of() : Arrays.asList(aggregated);
+    }
+}
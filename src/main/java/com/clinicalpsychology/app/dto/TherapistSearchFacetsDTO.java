@@ -0,0 +1,26 @@
+package com.clinicalpsychology.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// How many therapists matching the current search fall in each value, biggest first.
+// Price bucket keys use the same format as the price param (e.g. "50-<100", "200+"), so the UI can send them back as a filter.
+// Therapists without a price are not counted in any price bucket
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+public class TherapistSearchFacetsDTO {
+
+    private Map<String, Integer> categories;
+
+    private Map<String, Integer> languages;
+
+    private Map<String, Integer> locations;
+
+    private Map<String, Integer> priceBuckets;
+}
@@ -0,0 +1,29 @@
+package com.clinicalpsychology.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+public class TherapistSearchResultDTO {
+
+    private List<TherapistDirectoryEntryDTO> items;
+
+    private Integer page;
+
+    private Integer size;
+
+    private boolean hasNext;
+
+    // Only filled when the request asks for it with includeTotal=true, it costs an extra count query
+    private Long totalCount;
+
+    // Only filled with includeFacets=true
+    private TherapistSearchFacetsDTO facets;
+}
@@ -0,0 +1,14 @@
+package com.clinicalpsychology.app.dto;
+
+// One row per therapist for the search / listing apis. categories and languages come back as postgres arrays, null when there are none
+public interface TherapistSearchRowDTO {
+
+    Long getTherapistId();
+    String getName();
+    String getProfileUrl();
+    Double getAmount();
+    String getLocation();
+    String getSummary();
+    String[] getCategories();
+    String[] getLanguages();
+}
@@ -0,0 +1,84 @@
+package com.clinicalpsychology.app.email;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// A template split once into literal text and placeholder slots: literals[0] value[slots[0]] literals[1] ... literals[n].
+// Rendering is a single presized StringBuilder, no regex, no String.format parsing per send
+final class CompiledTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    private final String[] literals;
+    private final int[] slots;
+    private final int literalLength;
+
+    private CompiledTemplate(String[] literals, int[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+        this.literalLength = Arrays.stream(literals).mapToInt(String::length).sum();
+    }
+
+    // {{name}} placeholders, name must be one of variables (its index is the slot). Unknown names fail at startup, not at send time
+    static CompiledTemplate compile(String source, String[] variables, String origin) {
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+
+        int from = 0;
+        int open;
+        while ((open = source.indexOf(OPEN, from)) >= 0) {
+            int close = source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalStateException("Unclosed " + OPEN + " in email template " + origin);
+            }
+
+            String name = source.substring(open + OPEN.length(), close).trim();
+            int slot = Arrays.asList(variables).indexOf(name);
+            if (slot < 0) {
+                throw new IllegalStateException("Unknown placeholder {{" + name + "}} in email template " + origin + ", allowed: " + Arrays.toString(variables));
+            }
+
+            literals.add(source.substring(from, open));
+            slots.add(slot);
+            from = close + CLOSE.length();
+        }
+        literals.add(source.substring(from));
+
+        return new CompiledTemplate(literals.toArray(String[]::new), slots.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    String render(String[] values, boolean escapeHtml) {
+
+        StringBuilder out = new StringBuilder(literalLength + slots.length * 32);
+        out.append(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            String value = values[slots[i]];
+            if (value != null) {
+                if (escapeHtml) {
+                    appendEscaped(out, value);
+                } else {
+                    out.append(value);
+                }
+            }
+            out.append(literals[i + 1]);
+        }
+        return out.toString();
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.clinicalpsychology.app.email;
+
+import com.clinicalpsychology.app.config.AsyncExecutorConfig;
+import com.clinicalpsychology.app.enums.EmailOutboxStatus;
+import com.clinicalpsychology.app.model.EmailOutboxMessage;
+import com.clinicalpsychology.app.repository.EmailOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sends the outbox. Up to email.outbox.connections drains run at once on the mail executor, each claims a batch of due mails,
+// sends them over one SMTP connection and keeps that connection open for the next batch until the outbox is empty, instead of
+// a connect + login + quit per mail. A permanent rejection (SMTP 5xx, malformed address) fails the mail right away, anything else
+// (4xx like mailbox busy or greylisting, connection dropped mid-mail) is retried with exponential backoff until email.outbox.max-attempts.
+// When no connection can be opened at all the mails are not to blame: the rest of the batch goes back to PENDING without using up
+// an attempt and the drain stops until the next poll.
+// Metrics: email.outbox.messages{result}, email.outbox.batch (time per batch), email.outbox.batch.size
+@Service
+@Slf4j
+public class EmailDispatcher {
+
+    // Long enough for one batch on a slow SMTP server
+    private static final Duration LEASE = Duration.ofMinutes(5);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+
+    @Value("${email.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${email.outbox.connections:2}")
+    private int connections;
+
+    @Value("${email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${email.outbox.retry-base-seconds:30}")
+    private long retryBaseSeconds;
+
+    @Value("${mail.from}")
+    private String mailFrom;
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final JavaMailSenderImpl mailSender;
+    private final TaskExecutor mailExecutor;
+    private final MeterRegistry meterRegistry;
+
+    // Drains running now, each one holds at most one SMTP connection
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+    private final Counter postponed;
+    private final Timer batchTimer;
+    private final DistributionSummary batchSizes;
+
+    public EmailDispatcher(EmailOutboxRepository emailOutboxRepository, JavaMailSenderImpl mailSender,
+                           @Qualifier(AsyncExecutorConfig.MAIL_EXECUTOR) TaskExecutor mailExecutor, MeterRegistry meterRegistry) {
+
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.mailSender = mailSender;
+        this.mailExecutor = mailExecutor;
+        this.meterRegistry = meterRegistry;
+
+        this.sent = Counter.builder("email.outbox.messages").tag("result", "sent").description("Outbox mails by outcome").register(meterRegistry);
+        this.retried = Counter.builder("email.outbox.messages").tag("result", "retried").description("Outbox mails by outcome").register(meterRegistry);
+        this.failed = Counter.builder("email.outbox.messages").tag("result", "failed").description("Outbox mails by outcome").register(meterRegistry);
+        this.postponed = Counter.builder("email.outbox.messages").tag("result", "postponed").description("Outbox mails by outcome").register(meterRegistry);
+        this.batchTimer = Timer.builder("email.outbox.batch").description("Time to send one batch of outbox mails").register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("email.outbox.batch.size").description("Mails per batch").register(meterRegistry);
+    }
+
+    // Starts a drain unless email.outbox.connections are already running. Called after a mail is queued and by the poller
+    public void wakeUp() {
+
+        int current;
+        do {
+            current = running.get();
+            if (current >= connections) {
+                return;
+            }
+        } while (!running.compareAndSet(current, current + 1));
+
+        try {
+            mailExecutor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Mail executor is full, the mails wait in the table for the next poll
+            running.decrementAndGet();
+        }
+    }
+
+    // Catches retries coming due and mails queued by other instances
+    @Scheduled(initialDelay = 10 * 1000, fixedDelay = 2000)
+    public void poll() {
+        wakeUp();
+    }
+
+    private void drain() {
+
+        Transport transport = null;
+        try {
+            while (true) {
+                String claimToken = UUID.randomUUID().toString();
+                Instant now = Instant.now();
+
+                if (emailOutboxRepository.claimBatch(claimToken, now, now.plus(LEASE), batchSize) == 0) {
+                    return;
+                }
+
+                List<EmailOutboxMessage> batch = emailOutboxRepository.findByClaimTokenOrderById(claimToken);
+
+                Timer.Sample sample = Timer.start(meterRegistry);
+                transport = sendBatch(batch, transport);
+                sample.stop(batchTimer);
+                batchSizes.record(batch.size());
+            }
+        } catch (SmtpUnavailableException e) {
+            log.warn("SMTP server unavailable, outbox drain stopped until the next poll: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            // Claimed mails go back to the queue when their lease runs out
+            log.error("Email outbox drain stopped: {}", e.getMessage(), e);
+        } finally {
+            close(transport);
+            running.decrementAndGet();
+        }
+    }
+
+    // Returns the connection to reuse for the next batch, null when it was dropped
+    private Transport sendBatch(List<EmailOutboxMessage> batch, Transport transport) {
+
+        for (int i = 0; i < batch.size(); i++) {
+            EmailOutboxMessage message = batch.get(i);
+
+            try {
+                transport = connected(transport);
+            } catch (MessagingException | RuntimeException e) {
+                // Every other mail of the batch would fail the same way and burn an attempt on it
+                postpone(batch.subList(i, batch.size()), e);
+                throw new SmtpUnavailableException(e);
+            }
+
+            try {
+                MimeMessage mimeMessage = toMimeMessage(message);
+                transport.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+
+                Instant sentAt = Instant.now();
+                emailOutboxRepository.complete(message.getId(), EmailOutboxStatus.SENT, message.getAttempts() + 1, message.getNextAttemptAt(), sentAt, null, sentAt);
+                sent.increment();
+
+            } catch (MessagingException e) {
+                if (isPermanent(e)) {
+                    // Sending again won't change the answer
+                    emailOutboxRepository.fail(message.getId(), EmailOutboxStatus.FAILED, message.getAttempts() + 1, error(e), Instant.now());
+                    failed.increment();
+                    log.warn("Mail {} to {} rejected: {}", message.getId(), message.getRecipient(), error(e));
+                } else {
+                    // Temporary refusal or the connection, start the next mail on a fresh one
+                    close(transport);
+                    transport = null;
+                    retry(message, e);
+                }
+
+            } catch (RuntimeException e) {
+                close(transport);
+                transport = null;
+                retry(message, e);
+            }
+        }
+        return transport;
+    }
+
+    // Malformed address, or the server answered 5xx (unknown mailbox, policy rejection) and no recipient got a 4xx. The SMTP
+    // replies hang off the exception: SMTPSendFailedException for MAIL / DATA, one SMTPAddressFailedException per refused RCPT
+    // in the next-exception chain. No reply code at all means we never got an answer, so it is retried
+    static boolean isPermanent(MessagingException e) {
+
+        if (e instanceof AddressException) {
+            return true;
+        }
+
+        boolean permanent = false;
+        for (Exception next = e; next != null; next = next instanceof MessagingException m ? m.getNextException() : null) {
+            int code = next instanceof SMTPAddressFailedException refused ? refused.getReturnCode()
+                    : next instanceof SMTPSendFailedException failedSend ? failedSend.getReturnCode()
+                    : next instanceof SMTPSenderFailedException sender ? sender.getReturnCode() : -1;
+            if (code >= 400 && code < 500) {
+                return false;
+            }
+            if (code >= 500 && code < 600) {
+                permanent = true;
+            }
+        }
+        return permanent;
+    }
+
+    // Back to the queue with the attempts they had, the poller picks them up once the server may be back
+    private void postpone(List<EmailOutboxMessage> messages, Exception e) {
+
+        Instant now = Instant.now();
+        for (EmailOutboxMessage message : messages) {
+            emailOutboxRepository.complete(message.getId(), EmailOutboxStatus.PENDING, message.getAttempts(), now.plusSeconds(retryBaseSeconds), null, error(e), now);
+        }
+        postponed.increment(messages.size());
+    }
+
+    private void retry(EmailOutboxMessage message, Exception e) {
+
+        int attempts = message.getAttempts() + 1;
+
+        if (attempts >= maxAttempts) {
+            emailOutboxRepository.fail(message.getId(), EmailOutboxStatus.FAILED, attempts, error(e), Instant.now());
+            failed.increment();
+            log.error("Mail {} to {} failed {} times, giving up: {}", message.getId(), message.getRecipient(), attempts, e.getMessage(), e);
+            return;
+        }
+
+        Duration backoff = Duration.ofSeconds(retryBaseSeconds).multipliedBy(1L << Math.min(attempts - 1, 20));
+        if (backoff.compareTo(MAX_BACKOFF) > 0) {
+            backoff = MAX_BACKOFF;
+        }
+
+        emailOutboxRepository.complete(message.getId(), EmailOutboxStatus.PENDING, attempts, Instant.now().plus(backoff), null, error(e), Instant.now());
+        retried.increment();
+        log.warn("Mail {} to {} failed on attempt {}, retrying in {}s: {}", message.getId(), message.getRecipient(), attempts, backoff.toSeconds(), error(e));
+    }
+
+    // Same connect JavaMailSenderImpl does per send, but we keep the transport
+    private Transport connected(Transport transport) throws MessagingException {
+
+        if (transport != null && transport.isConnected()) {
+            return transport;
+        }
+
+        Transport fresh = mailSender.getSession().getTransport(mailSender.getProtocol() != null ? mailSender.getProtocol() : JavaMailSenderImpl.DEFAULT_PROTOCOL);
+        fresh.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+        return fresh;
+    }
+
+    private MimeMessage toMimeMessage(EmailOutboxMessage message) throws MessagingException {
+
+        MimeMessage mimeMessage = new MimeMessage(mailSender.getSession());
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, message.getHtmlBody() != null, StandardCharsets.UTF_8.name());
+        helper.setFrom(mailFrom);
+        helper.setTo(message.getRecipient());
+        helper.setSubject(message.getSubject());
+        if (message.getHtmlBody() != null) {
+            helper.setText(message.getTextBody(), message.getHtmlBody());
+        } else {
+            helper.setText(message.getTextBody());
+        }
+        mimeMessage.setSentDate(new Date());
+        mimeMessage.saveChanges();
+        return mimeMessage;
+    }
+
+    private static void close(Transport transport) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            log.debug("Closing the SMTP connection failed: {}", e.getMessage());
+        }
+    }
+
+    // No SMTP connection could be opened, ends the drain
+    private static final class SmtpUnavailableException extends RuntimeException {
+
+        private SmtpUnavailableException(Exception cause) {
+            super(error(cause), cause);
+        }
+    }
+
+    // With the SMTP replies from the next-exception chain, "Invalid Addresses" alone doesn't say why
+    static String error(Exception e) {
+        StringBuilder error = new StringBuilder(e.getClass().getSimpleName()).append(": ").append(e.getMessage());
+        for (Exception next = e instanceof MessagingException m ? m.getNextException() : null; next != null;
+             next = next instanceof MessagingException m ? m.getNextException() : null) {
+            error.append("; ").append(next.getMessage());
+        }
+        return error.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package com.clinicalpsychology.app.email;
+
+import com.clinicalpsychology.app.enums.EmailOutboxStatus;
+import com.clinicalpsychology.app.model.EmailOutboxMessage;
+import com.clinicalpsychology.app.repository.EmailOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Every outgoing mail is stored here first and sent by EmailDispatcher, so it survives a crash or an SMTP outage. Inside a
+// transaction the mail commits (or rolls back) with it. Only callers that run again for the same thing (a retried webhook event,
+// a retried meeting job) pass an idempotency key, everything else is sent every time it is queued. Metrics: email.outbox.messages{result=queued|duplicate}, email.outbox.depth, email.outbox.oldest.age
+@Service
+@Slf4j
+public class EmailOutbox {
+
+    private static final Set<EmailOutboxStatus> UNSENT = Set.of(EmailOutboxStatus.PENDING, EmailOutboxStatus.SENDING);
+    private static final Set<EmailOutboxStatus> FINISHED = Set.of(EmailOutboxStatus.SENT, EmailOutboxStatus.FAILED);
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final EmailDispatcher emailDispatcher;
+
+    // Also the idempotency window
+    @Value("${email.outbox.retention-days:7}")
+    private long retentionDays;
+
+    private final Counter queued;
+    private final Counter duplicates;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong oldestAgeSeconds = new AtomicLong();
+
+    public EmailOutbox(EmailOutboxRepository emailOutboxRepository, EmailDispatcher emailDispatcher, MeterRegistry meterRegistry) {
+
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.emailDispatcher = emailDispatcher;
+
+        this.queued = Counter.builder("email.outbox.messages").tag("result", "queued").description("Outbox mails by outcome").register(meterRegistry);
+        this.duplicates = Counter.builder("email.outbox.messages").tag("result", "duplicate").description("Outbox mails by outcome").register(meterRegistry);
+
+        Gauge.builder("email.outbox.depth", depth, AtomicLong::get).description("Mails waiting to be sent").register(meterRegistry);
+        Gauge.builder("email.outbox.oldest.age", oldestAgeSeconds, AtomicLong::get).baseUnit("seconds").description("Age of the oldest unsent mail").register(meterRegistry);
+    }
+
+    // htmlBody may be null for a plain text mail. Never de-duplicated, two calls send two mails
+    public void enqueue(String recipient, String subject, String textBody, String htmlBody) {
+        enqueue(null, recipient, subject, textBody, htmlBody);
+    }
+
+    // A second mail with the same idempotencyKey is dropped. Keys must name the event that is retried and the recipient's role,
+    // e.g. "meeting-42-client", never the content
+    public void enqueue(String idempotencyKey, String recipient, String subject, String textBody, String htmlBody) {
+
+        if (emailOutboxRepository.insertIfAbsent(recipient, subject, textBody, htmlBody, idempotencyKey, Instant.now()) == 0) {
+            duplicates.increment();
+            log.info("Mail {} to {} already queued, skipped: {}", idempotencyKey, recipient, subject);
+            return;
+        }
+        queued.increment();
+
+        // Inside a transaction the row is only visible to the dispatcher after the commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    emailDispatcher.wakeUp();
+                }
+            });
+        } else {
+            emailDispatcher.wakeUp();
+        }
+    }
+
+    @Scheduled(initialDelay = 15 * 1000, fixedRate = 15 * 1000)
+    public void refreshMetrics() {
+
+        depth.set(emailOutboxRepository.countByStatusIn(UNSENT));
+
+        EmailOutboxMessage oldest = emailOutboxRepository.findFirstByStatusInOrderByCreatedAtAsc(UNSENT);
+        oldestAgeSeconds.set(oldest == null ? 0 : Duration.between(oldest.getCreatedAt(), Instant.now()).toSeconds());
+    }
+
+    @Scheduled(cron = "0 45 3 * * *")
+    public void purgeFinished() {
+
+        int deleted = emailOutboxRepository.deleteFinishedBefore(Instant.now().minus(Duration.ofDays(retentionDays)), FINISHED);
+        if (deleted > 0) {
+            log.info("Purged {} sent / failed mail(s) from the outbox", deleted);
+        }
+    }
+}
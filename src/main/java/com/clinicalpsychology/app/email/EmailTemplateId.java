@@ -0,0 +1,36 @@
+package com.clinicalpsychology.app.email;
+
+import lombok.Getter;
+
+// Every email we send, with the placeholders its template may use. render() takes the values in this order,
+// so binding is an array index instead of a map lookup or reflection. Files: resources/templates/email/<name>[_<lang>].txt / .html
+@Getter
+public enum EmailTemplateId {
+
+    MEETING_SCHEDULED_CLIENT("meeting-scheduled-client", "clientName", "therapistName", "date", "time", "timezone", "location", "joinUrl", "calendarLink"),
+    MEETING_SCHEDULED_THERAPIST("meeting-scheduled-therapist", "therapistName", "clientName", "date", "time", "timezone", "location", "startUrl", "calendarLink"),
+    MEETING_RESCHEDULED_CLIENT("meeting-rescheduled-client", "clientName", "therapistName", "oldDateTime", "date", "time", "timezone", "location", "joinUrl", "calendarLink"),
+    MEETING_RESCHEDULED_THERAPIST("meeting-rescheduled-therapist", "therapistName", "clientName", "oldDateTime", "date", "time", "timezone", "location", "startUrl", "calendarLink"),
+
+    BOOKING_CANCELLED_CLIENT("booking-cancelled-client", "clientName", "therapistName", "sessionStart"),
+    BOOKING_CANCELLED_THERAPIST("booking-cancelled-therapist", "therapistName", "clientName", "sessionStart"),
+
+    THERAPIST_REGISTERED("therapist-registered", "therapistName"),
+    THERAPIST_APPROVED("therapist-approved", "therapistName"),
+    THERAPIST_REJECTED("therapist-rejected", "therapistName"),
+
+    OTP_THERAPIST_REGISTER("otp-therapist-register", "otp"),
+    OTP_CLIENT_REGISTER("otp-client-register", "otp"),
+    OTP_FORGOT_PASSWORD("otp-forgot-password", "otp"),
+    OTP_DEFAULT("otp-default", "otp"),
+
+    AI_CHAT_PAYMENT_SUCCESS("ai-chat-payment-success", "clientName", "amount", "currency", "productName");
+
+    private final String fileName;
+    private final String[] variables;
+
+    EmailTemplateId(String fileName, String... variables) {
+        this.fileName = fileName;
+        this.variables = variables;
+    }
+}
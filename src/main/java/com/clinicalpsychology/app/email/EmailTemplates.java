@@ -0,0 +1,113 @@
+package com.clinicalpsychology.app.email;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Loads and compiles every EmailTemplateId once at startup, a missing file or a bad placeholder stops the app instead of a
+// broken mail later. A template is templates/email/<name>.txt, first line "Subject: ...", then a blank line, then the text body.
+// <name>.html next to it makes the mail multipart. Translations: <name>_<lang>.txt / .html for every language in
+// email.locales, falling back to the default files
+@Component
+@Slf4j
+public class EmailTemplates {
+
+    private static final String LOCATION = "classpath:templates/email/";
+    private static final String SUBJECT_PREFIX = "Subject:";
+
+    private record Compiled(CompiledTemplate subject, CompiledTemplate text, CompiledTemplate html) {
+    }
+
+    // Default language under the "" key
+    private final Map<EmailTemplateId, Map<String, Compiled>> templates = new EnumMap<>(EmailTemplateId.class);
+
+    public EmailTemplates(ResourceLoader resourceLoader, @Value("${email.locales:}") List<String> locales) {
+
+        for (EmailTemplateId id : EmailTemplateId.values()) {
+
+            Map<String, Compiled> byLanguage = new HashMap<>();
+
+            Compiled fallback = load(resourceLoader, id, "");
+            if (fallback == null) {
+                throw new IllegalStateException("Email template " + id.getFileName() + ".txt is missing");
+            }
+            byLanguage.put("", fallback);
+
+            for (String language : locales) {
+                if (language.isBlank()) {
+                    continue;
+                }
+                Compiled translated = load(resourceLoader, id, "_" + language.trim().toLowerCase(Locale.ROOT));
+                if (translated != null) {
+                    byLanguage.put(language.trim().toLowerCase(Locale.ROOT), translated);
+                }
+            }
+
+            templates.put(id, byLanguage);
+        }
+
+        log.info("Compiled {} email template(s)", templates.size());
+    }
+
+    public RenderedEmail render(EmailTemplateId id, String... values) {
+        return render(id, null, values);
+    }
+
+    // values in the order of id.getVariables()
+    public RenderedEmail render(EmailTemplateId id, Locale locale, String... values) {
+
+        if (values.length != id.getVariables().length) {
+            throw new IllegalArgumentException(id + " takes " + Arrays.toString(id.getVariables()) + ", got " + values.length + " value(s)");
+        }
+
+        Map<String, Compiled> byLanguage = templates.get(id);
+        Compiled template = locale != null ? byLanguage.getOrDefault(locale.getLanguage(), byLanguage.get("")) : byLanguage.get("");
+
+        return new RenderedEmail(
+                template.subject().render(values, false),
+                template.text().render(values, false),
+                template.html() != null ? template.html().render(values, true) : null);
+    }
+
+    private static Compiled load(ResourceLoader resourceLoader, EmailTemplateId id, String suffix) {
+
+        String text = read(resourceLoader.getResource(LOCATION + id.getFileName() + suffix + ".txt"));
+        if (text == null) {
+            return null;
+        }
+        String html = read(resourceLoader.getResource(LOCATION + id.getFileName() + suffix + ".html"));
+
+        String origin = id.getFileName() + suffix;
+        int lineEnd = text.indexOf('\n');
+        if (!text.startsWith(SUBJECT_PREFIX) || lineEnd < 0) {
+            throw new IllegalStateException("Email template " + origin + ".txt must start with a \"" + SUBJECT_PREFIX + "\" line");
+        }
+
+        String subject = text.substring(SUBJECT_PREFIX.length(), lineEnd).trim();
+        String body = text.substring(lineEnd + 1).stripLeading();
+
+        return new Compiled(
+                CompiledTemplate.compile(subject, id.getVariables(), origin),
+                CompiledTemplate.compile(body, id.getVariables(), origin + ".txt"),
+                html != null ? CompiledTemplate.compile(html, id.getVariables(), origin + ".html") : null);
+    }
+
+    private static String read(Resource resource) {
+
+        if (!resource.exists()) {
+            return null;
+        }
+        try {
+            return resource.getContentAsString(StandardCharsets.UTF_8).replace("\r\n", "\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read email template " + resource.getDescription(), e);
+        }
+    }
+}
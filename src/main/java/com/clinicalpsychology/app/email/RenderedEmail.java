@@ -0,0 +1,5 @@
+package com.clinicalpsychology.app.email;
+
+// html is null when the template has no .html part, then the mail goes out as plain text only
+public record RenderedEmail(String subject, String text, String html) {
+}
@@ -0,0 +1,6 @@
+package com.clinicalpsychology.app.enums;
+
+// Lifecycle of a mail in the outbox
+public enum EmailOutboxStatus {
+    PENDING, SENDING, SENT, FAILED
+}
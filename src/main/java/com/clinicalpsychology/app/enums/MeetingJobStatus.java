@@ -0,0 +1,6 @@
+package com.clinicalpsychology.app.enums;
+
+// Lifecycle of a Zoom meeting provisioning job
+public enum MeetingJobStatus {
+    PENDING, PROCESSING, DONE, FAILED
+}
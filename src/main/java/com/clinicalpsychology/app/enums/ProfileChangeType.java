@@ -0,0 +1,8 @@
+package com.clinicalpsychology.app.enums;
+
+public enum ProfileChangeType {
+    REGISTERED,
+    UPDATED,
+    APPROVAL_CHANGED,
+    DELETED
+}
@@ -0,0 +1,6 @@
+package com.clinicalpsychology.app.enums;
+
+// Lifecycle of a row in the Stripe webhook inbox
+public enum WebhookEventStatus {
+    PENDING, PROCESSING, PROCESSED, FAILED
+}
@@ -0,0 +1,13 @@
+package com.clinicalpsychology.app.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+@AllArgsConstructor
+public class ClientRegisteredEvent {
+
+    private final Long clientId;
+}
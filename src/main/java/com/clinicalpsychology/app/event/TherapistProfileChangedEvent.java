@@ -0,0 +1,25 @@
+package com.clinicalpsychology.app.event;
+
+import com.clinicalpsychology.app.enums.ApprovalStatus;
+import com.clinicalpsychology.app.enums.ProfileChangeType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+// Published by TherapistProfileService and AdminService whenever a therapist is registered, updated, approved/rejected or deleted.
+// Listeners use @TransactionalEventListener, so they only see it after the change is committed
+@Getter
+@ToString
+@AllArgsConstructor
+public class TherapistProfileChangedEvent {
+
+    private final Long therapistId;
+
+    private final ProfileChangeType changeType;
+
+    // null for REGISTERED
+    private final ApprovalStatus previousApprovalStatus;
+
+    // null for DELETED
+    private final ApprovalStatus approvalStatus;
+}
@@ -0,0 +1,8 @@
+package com.clinicalpsychology.app.exception;
+
+// A cursor that can't be decoded or was issued for a different sort, reported as 400 INVALID_CURSOR
+public class InvalidCursorException extends InvalidFieldValueException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
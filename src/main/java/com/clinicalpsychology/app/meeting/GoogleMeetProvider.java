@@ -0,0 +1,105 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.gmeetservicebased.GoogleServiceAccountConfig;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.model.*;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+
+// Google Meet through a calendar event with conference data on the service account's calendar. Meet has no host link,
+// therapist and client both get the same one. Only when meeting.google.enabled=true, it needs the service account key
+@Component
+@ConditionalOnProperty(name = "meeting.google.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class GoogleMeetProvider implements MeetingProvider {
+
+    // The service account's own calendar
+    private static final String CALENDAR_ID = "primary";
+
+    private final GoogleServiceAccountConfig googleServiceAccountConfig;
+
+    private volatile Calendar calendar;
+
+    @Override
+    public String name() {
+        return "google-meet";
+    }
+
+    @Override
+    public String displayName() {
+        return "Google Meet";
+    }
+
+    @Override
+    public MeetingLinks createMeeting(Instant startTime, Instant endTime) throws Exception {
+        return createMeetEvent(startTime, endTime);
+    }
+
+    // Placeholder event for now, reschedule moves it to the session so the calendar shows the real time
+    @Override
+    public MeetingLinks createPooledMeeting() throws Exception {
+        Instant start = Instant.now();
+        return createMeetEvent(start, start.plus(Duration.ofHours(1)));
+    }
+
+    @Override
+    public void reschedule(String externalId, Instant startTime, Instant endTime) throws Exception {
+        Event times = new Event()
+                .setStart(eventTime(startTime))
+                .setEnd(eventTime(endTime));
+        calendar().events().patch(CALENDAR_ID, externalId, times).execute();
+    }
+
+    @Override
+    public void deleteMeeting(String externalId) throws Exception {
+        try {
+            calendar().events().delete(CALENDAR_ID, externalId).execute();
+        } catch (GoogleJsonResponseException e) {
+            // 404 / 410: deleted before, nothing to do
+            if (e.getStatusCode() != 404 && e.getStatusCode() != 410) {
+                throw e;
+            }
+        }
+    }
+
+    private MeetingLinks createMeetEvent(Instant startTime, Instant endTime) throws Exception {
+
+        Event event = new Event()
+                .setSummary("TherapistBooster Session")
+                .setStart(eventTime(startTime))
+                .setEnd(eventTime(endTime))
+                .setConferenceData(new ConferenceData().setCreateRequest(new CreateConferenceRequest()
+                        // Unique per event, Google treats a repeated request id as the same conference
+                        .setRequestId("meet-" + UUID.randomUUID())
+                        .setConferenceSolutionKey(new ConferenceSolutionKey().setType("hangoutsMeet"))));
+
+        Event created = calendar().events()
+                .insert(CALENDAR_ID, event)
+                .setConferenceDataVersion(1)
+                .execute();
+
+        return new MeetingLinks(displayName(), created.getId(), created.getHangoutLink(), created.getHangoutLink());
+    }
+
+    private static EventDateTime eventTime(Instant time) {
+        return new EventDateTime().setDateTime(new DateTime(Date.from(time))).setTimeZone("UTC");
+    }
+
+    // Built once, it reads the key file and sets up the http transport
+    private Calendar calendar() throws Exception {
+        Calendar current = calendar;
+        if (current == null) {
+            current = googleServiceAccountConfig.getCalendarService();
+            calendar = current;
+        }
+        return current;
+    }
+}
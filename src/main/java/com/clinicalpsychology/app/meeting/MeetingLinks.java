@@ -0,0 +1,6 @@
+package com.clinicalpsychology.app.meeting;
+
+// A meeting made by a MeetingProvider. location is the provider's display name for the emails,
+// hostUrl is what the therapist opens (Zoom's start url), joinUrl what the client opens
+public record MeetingLinks(String location, String externalId, String hostUrl, String joinUrl) {
+}
@@ -0,0 +1,143 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.email.EmailTemplateId;
+import com.clinicalpsychology.app.email.EmailTemplates;
+import com.clinicalpsychology.app.email.RenderedEmail;
+import com.clinicalpsychology.app.enums.ZoomContextType;
+import com.clinicalpsychology.app.service.EmailService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+// The "your session is scheduled / rescheduled" emails with the meeting links, for whichever provider made the meeting.
+// location is the provider's display name (Zoom, Google Meet)
+@Service
+@RequiredArgsConstructor
+public class MeetingNotificationService {
+
+    private final EmailService emailService;
+    private final EmailTemplates emailTemplates;
+
+    public void notifyParticipants(String therapistEmail, String clientEmail, String therapistName, String clientName, Instant startTime, Instant endTime, Instant oldStart,
+                                   ZoomContextType contextType, String therapistTimezone, String clientTimezone, String location, String startUrl, String joinUrl) {
+        notifyParticipants(null, therapistEmail, clientEmail, therapistName, clientName, startTime, endTime, oldStart, contextType,
+                therapistTimezone, clientTimezone, location, startUrl, joinUrl);
+    }
+
+    // idempotencyKey is set by retried callers (the meeting job), each participant's mail is then queued once. null sends every time
+    public void notifyParticipants(String idempotencyKey, String therapistEmail, String clientEmail, String therapistName, String clientName, Instant startTime, Instant endTime,
+                                   Instant oldStart, ZoomContextType contextType, String therapistTimezone, String clientTimezone, String location, String startUrl, String joinUrl) {
+
+        String therapistCalendarLink = generateGoogleCalendarLink(
+                "TherapistBooster Session",
+                location + " meeting you're hosting.",
+                startUrl, // <-- host link here
+                startTime,
+                endTime,
+                location
+        );
+
+        String userCalendarLink = generateGoogleCalendarLink(
+                "TherapistBooster Session",
+                location + " meeting with your therapist.",
+                joinUrl, // <-- public attendee link
+                startTime,
+                endTime,
+                location
+        );
+
+        ZoneId therapistTimeZone = ZoneId.of(therapistTimezone);
+        ZoneId clientTimeZone = ZoneId.of(clientTimezone);
+
+        String dateForTherapist = formattedDate(startTime, therapistTimeZone);
+        String timeForTherapist = formattedTime(startTime, therapistTimeZone);
+
+        String dateForClient = formattedDate(startTime, clientTimeZone);
+        String timeForClient = formattedTime(startTime, clientTimeZone);
+
+        RenderedEmail clientEmailContent;
+        RenderedEmail therapistEmailContent;
+
+        if (contextType.isReschedule() && oldStart != null) {
+
+            clientEmailContent = emailTemplates.render(EmailTemplateId.MEETING_RESCHEDULED_CLIENT, clientName, therapistName, formattedDateTime(oldStart, clientTimeZone),
+                    dateForClient, timeForClient, clientTimezone, location, joinUrl, userCalendarLink);
+
+            therapistEmailContent = emailTemplates.render(EmailTemplateId.MEETING_RESCHEDULED_THERAPIST, therapistName, clientName, formattedDateTime(oldStart, therapistTimeZone),
+                    dateForTherapist, timeForTherapist, therapistTimezone, location, startUrl, therapistCalendarLink);
+
+        } else {
+
+            clientEmailContent = emailTemplates.render(EmailTemplateId.MEETING_SCHEDULED_CLIENT, clientName, therapistName,
+                    dateForClient, timeForClient, clientTimezone, location, joinUrl, userCalendarLink);
+
+            therapistEmailContent = emailTemplates.render(EmailTemplateId.MEETING_SCHEDULED_THERAPIST, therapistName, clientName,
+                    dateForTherapist, timeForTherapist, therapistTimezone, location, startUrl, therapistCalendarLink);
+        }
+
+        if (idempotencyKey != null) {
+            emailService.sendEmail(idempotencyKey + "-therapist", therapistEmail, therapistEmailContent);
+            emailService.sendEmail(idempotencyKey + "-client", clientEmail, clientEmailContent);
+        } else {
+            emailService.sendEmail(therapistEmail, therapistEmailContent);
+            emailService.sendEmail(clientEmail, clientEmailContent);
+        }
+    }
+
+    private String generateGoogleCalendarLink(String title, String details, String joinUrl, Instant startTime, Instant endTime, String location) {
+
+        // 🔬 Why Instant.toString() fails here?
+        // Because it returns: 2025-11-06T04:00:00Z
+        // But Google wants: 20251106T040000Z
+        String startStr = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+                .withZone(ZoneOffset.UTC)
+                .format(startTime);
+
+        String endStr = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+                .withZone(ZoneOffset.UTC)
+                .format(endTime);
+
+
+        return String.format(
+                "https://calendar.google.com/calendar/r/eventedit?text=%s&details=%s%%0AJoin+Here:%%20%s&location=%s&dates=%s/%s",
+                encode(title),
+                encode(details),
+                encode(joinUrl),
+                encode(location),
+                startStr,
+                endStr
+        );
+    }
+
+
+
+
+    private String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+
+
+    private String formattedDateTime(Instant instant, ZoneId timezone) {
+        return DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(timezone).format(instant);
+    }
+
+
+
+    private String formattedDate(Instant instant, ZoneId timezone){
+        return DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(timezone).format(instant);
+    }
+
+
+
+    private String formattedTime(Instant instant, ZoneId timezone){
+        return DateTimeFormatter.ofPattern("hh:mm a").withZone(timezone).format(instant);
+    }
+
+}
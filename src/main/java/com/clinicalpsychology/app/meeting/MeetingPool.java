@@ -0,0 +1,206 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.model.PooledMeeting;
+import com.clinicalpsychology.app.repository.PooledMeetingRepository;
+import com.clinicalpsychology.app.service.SchedulerLeases;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Keeps meeting.pool.size meetings of the active provider (meeting.provider) made in advance, so a paid booking gets its links
+// with one UPDATE and a reschedule to the session time instead of waiting on Zoom / Google to make one. Refilled in the background
+// by one instance at a time (SchedulerLeases), when the pool runs dry a booking falls back to making its meeting on demand.
+// cleanup deletes meetings at the provider once their session is over, and unused ones after meeting.pool.max-age-hours.
+// Metrics: meeting.pool.available, meeting.pool.assignments{result=hit|miss}, meeting.pool.deleted
+@Service
+@Slf4j
+public class MeetingPool {
+
+    private static final String REFILL_LEASE = "meeting-pool-refill";
+    private static final String CLEANUP_LEASE = "meeting-pool-cleanup";
+    // Covers one round of refill / cleanup, the holder renews it every round
+    private static final Duration LEASE_TTL = Duration.ofMinutes(10);
+
+    private final PooledMeetingRepository pooledMeetingRepository;
+    private final SchedulerLeases schedulerLeases;
+    private final Map<String, MeetingProvider> providers;
+    private final MeetingProvider activeProvider;
+
+    @Value("${meeting.pool.size:20}")
+    private int poolSize;
+
+    // Meetings made per refill round, keeps the refill from using up the provider's rate limit
+    @Value("${meeting.pool.refill-batch:5}")
+    private int refillBatch;
+
+    // A free meeting older than this is deleted and replaced, so pooled meetings never run into the provider's expiry
+    @Value("${meeting.pool.max-age-hours:168}")
+    private long maxAgeHours;
+
+    // Sessions can run over, their meeting is deleted this long after the planned end
+    @Value("${meeting.cleanup.grace-minutes:120}")
+    private long cleanupGraceMinutes;
+
+    @Value("${meeting.cleanup.batch:20}")
+    private int cleanupBatch;
+
+    private final AtomicLong available = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter deleted;
+
+    public MeetingPool(PooledMeetingRepository pooledMeetingRepository, SchedulerLeases schedulerLeases, List<MeetingProvider> meetingProviders,
+                       @Value("${meeting.provider:zoom}") String providerName, MeterRegistry meterRegistry) {
+
+        this.pooledMeetingRepository = pooledMeetingRepository;
+        this.schedulerLeases = schedulerLeases;
+        this.providers = meetingProviders.stream().collect(Collectors.toMap(MeetingProvider::name, Function.identity()));
+
+        this.activeProvider = providers.get(providerName);
+        if (activeProvider == null) {
+            throw new IllegalStateException("meeting.provider " + providerName + " is not available, known providers: " + providers.keySet());
+        }
+
+        this.hits = Counter.builder("meeting.pool.assignments").tag("result", "hit").description("Bookings served from the meeting pool or not").register(meterRegistry);
+        this.misses = Counter.builder("meeting.pool.assignments").tag("result", "miss").description("Bookings served from the meeting pool or not").register(meterRegistry);
+        this.deleted = Counter.builder("meeting.pool.deleted").description("Meetings deleted at the provider after their session or unused").register(meterRegistry);
+        Gauge.builder("meeting.pool.available", available, AtomicLong::get).tag("provider", providerName).description("Free pre-made meetings").register(meterRegistry);
+    }
+
+    // The booking's meeting: the one it already got (a retried job), a free one from the pool, or a new one when the pool is empty.
+    // The meeting row keyed by booking id is what makes a retry idempotent, nothing the client sends can stand in for it
+    public MeetingLinks assign(Long bookingId, Instant startTime, Instant endTime) throws Exception {
+
+        PooledMeeting meeting = pooledMeetingRepository.findByBookingId(bookingId).orElse(null);
+        if (meeting != null) {
+            // A retry after the move to the session time failed (rate limit, Zoom down) moves it now
+            scheduleIfNeeded(meeting, startTime, endTime);
+            return links(meeting);
+        }
+
+        if (pooledMeetingRepository.assignFree(activeProvider.name(), bookingId, Instant.now()) == 1) {
+            meeting = pooledMeetingRepository.findByBookingId(bookingId).orElseThrow();
+            hits.increment();
+            available.updateAndGet(count -> Math.max(0, count - 1));
+            scheduleIfNeeded(meeting, startTime, endTime);
+            return links(meeting);
+        }
+
+        misses.increment();
+        MeetingLinks links = activeProvider.createMeeting(startTime, endTime);
+
+        // Recorded straight away, so a retry after a failed link update or email finds it instead of making another one
+        pooledMeetingRepository.save(PooledMeeting.builder()
+                .provider(activeProvider.name())
+                .externalId(links.externalId())
+                .hostUrl(links.hostUrl())
+                .joinUrl(links.joinUrl())
+                .bookingId(bookingId)
+                .assignedAt(Instant.now())
+                .sessionStart(startTime)
+                .sessionEnd(endTime)
+                .build());
+        return links;
+    }
+
+    // One instance at a time, otherwise every instance tops the pool up to poolSize on its own
+    @Scheduled(initialDelay = 30 * 1000, fixedDelay = 30 * 1000)
+    public void refill() {
+
+        if (!schedulerLeases.tryAcquire(REFILL_LEASE, LEASE_TTL)) {
+            return;
+        }
+
+        long free = pooledMeetingRepository.countByProviderAndBookingIdIsNullAndRetiredAtIsNull(activeProvider.name());
+        available.set(free);
+
+        long missing = Math.min(poolSize - free, refillBatch);
+        for (int i = 0; i < missing; i++) {
+            try {
+                MeetingLinks links = activeProvider.createPooledMeeting();
+                pooledMeetingRepository.save(PooledMeeting.builder()
+                        .provider(activeProvider.name())
+                        .externalId(links.externalId())
+                        .hostUrl(links.hostUrl())
+                        .joinUrl(links.joinUrl())
+                        .build());
+                available.incrementAndGet();
+            } catch (MeetingProviderBusyException e) {
+                // Bookings need the quota more, carry on next round
+                return;
+            } catch (Exception e) {
+                log.warn("Could not add a {} meeting to the pool: {}", activeProvider.name(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Retires free meetings older than meeting.pool.max-age-hours (or of a provider no longer in use), then deletes retired
+    // meetings and meetings whose session ended meeting.cleanup.grace-minutes ago at their provider
+    @Scheduled(initialDelay = 60 * 1000, fixedDelay = 5 * 60 * 1000)
+    public void cleanup() {
+
+        if (!schedulerLeases.tryAcquire(CLEANUP_LEASE, LEASE_TTL)) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        int retired = pooledMeetingRepository.retireFree(activeProvider.name(), now.minus(Duration.ofHours(maxAgeHours)), now);
+        if (retired > 0) {
+            log.info("Retired {} unused pooled meetings", retired);
+        }
+
+        List<PooledMeeting> deletable = pooledMeetingRepository.findDeletable(providers.keySet(), now.minus(Duration.ofMinutes(cleanupGraceMinutes)), Limit.of(cleanupBatch));
+        for (PooledMeeting meeting : deletable) {
+            try {
+                providers.get(meeting.getProvider()).deleteMeeting(meeting.getExternalId());
+                pooledMeetingRepository.markDeleted(meeting.getId(), Instant.now());
+                deleted.increment();
+            } catch (MeetingProviderBusyException e) {
+                // Same as refill, bookings go first
+                return;
+            } catch (Exception e) {
+                log.warn("Could not delete {} meeting {}, will try again: {}", meeting.getProvider(), meeting.getExternalId(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void scheduleIfNeeded(PooledMeeting meeting, Instant startTime, Instant endTime) throws Exception {
+
+        if (meeting.getSessionEnd() != null) {
+            return;
+        }
+
+        MeetingProvider provider = providers.get(meeting.getProvider());
+        if (provider == null) {
+            throw new IllegalStateException("Meeting provider " + meeting.getProvider() + " of pooled meeting " + meeting.getId() + " is not available");
+        }
+
+        provider.reschedule(meeting.getExternalId(), startTime, endTime);
+        pooledMeetingRepository.markScheduled(meeting.getId(), startTime, endTime, Instant.now());
+    }
+
+    private MeetingLinks links(PooledMeeting meeting) {
+        return new MeetingLinks(displayName(meeting.getProvider()), meeting.getExternalId(), meeting.getHostUrl(), meeting.getJoinUrl());
+    }
+
+    private String displayName(String providerName) {
+        MeetingProvider provider = providers.get(providerName);
+        return provider != null ? provider.displayName() : providerName;
+    }
+}
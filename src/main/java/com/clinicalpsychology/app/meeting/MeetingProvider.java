@@ -0,0 +1,27 @@
+package com.clinicalpsychology.app.meeting;
+
+import java.time.Instant;
+
+// A video meeting service (Zoom, Google Meet). meeting.provider picks the one used for new bookings, MeetingPool keeps
+// meetings of it ready in advance and only falls back to createMeeting when the pool is empty. Every meeting made here is
+// deleted again through deleteMeeting, so none are left behind at the provider
+public interface MeetingProvider {
+
+    // Key used in meeting.provider and stored with the pooled meetings, e.g. "zoom"
+    String name();
+
+    // For the emails, e.g. "Zoom"
+    String displayName();
+
+    // A meeting for this session, made on demand
+    MeetingLinks createMeeting(Instant startTime, Instant endTime) throws Exception;
+
+    // A scheduled meeting at a placeholder time, made ahead for the pool. reschedule moves it to the session it is handed to
+    MeetingLinks createPooledMeeting() throws Exception;
+
+    // Moves a pooled meeting to its booking's session. Safe to repeat
+    void reschedule(String externalId, Instant startTime, Instant endTime) throws Exception;
+
+    // Removes the meeting at the provider. A meeting that is already gone counts as deleted
+    void deleteMeeting(String externalId) throws Exception;
+}
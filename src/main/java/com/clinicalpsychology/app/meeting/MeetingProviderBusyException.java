@@ -0,0 +1,17 @@
+package com.clinicalpsychology.app.meeting;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+// The provider's rate limit is used up, try again after retryAfter. Not a failure of the meeting itself
+@Getter
+public class MeetingProviderBusyException extends Exception {
+
+    private final Duration retryAfter;
+
+    public MeetingProviderBusyException(String provider, Duration retryAfter) {
+        super(provider + " rate limit reached, retry in " + retryAfter.toMillis() + " ms");
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,243 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.config.ThreadingMode;
+import com.clinicalpsychology.app.enums.MeetingJobStatus;
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.enums.ZoomContextType;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.model.ClientProfile;
+import com.clinicalpsychology.app.model.MeetingProvisioningJob;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import com.clinicalpsychology.app.repository.ClientProfileRepository;
+import com.clinicalpsychology.app.repository.MeetingProvisioningJobRepository;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Persistent queue of "get the meeting for this paid booking and send the links" jobs. The payment webhook only marks the booking
+// COMPLETED and enqueues, so a slow or failing Zoom never holds up or loses the payment update. A small worker pool drains the jobs,
+// taking a pre-made meeting from MeetingPool when there is one. When the provider is rate limited the job just waits, failures are
+// retried with exponential backoff and end up FAILED after meeting.provisioning.max-attempts.
+// One job per booking id, and a booking never gets a second meeting: MeetingPool records every meeting it hands out against the booking id.
+// Metrics: meeting.provisioning{result}, meeting.provisioning.lag, meeting.provisioning.queue.depth
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MeetingProvisioningQueue {
+
+    private static final Set<MeetingJobStatus> UNFINISHED = Set.of(MeetingJobStatus.PENDING, MeetingJobStatus.PROCESSING);
+
+    // Token call + meeting call + handing the emails over
+    private static final Duration LEASE = Duration.ofMinutes(2);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    private static final Duration SESSION_LENGTH = Duration.ofMinutes(60);
+
+    @Value("${meeting.provisioning.workers:2}")
+    private int workers;
+
+    @Value("${meeting.provisioning.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${meeting.provisioning.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${meeting.provisioning.retry-base-seconds:15}")
+    private long retryBaseSeconds;
+
+    private final MeetingProvisioningJobRepository meetingProvisioningJobRepository;
+    private final BookingRepository bookingRepository;
+    private final TherapistProfileRepository therapistProfileRepository;
+    private final ClientProfileRepository clientProfileRepository;
+    private final MeetingPool meetingPool;
+    private final MeetingNotificationService meetingNotificationService;
+    private final MeterRegistry meterRegistry;
+    private final ThreadingMode threadingMode;
+
+    private ThreadPoolExecutor executor;
+
+    // Jobs submitted on this instance and not finished yet, so the poller doesn't queue them twice
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong depth = new AtomicLong();
+
+    private Counter rejectedCounter;
+    private Counter provisioned;
+    private Counter retried;
+    private Counter failed;
+    private Counter rateLimited;
+    private Timer lag;
+
+    @PostConstruct
+    public void start() {
+
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                threadingMode.threadFactory("meeting-provisioning-"), new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "meetingProvisioning", Tags.empty()).bindTo(meterRegistry);
+        rejectedCounter = Counter.builder("executor.rejected").tag("name", "meetingProvisioning").description("Tasks turned away by a full executor").register(meterRegistry);
+
+        provisioned = Counter.builder("meeting.provisioning").tag("result", "provisioned").description("Meeting jobs by outcome").register(meterRegistry);
+        retried = Counter.builder("meeting.provisioning").tag("result", "retried").description("Meeting jobs by outcome").register(meterRegistry);
+        failed = Counter.builder("meeting.provisioning").tag("result", "failed").description("Meeting jobs by outcome").register(meterRegistry);
+        rateLimited = Counter.builder("meeting.provisioning").tag("result", "rate_limited").description("Meeting jobs by outcome").register(meterRegistry);
+        lag = Timer.builder("meeting.provisioning.lag").description("Time from payment to the meeting links being sent").register(meterRegistry);
+        Gauge.builder("meeting.provisioning.queue.depth", depth, AtomicLong::get).description("Meeting jobs waiting or running").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    // Idempotent, a booking that already has a job keeps it. Called after the booking is COMPLETED
+    public void enqueue(Long bookingId) {
+
+        if (meetingProvisioningJobRepository.insertIfAbsent(bookingId, Instant.now()) == 0) {
+            return;
+        }
+        submit(bookingId);
+    }
+
+    @Scheduled(initialDelay = 5 * 1000, fixedDelay = 1000)
+    public void poll() {
+
+        int capacity = queueCapacity - executor.getQueue().size();
+        if (capacity <= 0) {
+            return;
+        }
+
+        List<MeetingProvisioningJob> due = meetingProvisioningJobRepository.findDue(Instant.now(), MeetingJobStatus.PENDING, MeetingJobStatus.PROCESSING, Limit.of(capacity));
+        for (MeetingProvisioningJob job : due) {
+            submit(job.getBookingId());
+        }
+    }
+
+    @Scheduled(initialDelay = 15 * 1000, fixedRate = 15 * 1000)
+    public void refreshDepth() {
+        depth.set(meetingProvisioningJobRepository.countByStatusIn(UNFINISHED));
+    }
+
+    private void submit(Long bookingId) {
+
+        if (!inFlight.add(bookingId)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                MDC.put("bookingId", String.valueOf(bookingId));
+                try {
+                    process(bookingId);
+                } finally {
+                    inFlight.remove(bookingId);
+                    MDC.remove("bookingId");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool is full, the job stays PENDING and the poller offers it again
+            inFlight.remove(bookingId);
+            rejectedCounter.increment();
+        }
+    }
+
+    private void process(Long bookingId) {
+
+        Instant now = Instant.now();
+
+        if (meetingProvisioningJobRepository.claim(bookingId, now, now.plus(LEASE), MeetingJobStatus.PENDING, MeetingJobStatus.PROCESSING) == 0) {
+            return;
+        }
+
+        MeetingProvisioningJob job = meetingProvisioningJobRepository.findById(bookingId).orElse(null);
+        if (job == null) {
+            return;
+        }
+
+        int attempts = job.getAttempts() + 1;
+
+        try {
+            provision(bookingId);
+
+            Instant completedAt = Instant.now();
+            meetingProvisioningJobRepository.complete(bookingId, MeetingJobStatus.DONE, attempts, job.getNextAttemptAt(), completedAt, null, completedAt);
+            provisioned.increment();
+            lag.record(Duration.between(job.getCreatedAt(), completedAt));
+
+        } catch (MeetingProviderBusyException e) {
+            meetingProvisioningJobRepository.postpone(bookingId, Instant.now().plus(e.getRetryAfter()), MeetingJobStatus.PENDING, Instant.now());
+            rateLimited.increment();
+
+        } catch (Exception e) {
+
+            String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+
+            if (attempts >= maxAttempts) {
+                meetingProvisioningJobRepository.complete(bookingId, MeetingJobStatus.FAILED, attempts, job.getNextAttemptAt(), null, error, Instant.now());
+                failed.increment();
+                log.error("Meeting for booking {} failed {} times, giving up: {}", bookingId, attempts, error, e);
+                return;
+            }
+
+            Duration backoff = Duration.ofSeconds(retryBaseSeconds).multipliedBy(1L << Math.min(attempts - 1, 20));
+            if (backoff.compareTo(MAX_BACKOFF) > 0) {
+                backoff = MAX_BACKOFF;
+            }
+
+            meetingProvisioningJobRepository.complete(bookingId, MeetingJobStatus.PENDING, attempts, Instant.now().plus(backoff), null, error, Instant.now());
+            retried.increment();
+            log.warn("Meeting for booking {} failed on attempt {}, retrying in {}s: {}", bookingId, attempts, backoff.toSeconds(), error);
+        }
+    }
+
+    private void provision(Long bookingId) throws Exception {
+
+        Booking booking = bookingRepository.findById(bookingId).orElse(null);
+
+        // Refunded or gone meanwhile, nothing to create
+        if (booking == null || booking.getPaymentStatus() != PaymentStatus.COMPLETED) {
+            log.info("Booking {} is no longer completed, no meeting created", bookingId);
+            return;
+        }
+
+        TherapistProfile therapist = therapistProfileRepository.findById(booking.getTherapistId())
+                .orElseThrow(() -> new IllegalStateException("Therapist " + booking.getTherapistId() + " not found"));
+        ClientProfile client = clientProfileRepository.findById(booking.getClientId())
+                .orElseThrow(() -> new IllegalStateException("Client " + booking.getClientId() + " not found"));
+
+        Instant sessionStart = booking.getSessionStartTime();
+
+        Instant sessionEnd = sessionStart.plus(SESSION_LENGTH);
+
+        // A previous attempt that died before marking the job done gets the same meeting back, see MeetingPool.assign
+        MeetingLinks links = meetingPool.assign(bookingId, sessionStart, sessionEnd);
+
+        // Links first, so a retry after a failed email never hands out a second meeting
+        bookingRepository.updateMeetLinks(bookingId, links.hostUrl(), links.joinUrl());
+
+        // Keyed by the job, so a retry after the mails were queued doesn't send them twice
+        meetingNotificationService.notifyParticipants("meeting-job-" + bookingId, therapist.getEmail(), client.getEmail(), therapist.getName(), client.getName(), sessionStart, sessionEnd, null,
+                ZoomContextType.NEW, therapist.getTimezone(), client.getTimeZone(), links.location(), links.hostUrl(), links.joinUrl());
+
+        log.info("{} meeting assigned to booking ID {} - therapist: {}, user: {}", links.location(), bookingId, therapist.getEmail(), client.getEmail());
+    }
+}
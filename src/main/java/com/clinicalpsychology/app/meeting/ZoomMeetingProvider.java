@@ -0,0 +1,64 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.zoom.ZoomMeetingResponse;
+import com.clinicalpsychology.app.zoom.ZoomMeetingService;
+import com.clinicalpsychology.app.zoom.ZoomRateLimiter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Zoom through ZoomMeetingService. Every call takes a ZoomRateLimiter token, so on-demand meetings and pool refills share Zoom's quota
+@Component
+@RequiredArgsConstructor
+public class ZoomMeetingProvider implements MeetingProvider {
+
+    private final ZoomMeetingService zoomMeetingService;
+    private final ZoomRateLimiter zoomRateLimiter;
+
+    @Override
+    public String name() {
+        return "zoom";
+    }
+
+    @Override
+    public String displayName() {
+        return ZoomMeetingService.LOCATION;
+    }
+
+    @Override
+    public MeetingLinks createMeeting(Instant startTime, Instant endTime) throws Exception {
+        acquire();
+        return links(zoomMeetingService.createMeeting(startTime));
+    }
+
+    @Override
+    public MeetingLinks createPooledMeeting() throws Exception {
+        acquire();
+        return links(zoomMeetingService.createMeeting(Instant.now()));
+    }
+
+    @Override
+    public void reschedule(String externalId, Instant startTime, Instant endTime) throws Exception {
+        acquire();
+        zoomMeetingService.updateMeetingTime(externalId, startTime, endTime);
+    }
+
+    @Override
+    public void deleteMeeting(String externalId) throws Exception {
+        acquire();
+        zoomMeetingService.deleteMeeting(externalId);
+    }
+
+    private void acquire() throws MeetingProviderBusyException {
+        Duration wait = zoomRateLimiter.tryAcquire();
+        if (!wait.isZero()) {
+            throw new MeetingProviderBusyException(name(), wait);
+        }
+    }
+
+    private MeetingLinks links(ZoomMeetingResponse response) {
+        return new MeetingLinks(displayName(), response.getMeetingId(), response.getStartUrl(), response.getJoinUrl());
+    }
+}
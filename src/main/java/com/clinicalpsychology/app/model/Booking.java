@@ -12,7 +12,8 @@ import java.time.Instant;
 @Data
 @Entity
 @EqualsAndHashCode(callSuper = true)
-@Table(name = "bookings")
+// For the availability lookups, which read the bookings of a time window across all therapists
+@Table(name = "bookings", indexes = @Index(name = "idx_bookings_session_start_status", columnList = "sessionStartTime, paymentStatus"))
 public class Booking extends BaseEntity {
 
     // Create a dto include timezone and local date and session id?
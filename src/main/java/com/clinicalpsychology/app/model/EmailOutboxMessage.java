@@ -0,0 +1,64 @@
+package com.clinicalpsychology.app.model;
+
+import com.clinicalpsychology.app.enums.EmailOutboxStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// One mail waiting to be sent (or sent / given up), written before the request that triggered it returns, so a crash or an SMTP
+// outage doesn't lose it. idempotencyKey is only set by callers that run again for the same thing (a retried webhook event or
+// meeting job), a second mail with the same key is dropped while the row is kept. Drained by EmailDispatcher
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+@Entity
+@EqualsAndHashCode(callSuper = true)
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status, nextAttemptAt"),
+        @Index(name = "idx_email_outbox_claim_token", columnList = "claimToken")
+})
+public class EmailOutboxMessage extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String subject;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String textBody;
+
+    // null for plain text mails
+    @Column(columnDefinition = "TEXT")
+    private String htmlBody;
+
+    // null for mails that are never de-duplicated, cleared when the mail fails for good so a retried caller can queue it again
+    @Column(unique = true, length = 512)
+    private String idempotencyKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private EmailOutboxStatus status;
+
+    private int attempts;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    // Set by the batch claim, the dispatcher then loads its batch by this token
+    private String claimToken;
+
+    // A SENDING mail whose lease ran out (the dispatcher died) is picked up again
+    private Instant lockedUntil;
+
+    private Instant sentAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+}
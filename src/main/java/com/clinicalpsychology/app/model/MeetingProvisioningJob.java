@@ -0,0 +1,39 @@
+package com.clinicalpsychology.app.model;
+
+import com.clinicalpsychology.app.enums.MeetingJobStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// Creating the Zoom meeting (and sending the links) for a paid booking, done by MeetingProvisioningQueue outside the payment update.
+// Keyed by the booking id, so a booking gets at most one job however often its payment event arrives
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+@Entity
+@EqualsAndHashCode(callSuper = true)
+@Table(name = "meeting_provisioning_jobs", indexes = @Index(name = "idx_meeting_provisioning_jobs_status_next_attempt", columnList = "status, nextAttemptAt"))
+public class MeetingProvisioningJob extends BaseEntity {
+
+    @Id
+    private Long bookingId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private MeetingJobStatus status;
+
+    private int attempts;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    // A PROCESSING job whose lease ran out (the worker died) is picked up again
+    private Instant lockedUntil;
+
+    private Instant completedAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+}
@@ -0,0 +1,52 @@
+package com.clinicalpsychology.app.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// A meeting handed out by MeetingPool. Pre-made ones are free while bookingId is null, meetings made on demand are saved
+// with their booking id straight away. Either way the booking owns it for good, which is what keeps a retried job from
+// making a second meeting. Pre-made meetings sit at a placeholder time until MeetingPool moves them to the session
+// (sessionStart / sessionEnd set), and every meeting is deleted at the provider after its session or when retired unused
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+@Entity
+@EqualsAndHashCode(callSuper = true)
+@Table(name = "pooled_meetings", indexes = @Index(name = "idx_pooled_meetings_provider_booking", columnList = "provider, bookingId"))
+public class PooledMeeting extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // MeetingProvider.name()
+    @Column(nullable = false)
+    private String provider;
+
+    private String externalId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String hostUrl;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String joinUrl;
+
+    @Column(unique = true)
+    private Long bookingId;
+
+    private Instant assignedAt;
+
+    // Null until the meeting is moved to its booking's session
+    private Instant sessionStart;
+
+    private Instant sessionEnd;
+
+    // No longer handed out (a free meeting that got too old, or of a provider no longer in use)
+    private Instant retiredAt;
+
+    // Deleted at the provider, the row only stays for the booking's history
+    private Instant deletedAt;
+}
@@ -0,0 +1,26 @@
+package com.clinicalpsychology.app.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// Which instance runs a cluster-wide scheduled job (meeting pool refill / cleanup) until leasedUntil, see SchedulerLeases
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+@Entity
+@EqualsAndHashCode(callSuper = true)
+@Table(name = "scheduler_leases")
+public class SchedulerLease extends BaseEntity {
+
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(nullable = false)
+    private Instant leasedUntil;
+}
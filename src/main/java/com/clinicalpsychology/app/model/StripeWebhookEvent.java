@@ -0,0 +1,56 @@
+package com.clinicalpsychology.app.model;
+
+import com.clinicalpsychology.app.enums.WebhookEventStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// One Stripe webhook event, stored before we answer Stripe so nothing is lost if the app dies while processing it.
+// Keyed by the Stripe event id, so a redelivered event is not processed twice. Drained by StripeWebhookWorker
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Data
+@Entity
+@EqualsAndHashCode(callSuper = true)
+@Table(name = "stripe_webhook_events", indexes = {
+        @Index(name = "idx_stripe_webhook_events_status_next_attempt", columnList = "status, nextAttemptAt"),
+        @Index(name = "idx_stripe_webhook_events_ordering_key", columnList = "orderingKey, createdAt")
+})
+public class StripeWebhookEvent extends BaseEntity {
+
+    // Stripe event id, evt_...
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private String eventType;
+
+    private String purchaseType;
+
+    // Booking id (or the checkout session id when there is no booking), events with the same key are processed in order
+    @Column(nullable = false)
+    private String orderingKey;
+
+    // Raw signed payload as Stripe sent it
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private WebhookEventStatus status;
+
+    private int attempts;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    // A PROCESSING row whose lease ran out (the worker died) is picked up again
+    private Instant lockedUntil;
+
+    private Instant processedAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+}
@@ -2,11 +2,14 @@ package com.clinicalpsychology.app.model;
 
 import com.clinicalpsychology.app.enums.AccountStatus;
 import com.clinicalpsychology.app.enums.ApprovalStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @AllArgsConstructor
 @NoArgsConstructor
@@ -96,6 +99,16 @@ public class TherapistProfile extends BaseEntity {
     // private AccountStatus accountStatus = AccountStatus.INACTIVE;
     private AccountStatus accountStatus;
 
+    // Denormalised, lowercase copies used only by the search query, so it can use trigram/full text indexes
+    // instead of joining therapist_profile_categories. See docs/therapist-search-index.md
+    @JsonIgnore
+    @Column(columnDefinition = "TEXT")
+    private String searchCategories;
+
+    @JsonIgnore
+    @Column(columnDefinition = "TEXT")
+    private String searchDocument;
+
     @PrePersist
     protected void onCreate() {
         if (approvalStatus == null) {
@@ -104,6 +117,24 @@ public class TherapistProfile extends BaseEntity {
         if (accountStatus == null) {
             accountStatus = AccountStatus.INACTIVE;
         }
+        refreshSearchColumns();
+    }
+
+    // Call this before save when categories or languages change, hibernate doesn't mark the entity dirty for element collection changes
+    @PreUpdate
+    public void refreshSearchColumns() {
+        searchCategories = categories == null ? null : categories.stream()
+                .map(String::toLowerCase)
+                .collect(Collectors.joining("|"));
+
+        searchDocument = Stream.of(
+                        Stream.ofNullable(name),
+                        Stream.ofNullable(location),
+                        categories == null ? Stream.<String>empty() : categories.stream(),
+                        languages == null ? Stream.<String>empty() : languages.stream())
+                .flatMap(s -> s)
+                .map(String::toLowerCase)
+                .collect(Collectors.joining(" "));
     }
 
 
@@ -1,16 +1,15 @@
 package com.clinicalpsychology.app.payment;
 
 import com.clinicalpsychology.app.enums.PaymentStatus;
-import com.clinicalpsychology.app.model.Booking;
 import com.clinicalpsychology.app.repository.BookingRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -19,25 +18,21 @@ public class BookingCleanupService {
 
     private final BookingRepository bookingRepository;
 
+    // Holds are expired on time by HoldExpiryScheduler, this is only the safety net for holds it lost (restart, db hiccup).
+    // One bulk UPDATE, so the cost doesn't grow with the number of stale holds. Also runs once on startup.
     // In main file enable scheduling
     // 5 minutes
-    @Scheduled(fixedRate = 5 * 60 * 1000)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelay = 5 * 60 * 1000, fixedRate = 5 * 60 * 1000)
     public void expireStaleHeldBookings() {
 
-        log.info("🕵️ Checking for stale HOLD bookings...");
+        Instant cutoffTime = Instant.now().minus(SlotHoldRegistry.HOLD_TTL);
+        int expired = bookingRepository.expireStaleHolds(cutoffTime, PaymentStatus.HOLD, PaymentStatus.EXPIRED);
 
-        Instant cutoffTime = Instant.now().minus(Duration.ofMinutes(15));
-        List<Booking> staleBookings = bookingRepository.findByPaymentStatusAndHoldStartTimeBefore(PaymentStatus.HOLD, cutoffTime);
-
-        for (Booking booking : staleBookings) {
-            booking.setPaymentStatus(PaymentStatus.EXPIRED);
-        }
-
-        if (!staleBookings.isEmpty()) {
-            bookingRepository.saveAll(staleBookings);
-            log.info("⏰ Expired {} stale HOLD booking(s).", staleBookings.size());
+        if (expired > 0) {
+            log.info("⏰ Expired {} stale HOLD booking(s).", expired);
         } else {
-            log.info("✅ No stale HOLD bookings found.");
+            log.debug("✅ No stale HOLD bookings found.");
         }
     }
 }
@@ -0,0 +1,214 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.config.BookingSlotIndexInitializer;
+import com.clinicalpsychology.app.dto.BookingDTO;
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.exception.InvalidFieldValueException;
+import com.clinicalpsychology.app.exception.ResourceAlreadyExistsException;
+import com.clinicalpsychology.app.exception.ResourceNotFoundException;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.model.ClientProfile;
+import com.clinicalpsychology.app.model.FixedTimeSlotNew;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import com.clinicalpsychology.app.repository.ClientProfileRepository;
+import com.clinicalpsychology.app.repository.FixedTimeSlotNewRepository;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import static com.clinicalpsychology.app.util.Constant.*;
+
+// First stage of the checkout: every lookup, the slot checks and the HOLD insert in one transaction, no Stripe call.
+// PaymentService then creates the Stripe session for the returned reservation on its outbound executor.
+@Service
+@RequiredArgsConstructor
+public class CheckoutReservationService {
+
+    private static final Duration HOLD_DURATION = SlotHoldRegistry.HOLD_TTL;
+
+    private final BookingRepository bookingRepository;
+    private final FixedTimeSlotNewRepository fixedTimeSlotNewRepository;
+    private final TherapistProfileRepository therapistProfileRepository;
+    private final ClientProfileRepository clientProfileRepository;
+    private final SlotHoldRegistry slotHoldRegistry;
+
+    // Everything the Stripe stage needs, so it never goes back to the db except to store the session id
+    public record CheckoutReservation(Booking booking, TherapistProfile therapist, ClientProfile client, Instant sessionEnd, SlotHoldRegistry.SlotKey slotKey) {
+    }
+
+    // On commit the in-memory slot hold stays taken, the caller releases it if the Stripe stage fails
+    @Transactional
+    public CheckoutReservation reserve(BookingDTO bookingDTO) throws ResourceNotFoundException {
+
+        FixedTimeSlotNew currentSlot = fixedTimeSlotNewRepository.findById(bookingDTO.getTimeSlotId()).orElseThrow(() -> new ResourceNotFoundException(TIMESLOT_NOT_FOUND_WITH_ID + bookingDTO.getTimeSlotId()));
+
+        ClientProfile clientProfile = clientProfileRepository.findById(bookingDTO.getClientId()).orElseThrow(() -> new ResourceNotFoundException("Client not found with ID " + bookingDTO.getClientId()));
+
+        TherapistProfile therapistProfile = therapistProfileRepository.findById(bookingDTO.getTherapistId())
+                .orElseThrow(() -> new ResourceNotFoundException(THERAPIST_NOT_FOUND_WITH_ID + bookingDTO.getTherapistId()));
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        LocalDate bookingDate;
+
+        try {
+            bookingDate = LocalDate.parse(bookingDTO.getBookingDate(), formatter);
+        } catch (DateTimeParseException e) {
+            throw new InvalidFieldValueException("Invalid booking date format. Expected yyyy-MM-dd.");
+        }
+
+        final ZoneId zoneId;
+        try {
+            zoneId = ZoneId.of(clientProfile.getTimeZone());
+        } catch (DateTimeException e){
+            throw new InvalidFieldValueException(INVALID_TIME_ZONE);
+        }
+
+        // Converting the booked date to utc
+        LocalDate date = bookingDate;                               // 2025-11-06
+
+        // Converting current slot in UTC to current slot in client time zone with date
+        LocalTime currentSlotTime = currentSlot.getTimeStart()
+                .atZone(ZoneOffset.UTC)         // this line not needed. It says java that treat the current slot as UTC. but we already storing it as UTC. i think this line is redundant.
+                .withZoneSameInstant(zoneId)
+                .toLocalTime();
+        ZonedDateTime currentSlotStartDateTime = bookingDate.atTime(currentSlotTime).atZone(zoneId);
+        ZonedDateTime currentSlotEndDateTime = currentSlotStartDateTime.plusHours(1);
+
+        Instant sessionStart = currentSlotStartDateTime.toInstant();
+
+        // Reject the obvious duplicates in memory, before any db write or Stripe call
+        SlotHoldRegistry.SlotKey slotKey = new SlotHoldRegistry.SlotKey(bookingDTO.getTherapistId(), bookingDTO.getTimeSlotId(), sessionStart);
+        if (!slotHoldRegistry.tryHold(slotKey)) {
+            throw new ResourceAlreadyExistsException(SLOT_TEMPORARILY_HELD);
+        }
+
+        // The HOLD row only exists once this transaction commits. If it rolls back, here or at commit (flush, lost connection),
+        // the in-memory hold goes with it, otherwise this instance would turn the slot away for the whole HOLD_TTL
+        boolean releasedOnRollback = TransactionSynchronizationManager.isSynchronizationActive();
+        if (releasedOnRollback) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        slotHoldRegistry.release(slotKey);
+                    }
+                }
+            });
+        }
+
+        try {
+
+            // For DB CHECKING
+            ZonedDateTime dayStartZoned = date.atStartOfDay(zoneId);
+            ZonedDateTime dayEndZoned = dayStartZoned.plusDays(1);
+            Instant utcStart = dayStartZoned.toInstant();
+            Instant utcEnd = dayEndZoned.toInstant();
+
+            // A HOLD older than HOLD_DURATION that the cleanup job hasn't expired yet would still block the slot in uk_bookings_active_slot, so expire it now
+            bookingRepository.expireStaleHoldForSlot(bookingDTO.getTimeSlotId(), sessionStart, Instant.now().minus(HOLD_DURATION), PaymentStatus.HOLD, PaymentStatus.EXPIRED);
+
+            // Checking if any other user already booked this slot
+            // 2 0r more users may hit api at same time, so more users have same timeslotId, same sessionStartTime, samePaymentStatus.
+            // This check only gives the nicer message, the winner is decided by the unique index when the HOLD is inserted below
+            List<Booking> alreadyBooked = bookingRepository.findByTimeSlotIdAndSessionStartTimeAndPaymentStatusIn(bookingDTO.getTimeSlotId(), sessionStart, List.of(PaymentStatus.COMPLETED, PaymentStatus.HOLD));
+            if(!alreadyBooked.isEmpty()){
+
+                for(Booking booking : alreadyBooked){
+
+                    if (booking.getPaymentStatus() == PaymentStatus.COMPLETED) {
+                        throw new ResourceAlreadyExistsException(SLOT_ALREADY_BOOKED);
+                    }
+
+                    if (booking.getPaymentStatus() == PaymentStatus.HOLD && booking.getHoldStartTime() != null && booking.getHoldStartTime().plus(HOLD_DURATION).isAfter(Instant.now())) {
+                        throw new ResourceAlreadyExistsException(SLOT_TEMPORARILY_HELD);
+                    }
+                }
+            }
+
+            // Prevent user from booking same time slot for 2 different therapists
+            List<Booking> bookings = bookingRepository.findByClientIdAndSessionStartTimeBetweenAndPaymentStatus(bookingDTO.getClientId(), utcStart, utcEnd, PaymentStatus.COMPLETED);
+
+            if (!(bookings.isEmpty())) {
+
+                List<Long> bookedSlotIds = bookings.stream().map(Booking::getTimeSlotId).toList();
+
+                // Avoid repetitive DB calls by directly collecting whole Slots
+                List<FixedTimeSlotNew> bookedSlots = fixedTimeSlotNewRepository.findAllById(bookedSlotIds);
+
+                for (FixedTimeSlotNew bookedSlot : bookedSlots) {
+
+                    // Converting booked slot in UTC to booked slot in client time zone with date
+                    LocalTime bookedSlotTime = bookedSlot.getTimeStart()
+                            .atZone(ZoneOffset.UTC)
+                            .withZoneSameInstant(zoneId)
+                            .toLocalTime();
+
+                    ZonedDateTime bookedStartZoned = bookingDate.atTime(bookedSlotTime).atZone(zoneId);
+                    ZonedDateTime bookedEndZoned = bookedStartZoned.plusHours(1);
+
+                    // Now comparing the booked slot in client time zone with current slot in client time zone
+                    if (currentSlotStartDateTime.isBefore(bookedEndZoned) && bookedStartZoned.isBefore(currentSlotEndDateTime)) {
+                        throw new ResourceAlreadyExistsException(OVERLAPS_WITH_EXISTING_BOOKED_SLOT);
+                    }
+                }
+            }
+
+            Booking booking = Booking.builder()
+                    .therapistId(bookingDTO.getTherapistId())
+                    .clientId(bookingDTO.getClientId())
+                    .timeSlotId(bookingDTO.getTimeSlotId())
+                    .category(bookingDTO.getCategory())
+                    .connectMethod(bookingDTO.getConnectMethod())
+                    .amount(bookingDTO.getAmount())
+                    .currency(bookingDTO.getCurrency())
+                    .productName(bookingDTO.getProductName())
+                    .quantity(bookingDTO.getQuantity())
+                    .paymentStatus(PaymentStatus.HOLD)
+                    .holdStartTime(Instant.now())
+                    .sessionStartTime(sessionStart)
+                    // No meet links from the request, they are only ever set by MeetingProvisioningQueue
+                    .clientTimezone(clientProfile.getTimeZone())
+                    .build();
+
+            // To send the booking id in meta data we are saving it only some details first
+            Booking savedBooking = reserveSlot(booking);
+
+            return new CheckoutReservation(savedBooking, therapistProfile, clientProfile, currentSlotEndDateTime.toInstant(), slotKey);
+
+        } catch (RuntimeException e) {
+            // Called outside a transaction, nothing else releases it
+            if (!releasedOnRollback) {
+                slotHoldRegistry.release(slotKey);
+            }
+            throw e;
+        }
+    }
+
+    // Inserts the HOLD. sessionStartTime is set on insert, so uk_bookings_active_slot picks exactly one winner when
+    // many clients check out the same slot at once, without locking anything else.
+    // The check above already ran in this transaction and found no COMPLETED booking, so whoever won the race holds the slot.
+    // (postgres aborts the transaction on the violation, so it can't be looked up here anyway)
+    private Booking reserveSlot(Booking booking) {
+
+        try {
+            return bookingRepository.save(booking);
+        } catch (DataIntegrityViolationException e) {
+
+            String cause = e.getMostSpecificCause().getMessage();
+            if (cause == null || !cause.contains(BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX)) {
+                throw e;
+            }
+            throw new ResourceAlreadyExistsException(SLOT_TEMPORARILY_HELD);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.clinicalpsychology.app.payment;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+// The part of a checkout.session.* webhook we actually use, bound straight from the payload in one pass
+// (no Stripe Event model, no JsonNode tree). Parsed by StripeWebhookDispatcher.parse
+public record CheckoutSessionEvent(String eventId, String type, String sessionId, String paymentIntentId, Map<String, String> metadata) {
+
+    // Wire shape: { "id", "type", "data": { "object": { "id", "payment_intent", "metadata" } } }, everything else is skipped
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Payload(String id, String type, Data data) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Data(Session object) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record Session(String id, @JsonProperty("payment_intent") String paymentIntent, Map<String, String> metadata) {
+    }
+
+    static CheckoutSessionEvent of(Payload payload) {
+
+        Session session = payload.data() != null ? payload.data().object() : null;
+        if (session == null) {
+            return new CheckoutSessionEvent(payload.id(), payload.type(), null, null, Map.of());
+        }
+        return new CheckoutSessionEvent(payload.id(), payload.type(), session.id(), session.paymentIntent(),
+                session.metadata() != null ? session.metadata() : Map.of());
+    }
+
+    public String metadata(String key) {
+        return metadata.get(key);
+    }
+
+    public String purchaseType() {
+        return metadata.get("purchaseType");
+    }
+
+    // Events of one booking are processed in order, ai chat payments have no booking so their session is the key
+    public String orderingKey() {
+        if (metadata.containsKey("bookingId")) {
+            return "booking-" + metadata.get("bookingId");
+        }
+        return sessionId != null ? "session-" + sessionId : "event-" + eventId;
+    }
+}
@@ -0,0 +1,13 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.enums.PaymentStatus;
+
+// Handles the checkout session events of one purchaseType (the "purchaseType" metadata set when the session was created).
+// Every bean implementing this is registered in StripeWebhookDispatcher, so a new purchase type only needs a new handler
+public interface CheckoutSessionHandler {
+
+    String purchaseType();
+
+    // Runs on StripeWebhookWorker, throwing makes the worker retry the event with backoff
+    void handleSessionEvent(CheckoutSessionEvent event, PaymentStatus statusToSet) throws Exception;
+}
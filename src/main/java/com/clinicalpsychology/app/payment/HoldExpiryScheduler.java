@@ -0,0 +1,96 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+// Expires every HOLD booking exactly when its SlotHoldRegistry.HOLD_TTL runs out, instead of waiting for the next cleanup poll.
+// PaymentService schedules each new HOLD here, one thread takes them off a DelayQueue when due and runs a single UPDATE by id
+// (a no-op when the payment completed meanwhile). Lost on restart, so on startup the still running holds are scheduled again
+// and BookingCleanupService sweeps anything that went stale while we were down.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HoldExpiryScheduler {
+
+    private final BookingRepository bookingRepository;
+
+    private final DelayQueue<HoldExpiry> queue = new DelayQueue<>();
+
+    private volatile Thread worker;
+
+    @Getter
+    private static final class HoldExpiry implements Delayed {
+
+        private final Long bookingId;
+        private final Instant expiresAt;
+
+        private HoldExpiry(Long bookingId, Instant expiresAt) {
+            this.bookingId = bookingId;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiresAt.toEpochMilli() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return expiresAt.compareTo(((HoldExpiry) other).expiresAt);
+        }
+    }
+
+    public void schedule(Long bookingId, Instant holdStartTime) {
+        queue.put(new HoldExpiry(bookingId, holdStartTime.plus(SlotHoldRegistry.HOLD_TTL)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+
+        Instant cutoff = Instant.now().minus(SlotHoldRegistry.HOLD_TTL);
+        bookingRepository.findByPaymentStatusAndHoldStartTimeGreaterThanEqual(PaymentStatus.HOLD, cutoff)
+                .forEach(booking -> schedule(booking.getId(), booking.getHoldStartTime()));
+
+        worker = new Thread(this::run, "hold-expiry");
+        worker.setDaemon(true);
+        worker.start();
+
+        log.info("Hold expiry scheduler started with {} pending hold(s)", queue.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void run() {
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                HoldExpiry expiry = queue.take();
+                if (bookingRepository.expireHold(expiry.getBookingId(), PaymentStatus.HOLD, PaymentStatus.EXPIRED) > 0) {
+                    log.info("⏰ Expired HOLD booking {}", expiry.getBookingId());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // The recovery sweep picks it up if the db was down
+                log.warn("Could not expire HOLD booking: {}", e.getMessage());
+            }
+        }
+    }
+}
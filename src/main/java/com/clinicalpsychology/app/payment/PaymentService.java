@@ -1,5 +1,6 @@
 package com.clinicalpsychology.app.payment;
 
+import com.clinicalpsychology.app.config.ThreadingMode;
 import com.clinicalpsychology.app.dto.BookingDTO;
 import com.clinicalpsychology.app.enums.PaymentStatus;
 import com.clinicalpsychology.app.exception.InvalidFieldValueException;
@@ -8,30 +9,34 @@ import com.clinicalpsychology.app.exception.ResourceNotFoundException;
 import com.clinicalpsychology.app.exception.UnexpectedServerException;
 import com.clinicalpsychology.app.model.Booking;
 import com.clinicalpsychology.app.model.ClientProfile;
-import com.clinicalpsychology.app.model.FixedTimeSlotNew;
 import com.clinicalpsychology.app.model.TherapistProfile;
-import com.clinicalpsychology.app.repository.*;
+import com.clinicalpsychology.app.repository.BookingRepository;
 import com.clinicalpsychology.app.response.CommonResponse;
 import com.stripe.Stripe;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Refund;
-import com.stripe.model.checkout.Session;
 import com.stripe.param.RefundCreateParams;
 import com.stripe.param.checkout.SessionCreateParams;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.*;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.List;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.*;
 
 import static com.clinicalpsychology.app.util.Constant.*;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class PaymentService {
 
     @Value("${stripe.apikey}")
@@ -43,15 +48,51 @@ public class PaymentService {
     @Value("${stripe.cancelUrl}")
     private String cancelUrl;
 
+    @Value("${stripe.executor.pool-size:16}")
+    private int stripeExecutorPoolSize;
+
+    @Value("${stripe.executor.queue-capacity:200}")
+    private int stripeExecutorQueueCapacity;
+
+    // Whole Stripe stage including the client's own retries. Stays under the servlet async timeout (30s on tomcat).
+    // orTimeout doesn't cancel the Stripe call, so init() refuses to start when the gateway's retry budget doesn't fit in it
+    @Value("${stripe.checkout.timeout-ms:25000}")
+    private long checkoutTimeoutMs;
+
     private final BookingRepository bookingRepository;
-    private final FixedTimeSlotNewRepository fixedTimeSlotNewRepository;
-    private final TherapistProfileRepository therapistProfileRepository;
-    private final ClientProfileRepository clientProfileRepository;
+    private final CheckoutReservationService checkoutReservationService;
+    private final StripeCheckoutGateway stripeCheckoutGateway;
+    private final SlotHoldRegistry slotHoldRegistry;
+    private final HoldExpiryScheduler holdExpiryScheduler;
+    private final MeterRegistry meterRegistry;
+    private final ThreadingMode threadingMode;
+
+    // Outbound Stripe calls only, so the Tomcat worker is freed while Stripe answers. Bounded on purpose: when Stripe is slow
+    // the queue fills up and new checkouts are turned away straight away instead of piling up threads and HOLDs
+    private ThreadPoolExecutor stripeExecutor;
+    private Counter stripeExecutorRejected;
 
     // set the api key globally, if used refund method in a separate file and mark it as @Component no need to once again set apiKey in that file.
     @PostConstruct
     public void init() {
         Stripe.apiKey = stripeApiKey;
+
+        Duration maxCallDuration = stripeCheckoutGateway.maxSessionCallDuration();
+        if (maxCallDuration.toMillis() >= checkoutTimeoutMs) {
+            throw new IllegalStateException("Stripe checkout retries can take " + maxCallDuration.toMillis() + " ms, more than stripe.checkout.timeout-ms="
+                    + checkoutTimeoutMs + ". Lower stripe.checkout.connect-timeout-ms / read-timeout-ms / max-network-retries");
+        }
+
+        stripeExecutor = new ThreadPoolExecutor(stripeExecutorPoolSize, stripeExecutorPoolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(stripeExecutorQueueCapacity), threadingMode.threadFactory("stripe-checkout-"), new ThreadPoolExecutor.AbortPolicy());
+        stripeExecutor.allowCoreThreadTimeOut(true);
+        new ExecutorServiceMetrics(stripeExecutor, "stripeCheckout", Tags.empty()).bindTo(meterRegistry);
+        stripeExecutorRejected = Counter.builder("executor.rejected").tag("name", "stripeCheckout").description("Tasks turned away by a full executor").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stripeExecutor.shutdown();
     }
 
     // Make the amount to double not long, because if UI send 2.5 it will cause error
@@ -59,198 +100,158 @@ public class PaymentService {
     // If math.round is not used, java convert 2.5*100 as 249.999
     // Stripe expects amount to be long or integer not float or double
     // Math.round convert the double to long automatically
-    public CommonResponse<PaymentResponse> checkoutProducts(BookingDTO bookingDTO) throws StripeException, UnexpectedServerException, ResourceNotFoundException {
+    //
+    // Two stages: validate + insert the HOLD in one transaction on the request thread, then create the Stripe session on
+    // stripeExecutor. The controller returns the future, so no Tomcat worker waits on Stripe
+    public CompletableFuture<CommonResponse<PaymentResponse>> checkoutProducts(BookingDTO bookingDTO) throws UnexpectedServerException, ResourceNotFoundException {
+
+        CheckoutReservationService.CheckoutReservation reservation;
 
         try {
+            reservation = checkoutReservationService.reserve(bookingDTO);
+        } catch (ResourceNotFoundException | ResourceAlreadyExistsException | InvalidFieldValueException e){
+            throw e; // it will catch by global exception handler
+        } catch (Exception e){
+            throw new UnexpectedServerException(ERROR_CREATING_PAYMENT_SESSION + e.getMessage());
+        }
 
-            FixedTimeSlotNew currentSlot = fixedTimeSlotNewRepository.findById(bookingDTO.getTimeSlotId()).orElseThrow(() -> new ResourceNotFoundException(TIMESLOT_NOT_FOUND_WITH_ID + bookingDTO.getTimeSlotId()));
-
-            ClientProfile clientProfile = clientProfileRepository.findById(bookingDTO.getClientId()).orElseThrow(() -> new ResourceNotFoundException("Client not found with ID " + bookingDTO.getClientId()));
-
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-            LocalDate bookingDate;
-
-            try {
-                bookingDate = LocalDate.parse(bookingDTO.getBookingDate(), formatter);
-            } catch (DateTimeParseException e) {
-                throw new InvalidFieldValueException("Invalid booking date format. Expected yyyy-MM-dd.");
-            }
-
-            final ZoneId zoneId;
-            try {
-                zoneId = ZoneId.of(clientProfile.getTimeZone());
-            } catch (DateTimeException e){
-                throw new InvalidFieldValueException(INVALID_TIME_ZONE);
-            }
-
-            // Converting the booked date to utc
-            LocalDate date = bookingDate;                               // 2025-11-06
-            ZonedDateTime startOfDayZoned = date.atStartOfDay(zoneId);  // 2025-11-06T00:00+05:30[Asia/Kolkata]
-            Instant bookedUtcDate = startOfDayZoned.toInstant();        // 2025-11-05T18:30:00Z
-
-            // Converting current slot in UTC to current slot in client time zone with date
-            LocalTime currentSlotTime = currentSlot.getTimeStart()
-                    .atZone(ZoneOffset.UTC)         // this line not needed. It says java that treat the current slot as UTC. but we already storing it as UTC. i think this line is redundant.
-                    .withZoneSameInstant(zoneId)
-                    .toLocalTime();
-            ZonedDateTime currentSlotStartDateTime = bookingDate.atTime(currentSlotTime).atZone(zoneId);
-            ZonedDateTime currentSlotEndDateTime = currentSlotStartDateTime.plusHours(1);
-
-            Instant sessionStart = currentSlotStartDateTime.toInstant();
-
-            // For DB CHECKING
-            ZonedDateTime dayStartZoned = date.atStartOfDay(zoneId);
-            ZonedDateTime dayEndZoned = dayStartZoned.plusDays(1);
-            Instant utcStart = dayStartZoned.toInstant();
-            Instant utcEnd = dayEndZoned.toInstant();
-
-            // Checking if any other user already booked this slot
-            // 2 0r more users may hit api at same time, so more users have same timeslotId, same sessionStartTime, samePaymentStatus
-            // Also, we have BookingCleanUpService, which will for every 5 min, convert HOLD to EXPIRED, if HOLD is before the (currentTime - 15 min)
-            List<Booking> alreadyBooked = bookingRepository.findByTimeSlotIdAndSessionStartTimeAndPaymentStatusIn(bookingDTO.getTimeSlotId(), sessionStart, List.of(PaymentStatus.COMPLETED, PaymentStatus.HOLD));
-            if(!alreadyBooked.isEmpty()){
-
-                for(Booking booking : alreadyBooked){
-
-                    if (booking.getPaymentStatus() == PaymentStatus.COMPLETED) {
-                        throw new ResourceAlreadyExistsException(SLOT_ALREADY_BOOKED);
-                    }
+        Booking savedBooking = reservation.booking();
+        holdExpiryScheduler.schedule(savedBooking.getId(), savedBooking.getHoldStartTime());
 
-                    if (booking.getPaymentStatus() == PaymentStatus.HOLD && booking.getHoldStartTime() != null && booking.getHoldStartTime().plus(Duration.ofMinutes(15)).isAfter(Instant.now())) {
-                        throw new ResourceAlreadyExistsException(SLOT_TEMPORARILY_HELD);
-                    }
-                }
-            }
+        SessionCreateParams params = sessionParams(reservation);
 
-            // Prevent user from booking same time slot for 2 different therapists
-            List<Booking> bookings = bookingRepository.findByClientIdAndSessionStartTimeBetweenAndPaymentStatus(bookingDTO.getClientId(), utcStart, utcEnd, PaymentStatus.COMPLETED);
+        CompletableFuture<StripeCheckoutGateway.CheckoutSession> sessionFuture;
+        try {
+            sessionFuture = CompletableFuture.supplyAsync(() -> createSession(params, savedBooking.getId()), stripeExecutor);
+        } catch (RejectedExecutionException e) {
+            stripeExecutorRejected.increment();
+            releaseReservation(reservation);
+            throw new UnexpectedServerException(PAYMENT_SERVICE_BUSY);
+        }
 
-            if (!(bookings.isEmpty())) {
+        return sessionFuture
+                .orTimeout(checkoutTimeoutMs, TimeUnit.MILLISECONDS)
+                .handle((session, error) -> {
+
+                    // Anything short of handing the session url to the client frees the slot, including a failed session id update
+                    boolean handedOver = false;
+                    try {
+                        if (error != null) {
+                            throw checkoutFailure(error);
+                        }
+
+                        bookingRepository.updateStripeSessionId(savedBooking.getId(), session.id());
+
+                        PaymentResponse paymentResponse = PaymentResponse.builder()
+                                .status(SUCCESS)
+                                .message(PAYMENT_SESSION_CREATED)
+                                .sessionId(session.id())
+                                .sessionUrl(session.url())
+                                .build();
+
+                        CommonResponse<PaymentResponse> response = CommonResponse.<PaymentResponse>builder()
+                                .message(LOADED_SESSION_URL)
+                                .status(STATUS_TRUE)
+                                .data(paymentResponse)
+                                .statusCode(SUCCESS_CODE)
+                                .build();
+
+                        handedOver = true;
+                        return response;
+
+                    } catch (CompletionException e) {
+                        throw e;
+                    } catch (RuntimeException e) {
+                        throw checkoutFailure(e);
+                    } finally {
+                        if (!handedOver) {
+                            releaseReservation(reservation);
+                        }
+                    }
+                });
+    }
 
-                List<Long> bookedSlotIds = bookings.stream().map(Booking::getTimeSlotId).toList();
+    private StripeCheckoutGateway.CheckoutSession createSession(SessionCreateParams params, Long bookingId) {
+        try {
+            return stripeCheckoutGateway.createSession(params, "checkout-booking-" + bookingId);
+        } catch (StripeException e) {
+            throw new CompletionException(e);
+        }
+    }
 
-                // Avoid repetitive DB calls by directly collecting whole Slots
-                List<FixedTimeSlotNew> bookedSlots = fixedTimeSlotNewRepository.findAllById(bookedSlotIds);
+    private SessionCreateParams sessionParams(CheckoutReservationService.CheckoutReservation reservation) {
 
-                for (FixedTimeSlotNew bookedSlot : bookedSlots) {
+        Booking booking = reservation.booking();
+        TherapistProfile therapistProfile = reservation.therapist();
+        ClientProfile clientProfile = reservation.client();
 
-                    // Converting booked slot in UTC to booked slot in client time zone with date
-                    LocalTime bookedSlotTime = bookedSlot.getTimeStart()
-                            .atZone(ZoneOffset.UTC)
-                            .withZoneSameInstant(zoneId)
-                            .toLocalTime();
+        // 4. Convert to ISO strings
+        String sessionStartStr = booking.getSessionStartTime().toString();
+        String sessionEndStr = reservation.sessionEnd().toString();
 
-                    ZonedDateTime bookedStartZoned = bookingDate.atTime(bookedSlotTime).atZone(zoneId);
-                    ZonedDateTime bookedEndZoned = bookedStartZoned.plusHours(1);
+        //Stripe session creation
+        SessionCreateParams.LineItem.PriceData.ProductData productData
+                = SessionCreateParams.LineItem.PriceData.ProductData.builder()
+                .setName(booking.getProductName()).build();
 
-                    // Now comparing the booked slot in client time zone with current slot in client time zone
-                    if (currentSlotStartDateTime.isBefore(bookedEndZoned) && bookedStartZoned.isBefore(currentSlotEndDateTime)) {
-                        throw new ResourceAlreadyExistsException(OVERLAPS_WITH_EXISTING_BOOKED_SLOT);
-                    }
+        SessionCreateParams.LineItem.PriceData priceData = SessionCreateParams.LineItem.PriceData.builder()
+                .setCurrency(booking.getCurrency() == null ? "CAD" : booking.getCurrency())
+                .setUnitAmount(Math.round(booking.getAmount() * 100)) // To paise or cents
+                .setProductData(productData)
+                .build();
 
+        SessionCreateParams.LineItem lineItem = SessionCreateParams.LineItem.builder()
+                .setQuantity(booking.getQuantity())
+                .setPriceData(priceData)
+                .build();
 
-                }
-            }
-
-            Booking booking = Booking.builder()
-                    .therapistId(bookingDTO.getTherapistId())
-                    .clientId(bookingDTO.getClientId())
-                    .timeSlotId(bookingDTO.getTimeSlotId())
-                    .category(bookingDTO.getCategory())
-                    .connectMethod(bookingDTO.getConnectMethod())
-                    .amount(bookingDTO.getAmount())
-                    .currency(bookingDTO.getCurrency())
-                    .productName(bookingDTO.getProductName())
-                    .quantity(bookingDTO.getQuantity())
-                    .paymentStatus(PaymentStatus.HOLD)
-                    .holdStartTime(Instant.now())
-                    .therapistMeetLink(bookingDTO.getTherapistMeetLink())
-                    .clientMeetLink(bookingDTO.getUserMeetLink())
-                    .clientTimezone(clientProfile.getTimeZone())
-                    .build();
-
-
-            // To send the booking id in meta data we are saving it only some details first
-            // we receive date as string but spring converts it into date automatically if date is in this format yyyy-mm-dd
-            Booking savedBooking = bookingRepository.save(booking);
-
-            // 4. Get therapist and user emails from DB
-            String clientEmail = clientProfile.getEmail();
-
-            Instant sessionEnd = currentSlotEndDateTime.toInstant();
-
-            // 4. Convert to ISO strings
-            String sessionStartStr = sessionStart.toString();
-            String sessionEndStr = sessionEnd.toString();
-
-            TherapistProfile therapistProfile = therapistProfileRepository.findById(bookingDTO.getTherapistId())
-                    .orElseThrow(() -> new ResourceNotFoundException(THERAPIST_NOT_FOUND_WITH_ID + bookingDTO.getTherapistId()));
-
-            //Stripe session creation
-            Session session = null;
-            SessionCreateParams.LineItem.PriceData.ProductData productData
-                    = SessionCreateParams.LineItem.PriceData.ProductData.builder()
-                    .setName(booking.getProductName()).build();
-
-            SessionCreateParams.LineItem.PriceData priceData = SessionCreateParams.LineItem.PriceData.builder()
-                    .setCurrency(booking.getCurrency() == null ? "CAD" : booking.getCurrency())
-                    .setUnitAmount(Math.round(booking.getAmount() * 100)) // To paise or cents
-                    .setProductData(productData)
-                    .build();
-
-            SessionCreateParams.LineItem lineItem = SessionCreateParams.LineItem.builder()
-                    .setQuantity(booking.getQuantity())
-                    .setPriceData(priceData)
-                    .build();
-
-            // If we not give payment method type, by default it takes card,
-            // If Wants to support UPI, AfterPay, or others, we need to specify in the method
-            SessionCreateParams.Builder builder = SessionCreateParams.builder()
-                    .setMode(SessionCreateParams.Mode.PAYMENT)
-                    .setSuccessUrl(successUrl + "/{CHECKOUT_SESSION_ID}")
-                    .setCancelUrl(cancelUrl + "/{CHECKOUT_SESSION_ID}")
-                    .addLineItem(lineItem)
-                    .putMetadata("therapistEmail", therapistProfile.getEmail())
-                    .putMetadata("clientEmail", clientEmail)
-                    .putMetadata("therapistName", therapistProfile.getName())
-                    .putMetadata("clientName", clientProfile.getName())
-                    .putMetadata("sessionStart", sessionStartStr)
-                    .putMetadata("sessionEnd", sessionEndStr)
-                    .putMetadata("therapistTimezone", therapistProfile.getTimezone())
-                    .putMetadata("clientTimezone", clientProfile.getTimeZone())
-                    .putMetadata("purchaseType", "book-therapist")
-                    .putMetadata("bookingId", String.valueOf(savedBooking.getId()));
-                    //.addPaymentMethodType(SessionCreateParams.PaymentMethodType.CARD)
-
-            SessionCreateParams params = builder.build();
-
-            session = Session.create(params);
-
-            savedBooking.setStripeSessionId(session.getId());
-            savedBooking.setSessionStartTime(sessionStart);
-            bookingRepository.save(savedBooking);
-
-            PaymentResponse paymentResponse = PaymentResponse.builder()
-                    .status(SUCCESS)
-                    .message(PAYMENT_SESSION_CREATED)
-                    .sessionId(session.getId())
-                    .sessionUrl(session.getUrl())
-                    .build();
-
-            return CommonResponse.<PaymentResponse>builder()
-                    .message(LOADED_SESSION_URL)
-                    .status(STATUS_TRUE)
-                    .data(paymentResponse)
-                    .statusCode(SUCCESS_CODE)
-                    .build();
-
-        } catch (ResourceNotFoundException | ResourceAlreadyExistsException | StripeException | InvalidFieldValueException e){
-            throw e; // it will catch by global exception handler
-        } catch (Exception e){
-            throw new UnexpectedServerException(ERROR_CREATING_PAYMENT_SESSION + e.getMessage());
+        // If we not give payment method type, by default it takes card,
+        // If Wants to support UPI, AfterPay, or others, we need to specify in the method
+        // The session expires before the HOLD does (SlotHoldRegistry.HOLD_TTL), so a client can't pay for a slot we already gave away
+        SessionCreateParams.Builder builder = SessionCreateParams.builder()
+                .setMode(SessionCreateParams.Mode.PAYMENT)
+                .setExpiresAt(Instant.now().plus(StripeCheckoutGateway.SESSION_TTL).getEpochSecond())
+                .setSuccessUrl(successUrl + "/{CHECKOUT_SESSION_ID}")
+                .setCancelUrl(cancelUrl + "/{CHECKOUT_SESSION_ID}")
+                .addLineItem(lineItem)
+                .putMetadata("therapistEmail", therapistProfile.getEmail())
+                .putMetadata("clientEmail", clientProfile.getEmail())
+                .putMetadata("therapistName", therapistProfile.getName())
+                .putMetadata("clientName", clientProfile.getName())
+                .putMetadata("sessionStart", sessionStartStr)
+                .putMetadata("sessionEnd", sessionEndStr)
+                .putMetadata("therapistTimezone", therapistProfile.getTimezone())
+                .putMetadata("clientTimezone", clientProfile.getTimeZone())
+                .putMetadata("purchaseType", BOOK_THERAPIST_PURCHASE_TYPE)
+                .putMetadata("bookingId", String.valueOf(booking.getId()));
+                //.addPaymentMethodType(SessionCreateParams.PaymentMethodType.CARD)
+
+        return builder.build();
+    }
+
+    // No Stripe session means the client can't pay, so free the slot now instead of leaving the HOLD until it runs out
+    private void releaseReservation(CheckoutReservationService.CheckoutReservation reservation) {
+        try {
+            bookingRepository.expireHold(reservation.booking().getId(), PaymentStatus.HOLD, PaymentStatus.EXPIRED);
+        } catch (Exception e) {
+            log.warn("Could not expire HOLD booking {} after a failed checkout, the hold expiry will pick it up: {}", reservation.booking().getId(), e.getMessage());
+        } finally {
+            slotHoldRegistry.release(reservation.slotKey());
         }
+    }
+
+    // Spring unwraps the CompletionException, so the cause goes to the global exception handler like a synchronous throw
+    private static CompletionException checkoutFailure(Throwable error) {
 
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
 
+        if (cause instanceof StripeException) {
+            return new CompletionException(cause);
+        }
+        if (cause instanceof TimeoutException) {
+            return new CompletionException(new UnexpectedServerException(PAYMENT_SESSION_TIMED_OUT));
+        }
+        return new CompletionException(new UnexpectedServerException(ERROR_CREATING_PAYMENT_SESSION + cause.getMessage()));
     }
 
     // Don't remove this method
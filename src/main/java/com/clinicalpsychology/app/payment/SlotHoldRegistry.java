@@ -0,0 +1,155 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.model.Booking;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// In-process slot holds in front of checkoutProducts, so when many clients go for the same slot only the first one
+// reaches the db and Stripe, the rest are rejected straight away. The holds are split over lock stripes by slot hash,
+// so checkouts for different slots never wait on each other. This is only a fast path, uk_bookings_active_slot in the db
+// still decides the winner across instances and restarts. Metrics: slot.hold.requests, slot.hold.lock.contended, slot.hold.lock.wait
+@Component
+@Slf4j
+public class SlotHoldRegistry {
+
+    // How long a HOLD booking (and this in-memory hold) keeps the slot. Derived from the Stripe session's expires_at,
+    // plus a grace so a payment made in the session's last second still finds its HOLD when the webhook arrives
+    public static final Duration HOLD_TTL = StripeCheckoutGateway.SESSION_TTL.plus(Duration.ofMinutes(4));
+
+    private static final int STRIPES = 64;
+
+    public record SlotKey(Long therapistId, Long timeSlotId, Instant sessionStart) {
+
+        public static SlotKey of(Booking booking) {
+            return new SlotKey(booking.getTherapistId(), booking.getTimeSlotId(), booking.getSessionStartTime());
+        }
+    }
+
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        // slot -> when the hold runs out
+        private final Map<SlotKey, Instant> holds = new HashMap<>();
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final Clock clock;
+
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter contended;
+    private final Timer lockWait;
+
+    @Autowired
+    public SlotHoldRegistry(MeterRegistry meterRegistry) {
+        this(meterRegistry, Clock.systemUTC());
+    }
+
+    SlotHoldRegistry(MeterRegistry meterRegistry, Clock clock) {
+
+        this.clock = clock;
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        this.accepted = Counter.builder("slot.hold.requests").tag("result", "accepted").description("Checkout slot holds").register(meterRegistry);
+        this.rejected = Counter.builder("slot.hold.requests").tag("result", "rejected").description("Checkout slot holds").register(meterRegistry);
+        this.contended = Counter.builder("slot.hold.lock.contended").description("Hold requests that had to wait for their stripe lock").register(meterRegistry);
+        this.lockWait = Timer.builder("slot.hold.lock.wait").description("Time spent waiting for a stripe lock").register(meterRegistry);
+
+        Gauge.builder("slot.hold.active", this, SlotHoldRegistry::size).description("Slot holds currently in memory").register(meterRegistry);
+    }
+
+    // false when someone else holds the slot and the hold hasn't run out
+    public boolean tryHold(SlotKey key) {
+
+        Stripe stripe = lock(key);
+        try {
+            Instant now = clock.instant();
+            Instant expiresAt = stripe.holds.get(key);
+
+            if (expiresAt != null && expiresAt.isAfter(now)) {
+                rejected.increment();
+                return false;
+            }
+
+            stripe.holds.put(key, now.plus(HOLD_TTL));
+            accepted.increment();
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Checkout failed, or the HOLD booking was freed early (checkout.session.expired / failed webhook), let the next client try.
+    // Only this instance's hold goes, another instance's copy still runs out on its own after HOLD_TTL
+    public void release(SlotKey key) {
+
+        Stripe stripe = lock(key);
+        try {
+            stripe.holds.remove(key);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedRate = 60 * 1000)
+    public void purgeExpired() {
+
+        Instant now = clock.instant();
+        int purged = 0;
+
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                int before = stripe.holds.size();
+                stripe.holds.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+                purged += before - stripe.holds.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        if (purged > 0) {
+            log.debug("Purged {} expired slot hold(s)", purged);
+        }
+    }
+
+    private int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.holds.size();
+        }
+        return size;
+    }
+
+    // Uncontended locks are taken without timing, only a wait is measured
+    private Stripe lock(SlotKey key) {
+
+        Stripe stripe = stripes[Math.floorMod(Objects.hashCode(key), STRIPES)];
+
+        if (!stripe.lock.tryLock()) {
+            contended.increment();
+            long start = System.nanoTime();
+            stripe.lock.lock();
+            lockWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return stripe;
+    }
+}
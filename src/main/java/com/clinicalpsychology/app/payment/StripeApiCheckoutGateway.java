@@ -0,0 +1,72 @@
+package com.clinicalpsychology.app.payment;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.Refund;
+import com.stripe.model.checkout.Session;
+import com.stripe.net.HttpClient;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.RefundCreateParams;
+import com.stripe.param.checkout.SessionCreateParams;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// The real Stripe call. Connect / read timeouts are per attempt, the Stripe client retries network errors, 409s and 5xx
+// itself with backoff, which is safe because of the idempotency key. Stripe.apiKey is set by PaymentService.
+// The defaults keep every attempt plus the backoff (3 x 7s + ~1.5s) under the 25s checkout timeout
+@Component
+@ConditionalOnProperty(name = "stripe.stub.enabled", havingValue = "false", matchIfMissing = true)
+public class StripeApiCheckoutGateway implements StripeCheckoutGateway {
+
+    @Value("${stripe.checkout.connect-timeout-ms:2000}")
+    private int connectTimeoutMs;
+
+    @Value("${stripe.checkout.read-timeout-ms:5000}")
+    private int readTimeoutMs;
+
+    @Value("${stripe.checkout.max-network-retries:2}")
+    private int maxNetworkRetries;
+
+    @Override
+    public CheckoutSession createSession(SessionCreateParams params, String idempotencyKey) throws StripeException {
+
+        Session session = Session.create(params, options(idempotencyKey));
+        return new CheckoutSession(session.getId(), session.getUrl());
+    }
+
+    @Override
+    public String refund(String paymentIntentId, String idempotencyKey) throws StripeException {
+
+        RefundCreateParams params = RefundCreateParams.builder()
+                .setPaymentIntent(paymentIntentId)
+                .setReason(RefundCreateParams.Reason.REQUESTED_BY_CUSTOMER)
+                .build();
+
+        return Refund.create(params, options(idempotencyKey)).getId();
+    }
+
+    // Every attempt can use its whole connect + read timeout, with the Stripe client's backoff in between
+    // (0.5s doubling per retry, capped, see HttpClient.sleepTime)
+    @Override
+    public Duration maxSessionCallDuration() {
+
+        Duration total = Duration.ofMillis((long) (maxNetworkRetries + 1) * (connectTimeoutMs + readTimeoutMs));
+        Duration delay = HttpClient.minNetworkRetriesDelay;
+        for (int retry = 1; retry <= maxNetworkRetries; retry++) {
+            total = total.plus(delay.compareTo(HttpClient.maxNetworkRetriesDelay) < 0 ? delay : HttpClient.maxNetworkRetriesDelay);
+            delay = delay.multipliedBy(2);
+        }
+        return total;
+    }
+
+    private RequestOptions options(String idempotencyKey) {
+        return RequestOptions.builder()
+                .setIdempotencyKey(idempotencyKey)
+                .setConnectTimeout(connectTimeoutMs)
+                .setReadTimeout(readTimeoutMs)
+                .setMaxNetworkRetries(maxNetworkRetries)
+                .build();
+    }
+}
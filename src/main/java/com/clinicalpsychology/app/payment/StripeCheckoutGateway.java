@@ -0,0 +1,28 @@
+package com.clinicalpsychology.app.payment;
+
+import com.stripe.exception.StripeException;
+import com.stripe.param.checkout.SessionCreateParams;
+
+import java.time.Duration;
+
+// Creates the Stripe checkout session for a reserved booking, and refunds a payment that arrived too late for it.
+// StripeApiCheckoutGateway talks to Stripe, StubStripeCheckoutGateway (stripe.stub.enabled=true) answers locally
+// so the checkout can be load tested offline
+public interface StripeCheckoutGateway {
+
+    // Checkout sessions expire this long after they are created (expires_at). Stripe's minimum is 30 min,
+    // the extra minute covers the clock skew to Stripe and the time until the call is made
+    Duration SESSION_TTL = Duration.ofMinutes(31);
+
+    record CheckoutSession(String id, String url) {
+    }
+
+    // idempotencyKey is per booking, so a retried call never creates a second session
+    CheckoutSession createSession(SessionCreateParams params, String idempotencyKey) throws StripeException;
+
+    // Returns the refund id. idempotencyKey is per booking, so a redelivered webhook never refunds twice
+    String refund(String paymentIntentId, String idempotencyKey) throws StripeException;
+
+    // Longest createSession can take including the client's own retries, has to stay under stripe.checkout.timeout-ms
+    Duration maxSessionCallDuration();
+}
@@ -0,0 +1,68 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Parses a webhook payload once into a CheckoutSessionEvent and routes it by event type (-> payment status) and
+// purchaseType (-> CheckoutSessionHandler). The handlers are looked up in a map built once at startup
+@Component
+@Slf4j
+public class StripeWebhookDispatcher {
+
+    // The event types we act on, everything else is acknowledged and dropped by the controller
+    private static final Map<String, PaymentStatus> HANDLED_EVENT_TYPES = Map.of(
+            "checkout.session.completed", PaymentStatus.COMPLETED,
+            "checkout.session.async_payment_succeeded", PaymentStatus.COMPLETED,
+            "checkout.session.expired", PaymentStatus.EXPIRED,
+            "checkout.session.async_payment_failed", PaymentStatus.FAILURE);
+
+    private final ObjectReader payloadReader;
+    private final Map<String, CheckoutSessionHandler> handlers = new HashMap<>();
+
+    public StripeWebhookDispatcher(ObjectMapper objectMapper, List<CheckoutSessionHandler> handlers) {
+
+        this.payloadReader = objectMapper.readerFor(CheckoutSessionEvent.Payload.class);
+
+        for (CheckoutSessionHandler handler : handlers) {
+            CheckoutSessionHandler existing = this.handlers.put(handler.purchaseType().toLowerCase(Locale.ROOT), handler);
+            if (existing != null) {
+                throw new IllegalStateException("Two checkout session handlers for purchaseType " + handler.purchaseType());
+            }
+        }
+    }
+
+    public CheckoutSessionEvent parse(String payload) throws IOException {
+        return CheckoutSessionEvent.of(payloadReader.readValue(payload));
+    }
+
+    public boolean isHandled(String eventType) {
+        return HANDLED_EVENT_TYPES.containsKey(eventType);
+    }
+
+    public void dispatch(CheckoutSessionEvent event) throws Exception {
+
+        PaymentStatus statusToSet = HANDLED_EVENT_TYPES.get(event.type());
+        if (statusToSet == null) {
+            log.warn("Unhandled Stripe event type: {}", event.type());
+            return;
+        }
+
+        CheckoutSessionHandler handler = event.purchaseType() != null ? handlers.get(event.purchaseType().toLowerCase(Locale.ROOT)) : null;
+        if (handler == null) {
+            log.warn("No handler for purchaseType {} of Stripe event {}", event.purchaseType(), event.eventId());
+            return;
+        }
+
+        log.info("🔄 Processing {} for {}", event.type(), handler.purchaseType());
+        handler.handleSessionEvent(event, statusToSet);
+    }
+}
@@ -1,90 +1,121 @@
 package com.clinicalpsychology.app.payment;
 
+import com.clinicalpsychology.app.config.BookingSlotIndexInitializer;
 import com.clinicalpsychology.app.enums.PaymentStatus;
-import com.clinicalpsychology.app.enums.ZoomContextType;
+import com.clinicalpsychology.app.meeting.MeetingProvisioningQueue;
 import com.clinicalpsychology.app.model.Booking;
 import com.clinicalpsychology.app.repository.BookingRepository;
-import com.clinicalpsychology.app.zoom.ZoomMeetingResponse;
-import com.clinicalpsychology.app.zoom.ZoomMeetingService;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.stripe.model.Event;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
+import java.util.List;
+
+import static com.clinicalpsychology.app.util.Constant.BOOK_THERAPIST_PURCHASE_TYPE;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class StripeWebhookHandlerService {
+public class StripeWebhookHandlerService implements CheckoutSessionHandler {
 
-    private final ObjectMapper objectMapper;
     private final BookingRepository bookingRepository;
-    private final ZoomMeetingService zoomMeetingService;
+    private final MeetingProvisioningQueue meetingProvisioningQueue;
+    private final SlotHoldRegistry slotHoldRegistry;
+    private final StripeCheckoutGateway stripeCheckoutGateway;
 
-    @Async
-    public void handleSessionEventAsync(Event event, PaymentStatus statusToSet) {
-        try {
-            JsonNode data = objectMapper.readTree(event.getData().getObject().toJson());
-            String sessionId = data.get("id").asText();
-            JsonNode metadata = data.get("metadata");
+    @Override
+    public String purchaseType() {
+        return BOOK_THERAPIST_PURCHASE_TYPE;
+    }
 
-            if(metadata==null){
-                log.warn("Metadata should not be null");
-                return;
-            }
+    @Override
+    public void handleSessionEvent(CheckoutSessionEvent event, PaymentStatus statusToSet) throws Exception {
 
-            String bookingIdStr = metadata.has("bookingId")
-                    ? metadata.get("bookingId").asText()
-                    : null;
+        String sessionId = event.sessionId();
 
-            Booking booking = bookingRepository.findByStripeSessionId(sessionId);
+        if(event.metadata().isEmpty()){
+            log.warn("Metadata should not be null");
+            return;
+        }
 
-            // Don't throw custom exception in this controller because this api called by stripe not FRONTEND
-            if (booking == null) {
-                log.warn("Booking not found for sessionId: {}", sessionId);
-                return;
-            }
+        String bookingIdStr = event.metadata("bookingId");
 
-            // Set status
-            booking.setPaymentStatus(statusToSet);
+        Booking booking = bookingRepository.findByStripeSessionId(sessionId);
 
-            if (statusToSet.isCompleted()) {
+        // Don't throw custom exception in this controller because this api called by stripe not FRONTEND
+        if (booking == null) {
+            log.warn("Booking not found for sessionId: {}", sessionId);
+            return;
+        }
 
-                String therapistEmail = metadata.get("therapistEmail").asText();
-                String clientEmail = metadata.get("clientEmail").asText();
+        // completed and async_payment_succeeded can both arrive for one session, the meeting is only created once.
+        // Enqueue again anyway (a no-op when the job exists), in case we died between saving the booking and enqueueing
+        if (statusToSet.isCompleted() && booking.getPaymentStatus() == PaymentStatus.COMPLETED) {
+            log.info("Booking {} is already completed, skipping", booking.getId());
+            meetingProvisioningQueue.enqueue(booking.getId());
+            return;
+        }
 
-                String therapistName = metadata.get("therapistName").asText();
-                String clientName = metadata.get("clientName").asText();
+        // Paid after the HOLD lapsed (expired / failed). Forcing COMPLETED here used to hit uk_bookings_active_slot when
+        // someone else had booked the slot meanwhile, and the event failed for good with the client's money taken
+        if (statusToSet.isCompleted() && booking.getPaymentStatus() != PaymentStatus.HOLD) {
+            completeLatePayment(booking, event);
+            return;
+        }
 
-                Instant sessionStart = Instant.parse(metadata.get("sessionStart").asText());
-                Instant sessionEnd = Instant.parse(metadata.get("sessionEnd").asText());
+        boolean wasHold = booking.getPaymentStatus() == PaymentStatus.HOLD;
 
-                String therapistTimezone = metadata.get("therapistTimezone").asText();
-                String clientTimezone = metadata.get("clientTimezone").asText();
+        // Set status
+        booking.setPaymentStatus(statusToSet);
 
-                // Payment intent id is used for refund,
-                String paymentIntentId = data.has("payment_intent") && !data.get("payment_intent").isNull() ? data.get("payment_intent").asText() : null;
-                booking.setStripePaymentIntentId(paymentIntentId);
+        if (statusToSet.isCompleted()) {
+            // Payment intent id is used for refund,
+            booking.setStripePaymentIntentId(event.paymentIntentId());
+        }
 
-                // Create Zoom meeting and get links
-                ZoomMeetingResponse zoomLinks = zoomMeetingService
-                        .createZoomMeetingAndNotify(therapistEmail, clientEmail,therapistName, clientName, sessionStart, sessionEnd, null, ZoomContextType.NEW, therapistTimezone, clientTimezone);
+        bookingRepository.save(booking);
+        log.info("Booking {} updated with payment status: {}", bookingIdStr, statusToSet);
 
-                booking.setTherapistMeetLink(zoomLinks.getStartUrl());
-                booking.setClientMeetLink(zoomLinks.getJoinUrl());
-                log.info("Zoom meeting created for booking ID {} - therapist: {}, user: {}", bookingIdStr, therapistEmail, clientEmail);
+        // Expired / failed checkout frees the slot in the db before the HOLD runs out, free the in-memory hold with it
+        // or this instance keeps rejecting the slot until the hold runs out
+        if (wasHold && !statusToSet.isCompleted()) {
+            slotHoldRegistry.release(SlotHoldRegistry.SlotKey.of(booking));
+        }
 
-            }
+        // Meeting + emails happen in MeetingProvisioningQueue, the payment status doesn't wait for Zoom
+        if (statusToSet.isCompleted()) {
+            meetingProvisioningQueue.enqueue(booking.getId());
+        }
+    }
 
-            bookingRepository.save(booking);
-            log.info("Booking updated with payment status: {}", statusToSet);
+    // Take the slot back when it is still free, otherwise refund. The refund key is per booking, so a redelivered
+    // or retried event never refunds twice
+    private void completeLatePayment(Booking booking, CheckoutSessionEvent event) throws Exception {
 
-        } catch (Exception e) {
-            log.error("Error updating booking payment status: {}", e.getMessage(), e);
+        if (booking.getPaymentStatus() == PaymentStatus.REFUNDED) {
+            log.info("Late payment for booking {} was already refunded, skipping", booking.getId());
+            return;
         }
+
+        try {
+            if (bookingRepository.completeLapsedBooking(booking.getId(), event.paymentIntentId(), PaymentStatus.COMPLETED,
+                    List.of(PaymentStatus.EXPIRED, PaymentStatus.FAILURE)) > 0) {
+                log.info("Booking {} was paid after its hold lapsed, the slot was still free so it is booked", booking.getId());
+                meetingProvisioningQueue.enqueue(booking.getId());
+                return;
+            }
+            log.warn("Booking {} is {} and can't take a late payment, refunding", booking.getId(), booking.getPaymentStatus());
+        } catch (DataIntegrityViolationException e) {
+            String cause = e.getMostSpecificCause().getMessage();
+            if (cause == null || !cause.contains(BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX)) {
+                throw e;
+            }
+            log.warn("Booking {} was paid after its hold lapsed and the slot is taken by now, refunding", booking.getId());
+        }
+
+        String refundId = stripeCheckoutGateway.refund(event.paymentIntentId(), "refund-late-booking-" + booking.getId());
+        bookingRepository.markRefunded(booking.getId(), event.paymentIntentId(), refundId, PaymentStatus.REFUNDED);
+        log.info("Refunded late payment for booking {} with refund {}", booking.getId(), refundId);
     }
 }
@@ -0,0 +1,86 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.enums.WebhookEventStatus;
+import com.clinicalpsychology.app.model.StripeWebhookEvent;
+import com.clinicalpsychology.app.repository.StripeWebhookEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Durable inbox in front of the webhook handlers. The controller stores the verified event here and only then answers Stripe,
+// so a crash after the 200 doesn't lose the payment, and a redelivered event (same Stripe event id) is dropped instead of
+// creating a second Zoom meeting. Metrics: stripe.webhook.inbox.depth, stripe.webhook.inbox.oldest.age, stripe.webhook.events
+@Service
+@Slf4j
+public class StripeWebhookInbox {
+
+    private static final Set<WebhookEventStatus> UNFINISHED = Set.of(WebhookEventStatus.PENDING, WebhookEventStatus.PROCESSING);
+
+    // Well past the 3 days Stripe keeps redelivering an event
+    private static final Duration RETENTION = Duration.ofDays(30);
+
+    private final StripeWebhookEventRepository stripeWebhookEventRepository;
+    private final StripeWebhookWorker stripeWebhookWorker;
+
+    private final Counter received;
+    private final Counter duplicates;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong oldestAgeSeconds = new AtomicLong();
+
+    public StripeWebhookInbox(StripeWebhookEventRepository stripeWebhookEventRepository, StripeWebhookWorker stripeWebhookWorker, MeterRegistry meterRegistry) {
+
+        this.stripeWebhookEventRepository = stripeWebhookEventRepository;
+        this.stripeWebhookWorker = stripeWebhookWorker;
+
+        this.received = Counter.builder("stripe.webhook.events").tag("result", "received").description("Stripe webhook events by outcome").register(meterRegistry);
+        this.duplicates = Counter.builder("stripe.webhook.events").tag("result", "duplicate").description("Stripe webhook events by outcome").register(meterRegistry);
+
+        Gauge.builder("stripe.webhook.inbox.depth", depth, AtomicLong::get).description("Stripe events waiting or being processed").register(meterRegistry);
+        Gauge.builder("stripe.webhook.inbox.oldest.age", oldestAgeSeconds, AtomicLong::get).baseUnit("seconds").description("Age of the oldest unprocessed Stripe event").register(meterRegistry);
+    }
+
+    // false when this event was already received. Throws when it couldn't be stored, then Stripe has to retry
+    public boolean receive(CheckoutSessionEvent event, String payload) {
+
+        // postgres keeps microseconds, the in-memory copy must compare equal to the stored one
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+
+        if (stripeWebhookEventRepository.insertIfAbsent(event.eventId(), event.type(), event.purchaseType(), event.orderingKey(), payload, now) == 0) {
+            duplicates.increment();
+            log.info("Duplicate Stripe event {} ignored", event.eventId());
+            return false;
+        }
+        received.increment();
+
+        stripeWebhookWorker.submit(event.eventId(), event.orderingKey(), now);
+        return true;
+    }
+
+    @Scheduled(initialDelay = 15 * 1000, fixedRate = 15 * 1000)
+    public void refreshMetrics() {
+
+        depth.set(stripeWebhookEventRepository.countByStatusIn(UNFINISHED));
+
+        StripeWebhookEvent oldest = stripeWebhookEventRepository.findFirstByStatusInOrderByCreatedAtAsc(UNFINISHED);
+        oldestAgeSeconds.set(oldest == null ? 0 : Duration.between(oldest.getCreatedAt(), Instant.now()).toSeconds());
+    }
+
+    @Scheduled(cron = "0 30 3 * * *")
+    public void purgeProcessed() {
+
+        int deleted = stripeWebhookEventRepository.deleteProcessedBefore(Instant.now().minus(RETENTION), WebhookEventStatus.PROCESSED);
+        if (deleted > 0) {
+            log.info("Purged {} processed Stripe webhook event(s)", deleted);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.config.ThreadingMode;
+import com.clinicalpsychology.app.enums.WebhookEventStatus;
+import com.clinicalpsychology.app.model.StripeWebhookEvent;
+import com.clinicalpsychology.app.repository.StripeWebhookEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+// Drains the webhook inbox. Events are spread over single-thread partitions by ordering key (the booking), so the events of one booking
+// run one after the other in arrival order while different bookings run in parallel. A row is claimed with a conditional UPDATE
+// before it is processed, so two instances never process the same event. Failures are retried with exponential backoff and
+// end up FAILED after stripe.webhook.max-attempts. Bounded partition queues: when they are full the event just stays in the table
+// and the poller offers it again later, that is the backpressure.
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StripeWebhookWorker {
+
+    private static final Set<WebhookEventStatus> UNFINISHED = Set.of(WebhookEventStatus.PENDING, WebhookEventStatus.PROCESSING);
+
+    // Long enough for the Zoom call + emails of one event
+    private static final Duration LEASE = Duration.ofMinutes(5);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    // An event waiting behind an older one of the same booking is looked at again after this
+    private static final Duration ORDERING_WAIT = Duration.ofSeconds(2);
+
+    @Value("${stripe.webhook.workers:4}")
+    private int workers;
+
+    @Value("${stripe.webhook.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${stripe.webhook.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${stripe.webhook.retry-base-seconds:5}")
+    private long retryBaseSeconds;
+
+    private final StripeWebhookEventRepository stripeWebhookEventRepository;
+    private final StripeWebhookDispatcher stripeWebhookDispatcher;
+    private final MeterRegistry meterRegistry;
+    private final ThreadingMode threadingMode;
+
+    private ThreadPoolExecutor[] partitions;
+
+    // Events submitted on this instance and not finished yet, so the poller doesn't queue them twice
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private Counter rejectedCounter;
+    private Counter processed;
+    private Counter retried;
+    private Counter failed;
+    private Timer processingLag;
+
+    private record InboxItem(String id, String orderingKey, Instant receivedAt) {
+    }
+
+    @PostConstruct
+    public void start() {
+
+        partitions = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            partitions[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                    threadingMode.threadFactory("stripe-webhook-" + i + "-"), new ThreadPoolExecutor.AbortPolicy());
+            // Same executor.* metrics Spring Boot publishes for the @Async pools
+            new ExecutorServiceMetrics(partitions[i], "stripeWebhook-" + i, Tags.empty()).bindTo(meterRegistry);
+        }
+        rejectedCounter = Counter.builder("executor.rejected").tag("name", "stripeWebhook").description("Tasks turned away by a full executor").register(meterRegistry);
+
+        processed = Counter.builder("stripe.webhook.events").tag("result", "processed").description("Stripe webhook events by outcome").register(meterRegistry);
+        retried = Counter.builder("stripe.webhook.events").tag("result", "retried").description("Stripe webhook events by outcome").register(meterRegistry);
+        failed = Counter.builder("stripe.webhook.events").tag("result", "failed").description("Stripe webhook events by outcome").register(meterRegistry);
+        processingLag = Timer.builder("stripe.webhook.processing.lag").description("Time from receiving a Stripe event to processing it").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (ThreadPoolExecutor partition : partitions) {
+            partition.shutdown();
+        }
+    }
+
+    // Called right after an event is stored, so it doesn't wait for the next poll
+    public void submit(String eventId, String orderingKey, Instant receivedAt) {
+        submit(new InboxItem(eventId, orderingKey, receivedAt));
+    }
+
+    @Scheduled(initialDelay = 5 * 1000, fixedDelay = 1000)
+    public void poll() {
+
+        int capacity = partitions.length * queueCapacity - inFlight.size();
+        if (capacity <= 0) {
+            return;
+        }
+
+        List<StripeWebhookEvent> due = stripeWebhookEventRepository.findDue(Instant.now(), WebhookEventStatus.PENDING, WebhookEventStatus.PROCESSING, Limit.of(Math.min(capacity, 100)));
+        for (StripeWebhookEvent event : due) {
+            submit(new InboxItem(event.getId(), event.getOrderingKey(), event.getCreatedAt()));
+        }
+    }
+
+    private void submit(InboxItem item) {
+
+        if (!inFlight.add(item.id())) {
+            return;
+        }
+
+        try {
+            partitions[Math.floorMod(item.orderingKey().hashCode(), partitions.length)].execute(() -> {
+                MDC.put("stripeEventId", item.id());
+                try {
+                    process(item);
+                } finally {
+                    inFlight.remove(item.id());
+                    MDC.remove("stripeEventId");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Partition is full, the row stays PENDING and the poller offers it again
+            inFlight.remove(item.id());
+            rejectedCounter.increment();
+        }
+    }
+
+    private void process(InboxItem item) {
+
+        Instant now = Instant.now();
+
+        if (stripeWebhookEventRepository.existsByOrderingKeyAndStatusInAndCreatedAtBefore(item.orderingKey(), UNFINISHED, item.receivedAt())) {
+            stripeWebhookEventRepository.findById(item.id())
+                    .filter(event -> event.getStatus() == WebhookEventStatus.PENDING)
+                    .ifPresent(event -> stripeWebhookEventRepository.complete(event.getId(), WebhookEventStatus.PENDING, event.getAttempts(), now.plus(ORDERING_WAIT), null, event.getLastError(), now));
+            return;
+        }
+
+        if (stripeWebhookEventRepository.claim(item.id(), now, now.plus(LEASE), WebhookEventStatus.PENDING, WebhookEventStatus.PROCESSING) == 0) {
+            return;
+        }
+
+        StripeWebhookEvent event = stripeWebhookEventRepository.findById(item.id()).orElse(null);
+        if (event == null) {
+            return;
+        }
+
+        int attempts = event.getAttempts() + 1;
+
+        try {
+            stripeWebhookDispatcher.dispatch(stripeWebhookDispatcher.parse(event.getPayload()));
+
+            Instant processedAt = Instant.now();
+            stripeWebhookEventRepository.complete(event.getId(), WebhookEventStatus.PROCESSED, attempts, event.getNextAttemptAt(), processedAt, null, processedAt);
+            processed.increment();
+            processingLag.record(Duration.between(event.getCreatedAt(), processedAt));
+
+        } catch (Exception e) {
+
+            String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+
+            if (attempts >= maxAttempts) {
+                stripeWebhookEventRepository.complete(event.getId(), WebhookEventStatus.FAILED, attempts, event.getNextAttemptAt(), null, error, Instant.now());
+                failed.increment();
+                log.error("Stripe event {} ({}) failed {} times, giving up: {}", event.getId(), event.getEventType(), attempts, error, e);
+                return;
+            }
+
+            Duration backoff = Duration.ofSeconds(retryBaseSeconds).multipliedBy(1L << Math.min(attempts - 1, 20));
+            if (backoff.compareTo(MAX_BACKOFF) > 0) {
+                backoff = MAX_BACKOFF;
+            }
+
+            stripeWebhookEventRepository.complete(event.getId(), WebhookEventStatus.PENDING, attempts, Instant.now().plus(backoff), null, error, Instant.now());
+            retried.increment();
+            log.warn("Stripe event {} ({}) failed on attempt {}, retrying in {}s: {}", event.getId(), event.getEventType(), attempts, backoff.toSeconds(), error);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.clinicalpsychology.app.payment;
+
+import com.stripe.param.checkout.SessionCreateParams;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+// Local stand-in for Stripe, only for load testing the checkout offline. Never enable it outside a test environment:
+// the sessions are fake and no webhook will ever complete them. stripe.stub.latency-ms simulates the Stripe round trip
+@Component
+@ConditionalOnProperty(name = "stripe.stub.enabled", havingValue = "true")
+@Slf4j
+public class StubStripeCheckoutGateway implements StripeCheckoutGateway {
+
+    @Value("${stripe.stub.latency-ms:300}")
+    private long latencyMs;
+
+    @Value("${stripe.successUrl}")
+    private String successUrl;
+
+    @Override
+    public CheckoutSession createSession(SessionCreateParams params, String idempotencyKey) {
+
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        String sessionId = "cs_stub_" + UUID.nameUUIDFromBytes(idempotencyKey.getBytes()).toString().replace("-", "");
+        log.debug("Stub Stripe session {} for {}", sessionId, idempotencyKey);
+        return new CheckoutSession(sessionId, successUrl + "/" + sessionId);
+    }
+
+    @Override
+    public String refund(String paymentIntentId, String idempotencyKey) {
+        return "re_stub_" + UUID.nameUUIDFromBytes(idempotencyKey.getBytes()).toString().replace("-", "");
+    }
+
+    @Override
+    public Duration maxSessionCallDuration() {
+        return Duration.ofMillis(latencyMs);
+    }
+}
@@ -1,10 +1,17 @@
 package com.clinicalpsychology.app.repository;
 
+import com.clinicalpsychology.app.dto.AdminSessionRowDTO;
+import com.clinicalpsychology.app.dto.SessionCountDTO;
 import com.clinicalpsychology.app.enums.PaymentStatus;
 import com.clinicalpsychology.app.model.Booking;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface BookingRepository extends JpaRepository<Booking, Long> {
@@ -32,13 +39,110 @@ public interface BookingRepository extends JpaRepository<Booking, Long> {
 
     List<Booking> findByClientIdAndSessionStartTimeBetweenAndPaymentStatus(Long clientId, Instant utcStart, Instant utcEnd, PaymentStatus paymentStatus);
 
+    List<Booking> findByTherapistIdAndSessionStartTimeBetweenAndPaymentStatusIn(Long therapistId, Instant utcStart, Instant utcEnd, List<PaymentStatus> paymentStatuses);
+
+    List<Booking> findBySessionStartTimeBetweenAndPaymentStatusIn(Instant utcStart, Instant utcEnd, List<PaymentStatus> paymentStatuses);
+
 //    Optional<Booking> findByTimeSlotIdAndSessionStartTimeBetweenAndPaymentStatus(Long timeSlotId, Instant utcStart, Instant utcEnd, PaymentStatus paymentStatus);
 
 //    Optional<Booking> findByTimeSlotIdAndSessionStartTimeAndPaymentStatus(Long timeSlotId, Instant sessionStart, PaymentStatus paymentStatus);
 
 //    Optional<Booking> findByTimeSlotIdAndSessionStartTimeAndPaymentStatusIn(Long timeSlotId, Instant sessionStart, List<PaymentStatus> completed);
 
-    List<Booking> findByPaymentStatusAndHoldStartTimeBefore(PaymentStatus paymentStatus, Instant cutoffTime);
+    List<Booking> findByPaymentStatusAndHoldStartTimeGreaterThanEqual(PaymentStatus paymentStatus, Instant cutoffTime);
+
+    // Crash recovery sweep for HoldExpiryScheduler, one statement no matter how many holds went stale
+    @Transactional
+    @Modifying
+    @Query("UPDATE Booking b SET b.paymentStatus = :expired WHERE b.paymentStatus = :hold AND b.holdStartTime < :cutoff")
+    int expireStaleHolds(@Param("cutoff") Instant cutoff, @Param("hold") PaymentStatus hold, @Param("expired") PaymentStatus expired);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Booking b SET b.paymentStatus = :expired WHERE b.id = :bookingId AND b.paymentStatus = :hold")
+    int expireHold(@Param("bookingId") Long bookingId, @Param("hold") PaymentStatus hold, @Param("expired") PaymentStatus expired);
+
+    // A payment that completed after its HOLD lapsed takes the slot back. uk_bookings_active_slot rejects the update
+    // when another booking holds the slot by now
+    @Transactional
+    @Modifying
+    @Query("UPDATE Booking b SET b.paymentStatus = :completed, b.stripePaymentIntentId = :paymentIntentId WHERE b.id = :bookingId AND b.paymentStatus IN :lapsed")
+    int completeLapsedBooking(@Param("bookingId") Long bookingId, @Param("paymentIntentId") String paymentIntentId,
+                              @Param("completed") PaymentStatus completed, @Param("lapsed") Collection<PaymentStatus> lapsed);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Booking b SET b.paymentStatus = :refunded, b.stripePaymentIntentId = :paymentIntentId, b.stripeRefundId = :refundId WHERE b.id = :bookingId")
+    int markRefunded(@Param("bookingId") Long bookingId, @Param("paymentIntentId") String paymentIntentId,
+                     @Param("refundId") String refundId, @Param("refunded") PaymentStatus refunded);
+
+    // Checkout stores the Stripe session id with one UPDATE instead of saving the whole booking again
+    @Transactional
+    @Modifying
+    @Query("UPDATE Booking b SET b.stripeSessionId = :stripeSessionId WHERE b.id = :bookingId")
+    int updateStripeSessionId(@Param("bookingId") Long bookingId, @Param("stripeSessionId") String stripeSessionId);
+
+    // The meeting job only writes the links, so it never overwrites a payment status changed meanwhile
+    @Transactional
+    @Modifying
+    @Query("UPDATE Booking b SET b.therapistMeetLink = :therapistMeetLink, b.clientMeetLink = :clientMeetLink WHERE b.id = :bookingId")
+    int updateMeetLinks(@Param("bookingId") Long bookingId, @Param("therapistMeetLink") String therapistMeetLink, @Param("clientMeetLink") String clientMeetLink);
 
     List<Booking> findByTimeSlotIdAndSessionStartTimeAndPaymentStatusIn(Long timeSlotId, Instant sessionStart, List<PaymentStatus> completed);
+
+    // Frees one slot whose HOLD is older than the hold window but not swept yet, so it doesn't trip uk_bookings_active_slot
+    @Transactional
+    @Modifying
+    @Query("UPDATE Booking b SET b.paymentStatus = :expired WHERE b.timeSlotId = :timeSlotId AND b.sessionStartTime = :sessionStart AND b.paymentStatus = :hold AND b.holdStartTime < :cutoff")
+    int expireStaleHoldForSlot(@Param("timeSlotId") Long timeSlotId, @Param("sessionStart") Instant sessionStart, @Param("cutoff") Instant cutoff,
+                               @Param("hold") PaymentStatus hold, @Param("expired") PaymentStatus expired);
+
+    // Single join for the admin session pages instead of one client/therapist lookup per booking, restricted to the profiles of the current page.
+    // Left join so a booking whose client or therapist was deleted still comes back and can be reported
+    @Query("""
+    SELECT b.id AS bookingId, b.therapistId AS therapistId, t.name AS therapistName, t.timezone AS therapistTimezone,
+           b.clientId AS clientId, c.name AS clientName, c.timeZone AS clientTimezone,
+           b.sessionStartTime AS sessionStartTime, b.category AS category, b.connectMethod AS connectMethod,
+           b.therapistMeetLink AS therapistMeetLink
+    FROM Booking b
+    LEFT JOIN TherapistProfile t ON t.id = b.therapistId
+    LEFT JOIN ClientProfile c ON c.id = b.clientId
+    WHERE b.paymentStatus = :paymentStatus AND b.therapistId IN :therapistIds
+    ORDER BY b.id
+    """)
+    List<AdminSessionRowDTO> findSessionRowsByTherapistIds(@Param("paymentStatus") PaymentStatus paymentStatus, @Param("therapistIds") Collection<Long> therapistIds);
+
+    @Query("""
+    SELECT b.id AS bookingId, b.therapistId AS therapistId, t.name AS therapistName, t.timezone AS therapistTimezone,
+           b.clientId AS clientId, c.name AS clientName, c.timeZone AS clientTimezone,
+           b.sessionStartTime AS sessionStartTime, b.category AS category, b.connectMethod AS connectMethod,
+           b.therapistMeetLink AS therapistMeetLink
+    FROM Booking b
+    LEFT JOIN TherapistProfile t ON t.id = b.therapistId
+    LEFT JOIN ClientProfile c ON c.id = b.clientId
+    WHERE b.paymentStatus = :paymentStatus AND b.clientId IN :clientIds
+    ORDER BY b.id
+    """)
+    List<AdminSessionRowDTO> findSessionRowsByClientIds(@Param("paymentStatus") PaymentStatus paymentStatus, @Param("clientIds") Collection<Long> clientIds);
+
+    // Counters for the admin overview pages. Sessions are 1 hour long, so a session is completed when it started before (now - 1 hour)
+    @Query("""
+    SELECT b.therapistId AS ownerId,
+           SUM(CASE WHEN b.sessionStartTime > :now THEN 1 ELSE 0 END) AS futureSessions,
+           SUM(CASE WHEN b.sessionStartTime < :completedBefore THEN 1 ELSE 0 END) AS completedSessions
+    FROM Booking b
+    WHERE b.paymentStatus = :paymentStatus AND b.therapistId IN :therapistIds
+    GROUP BY b.therapistId
+    """)
+    List<SessionCountDTO> countSessionsGroupByTherapist(@Param("paymentStatus") PaymentStatus paymentStatus, @Param("therapistIds") Collection<Long> therapistIds, @Param("now") Instant now, @Param("completedBefore") Instant completedBefore);
+
+    @Query("""
+    SELECT b.clientId AS ownerId,
+           SUM(CASE WHEN b.sessionStartTime > :now THEN 1 ELSE 0 END) AS futureSessions,
+           SUM(CASE WHEN b.sessionStartTime < :completedBefore THEN 1 ELSE 0 END) AS completedSessions
+    FROM Booking b
+    WHERE b.paymentStatus = :paymentStatus AND b.clientId IN :clientIds
+    GROUP BY b.clientId
+    """)
+    List<SessionCountDTO> countSessionsGroupByClient(@Param("paymentStatus") PaymentStatus paymentStatus, @Param("clientIds") Collection<Long> clientIds, @Param("now") Instant now, @Param("completedBefore") Instant completedBefore);
 }
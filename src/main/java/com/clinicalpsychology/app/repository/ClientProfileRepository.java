@@ -1,6 +1,10 @@
 package com.clinicalpsychology.app.repository;
 
 import com.clinicalpsychology.app.model.ClientProfile;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.Optional;
@@ -13,4 +17,7 @@ public interface ClientProfileRepository extends JpaRepository<ClientProfile, Lo
     Optional<ClientProfile> findByEmail(String emailId);
 
     boolean existsByIdAndEmail(Long clientId, String email);
+
+    // Keyset scrolling for the admin lists, see KeysetPagination
+    Window<ClientProfile> findAllBy(ScrollPosition position, Sort sort, Limit limit);
 }
@@ -0,0 +1,59 @@
+package com.clinicalpsychology.app.repository;
+
+import com.clinicalpsychology.app.enums.EmailOutboxStatus;
+import com.clinicalpsychology.app.model.EmailOutboxMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    // 0 when a mail with this idempotency key is already in the outbox. A null key never conflicts (NULLs are distinct in a unique index)
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO email_outbox (recipient, subject, text_body, html_body, idempotency_key, status, attempts, next_attempt_at, created_at, updated_at, is_active) " +
+            "VALUES (:recipient, :subject, :textBody, :htmlBody, :idempotencyKey, 'PENDING', 0, :now, :now, :now, true) ON CONFLICT (idempotency_key) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("recipient") String recipient, @Param("subject") String subject, @Param("textBody") String textBody,
+                       @Param("htmlBody") String htmlBody, @Param("idempotencyKey") String idempotencyKey, @Param("now") Instant now);
+
+    // Claims up to :batchSize due mails (and SENDING ones whose dispatcher died) for one batch, oldest first.
+    // SKIP LOCKED, so parallel dispatchers and instances each get different mails
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE email_outbox SET status = 'SENDING', claim_token = :claimToken, locked_until = :lockedUntil, updated_at = :now WHERE id IN " +
+            "(SELECT id FROM email_outbox WHERE (status = 'PENDING' AND next_attempt_at <= :now) OR (status = 'SENDING' AND locked_until < :now) " +
+            "ORDER BY id LIMIT :batchSize FOR UPDATE SKIP LOCKED)", nativeQuery = true)
+    int claimBatch(@Param("claimToken") String claimToken, @Param("now") Instant now, @Param("lockedUntil") Instant lockedUntil, @Param("batchSize") int batchSize);
+
+    List<EmailOutboxMessage> findByClaimTokenOrderById(String claimToken);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutboxMessage m SET m.status = :status, m.attempts = :attempts, m.nextAttemptAt = :nextAttemptAt, m.lockedUntil = null, m.claimToken = null, " +
+            "m.sentAt = :sentAt, m.lastError = :lastError, m.updatedAt = :now WHERE m.id = :id")
+    int complete(@Param("id") Long id, @Param("status") EmailOutboxStatus status, @Param("attempts") int attempts, @Param("nextAttemptAt") Instant nextAttemptAt,
+                 @Param("sentAt") Instant sentAt, @Param("lastError") String lastError, @Param("now") Instant now);
+
+    // Gave up on the mail. The key is released, so a caller that runs again (e.g. a webhook replayed after the address was fixed) can queue it anew
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutboxMessage m SET m.status = :failed, m.attempts = :attempts, m.lockedUntil = null, m.claimToken = null, m.idempotencyKey = null, " +
+            "m.lastError = :lastError, m.updatedAt = :now WHERE m.id = :id")
+    int fail(@Param("id") Long id, @Param("failed") EmailOutboxStatus failed, @Param("attempts") int attempts, @Param("lastError") String lastError, @Param("now") Instant now);
+
+    long countByStatusIn(Collection<EmailOutboxStatus> statuses);
+
+    EmailOutboxMessage findFirstByStatusInOrderByCreatedAtAsc(Collection<EmailOutboxStatus> statuses);
+
+    // Sent and failed mails are only kept for the retention window (also the idempotency window)
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM EmailOutboxMessage m WHERE m.status IN :finished AND m.updatedAt < :cutoff")
+    int deleteFinishedBefore(@Param("cutoff") Instant cutoff, @Param("finished") Collection<EmailOutboxStatus> finished);
+}
@@ -1,10 +1,15 @@
 package com.clinicalpsychology.app.repository;
 
+import com.clinicalpsychology.app.dto.SlotTimeDTO;
 import com.clinicalpsychology.app.model.FixedTimeSlotNew;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 
 public interface FixedTimeSlotNewRepository extends JpaRepository<FixedTimeSlotNew, Long> {
     List<FixedTimeSlotNew> findByTherapistId(Long therapistId);
+
+    @Query("SELECT s.id AS slotId, s.therapist.id AS therapistId, s.timeStart AS timeStart FROM FixedTimeSlotNew s")
+    List<SlotTimeDTO> findAllSlotTimes();
 }
@@ -0,0 +1,51 @@
+package com.clinicalpsychology.app.repository;
+
+import com.clinicalpsychology.app.enums.MeetingJobStatus;
+import com.clinicalpsychology.app.model.MeetingProvisioningJob;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface MeetingProvisioningJobRepository extends JpaRepository<MeetingProvisioningJob, Long> {
+
+    // 0 when the booking already has a job. save() would merge over the existing row instead
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO meeting_provisioning_jobs (booking_id, status, attempts, next_attempt_at, created_at, updated_at, is_active) " +
+            "VALUES (:bookingId, 'PENDING', 0, :now, :now, :now, true) ON CONFLICT (booking_id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("bookingId") Long bookingId, @Param("now") Instant now);
+
+    // Due jobs and PROCESSING jobs whose worker died, oldest first
+    @Query("SELECT j FROM MeetingProvisioningJob j WHERE (j.status = :pending AND j.nextAttemptAt <= :now) OR (j.status = :processing AND j.lockedUntil < :now) ORDER BY j.nextAttemptAt")
+    List<MeetingProvisioningJob> findDue(@Param("now") Instant now, @Param("pending") MeetingJobStatus pending, @Param("processing") MeetingJobStatus processing, Limit limit);
+
+    // 1 when this worker got the job, 0 when another worker / instance has it or it is already done
+    @Transactional
+    @Modifying
+    @Query("UPDATE MeetingProvisioningJob j SET j.status = :processing, j.lockedUntil = :lockedUntil, j.updatedAt = :now " +
+            "WHERE j.bookingId = :bookingId AND ((j.status = :pending AND j.nextAttemptAt <= :now) OR (j.status = :processing AND j.lockedUntil < :now))")
+    int claim(@Param("bookingId") Long bookingId, @Param("now") Instant now, @Param("lockedUntil") Instant lockedUntil,
+              @Param("pending") MeetingJobStatus pending, @Param("processing") MeetingJobStatus processing);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE MeetingProvisioningJob j SET j.status = :status, j.attempts = :attempts, j.nextAttemptAt = :nextAttemptAt, j.lockedUntil = null, " +
+            "j.completedAt = :completedAt, j.lastError = :lastError, j.updatedAt = :now WHERE j.bookingId = :bookingId")
+    int complete(@Param("bookingId") Long bookingId, @Param("status") MeetingJobStatus status, @Param("attempts") int attempts, @Param("nextAttemptAt") Instant nextAttemptAt,
+                 @Param("completedAt") Instant completedAt, @Param("lastError") String lastError, @Param("now") Instant now);
+
+    // Rate limited: back to PENDING without counting an attempt
+    @Transactional
+    @Modifying
+    @Query("UPDATE MeetingProvisioningJob j SET j.status = :pending, j.nextAttemptAt = :nextAttemptAt, j.lockedUntil = null, j.updatedAt = :now WHERE j.bookingId = :bookingId")
+    int postpone(@Param("bookingId") Long bookingId, @Param("nextAttemptAt") Instant nextAttemptAt, @Param("pending") MeetingJobStatus pending, @Param("now") Instant now);
+
+    long countByStatusIn(Collection<MeetingJobStatus> statuses);
+}
@@ -0,0 +1,52 @@
+package com.clinicalpsychology.app.repository;
+
+import com.clinicalpsychology.app.model.PooledMeeting;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface PooledMeetingRepository extends JpaRepository<PooledMeeting, Long> {
+
+    // Hands the oldest free meeting to the booking. SKIP LOCKED, so concurrent bookings each get a different one without waiting.
+    // 0 when the pool is empty
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE pooled_meetings SET booking_id = :bookingId, assigned_at = :now, updated_at = :now WHERE id = " +
+            "(SELECT id FROM pooled_meetings WHERE provider = :provider AND booking_id IS NULL AND retired_at IS NULL ORDER BY id LIMIT 1 FOR UPDATE SKIP LOCKED)", nativeQuery = true)
+    int assignFree(@Param("provider") String provider, @Param("bookingId") Long bookingId, @Param("now") Instant now);
+
+    Optional<PooledMeeting> findByBookingId(Long bookingId);
+
+    long countByProviderAndBookingIdIsNullAndRetiredAtIsNull(String provider);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PooledMeeting m SET m.sessionStart = :sessionStart, m.sessionEnd = :sessionEnd, m.updatedAt = :now WHERE m.id = :id")
+    int markScheduled(@Param("id") Long id, @Param("sessionStart") Instant sessionStart, @Param("sessionEnd") Instant sessionEnd, @Param("now") Instant now);
+
+    // Free meetings made before createdBefore, or of another provider, stop being handed out. Rows assignFree has locked are
+    // skipped by it, so a meeting is never both handed out and retired
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE pooled_meetings SET retired_at = :now, updated_at = :now WHERE booking_id IS NULL AND retired_at IS NULL " +
+            "AND (created_at < :createdBefore OR provider <> :activeProvider)", nativeQuery = true)
+    int retireFree(@Param("activeProvider") String activeProvider, @Param("createdBefore") Instant createdBefore, @Param("now") Instant now);
+
+    // Meetings to delete at the provider: retired ones and those whose session ended before endedBefore
+    @Query("SELECT m FROM PooledMeeting m WHERE m.deletedAt IS NULL AND m.provider IN :providers " +
+            "AND (m.retiredAt IS NOT NULL OR m.sessionEnd < :endedBefore) ORDER BY m.id")
+    List<PooledMeeting> findDeletable(@Param("providers") Collection<String> providers, @Param("endedBefore") Instant endedBefore, Limit limit);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PooledMeeting m SET m.deletedAt = :now, m.updatedAt = :now WHERE m.id = :id")
+    int markDeleted(@Param("id") Long id, @Param("now") Instant now);
+}
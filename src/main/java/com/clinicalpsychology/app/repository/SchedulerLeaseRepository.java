@@ -0,0 +1,21 @@
+package com.clinicalpsychology.app.repository;
+
+import com.clinicalpsychology.app.model.SchedulerLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLease, String> {
+
+    // 1 when the lease is ours (new, expired, or already ours and renewed), 0 while another instance holds it
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO scheduler_leases (name, owner, leased_until, created_at, updated_at, is_active) VALUES (:name, :owner, :leasedUntil, :now, :now, true) " +
+            "ON CONFLICT (name) DO UPDATE SET owner = EXCLUDED.owner, leased_until = EXCLUDED.leased_until, updated_at = EXCLUDED.updated_at " +
+            "WHERE scheduler_leases.leased_until < :now OR scheduler_leases.owner = :owner", nativeQuery = true)
+    int tryAcquire(@Param("name") String name, @Param("owner") String owner, @Param("now") Instant now, @Param("leasedUntil") Instant leasedUntil);
+}
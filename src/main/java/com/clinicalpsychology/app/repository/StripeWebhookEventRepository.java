@@ -0,0 +1,57 @@
+package com.clinicalpsychology.app.repository;
+
+import com.clinicalpsychology.app.enums.WebhookEventStatus;
+import com.clinicalpsychology.app.model.StripeWebhookEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface StripeWebhookEventRepository extends JpaRepository<StripeWebhookEvent, String> {
+
+    // 0 when Stripe already delivered this event. save() would merge over the existing row instead
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO stripe_webhook_events (id, event_type, purchase_type, ordering_key, payload, status, attempts, next_attempt_at, created_at, updated_at, is_active) " +
+            "VALUES (:id, :eventType, :purchaseType, :orderingKey, :payload, 'PENDING', 0, :now, :now, :now, true) ON CONFLICT (id) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("id") String id, @Param("eventType") String eventType, @Param("purchaseType") String purchaseType,
+                       @Param("orderingKey") String orderingKey, @Param("payload") String payload, @Param("now") Instant now);
+
+    // Due retries and PROCESSING rows whose worker died, oldest first
+    @Query("SELECT e FROM StripeWebhookEvent e WHERE (e.status = :pending AND e.nextAttemptAt <= :now) OR (e.status = :processing AND e.lockedUntil < :now) ORDER BY e.createdAt")
+    List<StripeWebhookEvent> findDue(@Param("now") Instant now, @Param("pending") WebhookEventStatus pending, @Param("processing") WebhookEventStatus processing, Limit limit);
+
+    // 1 when this worker got the event, 0 when another worker / instance has it or it is already done
+    @Transactional
+    @Modifying
+    @Query("UPDATE StripeWebhookEvent e SET e.status = :processing, e.lockedUntil = :lockedUntil, e.updatedAt = :now " +
+            "WHERE e.id = :id AND ((e.status = :pending AND e.nextAttemptAt <= :now) OR (e.status = :processing AND e.lockedUntil < :now))")
+    int claim(@Param("id") String id, @Param("now") Instant now, @Param("lockedUntil") Instant lockedUntil,
+              @Param("pending") WebhookEventStatus pending, @Param("processing") WebhookEventStatus processing);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE StripeWebhookEvent e SET e.status = :status, e.attempts = :attempts, e.nextAttemptAt = :nextAttemptAt, e.lockedUntil = null, " +
+            "e.processedAt = :processedAt, e.lastError = :lastError, e.updatedAt = :now WHERE e.id = :id")
+    int complete(@Param("id") String id, @Param("status") WebhookEventStatus status, @Param("attempts") int attempts, @Param("nextAttemptAt") Instant nextAttemptAt,
+                 @Param("processedAt") Instant processedAt, @Param("lastError") String lastError, @Param("now") Instant now);
+
+    // An older event of the same booking is not done yet, so this one has to wait
+    boolean existsByOrderingKeyAndStatusInAndCreatedAtBefore(String orderingKey, Collection<WebhookEventStatus> statuses, Instant createdAt);
+
+    long countByStatusIn(Collection<WebhookEventStatus> statuses);
+
+    StripeWebhookEvent findFirstByStatusInOrderByCreatedAtAsc(Collection<WebhookEventStatus> statuses);
+
+    // Processed rows are only kept for the de-duplication window, Stripe stops redelivering after 3 days
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM StripeWebhookEvent e WHERE e.status = :processed AND e.processedAt < :cutoff")
+    int deleteProcessedBefore(@Param("cutoff") Instant cutoff, @Param("processed") WebhookEventStatus processed);
+}
@@ -1,8 +1,13 @@
 package com.clinicalpsychology.app.repository;
 
+import com.clinicalpsychology.app.dto.TherapistSearchRowDTO;
 import com.clinicalpsychology.app.enums.AccountStatus;
 import com.clinicalpsychology.app.enums.ApprovalStatus;
 import com.clinicalpsychology.app.model.TherapistProfile;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -26,22 +31,87 @@ public interface TherapistProfileRepository extends JpaRepository<TherapistProfi
 
     boolean existsByIdAndEmail(Long id, String email);
 
-    // We are checking the null at last because of a reason. See it in docs
-    @Query("""
-    SELECT DISTINCT t FROM TherapistProfile t 
-    JOIN t.categories c 
-    WHERE 
-        (LOWER(t.name) LIKE LOWER(CONCAT('%', :name, '%')) OR :name IS NULL) AND 
-        (LOWER(t.location) LIKE LOWER(CONCAT('%', :location, '%')) OR :location IS NULL) AND 
-        (t.amount >= :minPrice OR :minPrice IS NULL) AND 
-        (t.amount <= :maxPrice OR :maxPrice IS NULL) AND 
-        (LOWER(c) LIKE LOWER(CONCAT('%', :category, '%')) OR :category IS NULL)
-    """)
-    List<TherapistProfile> searchTherapists(
+    // Native because of the pg_trgm / full text operators. The LIKE filters are served by the trigram GIN indexes
+    // created in TherapistSearchIndexInitializer, categories come from the denormalised search_categories column, so no join and no DISTINCT.
+    // Params are cast to text because hibernate 6 binds null params as bytea (see therapist-search-query-case-study.md).
+    // search_categories <> '' keeps the old inner join semantics: a therapist without any category is never a search result
+    String SEARCH_FILTER = """
+        FROM therapist_profile t
+        WHERE
+            t.approval_status = 'ACCEPTED' AND t.account_status = 'ACTIVE' AND
+            t.search_categories <> '' AND
+            (CAST(:name AS text) IS NULL OR lower(t.name) LIKE '%' || lower(CAST(:name AS text)) || '%') AND
+            (CAST(:location AS text) IS NULL OR lower(t.location) LIKE '%' || lower(CAST(:location AS text)) || '%') AND
+            (CAST(:minPrice AS float8) IS NULL OR t.amount >= CAST(:minPrice AS float8)) AND
+            (CAST(:maxPrice AS float8) IS NULL OR t.amount <= CAST(:maxPrice AS float8)) AND
+            (CAST(:category AS text) IS NULL OR t.search_categories LIKE '%' || lower(CAST(:category AS text)) || '%') AND
+            (CAST(:q AS text) IS NULL
+                OR to_tsvector('simple', coalesce(t.search_document, '')) @@ plainto_tsquery('simple', CAST(:q AS text))
+                OR t.search_document % lower(CAST(:q AS text)))
+        """;
+
+    // Only the columns the listing renders, with categories and languages aggregated in the same query (no lazy loads per row).
+    // Aliases are quoted so postgres keeps the camel case the projection getters expect.
+    // array_agg rather than a joined string, so a category or language containing the separator comes back intact
+    String SEARCH_ROW_COLUMNS = """
+        SELECT t.id AS "therapistId", t.name AS "name", t.profile_url AS "profileUrl", t.amount AS "amount",
+            t.location AS "location", t.summary AS "summary",
+            (SELECT array_agg(c.category) FROM therapist_profile_categories c WHERE c.therapist_profile_id = t.id) AS "categories",
+            (SELECT array_agg(l.language) FROM therapist_profile_languages l WHERE l.therapist_profile_id = t.id) AS "languages"
+        """;
+
+    @Query(value = SEARCH_ROW_COLUMNS + SEARCH_FILTER + """
+        ORDER BY
+            coalesce(ts_rank(to_tsvector('simple', coalesce(t.search_document, '')), plainto_tsquery('simple', coalesce(CAST(:q AS text), ''))), 0)
+            + similarity(lower(t.name), lower(coalesce(CAST(:name AS text), CAST(:q AS text), ''))) DESC,
+            t.id
+        LIMIT :limit OFFSET :offset
+        """, nativeQuery = true)
+    List<TherapistSearchRowDTO> searchTherapists(
+            @Param("name") String name,
+            @Param("location") String location,
+            @Param("minPrice") Double minPrice,
+            @Param("maxPrice") Double maxPrice,
+            @Param("category") String category,
+            @Param("q") String q,
+            @Param("limit") int limit,
+            @Param("offset") long offset);
+
+    @Query(value = "SELECT count(*) " + SEARCH_FILTER, nativeQuery = true)
+    long countSearchTherapists(
             @Param("name") String name,
             @Param("location") String location,
             @Param("minPrice") Double minPrice,
             @Param("maxPrice") Double maxPrice,
-            @Param("category") String category);
+            @Param("category") String category,
+            @Param("q") String q);
+
+    // All matching ids, used for the facet counts when there is a free text q
+    @Query(value = "SELECT t.id " + SEARCH_FILTER, nativeQuery = true)
+    List<Long> searchTherapistIds(
+            @Param("name") String name,
+            @Param("location") String location,
+            @Param("minPrice") Double minPrice,
+            @Param("maxPrice") Double maxPrice,
+            @Param("category") String category,
+            @Param("q") String q);
+
+    // Every approved + active therapist in id order, for the directory cache
+    @Query(value = SEARCH_ROW_COLUMNS + """
+        FROM therapist_profile t
+        WHERE t.approval_status = 'ACCEPTED' AND t.account_status = 'ACTIVE'
+        ORDER BY t.id
+        """, nativeQuery = true)
+    List<TherapistSearchRowDTO> findDirectoryRows();
+
+    // Empty when the therapist is not approved + active (any more)
+    @Query(value = SEARCH_ROW_COLUMNS + """
+        FROM therapist_profile t
+        WHERE t.id = :id AND t.approval_status = 'ACCEPTED' AND t.account_status = 'ACTIVE'
+        """, nativeQuery = true)
+    Optional<TherapistSearchRowDTO> findDirectoryRow(@Param("id") Long id);
+
+    // Keyset scrolling for the admin lists, see KeysetPagination
+    Window<TherapistProfile> findAllBy(ScrollPosition position, Sort sort, Limit limit);
 
 }
@@ -0,0 +1,213 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.AdminDashboardDTO;
+import com.clinicalpsychology.app.dto.TherapistProfileDTO;
+import com.clinicalpsychology.app.enums.ApprovalStatus;
+import com.clinicalpsychology.app.event.ClientRegisteredEvent;
+import com.clinicalpsychology.app.event.TherapistProfileChangedEvent;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.ClientProfileRepository;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Keeps the admin dashboard numbers in memory so the dashboard api doesn't run count(*) queries on every hit.
+// Counters are loaded once on startup, then moved by the profile events, and recounted from the db every 10 minutes
+// so any drift (seeders, manual db edits, a missed event) heals itself.
+// All numbers and the pending list live in one immutable Counters swapped as a whole, so a snapshot never mixes two states
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdminDashboardCounterService {
+
+    // A recount that keeps losing the race against events gives up and publishes what it read, the next reconcile fixes it
+    private static final int RECOUNT_ATTEMPTS = 3;
+
+    private final TherapistProfileRepository therapistProfileRepository;
+    private final ClientProfileRepository clientProfileRepository;
+
+    private final AtomicReference<Counters> counters = new AtomicReference<>(Counters.EMPTY);
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void load() {
+        recount();
+    }
+
+    @Scheduled(initialDelay = 10 * 60 * 1000, fixedRate = 10 * 60 * 1000)
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void reconcile() {
+        recount();
+    }
+
+    public AdminDashboardDTO snapshot() {
+
+        Counters current = counters.get();
+
+        return AdminDashboardDTO.builder()
+                .noOfTherapistApproved(current.therapists(ApprovalStatus.ACCEPTED))
+                .noOfTherapistNotApproved(current.therapists(ApprovalStatus.PENDING))
+                .noOfClients(current.clients())
+                .therapistProfileDTOS(new ArrayList<>(current.pending().values()))
+                .build();
+    }
+
+    // REQUIRES_NEW because the publishing transaction is already committed when this runs
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onTherapistChanged(TherapistProfileChangedEvent event) {
+
+        Long therapistId = event.getTherapistId();
+
+        switch (event.getChangeType()) {
+            case REGISTERED -> {
+                TherapistProfileDTO pending = loadPending(therapistId);
+                counters.updateAndGet(current -> current.moved(null, event.getApprovalStatus()).withPending(therapistId, pending));
+            }
+            case UPDATED -> {
+                if (counters.get().pending().containsKey(therapistId)) {
+                    TherapistProfileDTO pending = loadPending(therapistId);
+                    counters.updateAndGet(current -> current.withPending(therapistId, pending));
+                }
+            }
+            case APPROVAL_CHANGED -> {
+                TherapistProfileDTO pending = loadPending(therapistId);
+                counters.updateAndGet(current -> (event.getPreviousApprovalStatus() != event.getApprovalStatus()
+                        ? current.moved(event.getPreviousApprovalStatus(), event.getApprovalStatus()) : current)
+                        .withPending(therapistId, pending));
+            }
+            case DELETED -> counters.updateAndGet(current -> current.moved(event.getPreviousApprovalStatus(), null).withPending(therapistId, null));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onClientRegistered(ClientRegisteredEvent event) {
+        counters.updateAndGet(Counters::withClient);
+    }
+
+    // The reads run in one repeatable-read snapshot. If an event moved the counters meanwhile the swap fails and we read again,
+    // otherwise that event would be lost (applied to the old state) or counted twice (already in the rows we read)
+    private void recount() {
+
+        for (int attempt = 1; ; attempt++) {
+
+            Counters before = counters.get();
+            Counters fresh = read();
+
+            if (counters.compareAndSet(before, fresh) || attempt == RECOUNT_ATTEMPTS) {
+                counters.set(fresh);
+                log.info("Admin dashboard counters loaded: {} approved, {} pending, {} clients",
+                        fresh.therapists(ApprovalStatus.ACCEPTED), fresh.therapists(ApprovalStatus.PENDING), fresh.clients());
+                return;
+            }
+        }
+    }
+
+    private Counters read() {
+
+        Map<ApprovalStatus, Long> therapists = new EnumMap<>(ApprovalStatus.class);
+        for (ApprovalStatus status : ApprovalStatus.values()) {
+            therapists.put(status, therapistProfileRepository.countByApprovalStatus(status));
+        }
+
+        SortedMap<Long, TherapistProfileDTO> pending = new TreeMap<>();
+        therapistProfileRepository.findByApprovalStatus(ApprovalStatus.PENDING)
+                .forEach(therapist -> pending.put(therapist.getId(), toPendingTherapistDTO(therapist)));
+
+        return new Counters(Collections.unmodifiableMap(therapists), clientProfileRepository.count(), Collections.unmodifiableSortedMap(pending));
+    }
+
+    // null when the therapist is gone or no longer pending
+    private TherapistProfileDTO loadPending(Long therapistId) {
+        return therapistProfileRepository.findById(therapistId)
+                .filter(therapist -> therapist.getApprovalStatus() == ApprovalStatus.PENDING)
+                .map(this::toPendingTherapistDTO)
+                .orElse(null);
+    }
+
+    // pending is sorted by therapist id, so the dashboard shows pending therapists in the same order as before
+    record Counters(Map<ApprovalStatus, Long> therapists, long clients, SortedMap<Long, TherapistProfileDTO> pending) {
+
+        static final Counters EMPTY = new Counters(Map.of(), 0, Collections.emptySortedMap());
+
+        long therapists(ApprovalStatus status) {
+            return therapists.getOrDefault(status, 0L);
+        }
+
+        // One therapist moved from one status to another, null for registered / deleted
+        Counters moved(ApprovalStatus from, ApprovalStatus to) {
+            Map<ApprovalStatus, Long> moved = new EnumMap<>(ApprovalStatus.class);
+            moved.putAll(therapists);
+            if (from != null) {
+                moved.merge(from, -1L, Long::sum);
+            }
+            if (to != null) {
+                moved.merge(to, 1L, Long::sum);
+            }
+            return new Counters(Collections.unmodifiableMap(moved), clients, pending);
+        }
+
+        Counters withClient() {
+            return new Counters(therapists, clients + 1, pending);
+        }
+
+        // dto null removes the therapist from the pending list
+        Counters withPending(Long therapistId, TherapistProfileDTO dto) {
+            if (dto == null && !pending.containsKey(therapistId)) {
+                return this;
+            }
+            SortedMap<Long, TherapistProfileDTO> changed = new TreeMap<>(pending);
+            if (dto == null) {
+                changed.remove(therapistId);
+            } else {
+                changed.put(therapistId, dto);
+            }
+            return new Counters(therapists, clients, Collections.unmodifiableSortedMap(changed));
+        }
+    }
+
+    private TherapistProfileDTO toPendingTherapistDTO(TherapistProfile therapistProfile) {
+
+        List<String> timeslots = therapistProfile.getTimeSlots().stream()
+                .map(timeSlot -> timeSlot.getTimeStart().atZone(ZoneId.of(therapistProfile.getTimezone())).toLocalTime().toString())
+                .toList();
+
+        return TherapistProfileDTO.builder()
+                .therapistId(therapistProfile.getId())
+                .name(therapistProfile.getName())
+                .phone(therapistProfile.getPhone())
+                .email(therapistProfile.getEmail())
+                .linkedinUrl(therapistProfile.getLinkedinUrl())
+                .profileUrl(therapistProfile.getProfileUrl())
+                .resumeUrl(therapistProfile.getResumeUrl())
+                .yearsOfExperience(therapistProfile.getYearsOfExperience())
+                .categories(therapistProfile.getCategories() != null ? new ArrayList<>(therapistProfile.getCategories()) : null)
+                .summary(therapistProfile.getSummary())
+                .amount(therapistProfile.getAmount())
+                .terms(therapistProfile.getTerms())
+                .termsAndConditions(therapistProfile.getTermsAndConditions())
+                .timezone(therapistProfile.getTimezone())
+                .accountStatus(therapistProfile.getAccountStatus())
+                .approvalStatus(therapistProfile.getApprovalStatus())
+                .timeSlots(timeslots)
+                .build();
+    }
+}
@@ -1,20 +1,27 @@
 package com.clinicalpsychology.app.service;
 
 import com.clinicalpsychology.app.dto.*;
+import com.clinicalpsychology.app.email.EmailTemplateId;
+import com.clinicalpsychology.app.email.EmailTemplates;
 import com.clinicalpsychology.app.enums.AccountStatus;
 import com.clinicalpsychology.app.enums.ApprovalStatus;
 import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.enums.ProfileChangeType;
+import com.clinicalpsychology.app.event.TherapistProfileChangedEvent;
 import com.clinicalpsychology.app.exception.InvalidFieldValueException;
 import com.clinicalpsychology.app.exception.ResourceNotFoundException;
 import com.clinicalpsychology.app.exception.UnexpectedServerException;
-import com.clinicalpsychology.app.model.Booking;
 import com.clinicalpsychology.app.model.ClientProfile;
 import com.clinicalpsychology.app.model.TherapistProfile;
 import com.clinicalpsychology.app.repository.BookingRepository;
 import com.clinicalpsychology.app.repository.ClientProfileRepository;
 import com.clinicalpsychology.app.repository.TherapistProfileRepository;
 import com.clinicalpsychology.app.response.CommonResponse;
+import com.clinicalpsychology.app.util.KeysetPagination;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
@@ -23,6 +30,9 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.clinicalpsychology.app.util.Constant.*;
 
@@ -34,29 +44,20 @@ public class AdminService {
     private final ClientProfileRepository clientProfileRepository;
     private final BookingRepository bookingRepository;
     private final EmailService emailService;
+    private final EmailTemplates emailTemplates;
+    private final AdminDashboardCounterService adminDashboardCounterService;
+    private final ApplicationEventPublisher eventPublisher;
 
 
     // wanna add no of therapists active? inactive?
+    // Served from AdminDashboardCounterService, no db calls here
     public CommonResponse<AdminDashboardDTO> getAdminDashboardDetails() throws UnexpectedServerException {
 
         try {
 
-            Long therapistApprovedCount = therapistProfileRepository.countByApprovalStatus(ApprovalStatus.ACCEPTED);
-            Long therapistNotApprovedCount = therapistProfileRepository.countByApprovalStatus(ApprovalStatus.PENDING);
+            var adminDashboard = adminDashboardCounterService.snapshot();
 
-            Long noOfClient = clientProfileRepository.count();
-
-            // Can use findAllByApprovalStatus too, both works
-            List<TherapistProfile> therapistProfiles = therapistProfileRepository.findByApprovalStatus(ApprovalStatus.PENDING);
-
-            if (therapistProfiles.isEmpty()) {
-
-                var adminDashboard = AdminDashboardDTO.builder()
-                        .noOfTherapistApproved(therapistApprovedCount)
-                        .noOfTherapistNotApproved(therapistNotApprovedCount)
-                        .noOfClients(noOfClient)
-                        .therapistProfileDTOS(List.of())
-                        .build();
+            if (adminDashboard.getTherapistProfileDTOS().isEmpty()) {
 
                 return CommonResponse.<AdminDashboardDTO>builder()
                         .status(STATUS_FALSE)
@@ -66,42 +67,6 @@ public class AdminService {
                         .build();
             }
 
-            List<TherapistProfileDTO> therapistProfileDTOS = therapistProfiles.stream()
-                    .map(therapistProfile -> {
-
-                        List<String> timeslots = therapistProfile.getTimeSlots().stream()
-                                .map(timeSlot -> timeSlot.getTimeStart().atZone(ZoneId.of(therapistProfile.getTimezone())).toLocalTime().toString())
-                                .toList();
-
-                        return TherapistProfileDTO.builder()
-                                .therapistId(therapistProfile.getId())
-                                .name(therapistProfile.getName())
-                                .phone(therapistProfile.getPhone())
-                                .email(therapistProfile.getEmail())
-                                .linkedinUrl(therapistProfile.getLinkedinUrl())
-                                .profileUrl(therapistProfile.getProfileUrl())
-                                .resumeUrl(therapistProfile.getResumeUrl())
-                                .yearsOfExperience(therapistProfile.getYearsOfExperience())
-                                .categories(therapistProfile.getCategories())
-                                .summary(therapistProfile.getSummary())
-                                .amount(therapistProfile.getAmount())
-                                .terms(therapistProfile.getTerms())
-                                .termsAndConditions(therapistProfile.getTermsAndConditions())
-                                .timezone(therapistProfile.getTimezone())
-                                .accountStatus(therapistProfile.getAccountStatus())
-                                .approvalStatus(therapistProfile.getApprovalStatus())
-                                .timeSlots(timeslots)
-                                .build();
-                    })
-                    .toList();
-
-            var adminDashboard = AdminDashboardDTO.builder()
-                    .noOfTherapistApproved(therapistApprovedCount)
-                    .noOfTherapistNotApproved(therapistNotApprovedCount)
-                    .noOfClients(noOfClient)
-                    .therapistProfileDTOS(therapistProfileDTOS)
-                    .build();
-
             return CommonResponse.<AdminDashboardDTO>builder()
                     .status(STATUS_TRUE)
                     .statusCode(SUCCESS_CODE)
@@ -115,19 +80,21 @@ public class AdminService {
 
     }
 
-    public CommonResponse<List<TherapistAppointmentsDTO>> getAllTherapistSessions() throws ResourceNotFoundException, UnexpectedServerException {
+    public CommonResponse<KeysetPageDTO<TherapistAppointmentsDTO>> getAllTherapistSessions(String cursor, Integer size, String sortBy, String direction) throws ResourceNotFoundException, UnexpectedServerException {
 
         try {
 
-            List<TherapistProfile> therapistProfiles = therapistProfileRepository.findAll();
+            Sort sort = KeysetPagination.sort(sortBy, direction);
+            Window<TherapistProfile> therapistPage = therapistProfileRepository.findAllBy(KeysetPagination.position(cursor, sort), sort, KeysetPagination.limit(size));
+            List<TherapistProfile> therapistProfiles = therapistPage.getContent();
 
             if (therapistProfiles.isEmpty()) {
 
-                return CommonResponse.<List<TherapistAppointmentsDTO>>builder()
+                return CommonResponse.<KeysetPageDTO<TherapistAppointmentsDTO>>builder()
                         .status(STATUS_FALSE)
                         .statusCode(SUCCESS_CODE)
                         .message(NO_THERAPIST_AVAILABLE)
-                        .data(List.of())
+                        .data(emptyPage())
                         .build();
             }
 
@@ -135,47 +102,39 @@ public class AdminService {
 
             Instant timeNow = Instant.now();
 
+            // All completed bookings with client and therapist names in one query, grouped here by therapist.
+            // Earlier we queried bookings per therapist and the client per booking, which was thousands of round trips
+            List<Long> therapistIds = therapistProfiles.stream().map(TherapistProfile::getId).toList();
+            Map<Long, List<AdminSessionRowDTO>> sessionsByTherapist = bookingRepository.findSessionRowsByTherapistIds(PaymentStatus.COMPLETED, therapistIds).stream()
+                    .collect(Collectors.groupingBy(AdminSessionRowDTO::getTherapistId));
+
             List<TherapistAppointmentsDTO> therapistAppointmentsDTOS = new ArrayList<>();
 
             for (TherapistProfile therapistProfile : therapistProfiles) {
 
-
-                List<Booking> bookings = bookingRepository.findByTherapistIdAndPaymentStatus(therapistProfile.getId(), PaymentStatus.COMPLETED);
+                ZoneId therapistZone = ZoneId.of(therapistProfile.getTimezone());
 
                 List<TherapistDashboardDTO> therapistDashboardDTOS = new ArrayList<>();
 
-                for (Booking booking : bookings) {
+                for (AdminSessionRowDTO row : sessionsByTherapist.getOrDefault(therapistProfile.getId(), List.of())) {
 
-                    String sessionTime = booking.getSessionStartTime().atZone(ZoneId.of(therapistProfile.getTimezone())).format(formatter);
-
-                    ClientProfile clientProfile = clientProfileRepository.findById(booking.getClientId()).orElseThrow(() -> new ResourceNotFoundException(CLIENT_NOT_FOUND_ID + booking.getClientId()));
-
-                    Instant sessionStartTime = booking.getSessionStartTime();
-                    Instant sessionEndTime = sessionStartTime.plus(Duration.ofMinutes(60));
-
-                    String status;
-                    if (timeNow.isBefore(sessionStartTime)) {
-                        status = "upcoming";
-                    } else if (timeNow.isAfter(sessionEndTime)) {
-                        status = "completed";
-                    } else {
-                        status = "ongoing";
+                    if (row.getClientName() == null) {
+                        throw new ResourceNotFoundException(CLIENT_NOT_FOUND_ID + row.getClientId());
                     }
 
                     var therapistDashboardDTO = TherapistDashboardDTO.builder()
-                            .sessionTime(sessionTime)
-                            .sessionName(booking.getCategory())
+                            .sessionTime(row.getSessionStartTime().atZone(therapistZone).format(formatter))
+                            .sessionName(row.getCategory())
                             .sessionDuration("1 Hr")
-                            .clientName(clientProfile.getName())
-                            .meetType(booking.getConnectMethod())
-                            .status(status)
-                            .therapistMeetLink(booking.getTherapistMeetLink())
-                            .bookingId(booking.getId())
+                            .clientName(row.getClientName())
+                            .meetType(row.getConnectMethod())
+                            .status(sessionStatus(row.getSessionStartTime(), timeNow))
+                            .therapistMeetLink(row.getTherapistMeetLink())
+                            .bookingId(row.getBookingId())
                             .build();
 
                     therapistDashboardDTOS.add(therapistDashboardDTO);
 
-
                 }
 
                 var therapistAppointmentsDto = TherapistAppointmentsDTO.builder()
@@ -188,33 +147,35 @@ public class AdminService {
 
             }
 
-            return CommonResponse.<List<TherapistAppointmentsDTO>>builder()
+            return CommonResponse.<KeysetPageDTO<TherapistAppointmentsDTO>>builder()
                     .status(STATUS_TRUE)
                     .statusCode(SUCCESS_CODE)
                     .message(LOADED_ALL_THERAPISTS_SESSIONS)
-                    .data(therapistAppointmentsDTOS)
+                    .data(toPage(therapistAppointmentsDTOS, therapistPage, sort))
                     .build();
 
-        } catch (ResourceNotFoundException e) {
+        } catch (ResourceNotFoundException | InvalidFieldValueException e) {
             throw e;
         } catch (Exception e) {
             throw new UnexpectedServerException(ERROR_LOADING_THERAPISTS_APPOINTMENTS + e.getMessage());
         }
     }
 
-    public CommonResponse<List<ClientAppointmentsDTO>> getAllClientSessions() throws ResourceNotFoundException, UnexpectedServerException {
+    public CommonResponse<KeysetPageDTO<ClientAppointmentsDTO>> getAllClientSessions(String cursor, Integer size, String sortBy, String direction) throws ResourceNotFoundException, UnexpectedServerException {
 
         try {
 
-            List<ClientProfile> clientProfiles = clientProfileRepository.findAll();
+            Sort sort = KeysetPagination.sort(sortBy, direction);
+            Window<ClientProfile> clientPage = clientProfileRepository.findAllBy(KeysetPagination.position(cursor, sort), sort, KeysetPagination.limit(size));
+            List<ClientProfile> clientProfiles = clientPage.getContent();
 
             if (clientProfiles.isEmpty()) {
 
-                return CommonResponse.<List<ClientAppointmentsDTO>>builder()
+                return CommonResponse.<KeysetPageDTO<ClientAppointmentsDTO>>builder()
                         .status(STATUS_FALSE)
                         .statusCode(SUCCESS_CODE)
                         .message(NO_CLIENTS_AVAILABLE)
-                        .data(List.of())
+                        .data(emptyPage())
                         .build();
             }
 
@@ -222,39 +183,31 @@ public class AdminService {
 
             var formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy hh:mm a");
 
+            // Same single join as the therapist sessions page, grouped by client this time
+            List<Long> clientIds = clientProfiles.stream().map(ClientProfile::getId).toList();
+            Map<Long, List<AdminSessionRowDTO>> sessionsByClient = bookingRepository.findSessionRowsByClientIds(PaymentStatus.COMPLETED, clientIds).stream()
+                    .collect(Collectors.groupingBy(AdminSessionRowDTO::getClientId));
+
             List<ClientAppointmentsDTO> clientAppointmentsDTOS = new ArrayList<>();
 
             for (ClientProfile clientProfile : clientProfiles) {
 
-                List<Booking> bookings = bookingRepository.findByClientIdAndPaymentStatus(clientProfile.getId(), PaymentStatus.COMPLETED);
+                ZoneId clientZone = ZoneId.of(clientProfile.getTimeZone());
 
                 List<ClientDashboardDTO> clientDashboardDTOS = new ArrayList<>();
 
-                for (Booking booking : bookings) {
-
-                    String sessionTime = booking.getSessionStartTime().atZone(ZoneId.of(clientProfile.getTimeZone())).format(formatter);
+                for (AdminSessionRowDTO row : sessionsByClient.getOrDefault(clientProfile.getId(), List.of())) {
 
-                    TherapistProfile therapistProfile = therapistProfileRepository.findById(booking.getTherapistId()).orElseThrow(() -> new ResourceNotFoundException(THERAPIST_NOT_FOUND_ID+ booking.getTherapistId()));
-
-                    Instant sessionStartTime = booking.getSessionStartTime();
-                    Instant sessionEndTime = sessionStartTime.plus(Duration.ofMinutes(60));
-
-                    String status;
-                    if (timeNow.isBefore(sessionStartTime)) {
-                        status = "upcoming";
-                    } else if (timeNow.isAfter(sessionEndTime)) {
-                        status = "completed";
-                    } else {
-                        status = "ongoing";
+                    if (row.getTherapistName() == null) {
+                        throw new ResourceNotFoundException(THERAPIST_NOT_FOUND_ID + row.getTherapistId());
                     }
 
                     var clientDashboardDto = ClientDashboardDTO.builder()
-                            .sessionTime(sessionTime)
-                            .status(status)
-                            .bookingId(booking.getId())
-                            .therapistName(therapistProfile.getName())
-                            .meetType(booking.getConnectMethod())
-                            .bookingId(booking.getId())
+                            .sessionTime(row.getSessionStartTime().atZone(clientZone).format(formatter))
+                            .status(sessionStatus(row.getSessionStartTime(), timeNow))
+                            .bookingId(row.getBookingId())
+                            .therapistName(row.getTherapistName())
+                            .meetType(row.getConnectMethod())
                             .build();
 
                     clientDashboardDTOS.add(clientDashboardDto);
@@ -270,14 +223,14 @@ public class AdminService {
 
             }
 
-            return CommonResponse.<List<ClientAppointmentsDTO>>builder()
+            return CommonResponse.<KeysetPageDTO<ClientAppointmentsDTO>>builder()
                     .status(STATUS_TRUE)
                     .statusCode(SUCCESS_CODE)
                     .message(LOADED_ALL_CLIENTS_SESSIONS)
-                    .data(clientAppointmentsDTOS)
+                    .data(toPage(clientAppointmentsDTOS, clientPage, sort))
                     .build();
 
-        } catch (ResourceNotFoundException e) {
+        } catch (ResourceNotFoundException | InvalidFieldValueException e) {
             throw e;
         } catch (Exception e) {
             throw new UnexpectedServerException(ERROR_LOADING_ALL_CLIENTS_SESSIONS + e.getMessage());
@@ -286,19 +239,52 @@ public class AdminService {
 
     }
 
-    public CommonResponse<List<TherapistOverviewDTO>> getTherapistsOverview() throws UnexpectedServerException {
+    private <T> KeysetPageDTO<T> toPage(List<T> items, Window<?> window, Sort sort) {
+        return KeysetPageDTO.<T>builder()
+                .items(items)
+                .nextCursor(KeysetPagination.nextCursor(window, sort))
+                .hasNext(window.hasNext())
+                .size(items.size())
+                .build();
+    }
+
+    private <T> KeysetPageDTO<T> emptyPage() {
+        return KeysetPageDTO.<T>builder()
+                .items(List.of())
+                .hasNext(false)
+                .size(0)
+                .build();
+    }
+
+    // Sessions are always 1 hour, so status is derived only from the start time
+    private String sessionStatus(Instant sessionStartTime, Instant timeNow) {
+
+        Instant sessionEndTime = sessionStartTime.plus(Duration.ofMinutes(60));
+
+        if (timeNow.isBefore(sessionStartTime)) {
+            return "upcoming";
+        } else if (timeNow.isAfter(sessionEndTime)) {
+            return "completed";
+        } else {
+            return "ongoing";
+        }
+    }
+
+    public CommonResponse<KeysetPageDTO<TherapistOverviewDTO>> getTherapistsOverview(String cursor, Integer size, String sortBy, String direction) throws UnexpectedServerException {
 
         try {
 
-            List<TherapistProfile> therapistProfiles = therapistProfileRepository.findAll();
+            Sort sort = KeysetPagination.sort(sortBy, direction);
+            Window<TherapistProfile> therapistPage = therapistProfileRepository.findAllBy(KeysetPagination.position(cursor, sort), sort, KeysetPagination.limit(size));
+            List<TherapistProfile> therapistProfiles = therapistPage.getContent();
 
             if (therapistProfiles.isEmpty()) {
 
-                return CommonResponse.<List<TherapistOverviewDTO>>builder()
+                return CommonResponse.<KeysetPageDTO<TherapistOverviewDTO>>builder()
                         .status(STATUS_FALSE)
                         .statusCode(SUCCESS_CODE)
                         .message(N0_THERAPIST_AVAILABLE)
-                        .data(List.of())
+                        .data(emptyPage())
                         .build();
             }
 
@@ -306,25 +292,17 @@ public class AdminService {
 
             var formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy");
 
+            // Counted with GROUP BY in the db, so we never load the booking history into memory
+            Map<Long, SessionCountDTO> sessionCounts = bookingRepository.countSessionsGroupByTherapist(PaymentStatus.COMPLETED, therapistProfiles.stream().map(TherapistProfile::getId).toList(), timeNow, timeNow.minus(Duration.ofMinutes(60))).stream()
+                    .collect(Collectors.toMap(SessionCountDTO::getOwnerId, Function.identity()));
+
             List<TherapistOverviewDTO> therapistOverviewDTOS = therapistProfiles.stream()
                     .map(therapistProfile -> {
 
-                        List<Booking> bookings = bookingRepository.findByTherapistIdAndPaymentStatus(therapistProfile.getId(), PaymentStatus.COMPLETED);
+                        SessionCountDTO counts = sessionCounts.get(therapistProfile.getId());
 
-                        // filter must return a boolean true or false
-                        Long futureSessions = bookings.stream()
-                                .filter(booking -> timeNow.isBefore(booking.getSessionStartTime()))
-                                .count();
-
-                        Long completedSessions = bookings.stream()
-                                .filter(booking -> {
-
-                                    Instant sessionStartTime = booking.getSessionStartTime();
-                                    Instant sessionEndTime = sessionStartTime.plus(Duration.ofMinutes(60));
-
-                                    return timeNow.isAfter(sessionEndTime);
-                                })
-                                .count();
+                        Long futureSessions = counts != null ? counts.getFutureSessions() : 0L;
+                        Long completedSessions = counts != null ? counts.getCompletedSessions() : 0L;
 
                         return TherapistOverviewDTO.builder()
                                 .therapistId(therapistProfile.getId())
@@ -340,13 +318,15 @@ public class AdminService {
                     })
                     .toList();
 
-            return CommonResponse.<List<TherapistOverviewDTO>>builder()
+            return CommonResponse.<KeysetPageDTO<TherapistOverviewDTO>>builder()
                     .status(STATUS_TRUE)
                     .statusCode(SUCCESS_CODE)
                     .message( LOADED_ALL_THERAPISTS_DETAILS)
-                    .data(therapistOverviewDTOS)
+                    .data(toPage(therapistOverviewDTOS, therapistPage, sort))
                     .build();
 
+        } catch (InvalidFieldValueException e) {
+            throw e;
         } catch (Exception e) {
             throw new UnexpectedServerException(ERROR_LOADING_THERAPISTS_DETAILS+ e.getMessage());
         }
@@ -354,19 +334,21 @@ public class AdminService {
 
     }
 
-    public CommonResponse<List<ClientOverviewDTO>> getClientsOverview() throws UnexpectedServerException {
+    public CommonResponse<KeysetPageDTO<ClientOverviewDTO>> getClientsOverview(String cursor, Integer size, String sortBy, String direction) throws UnexpectedServerException {
 
         try {
 
-            List<ClientProfile> clientProfiles = clientProfileRepository.findAll();
+            Sort sort = KeysetPagination.sort(sortBy, direction);
+            Window<ClientProfile> clientPage = clientProfileRepository.findAllBy(KeysetPagination.position(cursor, sort), sort, KeysetPagination.limit(size));
+            List<ClientProfile> clientProfiles = clientPage.getContent();
 
             if (clientProfiles.isEmpty()) {
 
-                return CommonResponse.<List<ClientOverviewDTO>>builder()
+                return CommonResponse.<KeysetPageDTO<ClientOverviewDTO>>builder()
                         .status(STATUS_FALSE)
                         .statusCode(SUCCESS_CODE)
                         .message(NO_CLIENT_AVAILABLE)
-                        .data(List.of())
+                        .data(emptyPage())
                         .build();
             }
 
@@ -374,25 +356,16 @@ public class AdminService {
 
             var formatter = DateTimeFormatter.ofPattern("MMM dd, yyyy");
 
+            Map<Long, SessionCountDTO> sessionCounts = bookingRepository.countSessionsGroupByClient(PaymentStatus.COMPLETED, clientProfiles.stream().map(ClientProfile::getId).toList(), timeNow, timeNow.minus(Duration.ofMinutes(60))).stream()
+                    .collect(Collectors.toMap(SessionCountDTO::getOwnerId, Function.identity()));
+
             List<ClientOverviewDTO> clientOverviewDTOS = clientProfiles.stream()
                     .map(clientProfile -> {
 
-                        List<Booking> bookings = bookingRepository.findByClientIdAndPaymentStatus(clientProfile.getId(), PaymentStatus.COMPLETED);
-
-                        // filter must return a boolean true or false
-                        Long futureSessions = bookings.stream()
-                                .filter(booking -> timeNow.isBefore(booking.getSessionStartTime()))
-                                .count();
+                        SessionCountDTO counts = sessionCounts.get(clientProfile.getId());
 
-                        Long completedSessions = bookings.stream()
-                                .filter(booking -> {
-
-                                    Instant sessionStartTime = booking.getSessionStartTime();
-                                    Instant sessionEndTime = sessionStartTime.plus(Duration.ofMinutes(60));
-
-                                    return timeNow.isAfter(sessionEndTime);
-                                })
-                                .count();
+                        Long futureSessions = counts != null ? counts.getFutureSessions() : 0L;
+                        Long completedSessions = counts != null ? counts.getCompletedSessions() : 0L;
 
                         return ClientOverviewDTO.builder()
                                 .clientId(clientProfile.getId())
@@ -408,13 +381,15 @@ public class AdminService {
                     })
                     .toList();
 
-            return CommonResponse.<List<ClientOverviewDTO>>builder()
+            return CommonResponse.<KeysetPageDTO<ClientOverviewDTO>>builder()
                     .status(STATUS_TRUE)
                     .statusCode(SUCCESS_CODE)
                     .message(LOADED_ALL_CLIENTS_DETAILS)
-                    .data(clientOverviewDTOS)
+                    .data(toPage(clientOverviewDTOS, clientPage, sort))
                     .build();
 
+        } catch (InvalidFieldValueException e) {
+            throw e;
         } catch (Exception e) {
             throw new UnexpectedServerException(ERROR_LOADING_CLIENTS_DETAILS + e.getMessage());
         }
@@ -430,6 +405,8 @@ public class AdminService {
 
             String action = request.getStatus();
 
+            ApprovalStatus previousApprovalStatus = therapist.getApprovalStatus();
+
             if ("APPROVED".equalsIgnoreCase(action)) {
 
                 therapist.setApprovalStatus(ApprovalStatus.ACCEPTED);
@@ -446,55 +423,17 @@ public class AdminService {
 
             therapistProfileRepository.save(therapist);
 
-            String subject;
-            String body;
-
-            if (ApprovalStatus.ACCEPTED.equals(therapist.getApprovalStatus())) {
-                subject = "Your Therapist Application is Approved ✅";
-                body = String.format("""
-                Hi %s,
-                
-                Congratulations! 🎉
-                
-                Your application to become a therapist on TherapistBooster has been reviewed and approved by our team.
-                
-                You can now:
-                ✔ Log in to your dashboard  
-                ✔ Manage your availability  
-                ✔ Start receiving therapistship bookings
-                
-                Thank you for being part of our mission to empower learners!
-                
-                Warm regards,  
-                Team TherapistBooster  
-                """, therapist.getName());
-            } else {
-                subject = "Your Therapist Application is Not Approved ❌";
-                body = String.format("""
-                Hi %s,
-                
-                Thank you for applying to be a therapist on TherapistBooster.
-                
-                After carefully reviewing your application, we regret to inform you that it has not been approved at this time.
-                
-                This may be due to:
-                - Incomplete or unclear information  
-                - A mismatch with our current therapist requirements
-                
-                We truly appreciate your interest, and you're welcome to re-apply in the future with updated details.
-                
-                Warm wishes,  
-                Team TherapistBooster  
-                """, therapist.getName());
-            }
+            // Not inside a transaction, so the dashboard counters are updated right here before we return them
+            eventPublisher.publishEvent(new TherapistProfileChangedEvent(therapistId, ProfileChangeType.APPROVAL_CHANGED, previousApprovalStatus, therapist.getApprovalStatus()));
 
-            emailService.sendEmail(therapist.getEmail(), subject, body);
+            EmailTemplateId template = ApprovalStatus.ACCEPTED.equals(therapist.getApprovalStatus()) ? EmailTemplateId.THERAPIST_APPROVED : EmailTemplateId.THERAPIST_REJECTED;
+            emailService.sendEmail(therapist.getEmail(), emailTemplates.render(template, therapist.getName()));
 
             return CommonResponse.<AdminDashboardDTO>builder()
                     .status(STATUS_TRUE)
                     .message("Therapist " + action + " successfully")
                     .statusCode(200)
-                    .data(getAdminDashboardDetails().getData())
+                    .data(adminDashboardCounterService.snapshot())
                     .build();
 
         }catch (ResourceNotFoundException | InvalidFieldValueException e){
@@ -16,8 +16,6 @@ import com.clinicalpsychology.app.util.CommonFiles;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.mail.MailAuthenticationException;
-import org.springframework.mail.MailSendException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -162,7 +160,7 @@ public class AuthService {
 
             otpRepository.save(otpEntity);
 
-            // Send email
+            // Only queued here, EmailDispatcher sends it, so SMTP failures never reach this request
             emailService.sendOTPUser(email, otp, otpPurpose);
 
             return CommonResponse.<String>builder()
@@ -171,7 +169,7 @@ public class AuthService {
                     .statusCode(SUCCESS_CODE)
                     .build();
 
-        } catch (MailAuthenticationException | MailSendException | OtpException e) {
+        } catch (OtpException e) {
             throw e;
         } catch (Exception e) {
             throw new UnexpectedServerException(ERROR_SENDING_OTP + e.getMessage());
@@ -3,9 +3,12 @@ package com.clinicalpsychology.app.service;
 import com.clinicalpsychology.app.dto.ClientDashboardDTO;
 import com.clinicalpsychology.app.dto.ClientProfileDTO;
 import com.clinicalpsychology.app.dto.RescheduleDTO;
+import com.clinicalpsychology.app.email.EmailTemplateId;
+import com.clinicalpsychology.app.email.EmailTemplates;
 import com.clinicalpsychology.app.enums.PaymentStatus;
 import com.clinicalpsychology.app.enums.Role;
 import com.clinicalpsychology.app.enums.ZoomContextType;
+import com.clinicalpsychology.app.event.ClientRegisteredEvent;
 import com.clinicalpsychology.app.exception.InvalidFieldValueException;
 import com.clinicalpsychology.app.exception.ResourceAlreadyExistsException;
 import com.clinicalpsychology.app.exception.ResourceNotFoundException;
@@ -16,6 +19,7 @@ import com.clinicalpsychology.app.response.CommonResponse;
 import com.clinicalpsychology.app.zoom.ZoomMeetingResponse;
 import com.clinicalpsychology.app.zoom.ZoomMeetingService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -43,6 +47,8 @@ public class ClientProfileService {
     private final ZoomMeetingService zoomMeetingService;
     private final JavaMailSender mailSender;
     private final EmailService emailService;
+    private final EmailTemplates emailTemplates;
+    private final ApplicationEventPublisher eventPublisher;
     // private final PaymentService paymentService;   Dont remove it, in future may need for refund
 
 
@@ -91,6 +97,8 @@ public class ClientProfileService {
 
             usersRepository.save(user);
 
+            eventPublisher.publishEvent(new ClientRegisteredEvent(savedClient.getId()));
+
             // You can add email sending here if required
             // mailService.sendWelcomeToClient(client);
 
@@ -398,31 +406,11 @@ public class ClientProfileService {
             String sessionStartForClient = formatter.withZone(ZoneId.of(clientProfile.getTimeZone())).format(booking.getSessionStartTime());
             String sessionStartForTherapist = formatter.withZone(ZoneId.of(therapistProfile.getTimezone())).format(booking.getSessionStartTime());
 
-            String clientEmailBody = String.format("""
-                Hi %s,
-
-                Your session with %s, originally scheduled on **%s**, has been successfully cancelled.
-
-                If this was a mistake or you’d like to reschedule, feel free to book a new session from your dashboard.
-
-                Thank you,
-                The TherapistBooster Team
-                """, clientProfile.getName(), therapistProfile.getName(), sessionStartForClient);
-
-            String therapistEmailBody = String.format("""
-                Hi %s,
-
-                The session with %s, scheduled on **%s**, has been cancelled by the client.
-
-                You can view your updated schedule in the TherapistBooster dashboard.
-
-                Best regards,
-                The TherapistBooster Team
-                """, therapistProfile.getName(), clientProfile.getName(), sessionStartForTherapist);
-
             // Send emails
-            emailService.sendEmail(clientProfile.getEmail(), YOUR_THERAPIST_SESSION_CANCELLED, clientEmailBody);
-            emailService.sendEmail(therapistProfile.getEmail(), A_SESSION_CANCELLED , therapistEmailBody);
+            emailService.sendEmail(clientProfile.getEmail(), emailTemplates.render(EmailTemplateId.BOOKING_CANCELLED_CLIENT,
+                    clientProfile.getName(), therapistProfile.getName(), sessionStartForClient));
+            emailService.sendEmail(therapistProfile.getEmail(), emailTemplates.render(EmailTemplateId.BOOKING_CANCELLED_THERAPIST,
+                    therapistProfile.getName(), clientProfile.getName(), sessionStartForTherapist));
 
             bookingRepository.deleteById(bookingId);
 
@@ -1,100 +1,55 @@
 package com.clinicalpsychology.app.service;
 
 import com.clinicalpsychology.app.aitherapist.AiChatPayment;
+import com.clinicalpsychology.app.email.EmailOutbox;
+import com.clinicalpsychology.app.email.EmailTemplateId;
+import com.clinicalpsychology.app.email.EmailTemplates;
+import com.clinicalpsychology.app.email.RenderedEmail;
 import com.clinicalpsychology.app.enums.OtpPurpose;
 import com.clinicalpsychology.app.model.ClientProfile;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+// Mails are queued in the EmailOutbox and sent in the background by EmailDispatcher, so these return right after one insert
 @Service
 @RequiredArgsConstructor
 public class EmailService {
 
-    private final JavaMailSender mailSender;
+    private final EmailOutbox emailOutbox;
+    private final EmailTemplates emailTemplates;
 
-    @Value("${mail.from}")
-    private String mailFrom;
-
-    @Async
     public void sendEmail(String to, String subject, String text ) {
+        emailOutbox.enqueue(to, subject, text, null);
+    }
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(text);
-        message.setFrom(mailFrom);
-        mailSender.send(message);
+    // Multipart text + html when the template has an html part, plain text otherwise
+    public void sendEmail(String to, RenderedEmail email) {
+        emailOutbox.enqueue(to, email.subject(), email.text(), email.html());
+    }
 
+    // For callers that are retried (webhook events, meeting jobs): the mail is queued once per idempotencyKey, see EmailOutbox
+    public void sendEmail(String idempotencyKey, String to, RenderedEmail email) {
+        emailOutbox.enqueue(idempotencyKey, to, email.subject(), email.text(), email.html());
     }
 
-    @Async
+    // Runs in the Stripe webhook handler, which is retried, so keyed by the checkout session
     public void sendAiChatPaymentSuccessEmail(ClientProfile client, AiChatPayment payment) {
-        String subject = "🎉 Payment Successful for AI Chat Package!";
-        String text = "Hi " + client.getName() + ",\n\n"
-                + "Thank you for your payment of " + payment.getAmount() + " " + payment.getCurrency() + " for "
-                + payment.getProductName() + ". Your AI chat package is now activated.\n\n"
-                + "Happy chatting!\n"
-                + "– PsyConnect Team";
-
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(client.getEmail());
-        message.setSubject(subject);
-        message.setText(text);
-        message.setFrom(mailFrom);
-        mailSender.send(message);
+        sendEmail("ai-chat-paid-" + payment.getStripeSessionId(), client.getEmail(), emailTemplates.render(EmailTemplateId.AI_CHAT_PAYMENT_SUCCESS,
+                client.getName(), String.valueOf(payment.getAmount()), payment.getCurrency(), payment.getProductName()));
     }
 
 
     // test
-    @Async
     public void sendOTPUser(String email, String otp, OtpPurpose purpose) {
-        String subject;
-        String body;
 
-        switch (purpose) {
-            case THERAPIST_REGISTER -> {
-                subject = "Therapist Registration - Verify Your Email";
-                body = "Dear Therapist,\n\n" +
-                        "Thank you for signing up as a therapist at Clinical Psychology! Please verify your email address using the One-Time Password (OTP) below:\n\n" +
-                        "OTP: " + otp + "\n\n" +
-                        "This OTP is valid for 5 minutes.\n\n" +
-                        "If you did not request this, please ignore this email.\n\n" +
-                        "Warm regards,\nThe Clinical Psychology Team";
-            }
-            case CLIENT_REGISTER -> {
-                subject = "Client Registration - Verify Your Email";
-                body = "Dear Client,\n\n" +
-                        "Thanks for joining Clinical Psychology! Please verify your email with the OTP below:\n\n" +
-                        "OTP: " + otp + "\n\n" +
-                        "This OTP is valid for 5 minutes.\n\n" +
-                        "If you did not request this, please ignore this email.\n\n" +
-                        "Warm regards,\nThe Clinical Psychology Team";
-            }
-            case FORGOT_PASSWORD -> {
-                subject = "Reset Your Password";
-                body = "Hey there,\n\n" +
-                        "You requested a password reset for your Clinical Psychology account. Use the OTP below to proceed:\n\n" +
-                        "OTP: " + otp + "\n\n" +
-                        "The OTP will expire in 5 minutes.\n\n" +
-                        "If you did not request this, please ignore this email.\n\n" +
-                        "Warm regards,\nThe Clinical Psychology Team";
-            }
-            default -> {
-                subject = "Clinical Psychology OTP";
-                body = "Your OTP is: " + otp;
-            }
-        }
+        EmailTemplateId template = switch (purpose) {
+            case THERAPIST_REGISTER -> EmailTemplateId.OTP_THERAPIST_REGISTER;
+            case CLIENT_REGISTER -> EmailTemplateId.OTP_CLIENT_REGISTER;
+            case FORGOT_PASSWORD -> EmailTemplateId.OTP_FORGOT_PASSWORD;
+            default -> EmailTemplateId.OTP_DEFAULT;
+        };
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(email);
-        message.setSubject(subject);
-        message.setText(body);
-        message.setFrom(mailFrom);
-        mailSender.send(message);
+        sendEmail(email, emailTemplates.render(template, otp));
     }
 
 }
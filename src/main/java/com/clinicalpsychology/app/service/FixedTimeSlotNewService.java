@@ -1,5 +1,8 @@
 package com.clinicalpsychology.app.service;
 
+import com.clinicalpsychology.app.dto.AvailableSlotDTO;
+import com.clinicalpsychology.app.dto.AvailableTherapistDTO;
+import com.clinicalpsychology.app.dto.DayTimeSlotsDTO;
 import com.clinicalpsychology.app.dto.TimeSlotDTO;
 import com.clinicalpsychology.app.enums.PaymentStatus;
 import com.clinicalpsychology.app.exception.InvalidFieldValueException;
@@ -7,6 +10,7 @@ import com.clinicalpsychology.app.exception.ResourceNotFoundException;
 import com.clinicalpsychology.app.exception.UnexpectedServerException;
 import com.clinicalpsychology.app.model.Booking;
 import com.clinicalpsychology.app.model.FixedTimeSlotNew;
+import com.clinicalpsychology.app.payment.SlotHoldRegistry;
 import com.clinicalpsychology.app.repository.BookingRepository;
 import com.clinicalpsychology.app.repository.ClientProfileRepository;
 import com.clinicalpsychology.app.repository.FixedTimeSlotNewRepository;
@@ -18,8 +22,7 @@ import org.springframework.stereotype.Service;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.clinicalpsychology.app.util.Constant.*;
@@ -29,10 +32,23 @@ import static com.clinicalpsychology.app.util.Constant.ERROR_FETCHING_TIME_SLOTS
 @RequiredArgsConstructor
 public class FixedTimeSlotNewService {
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    // Same hold window PaymentService uses, an older HOLD is treated as free
+    private static final Duration HOLD_DURATION = SlotHoldRegistry.HOLD_TTL;
+
+    private static final int MAX_RANGE_DAYS = 31;
+    private static final int MAX_WINDOW_DAYS = 7;
+
+    private static final Duration SESSION_LENGTH = Duration.ofHours(1);
+
     private final FixedTimeSlotNewRepository fixedTimeSlotNewRepository;
     private final BookingRepository bookingRepository;
     private final TherapistProfileRepository therapistProfileRepository;
     private final ClientProfileRepository clientProfileRepository;
+    private final TherapistDirectoryCache therapistDirectoryCache;
+    private final TherapistAvailabilityIndex therapistAvailabilityIndex;
 
     public CommonResponse<List<TimeSlotDTO>> getTimeSlotsOfTherapist(Long therapistId, Long clientId, String localDate) throws ResourceNotFoundException, UnexpectedServerException {
 
@@ -40,101 +56,246 @@ public class FixedTimeSlotNewService {
             throw new ResourceNotFoundException(NO_THERAPISTS_AVAILABLE);
         }
 
-        String timezone = clientProfileRepository.findById(clientId)
-                .orElseThrow(() -> new ResourceNotFoundException( CLIENT_NOT_FOUND_WITH_ID + clientId))
-                .getTimeZone();
+        ZoneId clientTimezone = getClientTimezone(clientId);
+        LocalDate date = parseDate(localDate);
 
-        // Convert string timezone to ZoneId
-        final ZoneId clientTimezone;
         try {
-            clientTimezone = ZoneId.of(timezone);
-        } catch (DateTimeException e){
-            throw new InvalidFieldValueException(INVALID_TIMEZONE);
+
+            List<TimeSlotDTO> timeSlotDTOS = computeAvailability(therapistId, clientTimezone, date, date).get(0).getTimeSlots();
+
+            return CommonResponse.<List<TimeSlotDTO>>builder()
+                    .message(LOADED_ALL_TIME_SLOTS_FOR_THERAPISTS)
+                    .status(STATUS_TRUE)
+                    .data(timeSlotDTOS)
+                    .statusCode(SUCCESS_CODE)
+                    .build();
+        }
+        catch (ResourceNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UnexpectedServerException(ERROR_FETCHING_TIME_SLOTS_FOR_THERAPIST + e.getMessage());
+        }
+    }
+
+    // Calendar view, startDate to endDate (both inclusive, client's dates). Two queries no matter how many days
+    public CommonResponse<List<DayTimeSlotsDTO>> getTimeSlotsOfTherapistForRange(Long therapistId, Long clientId, String startDate, String endDate) throws ResourceNotFoundException, UnexpectedServerException {
+
+        if (!therapistProfileRepository.existsById(therapistId)) {
+            throw new ResourceNotFoundException(NO_THERAPISTS_AVAILABLE);
         }
 
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+        ZoneId clientTimezone = getClientTimezone(clientId);
+        LocalDate start = parseDate(startDate);
+        LocalDate end = parseDate(endDate);
+
+        if (end.isBefore(start) || end.isAfter(start.plusDays(MAX_RANGE_DAYS - 1))) {
+            throw new InvalidFieldValueException(INVALID_DATE_RANGE + MAX_RANGE_DAYS);
+        }
 
-        // Converting string date to LocalDate
-        LocalDate date;
         try {
-            date = LocalDate.parse(localDate, dateFormatter);
-        } catch (DateTimeParseException e){
-            throw new InvalidFieldValueException(DATE_MUST_BE_YYYY_MM_DD_FORMAT);
+
+            return CommonResponse.<List<DayTimeSlotsDTO>>builder()
+                    .message(LOADED_ALL_TIME_SLOTS_FOR_THERAPISTS)
+                    .status(STATUS_TRUE)
+                    .data(computeAvailability(therapistId, clientTimezone, start, end))
+                    .statusCode(SUCCESS_CODE)
+                    .build();
+        }
+        catch (ResourceNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UnexpectedServerException(ERROR_FETCHING_TIME_SLOTS_FOR_THERAPIST + e.getMessage());
         }
+    }
 
+    // "Who is free Tuesday 18:00-20:00": approved therapists with a whole session free inside the client's local window.
+    // Category / price come from the in-memory directory, the slot starts from the availability index, so the only query is the bookings of the window
+    public CommonResponse<List<AvailableTherapistDTO>> getAvailableTherapists(Long clientId, String from, String to, String category, Double minPrice, Double maxPrice) throws ResourceNotFoundException, UnexpectedServerException {
+
+        ZoneId clientTimezone = getClientTimezone(clientId);
+        Instant windowStart = parseDateTime(from).atZone(clientTimezone).toInstant();
+        Instant windowEnd = parseDateTime(to).atZone(clientTimezone).toInstant();
+
+        if (!windowEnd.isAfter(windowStart) || windowEnd.isAfter(windowStart.plus(Duration.ofDays(MAX_WINDOW_DAYS)))) {
+            throw new InvalidFieldValueException(INVALID_TIME_WINDOW + MAX_WINDOW_DAYS);
+        }
 
         try {
 
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
+            Instant now = Instant.now();
+            Instant earliestStart = windowStart.isBefore(now) ? now : windowStart;
+            Instant latestStart = windowEnd.minus(SESSION_LENGTH);
 
-            // Get current time in client timezone
-            ZonedDateTime now = ZonedDateTime.now(clientTimezone);
+            List<AvailableTherapistDTO> availableTherapists = new ArrayList<>();
 
-            // 1. Fetch all fixed time slots for the therapist (stored as UTC Instants)
-            List<FixedTimeSlotNew> slots = fixedTimeSlotNewRepository.findByTherapistId(therapistId);
+            if (!latestStart.isBefore(earliestStart)) {
 
-            if (slots.isEmpty()) {
-                throw new ResourceNotFoundException(NO_TIME_SLOTS_AVAILABLE_FOR_THERAPIST);
-            }
+                TherapistDirectoryIndex directory = therapistDirectoryCache.getDirectoryIndex();
+                Set<Long> therapistIds = directory.therapistIds(directory.match(null, null, normaliseFilter(category), minPrice, maxPrice));
 
-            // 2. Fetch bookings only for that date in user's timezone
-            ZonedDateTime dayStartZoned = date.atStartOfDay(clientTimezone);
-            ZonedDateTime dayEndZoned = dayStartZoned.plusDays(1);
-
-            Instant utcStart = dayStartZoned.toInstant();
-            Instant utcEnd = dayEndZoned.toInstant();
-
-            List<Booking> bookings = bookingRepository.findByTherapistIdAndSessionStartTimeBetweenAndPaymentStatus(
-                    therapistId, utcStart, utcEnd, PaymentStatus.COMPLETED
-            );
-
-            Set<Long> bookedSlotIds = bookings.stream()
-                    .map(Booking::getTimeSlotId)
-                    .collect(Collectors.toSet());
-
-            List<TimeSlotDTO> timeSlotDTOS = slots.stream()
-                    .map(slot -> {
-                        // converting the therapist slot's start time to client local time
-                        // Since therapist is available daily at that time, we cant compare with client and therapist Instant
-                        LocalTime slotTime = slot.getTimeStart()
-                                .atZone(ZoneOffset.UTC)
-                                .withZoneSameInstant(clientTimezone)
-                                .toLocalTime();
-
-                        // Apply that time to the requested date
-                        ZonedDateTime userZonedTime = date.atTime(slotTime).atZone(clientTimezone);
-
-                        String status;
-                        if (bookedSlotIds.contains(slot.getId())) {
-                            status = OCCUPIED;
-                        } else if (userZonedTime.isBefore(now)) {
-                            status = NOT_AVAILABLE;
-                        } else {
-                            status =AVAILABLE;
-                        }
-
-                        return TimeSlotDTO.builder()
-                                .id(slot.getId())
-                                .timeStart(slotTime.format(formatter))
-                                .timeEnd(slotTime.plusHours(1).format(formatter))
-                                .status(status)
-                                .build();
-                    })
-                    .toList();
+                // Occurrences are the client's local day + the slot's local time, the same instant checkout books, also across a DST change
+                List<TherapistAvailabilityIndex.SlotOccurrence> occurrences = therapistAvailabilityIndex.occurrences(earliestStart, latestStart, therapistIds, clientTimezone);
 
+                if (!occurrences.isEmpty()) {
 
-            return CommonResponse.<List<TimeSlotDTO>>builder()
-                    .message(LOADED_ALL_TIME_SLOTS_FOR_THERAPISTS)
+                    Map<Long, Set<Instant>> takenSessions = takenSessions(
+                            bookingRepository.findBySessionStartTimeBetweenAndPaymentStatusIn(earliestStart, latestStart, List.of(PaymentStatus.COMPLETED, PaymentStatus.HOLD)), now);
+
+                    // Therapist with the earliest free slot first
+                    Map<Long, List<AvailableSlotDTO>> freeSlots = new LinkedHashMap<>();
+                    occurrences.stream()
+                            .filter(occurrence -> !takenSessions.getOrDefault(occurrence.slotId(), Set.of()).contains(occurrence.start()))
+                            .sorted(Comparator.comparing(TherapistAvailabilityIndex.SlotOccurrence::start).thenComparing(TherapistAvailabilityIndex.SlotOccurrence::therapistId))
+                            .forEach(occurrence -> {
+                                ZonedDateTime localStart = occurrence.start().atZone(clientTimezone);
+                                freeSlots.computeIfAbsent(occurrence.therapistId(), id -> new ArrayList<>()).add(AvailableSlotDTO.builder()
+                                        .slotId(occurrence.slotId())
+                                        .date(localStart.format(DATE_FORMATTER))
+                                        .timeStart(localStart.format(TIME_FORMATTER))
+                                        .timeEnd(localStart.plus(SESSION_LENGTH).format(TIME_FORMATTER))
+                                        .build());
+                            });
+
+                    freeSlots.forEach((therapistId, slots) -> availableTherapists.add(AvailableTherapistDTO.builder()
+                            .therapist(directory.get(therapistId))
+                            .freeSlots(slots)
+                            .build()));
+                }
+            }
+
+            if (availableTherapists.isEmpty()) {
+                return CommonResponse.<List<AvailableTherapistDTO>>builder()
+                        .message(NO_THERAPISTS_AVAILABLE)
+                        .status(STATUS_FALSE)
+                        .data(availableTherapists)
+                        .statusCode(SUCCESS_CODE)
+                        .build();
+            }
+
+            return CommonResponse.<List<AvailableTherapistDTO>>builder()
+                    .message(LOADED_AVAILABLE_THERAPISTS)
                     .status(STATUS_TRUE)
-                    .data(timeSlotDTOS)
+                    .data(availableTherapists)
                     .statusCode(SUCCESS_CODE)
                     .build();
-        }
-        catch (ResourceNotFoundException e) {
-            throw e;
+
         } catch (Exception e) {
-            throw new UnexpectedServerException(ERROR_FETCHING_TIME_SLOTS_FOR_THERAPIST + e.getMessage());
+            throw new UnexpectedServerException(ERROR_FETCHING_AVAILABLE_THERAPISTS + e.getMessage());
+        }
+    }
+
+    private List<DayTimeSlotsDTO> computeAvailability(Long therapistId, ZoneId clientTimezone, LocalDate start, LocalDate end) throws ResourceNotFoundException {
+
+        // 1. Fetch all fixed time slots for the therapist (stored as UTC Instants)
+        List<FixedTimeSlotNew> slots = fixedTimeSlotNewRepository.findByTherapistId(therapistId);
+
+        if (slots.isEmpty()) {
+            throw new ResourceNotFoundException(NO_TIME_SLOTS_AVAILABLE_FOR_THERAPIST);
+        }
+
+        // 2. Fetch the booked and held sessions of the whole range in the client's timezone.
+        // atStartOfDay handles days that don't start at 00:00 because of DST
+        Instant utcStart = start.atStartOfDay(clientTimezone).toInstant();
+        Instant utcEnd = end.plusDays(1).atStartOfDay(clientTimezone).toInstant();
+
+        List<Booking> bookings = bookingRepository.findByTherapistIdAndSessionStartTimeBetweenAndPaymentStatusIn(
+                therapistId, utcStart, utcEnd, List.of(PaymentStatus.COMPLETED, PaymentStatus.HOLD)
+        );
+
+        Instant now = Instant.now();
+
+        Map<Long, Set<Instant>> takenSessions = takenSessions(bookings, now);
+
+        // 3. The slot's client local time doesn't depend on the day, so convert it once.
+        // Since therapist is available daily at that time, we cant compare with client and therapist Instant
+        List<LocalTime> slotTimes = slots.stream()
+                .map(slot -> slot.getTimeStart().atZone(clientTimezone).toLocalTime())
+                .toList();
+
+        List<DayTimeSlotsDTO> days = new ArrayList<>();
+
+        for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+
+            List<TimeSlotDTO> timeSlotDTOS = new ArrayList<>(slots.size());
+
+            for (int i = 0; i < slots.size(); i++) {
+
+                Long slotId = slots.get(i).getId();
+                LocalTime slotTime = slotTimes.get(i);
+
+                // Apply that time to the day, same as PaymentService does when booking, so the instants match the bookings.
+                // atZone moves a time that falls in a DST gap forward, instead of adding a fixed offset
+                Instant sessionStart = date.atTime(slotTime).atZone(clientTimezone).toInstant();
+
+                String status;
+                if (takenSessions.getOrDefault(slotId, Set.of()).contains(sessionStart)) {
+                    status = OCCUPIED;
+                } else if (sessionStart.isBefore(now)) {
+                    status = NOT_AVAILABLE;
+                } else {
+                    status = AVAILABLE;
+                }
+
+                timeSlotDTOS.add(TimeSlotDTO.builder()
+                        .id(slotId)
+                        .timeStart(slotTime.format(TIME_FORMATTER))
+                        .timeEnd(slotTime.plus(SESSION_LENGTH).format(TIME_FORMATTER))
+                        .status(status)
+                        .build());
+            }
+
+            days.add(DayTimeSlotsDTO.builder()
+                    .date(date.format(DATE_FORMATTER))
+                    .timeSlots(timeSlotDTOS)
+                    .build());
+        }
+
+        return days;
+    }
+
+    // slot id -> session start instants that are taken
+    private Map<Long, Set<Instant>> takenSessions(List<Booking> bookings, Instant now) {
+
+        return bookings.stream()
+                .filter(booking -> booking.getPaymentStatus() == PaymentStatus.COMPLETED
+                        || (booking.getHoldStartTime() != null && booking.getHoldStartTime().plus(HOLD_DURATION).isAfter(now)))
+                .collect(Collectors.groupingBy(Booking::getTimeSlotId, Collectors.mapping(Booking::getSessionStartTime, Collectors.toSet())));
+    }
+
+    private ZoneId getClientTimezone(Long clientId) throws ResourceNotFoundException {
+
+        String timezone = clientProfileRepository.findById(clientId)
+                .orElseThrow(() -> new ResourceNotFoundException( CLIENT_NOT_FOUND_WITH_ID + clientId))
+                .getTimeZone();
+
+        // Convert string timezone to ZoneId
+        try {
+            return ZoneId.of(timezone);
+        } catch (DateTimeException e){
+            throw new InvalidFieldValueException(INVALID_TIMEZONE);
+        }
+    }
+
+    // Converting string date to LocalDate
+    private LocalDate parseDate(String localDate) {
+        try {
+            return LocalDate.parse(localDate, DATE_FORMATTER);
+        } catch (DateTimeParseException e){
+            throw new InvalidFieldValueException(DATE_MUST_BE_YYYY_MM_DD_FORMAT);
         }
     }
 
+    // yyyy-MM-ddTHH:mm, in the client's timezone
+    private LocalDateTime parseDateTime(String localDateTime) {
+        try {
+            return LocalDateTime.parse(localDateTime, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        } catch (DateTimeParseException e){
+            throw new InvalidFieldValueException(DATE_TIME_MUST_BE_ISO_FORMAT);
+        }
+    }
+
+    private String normaliseFilter(String value) {
+        return value == null || value.isBlank() || "null".equalsIgnoreCase(value) ? null : value;
+    }
+
 }
@@ -0,0 +1,35 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.repository.SchedulerLeaseRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+// Lets one instance at a time run a @Scheduled job that must not run in parallel across instances (it calls a rate limited
+// provider, or would overshoot a shared target). The holder renews its lease every round, another instance takes over once
+// the lease runs out, so the ttl has to cover one round of the job
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SchedulerLeases {
+
+    private final SchedulerLeaseRepository schedulerLeaseRepository;
+
+    // This instance, for as long as it runs
+    private final String owner = UUID.randomUUID().toString();
+
+    public boolean tryAcquire(String name, Duration ttl) {
+        Instant now = Instant.now();
+        try {
+            return schedulerLeaseRepository.tryAcquire(name, owner, now, now.plus(ttl)) == 1;
+        } catch (Exception e) {
+            // Database trouble, skip this round rather than run unguarded
+            log.warn("Could not take the {} lease, skipping this round: {}", name, e.getMessage());
+            return false;
+        }
+    }
+}
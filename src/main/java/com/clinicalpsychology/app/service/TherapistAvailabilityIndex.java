@@ -0,0 +1,162 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.SlotTimeDTO;
+import com.clinicalpsychology.app.event.TherapistProfileChangedEvent;
+import com.clinicalpsychology.app.repository.FixedTimeSlotNewRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+// Every therapist's daily slots, sorted by local time of day, so "which slots start between T1 and T2" is a binary search per day
+// instead of loading the slots of every therapist. Slots only change on register / profile update, which publish TherapistProfileChangedEvent,
+// so the arrays are rebuilt on those events (one small query) and every 10 minutes to heal any drift.
+// A slot is a wall clock time in the client's zone (checkout books booked date + the slot's local time, atZone), so the sorted
+// order is kept per client zone, built on first use, and the occurrences are computed per local day the same way checkout does
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TherapistAvailabilityIndex {
+
+    // Search a bit past the window ends in local time, a DST change moves the instants by up to an hour, the exact check follows
+    private static final long SLACK_NANOS = Duration.ofMinutes(61).toNanos();
+
+    private final FixedTimeSlotNewRepository fixedTimeSlotNewRepository;
+
+    private volatile Slots slots;
+
+    // Not synchronized: the rebuild waits on a db query, which would pin the carrier thread on virtual threads
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    // One start of a daily slot on a given day
+    public record SlotOccurrence(Long slotId, Long therapistId, Instant start) {
+    }
+
+    // Parallel arrays in query order, plus the local time order per client zone
+    private record Slots(Instant[] timeStarts, long[] slotIds, long[] therapistIds, Map<ZoneId, LocalSlots> byZone) {
+
+        LocalSlots in(ZoneId zone) {
+            return byZone.computeIfAbsent(zone, key -> LocalSlots.of(timeStarts, key));
+        }
+    }
+
+    // Slot positions sorted by their local time of day in one zone, and those times (nano of day) in the same order
+    private record LocalSlots(int[] order, long[] nanoOfDay) {
+
+        static LocalSlots of(Instant[] timeStarts, ZoneId zone) {
+
+            long[] local = new long[timeStarts.length];
+            for (int i = 0; i < timeStarts.length; i++) {
+                local[i] = localTime(timeStarts[i], zone).toNanoOfDay();
+            }
+            int[] order = IntStream.range(0, timeStarts.length).boxed()
+                    .sorted(Comparator.comparingLong(i -> local[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            long[] sorted = new long[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sorted[i] = local[order[i]];
+            }
+            return new LocalSlots(order, sorted);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelay = 10 * 60 * 1000, fixedRate = 10 * 60 * 1000)
+    public void reconcile() {
+        rebuild();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTherapistChanged(TherapistProfileChangedEvent event) {
+        rebuild();
+    }
+
+    // Occurrences starting between from and latestStart (both inclusive), only for the given therapists.
+    // Starts are computed like checkout: the client's local day + the slot's local time, atZone(clientZone)
+    public List<SlotOccurrence> occurrences(Instant from, Instant latestStart, Set<Long> therapistIds, ZoneId clientZone) {
+
+        Slots current = slots != null ? slots : rebuild();
+        LocalSlots local = current.in(clientZone);
+        List<SlotOccurrence> result = new ArrayList<>();
+
+        ZonedDateTime localFrom = from.atZone(clientZone);
+        ZonedDateTime localTo = latestStart.atZone(clientZone);
+        LocalDate firstDay = localFrom.toLocalDate();
+        LocalDate lastDay = localTo.toLocalDate();
+
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+
+            long lowest = day.equals(firstDay) ? localFrom.toLocalTime().toNanoOfDay() - SLACK_NANOS : Long.MIN_VALUE;
+            long highest = day.equals(lastDay) ? localTo.toLocalTime().toNanoOfDay() + SLACK_NANOS : Long.MAX_VALUE;
+
+            for (int i = firstIndexAtLeast(local.nanoOfDay(), lowest); i < local.nanoOfDay().length && local.nanoOfDay()[i] <= highest; i++) {
+
+                int slot = local.order()[i];
+                if (!therapistIds.contains(current.therapistIds()[slot])) {
+                    continue;
+                }
+                Instant start = day.atTime(LocalTime.ofNanoOfDay(local.nanoOfDay()[i])).atZone(clientZone).toInstant();
+                if (!start.isBefore(from) && !start.isAfter(latestStart)) {
+                    result.add(new SlotOccurrence(current.slotIds()[slot], current.therapistIds()[slot], start));
+                }
+            }
+        }
+        return result;
+    }
+
+    private Slots rebuild() {
+        rebuildLock.lock();
+        try {
+            return buildSlots();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private Slots buildSlots() {
+
+        List<SlotTimeDTO> slotTimes = fixedTimeSlotNewRepository.findAllSlotTimes();
+
+        Instant[] timeStarts = new Instant[slotTimes.size()];
+        long[] slotIds = new long[slotTimes.size()];
+        long[] therapistIds = new long[slotTimes.size()];
+        for (int i = 0; i < slotTimes.size(); i++) {
+            timeStarts[i] = slotTimes.get(i).getTimeStart();
+            slotIds[i] = slotTimes.get(i).getSlotId();
+            therapistIds[i] = slotTimes.get(i).getTherapistId();
+        }
+
+        Slots rebuilt = new Slots(timeStarts, slotIds, therapistIds, new ConcurrentHashMap<>());
+        slots = rebuilt;
+        log.debug("Therapist availability index rebuilt with {} slot(s)", slotTimes.size());
+        return rebuilt;
+    }
+
+    // The slot's wall clock time for a client in zone, same conversion as CheckoutReservationService
+    static LocalTime localTime(Instant timeStart, ZoneId zone) {
+        return timeStart.atZone(ZoneOffset.UTC).withZoneSameInstant(zone).toLocalTime();
+    }
+
+    private static int firstIndexAtLeast(long[] values, long value) {
+        int low = 0, high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,202 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.TherapistDirectoryEntryDTO;
+import com.clinicalpsychology.app.dto.TherapistSearchResultDTO;
+import com.clinicalpsychology.app.enums.ProfileChangeType;
+import com.clinicalpsychology.app.event.TherapistProfileChangedEvent;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Read-through cache of the approved + active therapists, so anonymous browse traffic (getAllTherapists, search) doesn't hit postgres.
+// The directory only changes on register / update / approval / delete, all of which publish TherapistProfileChangedEvent,
+// so on every event we load just that therapist's row and patch a copy of the index with it, and drop the cached search results.
+// A full reload every 10 minutes heals any drift (seeders, manual db edits, a missed event).
+// Hit/miss counts are exposed as the therapist.directory.cache.requests metric (/actuator/metrics)
+@Service
+@Slf4j
+public class TherapistDirectoryCache {
+
+    private static final int MAX_CACHED_SEARCHES = 1000;
+
+    private final TherapistProfileRepository therapistProfileRepository;
+
+    // Lower bounds of the price facet buckets
+    private final List<Double> priceBucketBounds;
+
+    // null means not loaded yet. Therapists in id order like the old findAll result
+    private volatile TherapistDirectoryIndex directory;
+
+    // Search key (filters + page) -> result page. Least recently used key is dropped first
+    private final Map<String, TherapistSearchResultDTO> searchResults = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TherapistSearchResultDTO> eldest) {
+            return size() > MAX_CACHED_SEARCHES;
+        }
+    });
+
+    // Guards the directory rebuilds. A lock instead of synchronized because the holder waits on a db query,
+    // and on virtual threads that would pin the carrier thread
+    private final ReentrantLock directoryLock = new ReentrantLock();
+
+    // Bumped on every invalidation, so a load that started before a change never installs stale data
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter directoryHits;
+    private final Counter directoryMisses;
+    private final Counter searchHits;
+    private final Counter searchMisses;
+
+    public TherapistDirectoryCache(TherapistProfileRepository therapistProfileRepository, MeterRegistry meterRegistry,
+                                   @Value("${search.facets.price-buckets:50,100,200}") List<Double> priceBucketBounds) {
+
+        this.therapistProfileRepository = therapistProfileRepository;
+        this.priceBucketBounds = priceBucketBounds;
+
+        this.directoryHits = requestCounter(meterRegistry, "directory", "hit");
+        this.directoryMisses = requestCounter(meterRegistry, "directory", "miss");
+        this.searchHits = requestCounter(meterRegistry, "search", "hit");
+        this.searchMisses = requestCounter(meterRegistry, "search", "miss");
+
+        Gauge.builder("therapist.directory.cache.size", this, cache -> cache.directory == null ? 0 : cache.directory.size())
+                .description("Approved therapists currently held in the directory cache")
+                .register(meterRegistry);
+        Gauge.builder("therapist.directory.cache.searches", searchResults, Map::size)
+                .description("Search results currently held in the directory cache")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        loadDirectory();
+    }
+
+    // Approved + active therapists in id order
+    public List<TherapistDirectoryEntryDTO> getDirectory() {
+        return getDirectoryIndex().entries();
+    }
+
+    // Same data as getDirectory, with the bitmaps used for facet counts
+    public TherapistDirectoryIndex getDirectoryIndex() {
+
+        TherapistDirectoryIndex current = directory;
+
+        if (current != null) {
+            directoryHits.increment();
+            return current;
+        }
+
+        directoryMisses.increment();
+        return loadDirectory();
+    }
+
+    // Runs the search through the loader only on a miss
+    public TherapistSearchResultDTO search(String key, Supplier<TherapistSearchResultDTO> loader) {
+
+        TherapistSearchResultDTO result = searchResults.get(key);
+
+        if (result != null) {
+            searchHits.increment();
+            return result;
+        }
+
+        searchMisses.increment();
+        long startedAt = generation.get();
+        result = loader.get();
+        if (generation.get() == startedAt) {
+            searchResults.put(key, result);
+        }
+        return result;
+    }
+
+    @Scheduled(initialDelay = 10 * 60 * 1000, fixedRate = 10 * 60 * 1000)
+    public void reconcile() {
+        directoryLock.lock();
+        try {
+            generation.incrementAndGet();
+            directory = buildIndex();
+            searchResults.clear();
+        } finally {
+            directoryLock.unlock();
+        }
+    }
+
+    // Same lock as loadDirectory, so two changes never build from the same old index
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTherapistChanged(TherapistProfileChangedEvent event) {
+
+        directoryLock.lock();
+        try {
+            generation.incrementAndGet();
+            searchResults.clear();
+
+            TherapistDirectoryIndex current = directory;
+            if (current == null) {
+                loadDirectory();
+                return;
+            }
+
+            TherapistDirectoryEntryDTO changed = event.getChangeType() == ProfileChangeType.DELETED ? null
+                    : therapistProfileRepository.findDirectoryRow(event.getTherapistId()).map(TherapistDirectoryEntryDTO::from).orElse(null);
+
+            directory = current.withEntry(event.getTherapistId(), changed);
+        } finally {
+            directoryLock.unlock();
+        }
+    }
+
+    private TherapistDirectoryIndex loadDirectory() {
+
+        directoryLock.lock();
+        try {
+            // Someone else loaded it while we were waiting for the lock
+            TherapistDirectoryIndex current = directory;
+            if (current != null) {
+                return current;
+            }
+
+            long startedAt = generation.get();
+            TherapistDirectoryIndex loaded = buildIndex();
+
+            if (generation.get() == startedAt) {
+                directory = loaded;
+            }
+
+            log.info("Therapist directory cache loaded with {} therapist(s)", loaded.size());
+            return loaded;
+        } finally {
+            directoryLock.unlock();
+        }
+    }
+
+    // One query, categories and languages come back aggregated
+    private TherapistDirectoryIndex buildIndex() {
+
+        List<TherapistDirectoryEntryDTO> entries = therapistProfileRepository.findDirectoryRows().stream()
+                .map(TherapistDirectoryEntryDTO::from)
+                .toList();
+
+        return TherapistDirectoryIndex.build(entries, priceBucketBounds);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String cache, String result) {
+        return Counter.builder("therapist.directory.cache.requests")
+                .description("Therapist directory cache lookups")
+                .tag("cache", cache)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
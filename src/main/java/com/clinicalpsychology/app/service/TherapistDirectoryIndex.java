@@ -0,0 +1,451 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.TherapistDirectoryEntryDTO;
+import com.clinicalpsychology.app.dto.TherapistSearchFacetsDTO;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+// Immutable in-memory copy of the approved therapist directory, used as the search engine for browse traffic.
+// Each therapist gets a position (0..n-1, in id order), and there is one bitmap per category, language, location and price bucket
+// where bit i is set when therapist i has that value. A search is an AND of bitmaps, facet counts are cardinality(matched AND facetBitmap).
+// Price ranges use the positions sorted by amount plus a binary search. Built by TherapistDirectoryCache, a change to one therapist
+// patches a copy (withEntry) instead of building from scratch.
+// Filters have the same semantics as TherapistProfileRepository.SEARCH_FILTER, except the free text q which needs postgres
+public final class TherapistDirectoryIndex {
+
+    private final List<Double> priceBucketBounds;
+    private final List<String> bucketLabels;
+
+    private final TherapistDirectoryEntryDTO[] entries;
+    private final long[] ids;
+    private final String[] names;
+
+    // Positions sorted by amount, and the amounts in that same order. Therapists without an amount are left out,
+    // like the query where amount >= x is never true for a null amount
+    private final int[] positionsByPrice;
+    private final double[] sortedAmounts;
+
+    private final Map<String, BitSet> categories;
+    private final Map<String, BitSet> languages;
+    private final Map<String, BitSet> locations;
+    private final Map<String, BitSet> priceBuckets;
+
+    // Therapists with at least one category. Only these can match a search, like the join in the old query
+    private final BitSet searchable;
+
+    private TherapistDirectoryIndex(List<TherapistDirectoryEntryDTO> directory, List<Double> priceBucketBounds) {
+
+        int size = directory.size();
+        this.priceBucketBounds = priceBucketBounds.stream().sorted().toList();
+        this.entries = directory.toArray(new TherapistDirectoryEntryDTO[0]);
+        this.ids = new long[size];
+        this.names = new String[size];
+
+        this.categories = new HashMap<>();
+        this.languages = new HashMap<>();
+        this.locations = new HashMap<>();
+        this.priceBuckets = new LinkedHashMap<>();
+        this.searchable = new BitSet(size);
+
+        this.bucketLabels = priceBucketLabels(this.priceBucketBounds);
+        for (String label : bucketLabels) {
+            priceBuckets.put(label, new BitSet(size));
+        }
+
+        Double[] amounts = new Double[size];
+
+        for (int i = 0; i < size; i++) {
+
+            TherapistDirectoryEntryDTO entry = entries[i];
+            ids[i] = entry.getTherapistId();
+            names[i] = entry.getName() == null ? "" : entry.getName().toLowerCase();
+            amounts[i] = entry.getAmount();
+
+            for (String category : entry.getCategories()) {
+                categories.computeIfAbsent(category, key -> new BitSet(size)).set(i);
+            }
+            if (!entry.getCategories().isEmpty()) {
+                searchable.set(i);
+            }
+            for (String language : entry.getLanguages()) {
+                languages.computeIfAbsent(language, key -> new BitSet(size)).set(i);
+            }
+            if (entry.getLocation() != null && !entry.getLocation().isBlank()) {
+                locations.computeIfAbsent(entry.getLocation(), key -> new BitSet(size)).set(i);
+            }
+
+            if (amounts[i] != null) {
+                priceBuckets.get(priceBucket(amounts[i])).set(i);
+            }
+        }
+
+        this.positionsByPrice = IntStream.range(0, size).boxed()
+                .filter(position -> amounts[position] != null)
+                .sorted(Comparator.comparingDouble(position -> amounts[position]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.sortedAmounts = new double[positionsByPrice.length];
+        for (int i = 0; i < positionsByPrice.length; i++) {
+            sortedAmounts[i] = amounts[positionsByPrice[i]];
+        }
+    }
+
+    // priceBucketBounds 50,100,200 gives the buckets 0-<50, 50-<100, 100-<200 and 200+ (lower bound inclusive, upper exclusive)
+    public static TherapistDirectoryIndex build(Collection<TherapistDirectoryEntryDTO> directory, List<Double> priceBucketBounds) {
+
+        List<TherapistDirectoryEntryDTO> sorted = new ArrayList<>(directory);
+        sorted.sort(Comparator.comparing(TherapistDirectoryEntryDTO::getTherapistId));
+        return new TherapistDirectoryIndex(sorted, priceBucketBounds);
+    }
+
+    // A new index with one therapist added, replaced or (when entry is null) removed. Used for the incremental updates.
+    // This one stays untouched, so searches running on it are not affected
+    public TherapistDirectoryIndex withEntry(Long therapistId, TherapistDirectoryEntryDTO entry) {
+
+        int found = Arrays.binarySearch(ids, therapistId);
+        if (found < 0 && entry == null) {
+            return this;
+        }
+        return new TherapistDirectoryIndex(this, found, entry);
+    }
+
+    // Copy of previous with the therapist at found (or, when found is negative, the insertion point encoded the
+    // Arrays.binarySearch way) replaced by entry. Only the bitmaps of the old and new values are copied on a replace.
+    // An insert or remove moves the later positions by one, so every bitmap is copied then, but nothing is hashed or sorted again
+    private TherapistDirectoryIndex(TherapistDirectoryIndex previous, int found, TherapistDirectoryEntryDTO entry) {
+
+        int position = found >= 0 ? found : -(found + 1);
+        // +1 insert, -1 remove, 0 replace
+        int shift = found < 0 ? 1 : entry == null ? -1 : 0;
+        TherapistDirectoryEntryDTO removed = found >= 0 ? previous.entries[found] : null;
+        int size = previous.entries.length + shift;
+
+        this.priceBucketBounds = previous.priceBucketBounds;
+        this.bucketLabels = previous.bucketLabels;
+
+        this.entries = new TherapistDirectoryEntryDTO[size];
+        this.ids = new long[size];
+        this.names = new String[size];
+        int tail = previous.entries.length - position - (shift > 0 ? 0 : 1);
+        int from = position + (shift > 0 ? 0 : 1);
+        int to = position + (shift < 0 ? 0 : 1);
+        System.arraycopy(previous.entries, 0, entries, 0, position);
+        System.arraycopy(previous.entries, from, entries, to, tail);
+        System.arraycopy(previous.ids, 0, ids, 0, position);
+        System.arraycopy(previous.ids, from, ids, to, tail);
+        System.arraycopy(previous.names, 0, names, 0, position);
+        System.arraycopy(previous.names, from, names, to, tail);
+        if (entry != null) {
+            entries[position] = entry;
+            ids[position] = entry.getTherapistId();
+            names[position] = entry.getName() == null ? "" : entry.getName().toLowerCase();
+        }
+
+        this.categories = patch(previous.categories, position, shift, categoriesOf(removed), categoriesOf(entry), false);
+        this.languages = patch(previous.languages, position, shift, languagesOf(removed), languagesOf(entry), false);
+        this.locations = patch(previous.locations, position, shift, locationOf(removed), locationOf(entry), false);
+        this.priceBuckets = patch(previous.priceBuckets, position, shift, priceBucketOf(removed), priceBucketOf(entry), true);
+
+        this.searchable = shifted(previous.searchable, position, shift);
+        if (entry != null) {
+            this.searchable.set(position, !entry.getCategories().isEmpty());
+        }
+
+        Double amount = entry == null ? null : entry.getAmount();
+        int priced = previous.positionsByPrice.length - (removed != null && removed.getAmount() != null ? 1 : 0) + (amount != null ? 1 : 0);
+        this.positionsByPrice = new int[priced];
+        this.sortedAmounts = new double[priced];
+
+        // Same order as before minus the old entry, with the positions moved past the change, and the new amount merged in
+        int next = 0;
+        boolean placed = amount == null;
+        for (int i = 0; i < previous.positionsByPrice.length; i++) {
+            int oldPosition = previous.positionsByPrice[i];
+            if (oldPosition == found) {
+                continue;
+            }
+            if (!placed && amount < previous.sortedAmounts[i]) {
+                positionsByPrice[next] = position;
+                sortedAmounts[next++] = amount;
+                placed = true;
+            }
+            positionsByPrice[next] = oldPosition < position ? oldPosition : oldPosition + shift;
+            sortedAmounts[next++] = previous.sortedAmounts[i];
+        }
+        if (!placed) {
+            positionsByPrice[next] = position;
+            sortedAmounts[next] = amount;
+        }
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    public List<TherapistDirectoryEntryDTO> entries() {
+        return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    // Positions of the therapists matching the filters, null filters are ignored
+    public BitSet match(String name, String location, String category, Double minPrice, Double maxPrice) {
+
+        BitSet matched = (BitSet) searchable.clone();
+
+        if (category != null) {
+            matched.and(anyContaining(categories, category.toLowerCase()));
+        }
+        if (location != null) {
+            matched.and(anyContaining(locations, location.toLowerCase()));
+        }
+        if (minPrice != null || maxPrice != null) {
+            matched.and(priceRange(minPrice, maxPrice));
+        }
+        if (name != null) {
+            String nameFilter = name.toLowerCase();
+            for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                if (!names[i].contains(nameFilter)) {
+                    matched.clear(i);
+                }
+            }
+        }
+        return matched;
+    }
+
+    // Matches in the same order as the search query: by pg_trgm style name similarity when there is a name filter, then by id
+    public List<TherapistDirectoryEntryDTO> search(String name, String location, String category, Double minPrice, Double maxPrice) {
+        return results(match(name, location, category, minPrice, maxPrice), name);
+    }
+
+    // The therapists of a match() result in search order, so a caller that also wants facets matches only once
+    public List<TherapistDirectoryEntryDTO> results(BitSet matched, String name) {
+
+        List<Integer> positions = new ArrayList<>(matched.cardinality());
+        matched.stream().forEach(positions::add);
+
+        if (name != null) {
+            Set<String> nameTrigrams = trigrams(name);
+            Map<Integer, Double> similarity = new HashMap<>();
+            positions.forEach(position -> similarity.put(position, similarity(trigrams(names[position]), nameTrigrams)));
+            positions.sort(Comparator.<Integer, Double>comparing(similarity::get).reversed().thenComparingLong(position -> ids[position]));
+        }
+
+        return positions.stream().map(position -> entries[position]).toList();
+    }
+
+    // null when the therapist is not in the directory (not approved / not active)
+    public TherapistDirectoryEntryDTO get(Long therapistId) {
+        int position = Arrays.binarySearch(ids, therapistId);
+        return position >= 0 ? entries[position] : null;
+    }
+
+    public Set<Long> therapistIds(BitSet matched) {
+        Set<Long> result = new HashSet<>(matched.cardinality() * 2);
+        matched.stream().forEach(position -> result.add(ids[position]));
+        return result;
+    }
+
+    // Positions of the given therapist ids, ids that are not in the directory are skipped
+    public BitSet positionsOf(Collection<Long> therapistIds) {
+
+        BitSet matched = new BitSet(entries.length);
+        for (Long therapistId : therapistIds) {
+            int position = Arrays.binarySearch(ids, therapistId);
+            if (position >= 0) {
+                matched.set(position);
+            }
+        }
+        return matched;
+    }
+
+    public TherapistSearchFacetsDTO facets(BitSet matched) {
+
+        return TherapistSearchFacetsDTO.builder()
+                .categories(count(categories, matched, true))
+                .languages(count(languages, matched, true))
+                .locations(count(locations, matched, true))
+                .priceBuckets(count(priceBuckets, matched, false))
+                .build();
+    }
+
+    // OR of every bitmap whose value contains the filter, same as LIKE '%filter%'
+    private BitSet anyContaining(Map<String, BitSet> bitmaps, String filter) {
+
+        BitSet result = new BitSet(entries.length);
+        bitmaps.forEach((value, bitmap) -> {
+            if (value.toLowerCase().contains(filter)) {
+                result.or(bitmap);
+            }
+        });
+        return result;
+    }
+
+    // Both bounds inclusive, like the query. The exclusive bucket labels arrive here with maxPrice already moved just below the bound
+    private BitSet priceRange(Double minPrice, Double maxPrice) {
+
+        int from = minPrice == null ? 0 : firstIndexAtLeast(minPrice);
+        int to = maxPrice == null ? sortedAmounts.length : firstIndexAbove(maxPrice);
+
+        BitSet result = new BitSet(entries.length);
+        for (int i = from; i < to; i++) {
+            result.set(positionsByPrice[i]);
+        }
+        return result;
+    }
+
+    private int firstIndexAtLeast(double value) {
+        int low = 0, high = sortedAmounts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedAmounts[mid] < value) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    private int firstIndexAbove(double value) {
+        int low = 0, high = sortedAmounts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedAmounts[mid] <= value) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+
+    // Empty values are left out. Price buckets keep their natural order, the rest are sorted biggest first
+    private static Map<String, Integer> count(Map<String, BitSet> bitmaps, BitSet matched, boolean sortByCount) {
+
+        List<Map.Entry<String, Integer>> counts = new ArrayList<>();
+        bitmaps.forEach((value, bitmap) -> {
+            BitSet intersection = (BitSet) bitmap.clone();
+            intersection.and(matched);
+            int count = intersection.cardinality();
+            if (count > 0) {
+                counts.add(Map.entry(value, count));
+            }
+        });
+
+        if (sortByCount) {
+            counts.sort(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        }
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        counts.forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    // Same as pg_trgm: every word is padded with two spaces in front and one after, then cut into 3 letter pieces
+    private static Set<String> trigrams(String value) {
+
+        Set<String> trigrams = new HashSet<>();
+        for (String word : value.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    private static double similarity(Set<String> first, Set<String> second) {
+
+        if (first.isEmpty() || second.isEmpty()) {
+            return 0;
+        }
+        long shared = first.stream().filter(second::contains).count();
+        return (double) shared / (first.size() + second.size() - shared);
+    }
+
+    // Copy of the bitmaps with one position inserted or removed (shift), then the old values cleared and the new ones set there.
+    // Bitmaps that end up empty are dropped, except the price buckets which always keep their labels
+    private static Map<String, BitSet> patch(Map<String, BitSet> bitmaps, int position, int shift,
+                                             Collection<String> removedValues, Collection<String> addedValues, boolean keepEmpty) {
+
+        Map<String, BitSet> result = new LinkedHashMap<>(bitmaps);
+        if (shift != 0) {
+            result.replaceAll((value, bitmap) -> shifted(bitmap, position, shift));
+        } else {
+            Set<String> touched = new HashSet<>(removedValues);
+            touched.addAll(addedValues);
+            touched.forEach(value -> result.computeIfPresent(value, (key, bitmap) -> (BitSet) bitmap.clone()));
+        }
+
+        for (String value : removedValues) {
+            BitSet bitmap = result.get(value);
+            if (bitmap == null) {
+                continue;
+            }
+            // On a remove the shift already dropped the bit, position now belongs to the next therapist
+            if (shift == 0) {
+                bitmap.clear(position);
+            }
+            if (bitmap.isEmpty() && !keepEmpty) {
+                result.remove(value);
+            }
+        }
+        for (String value : addedValues) {
+            result.computeIfAbsent(value, key -> new BitSet()).set(position);
+        }
+        return result;
+    }
+
+    // Bits from position on move up one (shift 1), or the bit at position is dropped and the rest move down one (shift -1)
+    private static BitSet shifted(BitSet bitmap, int position, int shift) {
+
+        if (shift == 0) {
+            return (BitSet) bitmap.clone();
+        }
+
+        BitSet result = bitmap.get(0, position);
+        for (int i = bitmap.nextSetBit(position); i >= 0; i = bitmap.nextSetBit(i + 1)) {
+            if (shift < 0 && i == position) {
+                continue;
+            }
+            result.set(i + shift);
+        }
+        return result;
+    }
+
+    private String priceBucket(double amount) {
+
+        int bucket = 0;
+        while (bucket < priceBucketBounds.size() && amount >= priceBucketBounds.get(bucket)) {
+            bucket++;
+        }
+        return bucketLabels.get(bucket);
+    }
+
+    private static List<String> categoriesOf(TherapistDirectoryEntryDTO entry) {
+        return entry == null ? List.of() : entry.getCategories();
+    }
+
+    private static List<String> languagesOf(TherapistDirectoryEntryDTO entry) {
+        return entry == null ? List.of() : entry.getLanguages();
+    }
+
+    private static List<String> locationOf(TherapistDirectoryEntryDTO entry) {
+        return entry == null || entry.getLocation() == null || entry.getLocation().isBlank() ? List.of() : List.of(entry.getLocation());
+    }
+
+    private List<String> priceBucketOf(TherapistDirectoryEntryDTO entry) {
+        return entry == null || entry.getAmount() == null ? List.of() : List.of(priceBucket(entry.getAmount()));
+    }
+
+    // "<" marks the exclusive upper bound, so a label sent back as the price param selects exactly the therapists it counted
+    private static List<String> priceBucketLabels(List<Double> bounds) {
+
+        Function<Double, String> format = value -> value % 1 == 0 ? String.valueOf(value.longValue()) : String.valueOf(value);
+
+        List<String> labels = new ArrayList<>();
+        double lower = 0;
+        for (Double bound : bounds) {
+            labels.add(format.apply(lower) + "-<" + format.apply(bound));
+            lower = bound;
+        }
+        labels.add(format.apply(lower) + "+");
+        return labels;
+    }
+}
@@ -2,10 +2,15 @@ package com.clinicalpsychology.app.service;
 
 import com.clinicalpsychology.app.dto.AllTherapistsResponseDTO;
 import com.clinicalpsychology.app.dto.TherapistDashboardDTO;
+import com.clinicalpsychology.app.dto.TherapistDirectoryEntryDTO;
 import com.clinicalpsychology.app.dto.TherapistProfileDTO;
-import com.clinicalpsychology.app.enums.AccountStatus;
-import com.clinicalpsychology.app.enums.ApprovalStatus;
+import com.clinicalpsychology.app.dto.TherapistSearchFacetsDTO;
+import com.clinicalpsychology.app.dto.TherapistSearchResultDTO;
+import com.clinicalpsychology.app.email.EmailTemplateId;
+import com.clinicalpsychology.app.email.EmailTemplates;
 import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.enums.ProfileChangeType;
+import com.clinicalpsychology.app.event.TherapistProfileChangedEvent;
 import com.clinicalpsychology.app.enums.Role;
 import com.clinicalpsychology.app.exception.InvalidFieldValueException;
 import com.clinicalpsychology.app.exception.ResourceAlreadyExistsException;
@@ -17,7 +22,10 @@ import com.clinicalpsychology.app.repository.ClientProfileRepository;
 import com.clinicalpsychology.app.repository.TherapistProfileRepository;
 import com.clinicalpsychology.app.repository.UsersRepository;
 import com.clinicalpsychology.app.response.CommonResponse;
+import com.clinicalpsychology.app.util.KeysetPagination;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -28,6 +36,7 @@ import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import static com.clinicalpsychology.app.util.Constant.*;
@@ -42,6 +51,13 @@ public class TherapistProfileService {
     private final ClientProfileRepository clientProfileRepository;
     private final BookingRepository bookingRepository;
     private final EmailService emailService;
+    private final EmailTemplates emailTemplates;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TherapistDirectoryCache therapistDirectoryCache;
+
+    // false sends every search to the JPA query, e.g. to compare the two
+    @Value("${search.engine.in-memory.enabled:true}")
+    private boolean inMemorySearchEnabled;
 
     //@Transactional
     //Spring only rolls back for unchecked exceptions (aka runtime exceptions) unless you explicitly tell it otherwise.
@@ -116,26 +132,10 @@ public class TherapistProfileService {
                     .build();
             usersRepository.save(user);
 
+            eventPublisher.publishEvent(new TherapistProfileChangedEvent(savedTherapist.getId(), ProfileChangeType.REGISTERED, null, savedTherapist.getApprovalStatus()));
+
             // Send confirmation email
-            String subject = "Therapist Registration Received - Awaiting Approval";
-            String body = String.format("""
-            Hi %s,
-            
-            Thank you for registering as a therapist on TherapistBooster. 🎉
-            
-            Your registration was successful, and our team is currently reviewing your application.
-            
-            🕒 What’s next?
-            - Our admin team will verify your profile details.
-            - You will receive an email once your account is approved or rejected.
-            
-            We appreciate your willingness to guide and empower clients.
-            
-            Warm regards,  
-            Team TherapistBooster  
-            """, therapist.getName());
-
-            emailService.sendEmail(therapist.getEmail(), subject, body);
+            emailService.sendEmail(therapist.getEmail(), emailTemplates.render(EmailTemplateId.THERAPIST_REGISTERED, therapist.getName()));
 
 
             return CommonResponse.<String>builder()
@@ -231,6 +231,8 @@ public class TherapistProfileService {
             if (therapistDto.getTermsAndConditions() != null) therapist.setTermsAndConditions(therapistDto.getTermsAndConditions());
             if (therapistDto.getTimezone() != null) therapist.setTimezone(therapistDto.getTimezone());
 
+            therapist.refreshSearchColumns();
+
             String effectiveTimezone = therapistDto.getTimezone() != null ? therapistDto.getTimezone() : therapist.getTimezone();
 
             // When updating it, we need time zone that's why we get effective timezone
@@ -256,6 +258,8 @@ public class TherapistProfileService {
 
             TherapistProfile updatedTherapist = therapistProfileRepository.save(therapist);
 
+            eventPublisher.publishEvent(new TherapistProfileChangedEvent(id, ProfileChangeType.UPDATED, updatedTherapist.getApprovalStatus(), updatedTherapist.getApprovalStatus()));
+
             // Build timeSlots back to String list for response
             List<String> updatedTimeSlotsStr = updatedTherapist.getTimeSlots().stream()
                     .map(slot -> slot.getTimeStart()
@@ -434,7 +438,7 @@ public class TherapistProfileService {
 
         try {
 
-            List<TherapistProfile> therapists = therapistProfileRepository.findAllByApprovalStatusAndAccountStatus(ApprovalStatus.ACCEPTED, AccountStatus.ACTIVE);
+            List<TherapistDirectoryEntryDTO> therapists = therapistDirectoryCache.getDirectory();
 
             if (therapists.isEmpty()) {
                 return CommonResponse.<List<AllTherapistsResponseDTO>>builder()
@@ -462,65 +466,60 @@ public class TherapistProfileService {
 
     }
 
-    private AllTherapistsResponseDTO toAllTherapistsResponseDTO(TherapistProfile therapistProfile){
+    private AllTherapistsResponseDTO toAllTherapistsResponseDTO(TherapistDirectoryEntryDTO therapist){
 
         return AllTherapistsResponseDTO.builder()
-                .therapistId(therapistProfile.getId())
-                .name(therapistProfile.getName())
-                .profileUrl(therapistProfile.getProfileUrl())
-                .categories(therapistProfile.getCategories())
-                .summary(therapistProfile.getSummary())
+                .therapistId(therapist.getTherapistId())
+                .name(therapist.getName())
+                .profileUrl(therapist.getProfileUrl())
+                .categories(therapist.getCategories())
+                .summary(therapist.getSummary())
                 .build();
     }
 
-    public CommonResponse<List<TherapistProfile>> search(String name, String location, String category, String priceRange) throws UnexpectedServerException {
+    // Served from memory, only a free text search that isn't cached yet runs a query
+    public CommonResponse<TherapistSearchResultDTO> search(String name, String location, String category, String priceRange, String q,
+                                                           Integer page, Integer size, boolean includeTotal, boolean includeFacets) throws UnexpectedServerException {
 
         try {
 
-            if (name == null || name.trim().isEmpty() || "null".equalsIgnoreCase(name)) name = null;
-            if (location == null || location.trim().isEmpty() || "null".equalsIgnoreCase(location)) location = null;
-            if (category == null || category.trim().isEmpty() || "null".equalsIgnoreCase(category)) category = null;
-            if (priceRange == null || priceRange.trim().isEmpty() || "null".equalsIgnoreCase(priceRange)) priceRange = null;
-
-            Double minPrice = null;
-            Double maxPrice = null;
+            String nameFilter = normaliseSearchParam(name);
+            String locationFilter = normaliseSearchParam(location);
+            String categoryFilter = normaliseSearchParam(category);
+            String queryFilter = normaliseSearchParam(q);
 
             // Parse price=1-20 into minPrice and maxPrice
-            if (priceRange != null) {
-                try {
-                    if (priceRange.contains("-")) {
-                        // Case: price = 100-300
-                        String[] parts = priceRange.split("-");
-                        minPrice = Double.parseDouble(parts[0]);
-                        maxPrice = Double.parseDouble(parts[1]);
-                    } else if (priceRange.endsWith("+")){
-                        // Case: price = 500+
-                        String value = priceRange.substring(0, priceRange.length() - 1);
-                        minPrice = Double.parseDouble(value);
-                    }else {
-                        // Case: price = 200 (single value)
-                        double price = Double.parseDouble(priceRange);
-                        minPrice = price;
-                        maxPrice = price;
-                    }
-                } catch (NumberFormatException e) {
-                    throw new InvalidFieldValueException(INVALID_PRICE_FORMAT);
-                }
+            Double[] priceBounds = parsePriceRange(normaliseSearchParam(priceRange));
+            Double minPrice = priceBounds[0];
+            Double maxPrice = priceBounds[1];
+
+            int pageNumber = page == null ? 0 : page;
+            if (pageNumber < 0) {
+                throw new InvalidFieldValueException(INVALID_PAGE_NUMBER);
             }
+            int pageSize = KeysetPagination.limit(size).max();
 
-            // Call DB filter
-            List<TherapistProfile> result = therapistProfileRepository.searchTherapists(name, location, minPrice, maxPrice, category);
+            String searchKey = String.join("|", String.valueOf(nameFilter).toLowerCase(), String.valueOf(locationFilter).toLowerCase(),
+                    String.valueOf(categoryFilter).toLowerCase(), String.valueOf(minPrice), String.valueOf(maxPrice), String.valueOf(queryFilter).toLowerCase(),
+                    String.valueOf(pageNumber), String.valueOf(pageSize), String.valueOf(includeTotal), String.valueOf(includeFacets));
 
-            if (result.isEmpty()) {
-                return CommonResponse.<List<TherapistProfile>>builder()
+            // Free text needs postgres (tsvector / pg_trgm), everything else is answered by the in-memory bitmap index.
+            // The db results are cached per search, the in-memory ones are cheaper to compute than to cache
+            TherapistSearchResultDTO result = inMemorySearchEnabled && queryFilter == null
+                    ? searchInMemory(nameFilter, locationFilter, categoryFilter, minPrice, maxPrice, pageNumber, pageSize, includeTotal, includeFacets)
+                    : therapistDirectoryCache.search(searchKey, () ->
+                            searchInDatabase(nameFilter, locationFilter, categoryFilter, minPrice, maxPrice, queryFilter, pageNumber, pageSize, includeTotal, includeFacets));
+
+            if (result.getItems().isEmpty()) {
+                return CommonResponse.<TherapistSearchResultDTO>builder()
                         .status(STATUS_FALSE)
                         .statusCode(SUCCESS_CODE)
                         .message(NO_THERAPISTS_FOUND)
-                        .data(List.of())
+                        .data(result)
                         .build();
             }
 
-            return CommonResponse.<List<TherapistProfile>>builder()
+            return CommonResponse.<TherapistSearchResultDTO>builder()
                     .status(STATUS_TRUE)
                     .statusCode(SUCCESS_CODE)
                     .message(THERAPISTS_FETCHED_SUCCESSFULLY)
@@ -534,6 +533,95 @@ public class TherapistProfileService {
         }
     }
 
+    private TherapistSearchResultDTO searchInMemory(String name, String location, String category, Double minPrice, Double maxPrice,
+                                                    int pageNumber, int pageSize, boolean includeTotal, boolean includeFacets) {
+
+        TherapistDirectoryIndex index = therapistDirectoryCache.getDirectoryIndex();
+        BitSet matched = index.match(name, location, category, minPrice, maxPrice);
+        List<TherapistDirectoryEntryDTO> matches = index.results(matched, name);
+
+        int from = (int) Math.min((long) pageNumber * pageSize, matches.size());
+        int to = Math.min(from + pageSize, matches.size());
+
+        return TherapistSearchResultDTO.builder()
+                .items(matches.subList(from, to))
+                .page(pageNumber)
+                .size(pageSize)
+                .hasNext(to < matches.size())
+                .totalCount(includeTotal ? (long) matches.size() : null)
+                .facets(includeFacets ? index.facets(matched) : null)
+                .build();
+    }
+
+    private TherapistSearchResultDTO searchInDatabase(String name, String location, String category, Double minPrice, Double maxPrice, String q,
+                                                      int pageNumber, int pageSize, boolean includeTotal, boolean includeFacets) {
+
+        // One extra row tells us if there is a next page without counting
+        List<TherapistDirectoryEntryDTO> rows = therapistProfileRepository.searchTherapists(name, location, minPrice, maxPrice,
+                        category, q, pageSize + 1, (long) pageNumber * pageSize).stream()
+                .map(TherapistDirectoryEntryDTO::from)
+                .toList();
+
+        boolean hasNext = rows.size() > pageSize;
+
+        return TherapistSearchResultDTO.builder()
+                .items(hasNext ? rows.subList(0, pageSize) : rows)
+                .page(pageNumber)
+                .size(pageSize)
+                .hasNext(hasNext)
+                .totalCount(includeTotal ? therapistProfileRepository.countSearchTherapists(name, location, minPrice, maxPrice, category, q) : null)
+                .facets(includeFacets ? searchFacets(name, location, category, minPrice, maxPrice, q) : null)
+                .build();
+    }
+
+    // Counted on the in-memory directory bitmaps. Without q the filters are matched in memory too,
+    // free text needs postgres for the matching ids, then the counting is the same
+    private TherapistSearchFacetsDTO searchFacets(String name, String location, String category, Double minPrice, Double maxPrice, String q) {
+
+        TherapistDirectoryIndex index = therapistDirectoryCache.getDirectoryIndex();
+
+        BitSet matched = q == null && inMemorySearchEnabled
+                ? index.match(name, location, category, minPrice, maxPrice)
+                : index.positionsOf(therapistProfileRepository.searchTherapistIds(name, location, minPrice, maxPrice, category, q));
+
+        return index.facets(matched);
+    }
+
+    private String normaliseSearchParam(String value) {
+        return value == null || value.trim().isEmpty() || "null".equalsIgnoreCase(value) ? null : value;
+    }
+
+    // Returns {minPrice, maxPrice}, either can be null
+    private Double[] parsePriceRange(String priceRange) {
+
+        if (priceRange == null) {
+            return new Double[]{null, null};
+        }
+
+        try {
+            if (priceRange.contains("-")) {
+                // Case: price = 100-300, both ends inclusive
+                String[] parts = priceRange.split("-", 2);
+                if (parts[1].startsWith("<")) {
+                    // Case: price = 100-<300, the facet bucket labels, upper end exclusive.
+                    // amount <= the double just below 300 is amount < 300, so the query and the index keep a single inclusive bound
+                    return new Double[]{Double.parseDouble(parts[0]), Math.nextDown(Double.parseDouble(parts[1].substring(1)))};
+                }
+                return new Double[]{Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+            } else if (priceRange.endsWith("+")){
+                // Case: price = 500+
+                String value = priceRange.substring(0, priceRange.length() - 1);
+                return new Double[]{Double.parseDouble(value), null};
+            }else {
+                // Case: price = 200 (single value)
+                double price = Double.parseDouble(priceRange);
+                return new Double[]{price, price};
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidFieldValueException(INVALID_PRICE_FORMAT);
+        }
+    }
+
     @Transactional
     public ResponseEntity<String> deleteTherapist(Long id) throws ResourceNotFoundException {
 
@@ -544,6 +632,8 @@ public class TherapistProfileService {
             usersRepository.deleteByEmailId(therapistProfile.getEmail());
             therapistProfileRepository.deleteById(id);
 
+            eventPublisher.publishEvent(new TherapistProfileChangedEvent(id, ProfileChangeType.DELETED, therapistProfile.getApprovalStatus(), null));
+
             return ResponseEntity.ok(THERAPIST_DELETED_SUCCESSFULLY_WITH_ID + id);
 
         } catch (Exception e){
@@ -347,8 +347,6 @@ public final class Constant {
     public static final String ERROR_RESCHEDULING_THERAPIST = "Error while rescheduling the therapist: ";
 
     //ClientBookingCancel
-    public static final String YOUR_THERAPIST_SESSION_CANCELLED = "Your TherapistBooster Session Has Been Cancelled";
-    public static final String A_SESSION_CANCELLED = "A Session Has Been Cancelled";
     public static final String BOOKING_CANCELLED_SUCCESSFULLY = "Booking cancelled successfully";
     public static final String ERROR_CANCELLING_BOOKING = "Error while cancelling the booking: ";
 
@@ -394,7 +392,7 @@ public final class Constant {
     public static final String NO_THERAPISTS_FOUND  = "No therapists found";
     public static final String  THERAPISTS_FETCHED_SUCCESSFULLY = "Therapists fetched successfully";
     public static final String ERROR_LOADING_THERAPISTS = "Error while loading therapists: ";
-    public static final String INVALID_PRICE_FORMAT ="Invalid price format. Use price=1-20 or price=200";
+    public static final String INVALID_PRICE_FORMAT ="Invalid price format. Use price=1-20, price=1-<20, price=200+ or price=200";
     public static final String THERAPIST_DELETED_SUCCESSFULLY_WITH_ID="Successfully deleted the therapist with id: ";
     public static final String ERROR_DELETING_THERAPIST = "Error while deleting therapis";
 
@@ -404,6 +402,11 @@ public final class Constant {
     //TimeSlotsOfTherapist
     public static final String INVALID_TIMEZONE ="Invalid Timezone";
     public static final String  DATE_MUST_BE_YYYY_MM_DD_FORMAT ="Date must be yyyy-mm-dd format";
+    public static final String DATE_TIME_MUST_BE_ISO_FORMAT = "Date time must be yyyy-MM-ddTHH:mm format";
+    public static final String INVALID_TIME_WINDOW = "To must be after from and at most this many days later: ";
+    public static final String LOADED_AVAILABLE_THERAPISTS = "Loaded available therapists";
+    public static final String ERROR_FETCHING_AVAILABLE_THERAPISTS = "Error while fetching available therapists: ";
+    public static final String INVALID_DATE_RANGE = "End date must be on or after start date and at most this many days later: ";
 
     //CheckOutProducts
      public static final String SLOT_ALREADY_BOOKED = "Slot is already booked.";
@@ -411,8 +414,19 @@ public final class Constant {
      public static final String ERROR_CREATING_PAYMENT_SESSION = "Error while creating payment session:" ;
      public static final String  PAYMENT_SESSION_CREATED = "Payment session created";
      public static final String SUCCESS = "Success";
+     public static final String BOOK_THERAPIST_PURCHASE_TYPE = "book-therapist";
+     public static final String AI_CHAT_PURCHASE_TYPE = "ai-chat";
+     public static final String PAYMENT_SERVICE_BUSY = "Payment service is busy. Please try again in a moment.";
+     public static final String PAYMENT_SESSION_TIMED_OUT = "Payment session creation timed out. Please try again.";
 
      //uploadFile
     public  static final String RESUME_UPLOADED_SUCCESSFULLY ="Resume uploaded successfully";
     public  static final String IMAGE_UPLOADED_SUCCESSFULLY ="Image uploaded successfully";
+
+    //KeysetPagination
+    public static final String INVALID_PAGE_SIZE = "Page size must be between 1 and ";
+    public static final String INVALID_PAGE_NUMBER = "Page must be 0 or greater";
+    public static final String INVALID_SORT_KEY = "Sort must be either id or createdAt";
+    public static final String INVALID_SORT_DIRECTION = "Direction must be either asc or desc";
+    public static final String INVALID_CURSOR = "Invalid or expired cursor";
 }
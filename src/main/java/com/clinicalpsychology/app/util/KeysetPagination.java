@@ -0,0 +1,135 @@
+package com.clinicalpsychology.app.util;
+
+import com.clinicalpsychology.app.exception.InvalidCursorException;
+import com.clinicalpsychology.app.exception.InvalidFieldValueException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.clinicalpsychology.app.util.Constant.*;
+
+// Helpers for cursor (keyset) pagination on the admin list apis.
+// The cursor is the sort it was issued for plus the sort keys of the last row of the previous page, base64 encoded,
+// so the db seeks with WHERE (createdAt, id) > (...) instead of OFFSET, and page N costs the same as page 1
+public final class KeysetPagination {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final String ID = "id";
+    private static final String CREATED_AT = "createdAt";
+    private static final String SORT = "sort";
+    private static final Set<String> SORT_KEYS = Set.of(ID, CREATED_AT);
+
+    private KeysetPagination(){
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static Limit limit(Integer size) {
+
+        if (size == null) {
+            return Limit.of(DEFAULT_PAGE_SIZE);
+        }
+
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new InvalidFieldValueException(INVALID_PAGE_SIZE + MAX_PAGE_SIZE);
+        }
+
+        return Limit.of(size);
+    }
+
+    // id is always added as the last key, because createdAt alone is not unique
+    public static Sort sort(String sortBy, String direction) {
+
+        String key = sortBy == null || sortBy.isBlank() ? ID : sortBy;
+        if (!SORT_KEYS.contains(key)) {
+            throw new InvalidFieldValueException(INVALID_SORT_KEY);
+        }
+
+        Sort.Direction sortDirection;
+        try {
+            sortDirection = direction == null || direction.isBlank() ? Sort.Direction.ASC : Sort.Direction.fromString(direction);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidFieldValueException(INVALID_SORT_DIRECTION);
+        }
+
+        return ID.equals(key) ? Sort.by(sortDirection, ID) : Sort.by(sortDirection, CREATED_AT, ID);
+    }
+
+    // The cursor carries the sort it was issued for, a cursor from ?sort=id sent with ?sort=createdAt (or the other direction)
+    // would otherwise seek on keys the query doesn't order by and fail deep inside spring data
+    public static KeysetScrollPosition position(String cursor, Sort sort) {
+
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+
+        String[] pairs;
+        try {
+            pairs = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(INVALID_CURSOR);
+        }
+
+        if (!(SORT + "=" + signature(sort)).equals(pairs[0])) {
+            throw new InvalidCursorException(INVALID_CURSOR);
+        }
+
+        Map<String, Object> keys = new LinkedHashMap<>();
+        try {
+            for (int i = 1; i < pairs.length; i++) {
+                String[] parts = pairs[i].split("=", 2);
+                if (ID.equals(parts[0])) {
+                    keys.put(ID, Long.parseLong(parts[1]));
+                } else if (CREATED_AT.equals(parts[0])) {
+                    keys.put(CREATED_AT, Instant.parse(parts[1]));
+                } else {
+                    throw new InvalidCursorException(INVALID_CURSOR);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException(INVALID_CURSOR);
+        }
+
+        if (!keys.keySet().equals(sortKeys(sort))) {
+            throw new InvalidCursorException(INVALID_CURSOR);
+        }
+
+        return ScrollPosition.forward(keys);
+    }
+
+    public static String nextCursor(Window<?> window, Sort sort) {
+
+        if (!window.hasNext() || window.isEmpty()) {
+            return null;
+        }
+
+        KeysetScrollPosition position = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+
+        StringBuilder encoded = new StringBuilder(SORT).append('=').append(signature(sort));
+        position.getKeys().forEach((key, value) -> encoded.append('|').append(key).append('=').append(value));
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(encoded.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // e.g. createdAt,id:DESC
+    private static String signature(Sort sort) {
+        return String.join(",", sortKeys(sort)) + ":" + sort.iterator().next().getDirection();
+    }
+
+    private static Set<String> sortKeys(Sort sort) {
+        Set<String> keys = new LinkedHashSet<>();
+        sort.forEach(order -> keys.add(order.getProperty()));
+        return keys;
+    }
+}
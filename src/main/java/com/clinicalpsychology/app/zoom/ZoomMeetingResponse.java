@@ -11,6 +11,7 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class ZoomMeetingResponse {
 
+    private String meetingId;
     private String startUrl;
     private String joinUrl;
 }
@@ -0,0 +1,56 @@
+package com.clinicalpsychology.app.zoom;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Token bucket in front of Zoom's meeting API, so a burst of payments doesn't run into Zoom's rate limit (429) and
+// burn retries. zoom.rate-limit.per-second tokens are added per second, up to zoom.rate-limit.burst. Per instance,
+// so with several instances divide Zoom's quota between them
+@Component
+public class ZoomRateLimiter {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private final LongSupplier nanoTime;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private double available;
+    private long refilledAt;
+
+    @Autowired
+    public ZoomRateLimiter(@Value("${zoom.rate-limit.per-second:5}") double permitsPerSecond, @Value("${zoom.rate-limit.burst:10}") int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    ZoomRateLimiter(double permitsPerSecond, int burst, LongSupplier nanoTime) {
+        this.permitsPerNano = permitsPerSecond / Duration.ofSeconds(1).toNanos();
+        this.burst = burst;
+        this.nanoTime = nanoTime;
+        this.available = burst;
+        this.refilledAt = nanoTime.getAsLong();
+    }
+
+    // Duration.ZERO when the call may go ahead now, otherwise how long until a token is free (nothing is taken then)
+    public Duration tryAcquire() {
+
+        lock.lock();
+        try {
+            long now = nanoTime.getAsLong();
+            available = Math.min(burst, available + (now - refilledAt) * permitsPerNano);
+            refilledAt = now;
+
+            if (available >= 1) {
+                available -= 1;
+                return Duration.ZERO;
+            }
+            return Duration.ofNanos((long) Math.ceil((1 - available) / permitsPerNano));
+        } finally {
+            lock.unlock();
+        }
+    }
+}
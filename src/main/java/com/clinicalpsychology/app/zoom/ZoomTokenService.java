@@ -1,15 +1,40 @@
 package com.clinicalpsychology.app.zoom;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.RestClient;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 
+// Caches the account_credentials token for its expires_in (about an hour) instead of exchanging one per meeting.
+// A token close to expiry is refreshed in the background, and concurrent callers share the one refresh in flight.
+// When a refresh fails the old token is used for as long as it is still valid, and no new exchange is tried for
+// REFRESH_FAILURE_COOLDOWN so every meeting call doesn't pay for a timeout against a Zoom that is down.
+// zoom.oauth.token-url can point at a local stub for tests
 @Service
+@Slf4j
 public class ZoomTokenService {
 
+    // Refresh this long before the token expires
+    private static final Duration REFRESH_BEFORE_EXPIRY = Duration.ofMinutes(5);
+    // Never hand out a token that expires sooner than this, the meeting call has to finish with it
+    private static final Duration MIN_REMAINING = Duration.ofSeconds(30);
+    private static final long DEFAULT_EXPIRES_IN_SECONDS = 3600;
+    // After a failed exchange, keep using a still valid token this long before trying again
+    static final Duration REFRESH_FAILURE_COOLDOWN = Duration.ofSeconds(30);
+
     @Value("${zoom.account.id}")
     private String accountId;
 
@@ -19,21 +44,136 @@ public class ZoomTokenService {
     @Value("${zoom.client.secret}")
     private String clientSecret;
 
+    @Value("${zoom.oauth.token-url:https://zoom.us/oauth/token}")
+    private String tokenUrl;
+
+    // Shared pooled client, see ZoomHttpClientConfig
+    private final RestClient zoomRestClient;
+
+    private final Clock clock;
+
+    private final Counter refreshed;
+    private final Counter refreshFailed;
+
+    private record CachedToken(String value, Instant expiresAt) {
+
+        boolean usableAt(Instant now) {
+            return now.isBefore(expiresAt.minus(MIN_REMAINING));
+        }
+
+        boolean dueAt(Instant now) {
+            return !now.isBefore(expiresAt.minus(REFRESH_BEFORE_EXPIRY));
+        }
+    }
+
+    private volatile CachedToken token;
+
+    // When the last exchange failed, null after a success
+    private volatile Instant lastFailure;
+
+    // The refresh in flight, callers arriving meanwhile wait for it instead of starting their own
+    private final AtomicReference<CompletableFuture<CachedToken>> refreshing = new AtomicReference<>();
+
+    @Autowired
+    public ZoomTokenService(RestClient zoomRestClient, MeterRegistry meterRegistry) {
+        this(zoomRestClient, meterRegistry, Clock.systemUTC());
+    }
+
+    ZoomTokenService(RestClient zoomRestClient, MeterRegistry meterRegistry, Clock clock) {
+        this.zoomRestClient = zoomRestClient;
+        this.clock = clock;
+        this.refreshed = Counter.builder("zoom.token.refreshes").tag("result", "success").description("Zoom OAuth token exchanges by outcome").register(meterRegistry);
+        this.refreshFailed = Counter.builder("zoom.token.refreshes").tag("result", "failure").description("Zoom OAuth token exchanges by outcome").register(meterRegistry);
+    }
+
     public String getAccessToken() {
-        RestTemplate restTemplate = new RestTemplate();
 
-        String url = "https://zoom.us/oauth/token" +
-                "?grant_type=account_credentials" +
-                "&account_id=" + accountId;
+        Instant now = clock.instant();
+        CachedToken current = token;
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBasicAuth(clientId, clientSecret);
-        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+        if (current != null && !current.dueAt(now)) {
+            return current.value();
+        }
 
-        HttpEntity<?> request = new HttpEntity<>(headers);
-        ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.POST, request, Map.class);
+        // The last exchange just failed, don't hit Zoom again while the old token still works
+        if (current != null && current.usableAt(now) && coolingDown(now)) {
+            return current.value();
+        }
 
-        return response.getBody().get("access_token").toString();
+        try {
+            return refresh().join().value();
+        } catch (CompletionException e) {
+            // Zoom or the network is down, carry on with the old token while it lasts
+            if (current != null && current.usableAt(clock.instant())) {
+                log.warn("Zoom token refresh failed, using the cached token until {}: {}", current.expiresAt(), e.getCause().getMessage());
+                return current.value();
+            }
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
     }
-}
 
+    // Proactive refresh, so meeting creation normally never waits for the token exchange
+    @Scheduled(initialDelay = 60 * 1000, fixedDelay = 60 * 1000)
+    public void refreshIfDue() {
+
+        Instant now = clock.instant();
+        CachedToken current = token;
+        if (current == null || !current.dueAt(now) || coolingDown(now)) {
+            return;
+        }
+
+        try {
+            refresh().join();
+        } catch (CompletionException e) {
+            log.warn("Background Zoom token refresh failed, will retry: {}", e.getCause().getMessage());
+        }
+    }
+
+    private CompletableFuture<CachedToken> refresh() {
+
+        CompletableFuture<CachedToken> mine = new CompletableFuture<>();
+        CompletableFuture<CachedToken> running = refreshing.compareAndExchange(null, mine);
+        if (running != null) {
+            return running;
+        }
+
+        // We won, do the exchange on this thread
+        try {
+            CachedToken fresh = fetchToken();
+            token = fresh;
+            lastFailure = null;
+            refreshed.increment();
+            mine.complete(fresh);
+        } catch (RuntimeException e) {
+            lastFailure = clock.instant();
+            refreshFailed.increment();
+            mine.completeExceptionally(e);
+        } finally {
+            refreshing.set(null);
+        }
+        return mine;
+    }
+
+    private CachedToken fetchToken() {
+
+        // URI template, so the account id doesn't end up in the uri tag of the metrics
+        Map<?, ?> response = zoomRestClient.post()
+                .uri(tokenUrl + "?grant_type=account_credentials&account_id={accountId}", accountId)
+                .headers(headers -> headers.setBasicAuth(clientId, clientSecret))
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .retrieve()
+                .body(Map.class);
+
+        if (response == null || response.get("access_token") == null) {
+            throw new IllegalStateException("Zoom token response has no access_token");
+        }
+
+        long expiresIn = response.get("expires_in") instanceof Number seconds ? seconds.longValue() : DEFAULT_EXPIRES_IN_SECONDS;
+        return new CachedToken(response.get("access_token").toString(), clock.instant().plusSeconds(expiresIn));
+    }
+
+    private boolean coolingDown(Instant now) {
+        Instant failedAt = lastFailure;
+        return failedAt != null && now.isBefore(failedAt.plus(REFRESH_FAILURE_COOLDOWN));
+    }
+}
@@ -0,0 +1,275 @@
+package com.clinicalpsychology.app;
+
+import com.clinicalpsychology.app.config.TherapistSearchIndexInitializer;
+import com.clinicalpsychology.app.config.ThreadingMode;
+import com.clinicalpsychology.app.model.Users;
+import com.clinicalpsychology.app.security.JwtService;
+import com.clinicalpsychology.app.service.TherapistAvailabilityIndex;
+import com.clinicalpsychology.app.service.TherapistDirectoryCache;
+import com.clinicalpsychology.app.util.EmbeddedPostgresConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Ramps to 2,000 concurrent users (load.users) against the whole app: tomcat, security, Hikari (default 10 connections), the embedded Postgres
+// and the Stripe stub answering after 300 ms. Each user searches the directory, opens a therapist's slots for a day, in one of 10
+// iterations checks out a free slot, and thinks for a second. Only the steady state at full load is counted.
+// Only runs with mvn test -Pbenchmark, once with spring.threads.virtual.enabled=false and once with true. See docs/virtual-threads.md.
+// The context is closed after the test, before the embedded Postgres' shutdown hook stops the database under Hikari
+@Tag("benchmark")
+@DirtiesContext
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.mail.host=localhost",
+        "spring.mail.port=1",
+        "security.jwt.secret-key=bG9hZC10ZXN0LW9ubHktc2VjcmV0LWtleS1mb3ItaHMyNTYtc2lnbmluZw==",
+        "stripe.stub.enabled=true",
+        "stripe.stub.latency-ms=300",
+        "stripe.apikey=sk_test_load",
+        "stripe.webhook.secret=whsec_load",
+        "stripe.successUrl=http://localhost/success",
+        "stripe.cancelUrl=http://localhost/cancel",
+        "meeting.pool.size=0",
+        "zoom.account.id=load", "zoom.client.id=load", "zoom.client.secret=load", "zoom.redirect.uri=http://localhost/zoom",
+        "aws.s3.access-key=load", "aws.s3.secret-key=load", "aws.s3.bucket=load", "aws.s3.region=us-east-1",
+        "openai.api.key=load",
+        "mail.from=load@example.com"
+})
+class VirtualThreadsLoadBenchmarkTest {
+
+    // -Dload.users=200 for a run below the limit to compare with
+    private static final int USERS = Integer.getInteger("load.users", 2_000);
+    private static final Duration RAMP = Duration.ofSeconds(30);
+    private static final Duration HOLD = Duration.ofSeconds(60);
+    private static final long THINK_MS = 1_000;
+    private static final int CHECKOUT_EVERY = 10;
+    private static final int THERAPISTS = 1_000;
+    private static final int SLOTS_PER_THERAPIST = 8;
+    // k6's default, a request that takes longer counts as an error
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private static final List<String> REQUESTS = List.of("search", "slots", "checkout");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private TherapistSearchIndexInitializer searchIndexInitializer;
+
+    @Autowired
+    private TherapistDirectoryCache directoryCache;
+
+    @Autowired
+    private TherapistAvailabilityIndex availabilityIndex;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ThreadingMode threadingMode;
+
+    private long[] clientIds;
+    private String[] tokens;
+    private long[][] slots;
+
+    // Through Hikari like production, not EmbeddedPostgresConfig's unpooled DataSource, the pool is part of what is measured
+    @DynamicPropertySource
+    static void dataSource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> EmbeddedPostgresConfig.postgres().getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+    }
+
+    // THERAPISTS approved therapists with SLOTS_PER_THERAPIST hourly slots each, one UTC client (and login) per user
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("""
+                INSERT INTO therapist_profile (name, phone, email, linkedin_url, profile_url, resume_url, years_of_experience, password, summary,
+                    amount, terms, terms_and_conditions, timezone, location, approval_status, account_status, created_at, updated_at, is_active)
+                SELECT 'Dr ' || substr(md5(i::text), 1, 10), '+1' || i, 'load' || i || '@example.com', 'https://linkedin.com/in/t' || i,
+                    'https://example.com/t.png', 'https://example.com/t.pdf', '5', 'secret', 'Summary of therapist ' || i,
+                    20 + i % 180, true, true, 'UTC', 'City ' || i % 50, 'ACCEPTED', 'ACTIVE', now(), now(), true
+                FROM generate_series(1, ?) AS i
+                """, THERAPISTS);
+        jdbcTemplate.update("""
+                INSERT INTO therapist_profile_categories (therapist_profile_id, category)
+                SELECT id, 'Category ' || id % 20 FROM therapist_profile WHERE email LIKE 'load%'
+                """);
+        jdbcTemplate.update("""
+                INSERT INTO fixed_time_slots_new (time_start, therapist_id, created_at, updated_at, is_active)
+                SELECT timestamptz '2025-01-01 08:00+00' + make_interval(hours => s), t.id, now(), now(), true
+                FROM therapist_profile t, generate_series(0, ?) AS s WHERE t.email LIKE 'load%'
+                """, SLOTS_PER_THERAPIST - 1);
+        jdbcTemplate.update("""
+                INSERT INTO users (email_id, password, role, created_at, updated_at, is_active)
+                SELECT 'client' || i || '@example.com', 'secret', 'CLIENT', now(), now(), true FROM generate_series(1, ?) AS i
+                """, USERS);
+        jdbcTemplate.update("""
+                INSERT INTO client_profile (name, email, password, phone, time_zone, chat_count, paid_for_ai_chat, created_at, updated_at, is_active)
+                SELECT 'Client ' || i, 'client' || i || '@example.com', 'secret', '+2' || i, 'UTC', 0, false, now(), now(), true
+                FROM generate_series(1, ?) AS i
+                """, USERS);
+
+        List<Map<String, Object>> clients = jdbcTemplate.queryForList("SELECT id, email FROM client_profile WHERE email LIKE 'client%' ORDER BY id");
+        clientIds = clients.stream().mapToLong(client -> ((Number) client.get("id")).longValue()).toArray();
+        tokens = clients.stream().map(client -> jwtService.generateToken(Users.builder().emailId((String) client.get("email")).build())).toArray(String[]::new);
+        slots = jdbcTemplate.query("SELECT s.id, s.therapist_id FROM fixed_time_slots_new s JOIN therapist_profile t ON t.id = s.therapist_id WHERE t.email LIKE 'load%' ORDER BY s.id",
+                (rs, row) -> new long[]{rs.getLong(1), rs.getLong(2)}).toArray(long[][]::new);
+
+        // The rows went in behind the app's back, so rebuild what it keeps in memory
+        searchIndexInitializer.createSearchIndexes();
+        jdbcTemplate.execute("ANALYZE");
+        directoryCache.reconcile();
+        availabilityIndex.reconcile();
+    }
+
+    @Test
+    void concurrentUsers() throws InterruptedException {
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(10)).build();
+        Map<String, Queue<Long>> latencies = Map.of("search", new ConcurrentLinkedQueue<>(), "slots", new ConcurrentLinkedQueue<>(), "checkout", new ConcurrentLinkedQueue<>());
+        LongAdder errors = new LongAdder();
+        AtomicInteger checkouts = new AtomicInteger();
+
+        long start = System.nanoTime();
+        long steadyFrom = start + RAMP.toNanos();
+        long end = steadyFrom + HOLD.toNanos();
+
+        // Platform threads on the client side in both runs, so only the server's threading changes
+        ExecutorService users = Executors.newFixedThreadPool(USERS);
+        for (int i = 0; i < USERS; i++) {
+            int user = i;
+            users.execute(() -> runUser(user, client, latencies, errors, checkouts, start, steadyFrom, end));
+        }
+
+        double maxPending = 0;
+        double maxStripeQueued = 0;
+        while (System.nanoTime() < end) {
+            Thread.sleep(500);
+            if (System.nanoTime() >= steadyFrom) {
+                maxPending = Math.max(maxPending, gauge("hikaricp.connections.pending", null));
+                maxStripeQueued = Math.max(maxStripeQueued, gauge("executor.queued", "stripeCheckout"));
+            }
+        }
+        // The last iteration of every user runs to its end, at worst three timed out requests
+        users.shutdown();
+        assertThat(users.awaitTermination(REQUEST_TIMEOUT.multipliedBy(3).plusMinutes(1).toSeconds(), TimeUnit.SECONDS)).isTrue();
+
+        long requests = latencies.values().stream().mapToLong(Queue::size).sum();
+        double stripeRejected = meterRegistry.find("executor.rejected").tag("name", "stripeCheckout").counter().count();
+
+        System.out.printf("Load test, %d users (%d s ramp, %d s at %d users), Java %s, %s threads, %d CPUs%n", USERS, RAMP.toSeconds(), HOLD.toSeconds(), USERS,
+                Runtime.version(), threadingMode.isVirtual() ? "virtual" : "platform", Runtime.getRuntime().availableProcessors());
+        System.out.printf("  requests %8d  %7.1f/s  errors %5.2f %%%n", requests, requests / (double) HOLD.toSeconds(), 100.0 * errors.sum() / Math.max(1, requests));
+        for (String request : REQUESTS) {
+            long[] sorted = latencies.get(request).stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.printf("  %-9s %7d  p50 %8.1f ms  p99 %8.1f ms%n", request, sorted.length, percentile(sorted, 50), percentile(sorted, 99));
+        }
+        System.out.printf("  hikaricp.connections.pending max %.0f, stripeCheckout queued max %.0f, rejected %.0f%n", maxPending, maxStripeQueued, stripeRejected);
+
+        assertThat(requests).isPositive();
+    }
+
+    private void runUser(int user, HttpClient client, Map<String, Queue<Long>> latencies, LongAdder errors, AtomicInteger checkouts,
+                         long start, long steadyFrom, long end) {
+
+        Random random = new Random(user);
+        String base = "http://localhost:" + port;
+        String token = "Bearer " + tokens[user];
+        long clientId = clientIds[user];
+
+        try {
+            // Users arrive evenly over the ramp
+            TimeUnit.NANOSECONDS.sleep(start + RAMP.toNanos() * user / USERS - System.nanoTime());
+
+            while (System.nanoTime() < end) {
+
+                long therapistId = slots[random.nextInt(slots.length)][1];
+                LocalDate day = LocalDate.now().plusDays(1 + random.nextInt(30));
+
+                send(client, HttpRequest.newBuilder(URI.create(base + "/api/therapist/search?category=category%20" + random.nextInt(20) + "&page=0&size=20")).timeout(REQUEST_TIMEOUT).build(),
+                        "search", latencies, errors, steadyFrom);
+                send(client, HttpRequest.newBuilder(URI.create(base + "/api/getTimeSlotsForTherapist?therapistId=" + therapistId + "&clientId=" + clientId + "&date=" + day))
+                        .header("Authorization", token).timeout(REQUEST_TIMEOUT).build(), "slots", latencies, errors, steadyFrom);
+
+                if (random.nextInt(CHECKOUT_EVERY) == 0) {
+                    // Every checkout gets a slot and day nobody else takes in this run
+                    int n = checkouts.getAndIncrement();
+                    long[] slot = slots[n % slots.length];
+                    String booking = """
+                            {"therapistId": %d, "clientId": %d, "timeSlotId": %d, "bookingDate": "%s", "category": "Category 1", "connectMethod": "zoom",
+                             "amount": 100.0, "currency": "usd", "productName": "Therapy session", "quantity": 1}
+                            """.formatted(slot[1], clientId, slot[0], LocalDate.now().plusDays(1 + n / slots.length));
+                    send(client, HttpRequest.newBuilder(URI.create(base + "/api/checkout")).header("Authorization", token).header("Content-Type", "application/json")
+                            .timeout(REQUEST_TIMEOUT).POST(HttpRequest.BodyPublishers.ofString(booking)).build(), "checkout", latencies, errors, steadyFrom);
+                }
+
+                Thread.sleep(THINK_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Only requests started in the steady state count, a failed one with the time it took to fail
+    private static void send(HttpClient client, HttpRequest request, String name, Map<String, Queue<Long>> latencies, LongAdder errors, long steadyFrom) throws InterruptedException {
+
+        long started = System.nanoTime();
+        boolean ok;
+        try {
+            ok = client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode() == 200;
+        } catch (IOException e) {
+            ok = false;
+        }
+
+        if (started >= steadyFrom) {
+            latencies.get(name).add(System.nanoTime() - started);
+            if (!ok) {
+                errors.increment();
+            }
+        }
+    }
+
+    private double gauge(String name, String executor) {
+        Gauge gauge = executor == null ? meterRegistry.find(name).gauge() : meterRegistry.find(name).tag("name", executor).gauge();
+        return gauge == null ? 0 : gauge.value();
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,114 @@
+package com.clinicalpsychology.app.config;
+
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import com.clinicalpsychology.app.util.PostgresRepositoryTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Old data in the bookings table decides whether the unique index can be created. Not transactional, like at startup:
+// after the failed CREATE INDEX the conflicts are still looked up
+@PostgresRepositoryTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BookingSlotIndexInitializerTest {
+
+    private static final Instant SESSION = Instant.parse("2025-06-02T09:00:00Z");
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private BookingSlotIndexInitializer initializer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX);
+        initializer = new BookingSlotIndexInitializer(jdbcTemplate, bookingRepository);
+    }
+
+    @Test
+    void indexStopsASecondActiveBookingOfTheSameSlot() {
+        initializer.createActiveSlotIndex();
+        // Runs again on every deploy
+        initializer.createActiveSlotIndex();
+
+        bookingRepository.saveAndFlush(booking(PaymentStatus.COMPLETED, null));
+        bookingRepository.saveAndFlush(booking(PaymentStatus.EXPIRED, null));
+
+        assertThatThrownBy(() -> bookingRepository.saveAndFlush(booking(PaymentStatus.HOLD, Instant.now())))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining(BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX);
+    }
+
+    @Test
+    void staleHoldsAreExpiredBeforeTheIndexIsCreated() {
+        Instant longAgo = Instant.now().minus(Duration.ofDays(2));
+        Booking first = bookingRepository.save(booking(PaymentStatus.HOLD, longAgo));
+        Booking second = bookingRepository.save(booking(PaymentStatus.HOLD, longAgo));
+        Booking paid = bookingRepository.saveAndFlush(booking(PaymentStatus.COMPLETED, longAgo));
+
+        initializer.createActiveSlotIndex();
+
+        assertThat(status(first)).isEqualTo("EXPIRED");
+        assertThat(status(second)).isEqualTo("EXPIRED");
+        assertThat(status(paid)).isEqualTo("COMPLETED");
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM pg_indexes WHERE indexname = ?", Long.class,
+                BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX)).isEqualTo(1);
+    }
+
+    @Test
+    void liveDuplicatesStopTheStartup() {
+        Booking hold = bookingRepository.save(booking(PaymentStatus.HOLD, Instant.now()));
+        Booking paid = bookingRepository.saveAndFlush(booking(PaymentStatus.COMPLETED, null));
+
+        assertThatThrownBy(() -> initializer.createActiveSlotIndex())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX)
+                .hasMessageContaining(hold.getId() + ":HOLD")
+                .hasMessageContaining(paid.getId() + ":COMPLETED");
+    }
+
+    // The schema is shared with every other @PostgresRepositoryTest on the same context, which insert bookings the index would reject
+    @AfterEach
+    void tearDown() {
+        bookingRepository.deleteAll();
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX);
+    }
+
+    private String status(Booking booking) {
+        return jdbcTemplate.queryForObject("SELECT payment_status FROM bookings WHERE id = ?", String.class, booking.getId());
+    }
+
+    private static Booking booking(PaymentStatus paymentStatus, Instant holdStartTime) {
+        return Booking.builder()
+                .therapistId(1L)
+                .clientId(2L)
+                .timeSlotId(10L)
+                .sessionStartTime(SESSION)
+                .clientTimezone("UTC")
+                .category("Anxiety")
+                .connectMethod("Zoom")
+                .amount(50.0)
+                .currency("usd")
+                .productName("Session")
+                .quantity(1L)
+                .paymentStatus(paymentStatus)
+                .holdStartTime(holdStartTime)
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package com.clinicalpsychology.app.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+class TherapistSearchIndexInitializerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TherapistSearchIndexInitializer initializer = new TherapistSearchIndexInitializer(jdbcTemplate);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(initializer, "enabled", true);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1L);
+    }
+
+    @Test
+    void backfillRunsEvenWhenTheExtensionCannotBeCreated() {
+        doThrow(new BadSqlGrammarException("create extension", "CREATE EXTENSION", new SQLException("permission denied to create extension")))
+                .when(jdbcTemplate).execute(startsWith("CREATE EXTENSION"));
+
+        initializer.createSearchIndexes();
+
+        verify(jdbcTemplate).update(startsWith("UPDATE therapist_profile"));
+        verify(jdbcTemplate, times(8)).execute(startsWith("CREATE INDEX"));
+    }
+
+    @Test
+    void startupFailsWithoutPgTrgm() {
+        doThrow(new BadSqlGrammarException("create extension", "CREATE EXTENSION", new SQLException("permission denied to create extension")))
+                .when(jdbcTemplate).execute(startsWith("CREATE EXTENSION"));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(0L);
+
+        assertThatThrownBy(initializer::createSearchIndexes).isInstanceOf(IllegalStateException.class).hasMessageContaining("pg_trgm");
+        verify(jdbcTemplate).update(anyString());
+        verify(jdbcTemplate, never()).execute(contains("USING gin"));
+    }
+
+    @Test
+    void oneFailingIndexDoesNotStopTheOthers() {
+        doThrow(new DataAccessResourceFailureException("lock timeout")).when(jdbcTemplate).execute(contains("name_trgm"));
+
+        initializer.createSearchIndexes();
+
+        verify(jdbcTemplate, times(8)).execute(startsWith("CREATE INDEX"));
+    }
+
+    @Test
+    void disabledSkipsTheDdlButStillBackfillsAndChecks() {
+        ReflectionTestUtils.setField(initializer, "enabled", false);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(0L);
+
+        assertThatThrownBy(initializer::createSearchIndexes).isInstanceOf(IllegalStateException.class);
+        verify(jdbcTemplate).update(anyString());
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+}
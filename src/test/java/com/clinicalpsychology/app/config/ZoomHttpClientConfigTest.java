@@ -0,0 +1,132 @@
+package com.clinicalpsychology.app.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The Zoom RestClient against a local server. The client's port as the server sees it tells which connection a request came on
+class ZoomHttpClientConfigTest {
+
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    private HttpServer server;
+    private ConnectionProvider connectionProvider;
+    private RestClient restClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/users/me/meetings", exchange -> answer(exchange, 0));
+        server.createContext("/busy", exchange -> answer(exchange, 200));
+        server.createContext("/slow", exchange -> answer(exchange, 2000));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        ZoomHttpClientConfig config = new ZoomHttpClientConfig();
+        ReflectionTestUtils.setField(config, "maxConnections", 2);
+        ReflectionTestUtils.setField(config, "pendingAcquireMaxCount", 100);
+        ReflectionTestUtils.setField(config, "pendingAcquireTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(config, "connectTimeoutMs", 1000);
+        ReflectionTestUtils.setField(config, "readTimeoutMs", 300L);
+        ReflectionTestUtils.setField(config, "maxIdleMs", 30000L);
+        ReflectionTestUtils.setField(config, "maxLifeMs", 300000L);
+
+        connectionProvider = config.zoomConnectionProvider();
+        restClient = config.zoomRestClient(RestClient.builder().baseUrl("http://127.0.0.1:" + server.getAddress().getPort()), connectionProvider);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionProvider.dispose();
+        server.stop(0);
+    }
+
+    @Test
+    void callsInARowShareOneConnection() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(restClient.get().uri("/users/me/meetings").retrieve().body(String.class)).isEqualTo("{\"meetings\":[]}");
+        }
+
+        assertThat(clientPorts).hasSize(5);
+        assertThat(Set.copyOf(clientPorts)).hasSize(1);
+    }
+
+    @Test
+    void parallelCallsAreCappedAtMaxConnections() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<String>> calls = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                calls.add(callers.submit(() -> restClient.get().uri("/busy").retrieve().body(String.class)));
+            }
+            for (Future<String> call : calls) {
+                assertThat(call.get(10, TimeUnit.SECONDS)).isEqualTo("{\"meetings\":[]}");
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // The rest waited for a pooled connection instead of opening their own
+        assertThat(maxConcurrent).hasValueLessThanOrEqualTo(2);
+        assertThat(Set.copyOf(clientPorts)).hasSizeLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void slowAnswerFailsAfterTheReadTimeout() {
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> restClient.get().uri("/slow").retrieve().body(String.class))
+                .isInstanceOf(ResourceAccessException.class);
+
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(tookMs).isGreaterThanOrEqualTo(300).isLessThan(1500);
+    }
+
+    private void answer(HttpExchange exchange, long delayMs) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+        try {
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            byte[] body = "{\"meetings\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client gave up on the slow answer
+        } finally {
+            concurrent.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
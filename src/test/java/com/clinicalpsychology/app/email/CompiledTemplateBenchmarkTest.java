@@ -0,0 +1,76 @@
+package com.clinicalpsychology.app.email;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Rough timed comparison with the String.format bodies the templates replaced, best of several rounds after warm-up.
+// Not a JMH run. Tagged "benchmark" so plain mvn test skips it, run it with mvn test -Pbenchmark -Dtest=CompiledTemplateBenchmarkTest
+@Tag("benchmark")
+class CompiledTemplateBenchmarkTest {
+
+    private static final int ITERATIONS = 20_000;
+    private static final int ROUNDS = 5;
+
+    private static final String FORMAT = """
+            Hi %s,
+
+            Your %s session with %s has been scheduled.
+
+            🗓️ Date: %s
+            🕒 Time: %s (%s)
+            📍 Location: %s
+            🔗 Join: %s
+            🗓️ Add to Calendar: %s
+
+            See you soon!
+            TherapistBooster Team""";
+
+    private static final String TEMPLATE = """
+            Hi {{clientName}},
+
+            Your {{location}} session with {{therapistName}} has been scheduled.
+
+            🗓️ Date: {{date}}
+            🕒 Time: {{time}} ({{timezone}})
+            📍 Location: {{location}}
+            🔗 Join: {{joinUrl}}
+            🗓️ Add to Calendar: {{calendarLink}}
+
+            See you soon!
+            TherapistBooster Team""";
+
+    private static final String[] VALUES = {"Ana Silva", "Dr. Lee", "Monday, 2 June 2025", "09:00 AM", "America/Toronto", "Zoom",
+            "https://zoom.us/j/85746065432?pwd=abc", "https://calendar.google.com/calendar/render?action=TEMPLATE&text=Session"};
+
+    @Test
+    void compiledTemplateRendersFasterThanStringFormat() {
+
+        CompiledTemplate template = CompiledTemplate.compile(TEMPLATE, EmailTemplateId.MEETING_SCHEDULED_CLIENT.getVariables(), "benchmark");
+
+        String expected = String.format(FORMAT, VALUES[0], VALUES[5], VALUES[1], VALUES[2], VALUES[3], VALUES[4], VALUES[5], VALUES[6], VALUES[7]);
+        assertThat(template.render(VALUES, false)).isEqualTo(expected);
+
+        long formatNanos = Long.MAX_VALUE;
+        long compiledNanos = Long.MAX_VALUE;
+        long sink = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += String.format(FORMAT, VALUES[0], VALUES[5], VALUES[1], VALUES[2], VALUES[3], VALUES[4], VALUES[5], VALUES[6], VALUES[7]).length();
+            }
+            formatNanos = Math.min(formatNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink += template.render(VALUES, false).length();
+            }
+            compiledNanos = Math.min(compiledNanos, System.nanoTime() - start);
+        }
+
+        System.out.printf("String.format %d ns/op, CompiledTemplate %d ns/op (%d)%n", formatNanos / ITERATIONS, compiledNanos / ITERATIONS, sink % 10);
+        assertThat(compiledNanos).isLessThan(formatNanos);
+    }
+}
@@ -0,0 +1,69 @@
+package com.clinicalpsychology.app.email;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledTemplateTest {
+
+    private static final String[] VARIABLES = {"clientName", "joinUrl"};
+
+    @Test
+    void placeholdersAreFilledByVariableIndex() {
+        CompiledTemplate template = CompiledTemplate.compile("Hi {{clientName}}, join at {{ joinUrl }}. Bye {{clientName}}", VARIABLES, "test");
+
+        assertThat(template.render(new String[]{"Ana", "https://zoom.us/j/1"}, false)).isEqualTo("Hi Ana, join at https://zoom.us/j/1. Bye Ana");
+    }
+
+    @Test
+    void textWithoutPlaceholdersIsKeptAsIs() {
+        assertThat(CompiledTemplate.compile("", VARIABLES, "test").render(new String[]{"a", "b"}, false)).isEmpty();
+        assertThat(CompiledTemplate.compile("50% off {not a placeholder}", VARIABLES, "test").render(new String[]{"a", "b"}, false))
+                .isEqualTo("50% off {not a placeholder}");
+    }
+
+    @Test
+    void placeholdersAtTheEdgesAndSideBySide() {
+        CompiledTemplate template = CompiledTemplate.compile("{{clientName}}{{joinUrl}}", VARIABLES, "test");
+
+        assertThat(template.render(new String[]{"a", "b"}, false)).isEqualTo("ab");
+    }
+
+    @Test
+    void nullValueRendersAsEmpty() {
+        CompiledTemplate template = CompiledTemplate.compile("[{{joinUrl}}]", VARIABLES, "test");
+
+        assertThat(template.render(new String[]{"a", null}, true)).isEqualTo("[]");
+    }
+
+    @Test
+    void unknownPlaceholderFailsAtCompileTime() {
+        assertThatThrownBy(() -> CompiledTemplate.compile("Hi {{therapistName}}", VARIABLES, "meeting.txt"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("{{therapistName}}")
+                .hasMessageContaining("meeting.txt");
+    }
+
+    @Test
+    void unclosedPlaceholderFailsAtCompileTime() {
+        assertThatThrownBy(() -> CompiledTemplate.compile("Hi {{clientName", VARIABLES, "meeting.txt"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Unclosed");
+    }
+
+    @Test
+    void htmlRenderingEscapesValuesButNotTheTemplate() {
+        CompiledTemplate template = CompiledTemplate.compile("<p>Hi {{clientName}}</p><a href=\"{{joinUrl}}\">join</a>", VARIABLES, "test.html");
+
+        assertThat(template.render(new String[]{"<script>alert('x')</script> & \"co\"", "https://zoom.us/j/1?a=1&b=2"}, true))
+                .isEqualTo("<p>Hi &lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt; &amp; &quot;co&quot;</p><a href=\"https://zoom.us/j/1?a=1&amp;b=2\">join</a>");
+    }
+
+    @Test
+    void textRenderingDoesNotEscape() {
+        CompiledTemplate template = CompiledTemplate.compile("Hi {{clientName}}", VARIABLES, "test.txt");
+
+        assertThat(template.render(new String[]{"A & B <c>", ""}, false)).isEqualTo("Hi A & B <c>");
+    }
+}
@@ -0,0 +1,302 @@
+package com.clinicalpsychology.app.email;
+
+import com.clinicalpsychology.app.enums.EmailOutboxStatus;
+import com.clinicalpsychology.app.model.EmailOutboxMessage;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Sends through a real SMTP server (GreenMail) behind a small proxy. The proxy counts SMTP connections and answers RCPT for
+// some recipients itself, GreenMail accepts every recipient so it can't give us a 4xx / 5xx. The outbox table is the in-memory one
+class EmailDispatcherIntegrationTest {
+
+    private static final String UNKNOWN = "unknown@example.com";
+    private static final String GREYLISTED = "greylisted@example.com";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemoryEmailOutboxRepository outbox = new InMemoryEmailOutboxRepository();
+
+    private GreenMail greenMail;
+    private SmtpProxy proxy;
+    private EmailDispatcher emailDispatcher;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        greenMail = new GreenMail(ServerSetupTest.SMTP.dynamicPort());
+        greenMail.start();
+        proxy = new SmtpProxy(greenMail.getSmtp().getPort(), Map.of(
+                UNKNOWN, "550 5.1.1 User unknown",
+                GREYLISTED, "450 4.2.0 Greylisted, try again later"));
+
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(proxy.port());
+        Properties properties = new Properties();
+        properties.put("mail.smtp.connectiontimeout", "5000");
+        properties.put("mail.smtp.timeout", "5000");
+        mailSender.setJavaMailProperties(properties);
+
+        // Drains run on the calling thread, so each wakeUp() has sent (or given up on) everything due when it returns
+        emailDispatcher = new EmailDispatcher(outbox.repository(), mailSender, Runnable::run, meterRegistry);
+        ReflectionTestUtils.setField(emailDispatcher, "batchSize", 2);
+        ReflectionTestUtils.setField(emailDispatcher, "connections", 1);
+        ReflectionTestUtils.setField(emailDispatcher, "maxAttempts", 8);
+        ReflectionTestUtils.setField(emailDispatcher, "retryBaseSeconds", 30L);
+        ReflectionTestUtils.setField(emailDispatcher, "mailFrom", "noreply@example.com");
+    }
+
+    @AfterEach
+    void tearDown() {
+        proxy.close();
+        greenMail.stop();
+    }
+
+    @Test
+    void batchesShareOneConnection() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            outbox.add("client" + i + "@example.com", 0);
+        }
+
+        emailDispatcher.wakeUp();
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(5);
+        assertThat(outbox.rows()).extracting(EmailOutboxMessage::getStatus).containsOnly(EmailOutboxStatus.SENT);
+        assertThat(outbox.rows()).extracting(EmailOutboxMessage::getAttempts).containsOnly(1);
+        assertThat(meterRegistry.get("email.outbox.batch.size").summary().count()).isEqualTo(3);
+        assertThat(proxy.connections()).hasValue(1);
+    }
+
+    @Test
+    void mailIsRetriedOnceTheServerIsBack() throws Exception {
+        int smtpPort = greenMail.getSmtp().getPort();
+        greenMail.stop();
+        EmailOutboxMessage row = outbox.add("c@example.com", 0);
+
+        Instant before = Instant.now();
+        emailDispatcher.wakeUp();
+
+        // The server being down doesn't count against the mail
+        assertThat(outbox.row(row.getId()).getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(outbox.row(row.getId()).getAttempts()).isZero();
+        assertThat(outbox.row(row.getId()).getNextAttemptAt()).isAfterOrEqualTo(before.plusSeconds(30));
+        assertThat(outbox.row(row.getId()).getLastError()).isNotNull();
+
+        // Not due yet, the next poll leaves it alone
+        greenMail = new GreenMail(new ServerSetup(smtpPort, "127.0.0.1", ServerSetup.PROTOCOL_SMTP));
+        greenMail.start();
+        emailDispatcher.wakeUp();
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+
+        outbox.makeDue();
+        emailDispatcher.wakeUp();
+
+        assertThat(outbox.row(row.getId()).getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+        assertThat(outbox.row(row.getId()).getAttempts()).isEqualTo(1);
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+        assertThat(meterRegistry.get("email.outbox.messages").tag("result", "postponed").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("email.outbox.messages").tag("result", "retried").counter().count()).isZero();
+    }
+
+    @Test
+    void permanentRejectionFailsRightAwayAndTemporaryOneIsRetried() throws Exception {
+        EmailOutboxMessage first = outbox.add("first@example.com", 0);
+        EmailOutboxMessage unknown = outbox.add(UNKNOWN, 0);
+        EmailOutboxMessage malformed = outbox.add("c@", 0);
+        EmailOutboxMessage second = outbox.add("second@example.com", 0);
+        EmailOutboxMessage greylisted = outbox.add(GREYLISTED, 0);
+
+        emailDispatcher.wakeUp();
+
+        assertThat(outbox.row(first.getId()).getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+        assertThat(outbox.row(second.getId()).getStatus()).isEqualTo(EmailOutboxStatus.SENT);
+        assertThat(outbox.row(unknown.getId()).getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(outbox.row(unknown.getId()).getLastError()).contains("550");
+        assertThat(outbox.row(malformed.getId()).getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(outbox.row(greylisted.getId()).getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(outbox.row(greylisted.getId()).getLastError()).contains("450");
+
+        assertThat(Arrays.stream(greenMail.getReceivedMessages()).map(EmailDispatcherIntegrationTest::recipient))
+                .containsExactly("first@example.com", "second@example.com");
+        // A rejected recipient doesn't cost the connection, only the temporary refusal closes it
+        assertThat(proxy.connections()).hasValue(1);
+        assertThat(meterRegistry.get("email.outbox.messages").tag("result", "failed").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void keyedMailIsSentOnceAndCanBeQueuedAgainAfterItFailed() throws Exception {
+        EmailOutbox emailOutbox = new EmailOutbox(outbox.repository(), emailDispatcher, meterRegistry);
+
+        emailOutbox.enqueue("ai-chat-paid-cs_1", "c@example.com", "AI chat unlocked", "Thanks", null);
+        emailOutbox.enqueue("ai-chat-paid-cs_1", "c@example.com", "AI chat unlocked", "Thanks", null);
+        // Without a key the same mail goes out every time
+        emailOutbox.enqueue("c@example.com", "Reminder", "See you", null);
+        emailOutbox.enqueue("c@example.com", "Reminder", "See you", null);
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(3);
+        assertThat(meterRegistry.get("email.outbox.messages").tag("result", "duplicate").counter().count()).isEqualTo(1);
+
+        // The rejected mail releases its key, so the replayed event with the fixed address gets through
+        emailOutbox.enqueue("meeting-42-client", UNKNOWN, "Your session", "Link", null);
+        emailOutbox.enqueue("meeting-42-client", "fixed@example.com", "Your session", "Link", null);
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(4);
+        assertThat(recipient(greenMail.getReceivedMessages()[3])).isEqualTo("fixed@example.com");
+    }
+
+    private static String recipient(MimeMessage message) {
+        try {
+            return message.getAllRecipients()[0].toString();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Forwards SMTP to GreenMail line by line, except RCPT for a rejected recipient which it answers itself. Refuses the session
+    // (drops the connection before the greeting) while GreenMail is down
+    private static final class SmtpProxy implements AutoCloseable {
+
+        private final int upstreamPort;
+        private final Map<String, String> rejections;
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connections = new AtomicInteger();
+
+        SmtpProxy(int upstreamPort, Map<String, String> rejections) throws IOException {
+            this.upstreamPort = upstreamPort;
+            this.rejections = rejections;
+            this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            daemon(this::accept);
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        AtomicInteger connections() {
+            return connections;
+        }
+
+        @Override
+        public void close() {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+                // test is over
+            }
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket client = serverSocket.accept();
+                    connections.incrementAndGet();
+                    daemon(() -> session(client));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void session(Socket client) {
+            try (client; Socket upstream = new Socket(InetAddress.getLoopbackAddress(), upstreamPort)) {
+                daemon(() -> pipe(upstream, client));
+
+                InputStream in = client.getInputStream();
+                OutputStream toClient = client.getOutputStream();
+                OutputStream toUpstream = upstream.getOutputStream();
+                byte[] line;
+                while ((line = readLine(in)) != null) {
+                    String reply = rejection(new String(line, StandardCharsets.US_ASCII));
+                    if (reply != null) {
+                        synchronized (toClient) {
+                            toClient.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                            toClient.flush();
+                        }
+                    } else {
+                        toUpstream.write(line);
+                        toUpstream.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // upstream down or the client hung up, closing the client is the answer
+            }
+        }
+
+        private String rejection(String line) {
+            String command = line.toUpperCase(Locale.ROOT);
+            if (!command.startsWith("RCPT TO:")) {
+                return null;
+            }
+            return rejections.entrySet().stream()
+                    .filter(rejected -> command.contains("<" + rejected.getKey().toUpperCase(Locale.ROOT) + ">"))
+                    .map(Map.Entry::getValue)
+                    .findFirst().orElse(null);
+        }
+
+        private static void pipe(Socket from, Socket to) {
+            try {
+                InputStream in = from.getInputStream();
+                OutputStream out = to.getOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    synchronized (out) {
+                        out.write(buffer, 0, read);
+                        out.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+                // either side closed
+            } finally {
+                try {
+                    to.close();
+                } catch (IOException ignored) {
+                    // already closed
+                }
+            }
+        }
+
+        private static void daemon(Runnable task) {
+            Thread thread = new Thread(task, "smtp-proxy");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // One line including its CRLF, null at the end of the stream
+        private static byte[] readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                line.write(b);
+                if (b == '\n') {
+                    return line.toByteArray();
+                }
+            }
+            return line.size() > 0 ? line.toByteArray() : null;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.clinicalpsychology.app.email;
+
+import com.clinicalpsychology.app.enums.EmailOutboxStatus;
+import com.clinicalpsychology.app.model.EmailOutboxMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// Claim and backoff run against a stub SMTP server that greylists every mail (451), so every send is a failed, counted attempt.
+// The connection tests point the sender at a closed port instead
+class EmailDispatcherTest {
+
+    private static final InternetAddress RECIPIENT = address("c@example.com");
+
+    private final InMemoryEmailOutboxRepository outbox = new InMemoryEmailOutboxRepository();
+    private final JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+
+    private ServerSocket smtpServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtpServer = greylistingServer();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(smtpServer.getLocalPort());
+        Properties properties = new Properties();
+        properties.put("mail.smtp.connectiontimeout", "2000");
+        properties.put("mail.smtp.timeout", "2000");
+        mailSender.setJavaMailProperties(properties);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        smtpServer.close();
+    }
+
+    @Test
+    void backoffDoublesPerAttemptUpToAnHour() {
+        EmailDispatcher emailDispatcher = dispatcher(Runnable::run, 20);
+        EmailOutboxMessage first = outbox.add("a@example.com", 0);
+        EmailOutboxMessage second = outbox.add("b@example.com", 1);
+        EmailOutboxMessage third = outbox.add("c@example.com", 2);
+        EmailOutboxMessage late = outbox.add("d@example.com", 7);
+
+        Instant before = Instant.now();
+        emailDispatcher.wakeUp();
+        Instant after = Instant.now();
+
+        assertRetryIn(first, 1, Duration.ofSeconds(30), before, after);
+        assertRetryIn(second, 2, Duration.ofSeconds(60), before, after);
+        assertRetryIn(third, 3, Duration.ofSeconds(120), before, after);
+        // 30s * 2^7 would be 64 minutes
+        assertRetryIn(late, 8, Duration.ofHours(1), before, after);
+    }
+
+    @Test
+    void lastAttemptFailsTheMailAndReleasesItsKey() {
+        EmailDispatcher emailDispatcher = dispatcher(Runnable::run, 8);
+        EmailOutboxMessage retried = outbox.add("a@example.com", 6);
+        EmailOutboxMessage exhausted = outbox.add("b@example.com", 7);
+        exhausted.setIdempotencyKey("meeting-42-client");
+
+        emailDispatcher.wakeUp();
+
+        assertThat(outbox.row(retried.getId()).getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(outbox.row(exhausted.getId()).getStatus()).isEqualTo(EmailOutboxStatus.FAILED);
+        assertThat(outbox.row(exhausted.getId()).getAttempts()).isEqualTo(8);
+        assertThat(outbox.row(exhausted.getId()).getIdempotencyKey()).isNull();
+        assertThat(outbox.row(exhausted.getId()).getLastError()).isNotBlank();
+    }
+
+    @Test
+    void drainClaimsBatchesUntilNothingIsDue() {
+        EmailDispatcher emailDispatcher = dispatcher(Runnable::run, 8);
+        for (int i = 0; i < 5; i++) {
+            outbox.add("client" + i + "@example.com", 0);
+        }
+
+        Instant before = Instant.now();
+        emailDispatcher.wakeUp();
+
+        // 2 + 2 + 1, then an empty claim ends the drain. The retries aren't due yet so they aren't claimed again
+        ArgumentCaptor<Instant> now = ArgumentCaptor.forClass(Instant.class);
+        ArgumentCaptor<Instant> lockedUntil = ArgumentCaptor.forClass(Instant.class);
+        verify(outbox.repository(), times(4)).claimBatch(anyString(), now.capture(), lockedUntil.capture(), eq(2));
+        assertThat(now.getValue()).isAfterOrEqualTo(before);
+        assertThat(lockedUntil.getValue()).isEqualTo(now.getValue().plus(Duration.ofMinutes(5)));
+        assertThat(outbox.rows()).extracting(EmailOutboxMessage::getStatus).containsOnly(EmailOutboxStatus.PENDING);
+        assertThat(outbox.rows()).extracting(EmailOutboxMessage::getClaimToken).containsOnlyNulls();
+    }
+
+    @Test
+    void sendingMailIsOnlyClaimedAgainOnceItsLeaseRanOut() {
+        EmailDispatcher emailDispatcher = dispatcher(Runnable::run, 8);
+        EmailOutboxMessage abandoned = outbox.add("a@example.com", 0);
+        abandoned.setStatus(EmailOutboxStatus.SENDING);
+        abandoned.setLockedUntil(Instant.now().minusSeconds(1));
+        EmailOutboxMessage inFlight = outbox.add("b@example.com", 0);
+        inFlight.setStatus(EmailOutboxStatus.SENDING);
+        inFlight.setLockedUntil(Instant.now().plus(Duration.ofMinutes(5)));
+
+        emailDispatcher.wakeUp();
+
+        assertThat(outbox.row(abandoned.getId()).getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(outbox.row(abandoned.getId()).getAttempts()).isEqualTo(1);
+        assertThat(outbox.row(inFlight.getId()).getStatus()).isEqualTo(EmailOutboxStatus.SENDING);
+        assertThat(outbox.row(inFlight.getId()).getAttempts()).isZero();
+    }
+
+    @Test
+    void smtpDownPutsTheBatchBackWithoutUsingAnAttempt() throws IOException {
+        smtpServer.close();
+        mailSender.setPort(closedPort());
+        EmailDispatcher emailDispatcher = dispatcher(Runnable::run, 8);
+        EmailOutboxMessage first = outbox.add("a@example.com", 0);
+        EmailOutboxMessage second = outbox.add("b@example.com", 7);
+        EmailOutboxMessage nextBatch = outbox.add("c@example.com", 0);
+
+        Instant before = Instant.now();
+        emailDispatcher.wakeUp();
+        Instant after = Instant.now();
+
+        // One connect for the whole batch, not one per mail, and the drain ends instead of claiming the next batch
+        verify(outbox.repository(), times(1)).claimBatch(anyString(), any(), any(), eq(2));
+        assertRetryIn(first, 0, Duration.ofSeconds(30), before, after);
+        // On its last attempt, still not failed
+        assertRetryIn(second, 7, Duration.ofSeconds(30), before, after);
+        assertThat(outbox.row(first.getId()).getLastError()).isNotBlank();
+        assertThat(outbox.row(first.getId()).getClaimToken()).isNull();
+        assertThat(outbox.row(nextBatch.getId()).getAttempts()).isZero();
+        assertThat(outbox.row(nextBatch.getId()).getLastError()).isNull();
+    }
+
+    @Test
+    void drainEndedBySmtpDownFreesItsSlot() throws IOException {
+        smtpServer.close();
+        mailSender.setPort(closedPort());
+        List<Runnable> drains = new ArrayList<>();
+        EmailDispatcher emailDispatcher = dispatcher(drains::add, 8);
+        outbox.add("a@example.com", 0);
+
+        emailDispatcher.wakeUp();
+        emailDispatcher.wakeUp();
+        drains.get(0).run();
+        emailDispatcher.wakeUp();
+
+        assertThat(drains).hasSize(3);
+    }
+
+    @Test
+    void wakeUpRunsAtMostConnectionsDrains() {
+        List<Runnable> drains = new ArrayList<>();
+        EmailDispatcher emailDispatcher = dispatcher(drains::add, 8);
+
+        emailDispatcher.wakeUp();
+        emailDispatcher.wakeUp();
+        emailDispatcher.wakeUp();
+        assertThat(drains).hasSize(2);
+
+        // A finished drain frees its slot
+        drains.get(0).run();
+        emailDispatcher.wakeUp();
+        assertThat(drains).hasSize(3);
+    }
+
+    @Test
+    void rejectedDrainFreesItsSlot() {
+        TaskExecutor full = mock(TaskExecutor.class);
+        doThrow(new RejectedExecutionException("queue full")).when(full).execute(any());
+        EmailDispatcher emailDispatcher = dispatcher(full, 8);
+
+        emailDispatcher.wakeUp();
+        emailDispatcher.wakeUp();
+        emailDispatcher.wakeUp();
+
+        verify(full, times(3)).execute(any());
+        verify(outbox.repository(), never()).claimBatch(anyString(), any(), any(), anyInt());
+    }
+
+    @Test
+    void errorKeepsTheSmtpReplies() {
+        assertThat(EmailDispatcher.error(invalidAddresses(refused(550, "550 5.1.1 User unknown"))))
+                .isEqualTo("SendFailedException: Invalid Addresses; 550 5.1.1 User unknown");
+    }
+
+    @Test
+    void malformedAddressIsPermanent() {
+        assertThat(EmailDispatcher.isPermanent(new AddressException("Missing final '@domain'", "c@"))).isTrue();
+    }
+
+    @Test
+    void refusedRecipientIsPermanentOnlyFor5xx() {
+        assertThat(EmailDispatcher.isPermanent(invalidAddresses(refused(550, "550 5.1.1 User unknown")))).isTrue();
+        assertThat(EmailDispatcher.isPermanent(invalidAddresses(refused(450, "450 4.2.0 Greylisted, try again later")))).isFalse();
+        assertThat(EmailDispatcher.isPermanent(invalidAddresses(refused(452, "452 4.2.2 Mailbox full")))).isFalse();
+    }
+
+    @Test
+    void rejectedMessageIsPermanentOnlyFor5xx() {
+        assertThat(EmailDispatcher.isPermanent(sendFailed(554, "554 5.7.1 Message rejected"))).isTrue();
+        assertThat(EmailDispatcher.isPermanent(sendFailed(421, "421 4.7.0 Try again later, closing connection"))).isFalse();
+    }
+
+    @Test
+    void anyTemporaryReplyMakesTheWholeMailRetried() {
+        SMTPAddressFailedException unknown = refused(550, "550 5.1.1 User unknown");
+        unknown.setNextException(refused(451, "451 4.3.0 Temporary lookup failure"));
+
+        assertThat(EmailDispatcher.isPermanent(invalidAddresses(unknown))).isFalse();
+    }
+
+    @Test
+    void noReplyCodeIsRetried() {
+        assertThat(EmailDispatcher.isPermanent(new MessagingException("Could not connect to SMTP host"))).isFalse();
+        assertThat(EmailDispatcher.isPermanent(new SendFailedException("Invalid Addresses"))).isFalse();
+    }
+
+    // Answers every MAIL FROM with 451 and everything else with 250, one connection at a time
+    private static ServerSocket greylistingServer() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept();
+                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                     Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)) {
+                    reply(out, "220 localhost ESMTP");
+                    for (String line = in.readLine(); line != null; line = in.readLine()) {
+                        String command = line.toUpperCase(Locale.ROOT);
+                        if (command.startsWith("QUIT")) {
+                            reply(out, "221 2.0.0 Bye");
+                            break;
+                        }
+                        reply(out, command.startsWith("MAIL") ? "451 4.7.1 Greylisted, try again later" : "250 localhost");
+                    }
+                } catch (IOException e) {
+                    // Closed by the test or the client hung up
+                }
+            }
+        }, "greylisting-smtp");
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    private static void reply(Writer out, String line) throws IOException {
+        out.write(line + "\r\n");
+        out.flush();
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return closed.getLocalPort();
+        }
+    }
+
+    private EmailDispatcher dispatcher(TaskExecutor executor, int maxAttempts) {
+        EmailDispatcher emailDispatcher = new EmailDispatcher(outbox.repository(), mailSender, executor, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(emailDispatcher, "batchSize", 2);
+        ReflectionTestUtils.setField(emailDispatcher, "connections", 2);
+        ReflectionTestUtils.setField(emailDispatcher, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(emailDispatcher, "retryBaseSeconds", 30L);
+        ReflectionTestUtils.setField(emailDispatcher, "mailFrom", "noreply@example.com");
+        return emailDispatcher;
+    }
+
+    private void assertRetryIn(EmailOutboxMessage message, int attempts, Duration backoff, Instant before, Instant after) {
+        EmailOutboxMessage row = outbox.row(message.getId());
+        assertThat(row.getStatus()).isEqualTo(EmailOutboxStatus.PENDING);
+        assertThat(row.getAttempts()).isEqualTo(attempts);
+        assertThat(row.getNextAttemptAt()).isBetween(before.plus(backoff), after.plus(backoff));
+    }
+
+    private static SendFailedException invalidAddresses(Exception next) {
+        return new SendFailedException("Invalid Addresses", next, new Address[0], new Address[0], new Address[]{RECIPIENT});
+    }
+
+    private static SMTPAddressFailedException refused(int code, String reply) {
+        return new SMTPAddressFailedException(RECIPIENT, "RCPT TO:<c@example.com>", code, reply);
+    }
+
+    private static SMTPSendFailedException sendFailed(int code, String reply) {
+        return new SMTPSendFailedException("DATA", code, reply, null, new Address[0], new Address[]{RECIPIENT}, new Address[0]);
+    }
+
+    private static InternetAddress address(String value) {
+        try {
+            return new InternetAddress(value);
+        } catch (AddressException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.clinicalpsychology.app.email;
+
+import com.clinicalpsychology.app.enums.EmailOutboxStatus;
+import com.clinicalpsychology.app.repository.EmailOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class EmailOutboxTest {
+
+    private final EmailOutboxRepository emailOutboxRepository = mock(EmailOutboxRepository.class);
+    private final EmailDispatcher emailDispatcher = mock(EmailDispatcher.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final EmailOutbox emailOutbox = new EmailOutbox(emailOutboxRepository, emailDispatcher, meterRegistry);
+
+    @Test
+    void mailsWithoutAKeyAreNeverDeduplicated() {
+        when(emailOutboxRepository.insertIfAbsent(anyString(), anyString(), anyString(), any(), isNull(), any())).thenReturn(1);
+
+        emailOutbox.enqueue("a@example.com", "Your code", "123456", null);
+        emailOutbox.enqueue("a@example.com", "Your code", "123456", null);
+
+        verify(emailOutboxRepository, times(2)).insertIfAbsent(eq("a@example.com"), eq("Your code"), eq("123456"), isNull(), isNull(), any());
+        verify(emailDispatcher, times(2)).wakeUp();
+        assertThat(meterRegistry.get("email.outbox.messages").tag("result", "queued").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void keyedMailIsQueuedOnce() {
+        when(emailOutboxRepository.insertIfAbsent(anyString(), anyString(), anyString(), any(), eq("meeting-job-7-client"), any())).thenReturn(1, 0);
+
+        emailOutbox.enqueue("meeting-job-7-client", "c@example.com", "Scheduled", "text", "<p>html</p>");
+        emailOutbox.enqueue("meeting-job-7-client", "c@example.com", "Scheduled", "text", "<p>html</p>");
+
+        verify(emailDispatcher, times(1)).wakeUp();
+        assertThat(meterRegistry.get("email.outbox.messages").tag("result", "duplicate").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void purgeRemovesSentAndFailedMailsPastRetention() {
+        ReflectionTestUtils.setField(emailOutbox, "retentionDays", 7L);
+
+        emailOutbox.purgeFinished();
+
+        verify(emailOutboxRepository).deleteFinishedBefore(
+                argThat(cutoff -> Math.abs(Duration.between(cutoff, Instant.now().minus(Duration.ofDays(7))).toSeconds()) < 5),
+                eq(Set.of(EmailOutboxStatus.SENT, EmailOutboxStatus.FAILED)));
+    }
+}
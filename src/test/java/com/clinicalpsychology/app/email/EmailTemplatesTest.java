@@ -0,0 +1,121 @@
+package com.clinicalpsychology.app.email;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Compiles the real templates under src/main/resources, so a broken placeholder fails the build and not the app start
+class EmailTemplatesTest {
+
+    private final EmailTemplates emailTemplates = new EmailTemplates(new DefaultResourceLoader(), List.of());
+
+    @Test
+    void everyTemplateRenders() {
+        for (EmailTemplateId id : EmailTemplateId.values()) {
+            String[] values = new String[id.getVariables().length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = "value-" + id.getVariables()[i];
+            }
+
+            RenderedEmail email = emailTemplates.render(id, values);
+
+            assertThat(email.subject()).as(id.name()).isNotBlank().doesNotContain("{{");
+            assertThat(email.text()).as(id.name()).isNotBlank().doesNotContain("{{");
+        }
+    }
+
+    @Test
+    void subjectLineIsSplitFromTheBody() {
+        RenderedEmail email = emailTemplates.render(EmailTemplateId.OTP_DEFAULT, "123456");
+
+        assertThat(email.subject()).doesNotStartWith("Subject:");
+        assertThat(email.text()).contains("123456").doesNotStartWith("Subject:");
+        assertThat(email.html()).isNull();
+    }
+
+    @Test
+    void htmlPartEscapesValues() {
+        RenderedEmail email = emailTemplates.render(EmailTemplateId.MEETING_SCHEDULED_CLIENT,
+                "Ana <b>", "Dr. Lee", "Mon, 2 Jun 2025", "09:00", "UTC", "Zoom", "https://zoom.us/j/1?pwd=a&b", "https://calendar");
+
+        assertThat(email.html()).contains("Ana &lt;b&gt;").contains("https://zoom.us/j/1?pwd=a&amp;b");
+        assertThat(email.text()).contains("Ana <b>");
+    }
+
+    @Test
+    void wrongNumberOfValuesIsRejected() {
+        assertThatThrownBy(() -> emailTemplates.render(EmailTemplateId.OTP_DEFAULT))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void translationIsPickedByLanguageAndFallsBackToTheDefault() {
+        EmailTemplates translated = new EmailTemplates(withGermanOtp(), List.of("de", "fr"));
+
+        RenderedEmail german = translated.render(EmailTemplateId.OTP_DEFAULT, Locale.GERMANY, "123456");
+        assertThat(german.subject()).isEqualTo("Ihr Code");
+        assertThat(german.text()).isEqualTo("Code: 123456");
+
+        // fr is configured but has no file, en isn't configured, no locale is the default
+        RenderedEmail fallback = emailTemplates.render(EmailTemplateId.OTP_DEFAULT, "123456");
+        assertThat(translated.render(EmailTemplateId.OTP_DEFAULT, Locale.FRENCH, "123456")).isEqualTo(fallback);
+        assertThat(translated.render(EmailTemplateId.OTP_DEFAULT, Locale.ENGLISH, "123456")).isEqualTo(fallback);
+        assertThat(translated.render(EmailTemplateId.OTP_DEFAULT, (Locale) null, "123456")).isEqualTo(fallback);
+
+        // Only the template that has a translation changes
+        assertThat(translated.render(EmailTemplateId.THERAPIST_APPROVED, Locale.GERMAN, values(EmailTemplateId.THERAPIST_APPROVED)))
+                .isEqualTo(emailTemplates.render(EmailTemplateId.THERAPIST_APPROVED, values(EmailTemplateId.THERAPIST_APPROVED)));
+    }
+
+    @Test
+    void translationIsOnlyLoadedForConfiguredLanguages() {
+        EmailTemplates defaultOnly = new EmailTemplates(withGermanOtp(), List.of());
+
+        assertThat(defaultOnly.render(EmailTemplateId.OTP_DEFAULT, Locale.GERMAN, "123456"))
+                .isEqualTo(emailTemplates.render(EmailTemplateId.OTP_DEFAULT, "123456"));
+    }
+
+    @Test
+    void brokenTranslationStopsTheStartup() {
+        DefaultResourceLoader broken = new DefaultResourceLoader() {
+            @Override
+            public Resource getResource(String location) {
+                return location.endsWith("otp-default_de.txt") ? text("Subject: Ihr Code\n\nCode: {{code}}") : super.getResource(location);
+            }
+        };
+
+        assertThatThrownBy(() -> new EmailTemplates(broken, List.of("de")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("otp-default_de");
+    }
+
+    // The real templates plus a German otp-default
+    private static DefaultResourceLoader withGermanOtp() {
+        return new DefaultResourceLoader() {
+            @Override
+            public Resource getResource(String location) {
+                return location.endsWith("otp-default_de.txt") ? text("Subject: Ihr Code\n\nCode: {{otp}}") : super.getResource(location);
+            }
+        };
+    }
+
+    private static Resource text(String content) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] values(EmailTemplateId id) {
+        String[] values = new String[id.getVariables().length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = "value-" + id.getVariables()[i];
+        }
+        return values;
+    }
+}
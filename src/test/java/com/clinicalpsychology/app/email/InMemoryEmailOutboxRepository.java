@@ -0,0 +1,154 @@
+package com.clinicalpsychology.app.email;
+
+import com.clinicalpsychology.app.enums.EmailOutboxStatus;
+import com.clinicalpsychology.app.model.EmailOutboxMessage;
+import com.clinicalpsychology.app.repository.EmailOutboxRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// The outbox table in memory for tests without Postgres: insertIfAbsent honours the unique idempotency key (NULLs never
+// conflict), claimBatch / complete / fail follow the SQL in EmailOutboxRepository
+final class InMemoryEmailOutboxRepository {
+
+    private final List<EmailOutboxMessage> rows = new ArrayList<>();
+    private final EmailOutboxRepository repository = mock(EmailOutboxRepository.class);
+    private long nextId = 1;
+
+    InMemoryEmailOutboxRepository() {
+
+        when(repository.insertIfAbsent(any(), any(), any(), any(), any(), any())).thenAnswer(call ->
+                insert(call.getArgument(0), call.getArgument(1), call.getArgument(2), call.getArgument(3), call.getArgument(4), call.getArgument(5)));
+
+        when(repository.claimBatch(anyString(), any(), any(), anyInt())).thenAnswer(call ->
+                claim(call.getArgument(0), call.getArgument(1), call.getArgument(2), call.getArgument(3)));
+
+        when(repository.findByClaimTokenOrderById(anyString())).thenAnswer(call -> claimed(call.getArgument(0)));
+
+        when(repository.complete(anyLong(), any(), anyInt(), any(), any(), any(), any())).thenAnswer(call -> update(call.getArgument(0), row -> {
+            row.setStatus(call.getArgument(1));
+            row.setAttempts(call.getArgument(2));
+            row.setNextAttemptAt(call.getArgument(3));
+            row.setLockedUntil(null);
+            row.setClaimToken(null);
+            row.setSentAt(call.getArgument(4));
+            row.setLastError(call.getArgument(5));
+            row.setUpdatedAt(call.getArgument(6));
+        }));
+
+        when(repository.fail(anyLong(), any(), anyInt(), any(), any())).thenAnswer(call -> update(call.getArgument(0), row -> {
+            row.setStatus(call.getArgument(1));
+            row.setAttempts(call.getArgument(2));
+            row.setLockedUntil(null);
+            row.setClaimToken(null);
+            row.setIdempotencyKey(null);
+            row.setLastError(call.getArgument(3));
+            row.setUpdatedAt(call.getArgument(4));
+        }));
+    }
+
+    EmailOutboxRepository repository() {
+        return repository;
+    }
+
+    synchronized List<EmailOutboxMessage> rows() {
+        return List.copyOf(rows);
+    }
+
+    synchronized EmailOutboxMessage row(Long id) {
+        return rows.stream().filter(row -> row.getId().equals(id)).findFirst().orElseThrow();
+    }
+
+    // Adds a row as it would be after earlier attempts
+    synchronized EmailOutboxMessage add(String recipient, int attempts) {
+        insert(recipient, "Subject " + nextId, "Body " + nextId, null, null, Instant.now());
+        EmailOutboxMessage row = rows.get(rows.size() - 1);
+        row.setAttempts(attempts);
+        return row;
+    }
+
+    // Makes waiting retries due now
+    synchronized void makeDue() {
+        rows.stream().filter(row -> row.getStatus() == EmailOutboxStatus.PENDING).forEach(row -> row.setNextAttemptAt(Instant.now()));
+    }
+
+    private synchronized int insert(String recipient, String subject, String textBody, String htmlBody, String idempotencyKey, Instant now) {
+
+        if (idempotencyKey != null && rows.stream().anyMatch(row -> idempotencyKey.equals(row.getIdempotencyKey()))) {
+            return 0;
+        }
+
+        EmailOutboxMessage row = EmailOutboxMessage.builder()
+                .id(nextId++)
+                .recipient(recipient)
+                .subject(subject)
+                .textBody(textBody)
+                .htmlBody(htmlBody)
+                .idempotencyKey(idempotencyKey)
+                .status(EmailOutboxStatus.PENDING)
+                .nextAttemptAt(now)
+                .build();
+        row.setCreatedAt(now);
+        row.setUpdatedAt(now);
+        rows.add(row);
+        return 1;
+    }
+
+    private synchronized int claim(String claimToken, Instant now, Instant lockedUntil, int batchSize) {
+
+        List<EmailOutboxMessage> due = rows.stream()
+                .filter(row -> (row.getStatus() == EmailOutboxStatus.PENDING && !row.getNextAttemptAt().isAfter(now))
+                        || (row.getStatus() == EmailOutboxStatus.SENDING && row.getLockedUntil().isBefore(now)))
+                .sorted(Comparator.comparing(EmailOutboxMessage::getId))
+                .limit(batchSize)
+                .toList();
+
+        for (EmailOutboxMessage row : due) {
+            row.setStatus(EmailOutboxStatus.SENDING);
+            row.setClaimToken(claimToken);
+            row.setLockedUntil(lockedUntil);
+            row.setUpdatedAt(now);
+        }
+        return due.size();
+    }
+
+    // Copies, like rows loaded by a query, so the dispatcher can't see later updates through them
+    private synchronized List<EmailOutboxMessage> claimed(String claimToken) {
+        List<EmailOutboxMessage> batch = new ArrayList<>();
+        for (EmailOutboxMessage row : rows) {
+            if (Objects.equals(claimToken, row.getClaimToken())) {
+                batch.add(copy(row));
+            }
+        }
+        return batch;
+    }
+
+    private synchronized int update(Long id, Consumer<EmailOutboxMessage> change) {
+        change.accept(row(id));
+        return 1;
+    }
+
+    private static EmailOutboxMessage copy(EmailOutboxMessage row) {
+        return EmailOutboxMessage.builder()
+                .id(row.getId())
+                .recipient(row.getRecipient())
+                .subject(row.getSubject())
+                .textBody(row.getTextBody())
+                .htmlBody(row.getHtmlBody())
+                .idempotencyKey(row.getIdempotencyKey())
+                .status(row.getStatus())
+                .attempts(row.getAttempts())
+                .nextAttemptAt(row.getNextAttemptAt())
+                .claimToken(row.getClaimToken())
+                .lockedUntil(row.getLockedUntil())
+                .build();
+    }
+}
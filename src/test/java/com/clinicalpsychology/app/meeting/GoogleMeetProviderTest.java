@@ -0,0 +1,92 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.gmeetservicebased.GoogleServiceAccountConfig;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.model.Event;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Instant;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class GoogleMeetProviderTest {
+
+    private static final Instant START = Instant.parse("2025-06-02T09:00:00Z");
+    private static final Instant END = START.plusSeconds(3600);
+
+    private final GoogleServiceAccountConfig googleServiceAccountConfig = mock(GoogleServiceAccountConfig.class);
+    private final Calendar calendar = mock(Calendar.class);
+    private final Calendar.Events events = mock(Calendar.Events.class);
+
+    private final GoogleMeetProvider provider = new GoogleMeetProvider(googleServiceAccountConfig);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(googleServiceAccountConfig.getCalendarService()).thenReturn(calendar);
+        when(calendar.events()).thenReturn(events);
+    }
+
+    @Test
+    void pooledMeetingIsAnEventWithAMeetLink() throws Exception {
+        Calendar.Events.Insert insert = mock(Calendar.Events.Insert.class);
+        when(events.insert(eq("primary"), any())).thenReturn(insert);
+        when(insert.setConferenceDataVersion(1)).thenReturn(insert);
+        when(insert.execute()).thenReturn(new Event().setId("evt1").setHangoutLink("https://meet.google.com/abc-defg-hij"));
+
+        MeetingLinks links = provider.createPooledMeeting();
+
+        assertThat(links).isEqualTo(new MeetingLinks("Google Meet", "evt1", "https://meet.google.com/abc-defg-hij", "https://meet.google.com/abc-defg-hij"));
+    }
+
+    @Test
+    void rescheduleMovesThePlaceholderEventToTheSession() throws Exception {
+        Calendar.Events.Patch patch = mock(Calendar.Events.Patch.class);
+        ArgumentCaptor<Event> times = ArgumentCaptor.forClass(Event.class);
+        when(events.patch(eq("primary"), eq("evt1"), times.capture())).thenReturn(patch);
+
+        provider.reschedule("evt1", START, END);
+
+        verify(patch).execute();
+        assertThat(times.getValue().getStart().getDateTime()).isEqualTo(new DateTime(Date.from(START)));
+        assertThat(times.getValue().getEnd().getDateTime()).isEqualTo(new DateTime(Date.from(END)));
+        assertThat(times.getValue().getConferenceData()).isNull();
+    }
+
+    @Test
+    void deleteRemovesTheEventAndIgnoresOneAlreadyGone() throws Exception {
+        Calendar.Events.Delete delete = mock(Calendar.Events.Delete.class);
+        Calendar.Events.Delete gone = mock(Calendar.Events.Delete.class);
+        when(events.delete("primary", "evt1")).thenReturn(delete);
+        when(events.delete("primary", "evt2")).thenReturn(gone);
+        when(gone.execute()).thenThrow(error(410));
+
+        provider.deleteMeeting("evt1");
+        provider.deleteMeeting("evt2");
+
+        verify(delete).execute();
+    }
+
+    @Test
+    void deleteFailureIsReported() throws Exception {
+        Calendar.Events.Delete delete = mock(Calendar.Events.Delete.class);
+        when(events.delete("primary", "evt1")).thenReturn(delete);
+        when(delete.execute()).thenThrow(error(500));
+
+        assertThatThrownBy(() -> provider.deleteMeeting("evt1")).isInstanceOf(GoogleJsonResponseException.class);
+    }
+
+    private static GoogleJsonResponseException error(int status) {
+        return new GoogleJsonResponseException(new HttpResponseException.Builder(status, "error", new HttpHeaders()), null);
+    }
+}
@@ -0,0 +1,138 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.enums.MeetingJobStatus;
+import com.clinicalpsychology.app.model.MeetingProvisioningJob;
+import com.clinicalpsychology.app.repository.MeetingProvisioningJobRepository;
+import org.springframework.data.domain.Limit;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// The job table in memory for tests without Postgres: one row per booking id, claim / complete / postpone / findDue follow the
+// SQL in MeetingProvisioningJobRepository
+final class InMemoryMeetingProvisioningJobRepository {
+
+    private final List<MeetingProvisioningJob> rows = new ArrayList<>();
+    private final MeetingProvisioningJobRepository repository = mock(MeetingProvisioningJobRepository.class);
+
+    InMemoryMeetingProvisioningJobRepository() {
+
+        when(repository.insertIfAbsent(anyLong(), any())).thenAnswer(call -> insert(call.getArgument(0), call.getArgument(1)));
+
+        when(repository.claim(anyLong(), any(), any(), any(), any())).thenAnswer(call ->
+                claim(call.getArgument(0), call.getArgument(1), call.getArgument(2)));
+
+        when(repository.findById(anyLong())).thenAnswer(call -> find(call.getArgument(0)));
+
+        when(repository.findDue(any(), any(), any(), any())).thenAnswer(call -> due(call.getArgument(0), call.getArgument(3)));
+
+        when(repository.complete(anyLong(), any(), anyInt(), any(), any(), any(), any())).thenAnswer(call -> update(call.getArgument(0), row -> {
+            row.setStatus(call.getArgument(1));
+            row.setAttempts(call.getArgument(2));
+            row.setNextAttemptAt(call.getArgument(3));
+            row.setLockedUntil(null);
+            row.setCompletedAt(call.getArgument(4));
+            row.setLastError(call.getArgument(5));
+            row.setUpdatedAt(call.getArgument(6));
+        }));
+
+        when(repository.postpone(anyLong(), any(), any(), any())).thenAnswer(call -> update(call.getArgument(0), row -> {
+            row.setStatus(call.getArgument(2));
+            row.setNextAttemptAt(call.getArgument(1));
+            row.setLockedUntil(null);
+            row.setUpdatedAt(call.getArgument(3));
+        }));
+    }
+
+    MeetingProvisioningJobRepository repository() {
+        return repository;
+    }
+
+    synchronized MeetingProvisioningJob row(Long bookingId) {
+        return rows.stream().filter(row -> row.getBookingId().equals(bookingId)).findFirst().orElseThrow();
+    }
+
+    // Adds a job as it would be after earlier attempts
+    synchronized MeetingProvisioningJob add(Long bookingId, int attempts) {
+        insert(bookingId, Instant.now());
+        MeetingProvisioningJob row = row(bookingId);
+        row.setAttempts(attempts);
+        return row;
+    }
+
+    private synchronized int insert(Long bookingId, Instant now) {
+
+        if (rows.stream().anyMatch(row -> row.getBookingId().equals(bookingId))) {
+            return 0;
+        }
+
+        MeetingProvisioningJob row = MeetingProvisioningJob.builder()
+                .bookingId(bookingId)
+                .status(MeetingJobStatus.PENDING)
+                .nextAttemptAt(now)
+                .build();
+        row.setCreatedAt(now);
+        row.setUpdatedAt(now);
+        rows.add(row);
+        return 1;
+    }
+
+    private synchronized int claim(Long bookingId, Instant now, Instant lockedUntil) {
+
+        MeetingProvisioningJob row = rows.stream().filter(job -> job.getBookingId().equals(bookingId)).findFirst().orElse(null);
+        if (row == null || !isDue(row, now)) {
+            return 0;
+        }
+        row.setStatus(MeetingJobStatus.PROCESSING);
+        row.setLockedUntil(lockedUntil);
+        row.setUpdatedAt(now);
+        return 1;
+    }
+
+    private synchronized List<MeetingProvisioningJob> due(Instant now, Limit limit) {
+        return rows.stream()
+                .filter(row -> isDue(row, now))
+                .sorted(Comparator.comparing(MeetingProvisioningJob::getNextAttemptAt))
+                .limit(limit.max())
+                .map(InMemoryMeetingProvisioningJobRepository::copy)
+                .toList();
+    }
+
+    // A copy, like a row loaded by a query, so the queue can't see later updates through it
+    private synchronized Optional<MeetingProvisioningJob> find(Long bookingId) {
+        return rows.stream().filter(row -> row.getBookingId().equals(bookingId)).findFirst().map(InMemoryMeetingProvisioningJobRepository::copy);
+    }
+
+    private synchronized int update(Long bookingId, Consumer<MeetingProvisioningJob> change) {
+        change.accept(row(bookingId));
+        return 1;
+    }
+
+    private static boolean isDue(MeetingProvisioningJob row, Instant now) {
+        return (row.getStatus() == MeetingJobStatus.PENDING && !row.getNextAttemptAt().isAfter(now))
+                || (row.getStatus() == MeetingJobStatus.PROCESSING && row.getLockedUntil().isBefore(now));
+    }
+
+    private static MeetingProvisioningJob copy(MeetingProvisioningJob row) {
+        MeetingProvisioningJob copy = MeetingProvisioningJob.builder()
+                .bookingId(row.getBookingId())
+                .status(row.getStatus())
+                .attempts(row.getAttempts())
+                .nextAttemptAt(row.getNextAttemptAt())
+                .lockedUntil(row.getLockedUntil())
+                .completedAt(row.getCompletedAt())
+                .lastError(row.getLastError())
+                .build();
+        copy.setCreatedAt(row.getCreatedAt());
+        copy.setUpdatedAt(row.getUpdatedAt());
+        return copy;
+    }
+}
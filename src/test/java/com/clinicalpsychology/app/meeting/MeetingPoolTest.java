@@ -0,0 +1,176 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.model.PooledMeeting;
+import com.clinicalpsychology.app.repository.PooledMeetingRepository;
+import com.clinicalpsychology.app.service.SchedulerLeases;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MeetingPoolTest {
+
+    private static final Instant START = Instant.parse("2025-06-02T09:00:00Z");
+    private static final Instant END = START.plusSeconds(3600);
+
+    private final PooledMeetingRepository pooledMeetingRepository = mock(PooledMeetingRepository.class);
+    private final SchedulerLeases schedulerLeases = mock(SchedulerLeases.class);
+    private final MeetingProvider provider = mock(MeetingProvider.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private MeetingPool pool() {
+        when(provider.name()).thenReturn("zoom");
+        when(provider.displayName()).thenReturn("Zoom");
+        MeetingPool pool = new MeetingPool(pooledMeetingRepository, schedulerLeases, List.of(provider), "zoom", meterRegistry);
+        ReflectionTestUtils.setField(pool, "poolSize", 20);
+        ReflectionTestUtils.setField(pool, "refillBatch", 5);
+        ReflectionTestUtils.setField(pool, "maxAgeHours", 168L);
+        ReflectionTestUtils.setField(pool, "cleanupGraceMinutes", 120L);
+        ReflectionTestUtils.setField(pool, "cleanupBatch", 20);
+        return pool;
+    }
+
+    @Test
+    void retriedJobGetsTheMeetingItAlreadyHas() throws Exception {
+        MeetingPool pool = pool();
+        PooledMeeting scheduled = meeting("123", 7L);
+        scheduled.setSessionStart(START);
+        scheduled.setSessionEnd(END);
+        when(pooledMeetingRepository.findByBookingId(7L)).thenReturn(Optional.of(scheduled));
+
+        MeetingLinks links = pool.assign(7L, START, END);
+
+        assertThat(links).isEqualTo(new MeetingLinks("Zoom", "123", "https://zoom/s/123", "https://zoom/j/123"));
+        verify(pooledMeetingRepository, never()).assignFree(any(), any(), any());
+        verify(provider, never()).createMeeting(any(), any());
+        verify(provider, never()).reschedule(any(), any(), any());
+    }
+
+    @Test
+    void freePooledMeetingIsHandedOutAndMovedToTheSession() throws Exception {
+        MeetingPool pool = pool();
+        when(pooledMeetingRepository.findByBookingId(7L)).thenReturn(Optional.empty()).thenReturn(Optional.of(meeting("123", 7L)));
+        when(pooledMeetingRepository.assignFree(eq("zoom"), eq(7L), any())).thenReturn(1);
+
+        assertThat(pool.assign(7L, START, END).externalId()).isEqualTo("123");
+
+        verify(provider).reschedule("123", START, END);
+        verify(pooledMeetingRepository).markScheduled(eq(1L), eq(START), eq(END), any());
+        verify(provider, never()).createMeeting(any(), any());
+        assertThat(meterRegistry.get("meeting.pool.assignments").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failedRescheduleIsRepeatedByTheRetry() throws Exception {
+        MeetingPool pool = pool();
+        when(pooledMeetingRepository.findByBookingId(7L)).thenReturn(Optional.empty()).thenReturn(Optional.of(meeting("123", 7L)));
+        when(pooledMeetingRepository.assignFree(eq("zoom"), eq(7L), any())).thenReturn(1);
+        doThrow(new MeetingProviderBusyException("zoom", Duration.ofSeconds(1))).doNothing().when(provider).reschedule("123", START, END);
+
+        assertThatThrownBy(() -> pool.assign(7L, START, END)).isInstanceOf(MeetingProviderBusyException.class);
+        verify(pooledMeetingRepository, never()).markScheduled(any(), any(), any(), any());
+
+        assertThat(pool.assign(7L, START, END).externalId()).isEqualTo("123");
+        verify(provider, times(2)).reschedule("123", START, END);
+        verify(pooledMeetingRepository).markScheduled(eq(1L), eq(START), eq(END), any());
+        verify(pooledMeetingRepository, times(1)).assignFree(any(), any(), any());
+    }
+
+    @Test
+    void onDemandMeetingIsRecordedAgainstTheBooking() throws Exception {
+        MeetingPool pool = pool();
+        when(pooledMeetingRepository.findByBookingId(7L)).thenReturn(Optional.empty());
+        when(provider.createMeeting(START, END)).thenReturn(new MeetingLinks("Zoom", "456", "https://zoom/s/456", "https://zoom/j/456"));
+
+        assertThat(pool.assign(7L, START, END).externalId()).isEqualTo("456");
+
+        ArgumentCaptor<PooledMeeting> saved = ArgumentCaptor.forClass(PooledMeeting.class);
+        verify(pooledMeetingRepository).save(saved.capture());
+        assertThat(saved.getValue().getBookingId()).isEqualTo(7L);
+        assertThat(saved.getValue().getExternalId()).isEqualTo("456");
+        assertThat(saved.getValue().getProvider()).isEqualTo("zoom");
+        assertThat(saved.getValue().getSessionEnd()).isEqualTo(END);
+        assertThat(meterRegistry.get("meeting.pool.assignments").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void refillOnlyRunsWithTheLease() throws Exception {
+        MeetingPool pool = pool();
+
+        pool.refill();
+
+        verifyNoInteractions(pooledMeetingRepository);
+        verify(provider, never()).createPooledMeeting();
+    }
+
+    @Test
+    void refillTopsUpOneBatchAtATime() throws Exception {
+        MeetingPool pool = pool();
+        when(schedulerLeases.tryAcquire(eq("meeting-pool-refill"), any())).thenReturn(true);
+        when(pooledMeetingRepository.countByProviderAndBookingIdIsNullAndRetiredAtIsNull("zoom")).thenReturn(17L);
+        when(provider.createPooledMeeting()).thenReturn(new MeetingLinks("Zoom", "1", "s", "j"));
+
+        pool.refill();
+
+        verify(provider, times(3)).createPooledMeeting();
+        verify(pooledMeetingRepository, times(3)).save(any());
+        assertThat(meterRegistry.get("meeting.pool.available").gauge().value()).isEqualTo(20);
+    }
+
+    @Test
+    void cleanupRetiresStaleMeetingsAndDeletesFinishedOnes() throws Exception {
+        MeetingPool pool = pool();
+        when(schedulerLeases.tryAcquire(eq("meeting-pool-cleanup"), any())).thenReturn(true);
+        PooledMeeting ended = meeting("123", 7L);
+        PooledMeeting retired = meeting("456", null);
+        retired.setId(2L);
+        when(pooledMeetingRepository.findDeletable(eq(Set.of("zoom")), any(), any())).thenReturn(List.of(ended, retired));
+
+        pool.cleanup();
+
+        ArgumentCaptor<Instant> createdBefore = ArgumentCaptor.forClass(Instant.class);
+        verify(pooledMeetingRepository).retireFree(eq("zoom"), createdBefore.capture(), any());
+        assertThat(createdBefore.getValue()).isBefore(Instant.now().minus(Duration.ofHours(167)));
+        verify(provider).deleteMeeting("123");
+        verify(provider).deleteMeeting("456");
+        verify(pooledMeetingRepository).markDeleted(eq(1L), any());
+        verify(pooledMeetingRepository).markDeleted(eq(2L), any());
+        assertThat(meterRegistry.get("meeting.pool.deleted").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void cleanupStopsWhenTheProviderIsBusy() throws Exception {
+        MeetingPool pool = pool();
+        when(schedulerLeases.tryAcquire(eq("meeting-pool-cleanup"), any())).thenReturn(true);
+        when(pooledMeetingRepository.findDeletable(any(), any(), any())).thenReturn(List.of(meeting("123", 7L), meeting("456", 8L)));
+        doThrow(new MeetingProviderBusyException("zoom", Duration.ofSeconds(1))).when(provider).deleteMeeting("123");
+
+        pool.cleanup();
+
+        verify(provider, never()).deleteMeeting("456");
+        verify(pooledMeetingRepository, never()).markDeleted(any(), any());
+    }
+
+    private static PooledMeeting meeting(String externalId, Long bookingId) {
+        return PooledMeeting.builder()
+                .id(1L)
+                .provider("zoom")
+                .externalId(externalId)
+                .hostUrl("https://zoom/s/" + externalId)
+                .joinUrl("https://zoom/j/" + externalId)
+                .bookingId(bookingId)
+                .build();
+    }
+}
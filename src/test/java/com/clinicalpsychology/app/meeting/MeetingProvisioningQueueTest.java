@@ -0,0 +1,212 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.config.ThreadingMode;
+import com.clinicalpsychology.app.enums.MeetingJobStatus;
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.enums.ZoomContextType;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.model.ClientProfile;
+import com.clinicalpsychology.app.model.MeetingProvisioningJob;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import com.clinicalpsychology.app.repository.ClientProfileRepository;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// Claim, backoff and the booking checks against the job table in memory. Each test drains the queue's pool before asserting
+class MeetingProvisioningQueueTest {
+
+    private static final Instant START = Instant.parse("2025-06-02T09:00:00Z");
+    private static final MeetingLinks LINKS = new MeetingLinks("Zoom", "123", "https://zoom/s/123", "https://zoom/j/123");
+
+    private final InMemoryMeetingProvisioningJobRepository jobs = new InMemoryMeetingProvisioningJobRepository();
+    private final BookingRepository bookingRepository = mock(BookingRepository.class);
+    private final TherapistProfileRepository therapistProfileRepository = mock(TherapistProfileRepository.class);
+    private final ClientProfileRepository clientProfileRepository = mock(ClientProfileRepository.class);
+    private final MeetingPool meetingPool = mock(MeetingPool.class);
+    private final MeetingNotificationService meetingNotificationService = mock(MeetingNotificationService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(bookingRepository.findById(anyLong())).thenAnswer(call -> Optional.of(booking(call.getArgument(0), PaymentStatus.COMPLETED)));
+        when(therapistProfileRepository.findById(1L)).thenReturn(Optional.of(TherapistProfile.builder().id(1L).name("Dr. Lee").email("t@example.com").timezone("Europe/Berlin").build()));
+        when(clientProfileRepository.findById(2L)).thenReturn(Optional.of(ClientProfile.builder().id(2L).name("Ana").email("c@example.com").timeZone("America/Toronto").build()));
+        when(meetingPool.assign(anyLong(), any(), any())).thenReturn(LINKS);
+    }
+
+    @Test
+    void paidBookingGetsItsMeetingAndTheLinksAreSent() throws Exception {
+        MeetingProvisioningQueue queue = queue(10);
+
+        queue.enqueue(7L);
+        drain(queue);
+
+        MeetingProvisioningJob job = jobs.row(7L);
+        assertThat(job.getStatus()).isEqualTo(MeetingJobStatus.DONE);
+        assertThat(job.getAttempts()).isEqualTo(1);
+        assertThat(job.getCompletedAt()).isNotNull();
+        verify(meetingPool).assign(7L, START, START.plus(Duration.ofMinutes(60)));
+        verify(bookingRepository).updateMeetLinks(7L, LINKS.hostUrl(), LINKS.joinUrl());
+        verify(meetingNotificationService).notifyParticipants(eq("meeting-job-7"), eq("t@example.com"), eq("c@example.com"), eq("Dr. Lee"), eq("Ana"),
+                eq(START), eq(START.plus(Duration.ofMinutes(60))), isNull(), eq(ZoomContextType.NEW), eq("Europe/Berlin"), eq("America/Toronto"),
+                eq("Zoom"), eq(LINKS.hostUrl()), eq(LINKS.joinUrl()));
+        assertThat(meterRegistry.get("meeting.provisioning").tag("result", "provisioned").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void secondEnqueueOfABookingIsIgnored() throws Exception {
+        MeetingProvisioningQueue queue = queue(10);
+
+        queue.enqueue(7L);
+        queue.enqueue(7L);
+        drain(queue);
+
+        verify(meetingPool, times(1)).assign(anyLong(), any(), any());
+        verify(meetingNotificationService, times(1)).notifyParticipants(anyString(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void bookingThatIsNoLongerCompletedGetsNoMeeting() throws Exception {
+        when(bookingRepository.findById(7L)).thenReturn(Optional.of(booking(7L, PaymentStatus.REFUNDED)));
+        when(bookingRepository.findById(8L)).thenReturn(Optional.empty());
+        MeetingProvisioningQueue queue = queue(10);
+
+        queue.enqueue(7L);
+        queue.enqueue(8L);
+        drain(queue);
+
+        // Nothing to retry either, the job is done
+        assertThat(jobs.row(7L).getStatus()).isEqualTo(MeetingJobStatus.DONE);
+        assertThat(jobs.row(8L).getStatus()).isEqualTo(MeetingJobStatus.DONE);
+        verify(meetingPool, never()).assign(anyLong(), any(), any());
+        verify(bookingRepository, never()).updateMeetLinks(anyLong(), any(), any());
+        verifyNoInteractions(meetingNotificationService);
+    }
+
+    @Test
+    void backoffDoublesPerAttemptUpToAnHour() throws Exception {
+        when(meetingPool.assign(anyLong(), any(), any())).thenThrow(new IOException("Zoom answered 500"));
+        jobs.add(1L, 0);
+        jobs.add(2L, 2);
+        // 15s * 2^10 would be over 4 hours
+        jobs.add(3L, 10);
+        MeetingProvisioningQueue queue = queue(20);
+
+        Instant before = Instant.now();
+        queue.poll();
+        drain(queue);
+        Instant after = Instant.now();
+
+        assertRetryIn(1L, 1, Duration.ofSeconds(15), before, after);
+        assertRetryIn(2L, 3, Duration.ofSeconds(60), before, after);
+        assertRetryIn(3L, 11, Duration.ofHours(1), before, after);
+        assertThat(jobs.row(1L).getLastError()).isEqualTo("IOException: Zoom answered 500");
+        assertThat(meterRegistry.get("meeting.provisioning").tag("result", "retried").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void lastAttemptFailsTheJob() throws Exception {
+        when(meetingPool.assign(anyLong(), any(), any())).thenThrow(new IOException("Zoom answered 500"));
+        jobs.add(1L, 8);
+        jobs.add(2L, 9);
+        MeetingProvisioningQueue queue = queue(10);
+
+        queue.poll();
+        drain(queue);
+
+        assertThat(jobs.row(1L).getStatus()).isEqualTo(MeetingJobStatus.PENDING);
+        assertThat(jobs.row(2L).getStatus()).isEqualTo(MeetingJobStatus.FAILED);
+        assertThat(jobs.row(2L).getAttempts()).isEqualTo(10);
+        assertThat(jobs.row(2L).getLastError()).isEqualTo("IOException: Zoom answered 500");
+        assertThat(meterRegistry.get("meeting.provisioning").tag("result", "failed").counter().count()).isEqualTo(1);
+
+        // Never offered again
+        MeetingProvisioningQueue next = queue(10);
+        jobs.row(1L).setNextAttemptAt(Instant.now());
+        next.poll();
+        drain(next);
+        assertThat(jobs.row(2L).getAttempts()).isEqualTo(10);
+    }
+
+    @Test
+    void rateLimitedJobWaitsWithoutUsingAnAttempt() throws Exception {
+        when(meetingPool.assign(anyLong(), any(), any())).thenThrow(new MeetingProviderBusyException("Zoom", Duration.ofSeconds(30)));
+        jobs.add(1L, 3);
+        MeetingProvisioningQueue queue = queue(10);
+
+        Instant before = Instant.now();
+        queue.poll();
+        drain(queue);
+        Instant after = Instant.now();
+
+        assertRetryIn(1L, 3, Duration.ofSeconds(30), before, after);
+        assertThat(jobs.row(1L).getLastError()).isNull();
+        assertThat(meterRegistry.get("meeting.provisioning").tag("result", "rate_limited").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void processingJobIsOnlyTakenOverOnceItsLeaseRanOut() throws Exception {
+        MeetingProvisioningJob abandoned = jobs.add(1L, 0);
+        abandoned.setStatus(MeetingJobStatus.PROCESSING);
+        abandoned.setLockedUntil(Instant.now().minusSeconds(1));
+        MeetingProvisioningJob running = jobs.add(2L, 0);
+        running.setStatus(MeetingJobStatus.PROCESSING);
+        running.setLockedUntil(Instant.now().plus(Duration.ofMinutes(2)));
+        MeetingProvisioningQueue queue = queue(10);
+
+        queue.poll();
+        drain(queue);
+
+        assertThat(jobs.row(1L).getStatus()).isEqualTo(MeetingJobStatus.DONE);
+        assertThat(jobs.row(2L).getStatus()).isEqualTo(MeetingJobStatus.PROCESSING);
+        verify(meetingPool).assign(eq(1L), any(), any());
+        verify(meetingPool, never()).assign(eq(2L), any(), any());
+    }
+
+    private MeetingProvisioningQueue queue(int maxAttempts) {
+        MeetingProvisioningQueue queue = new MeetingProvisioningQueue(jobs.repository(), bookingRepository, therapistProfileRepository, clientProfileRepository,
+                meetingPool, meetingNotificationService, meterRegistry, new ThreadingMode(false));
+        ReflectionTestUtils.setField(queue, "workers", 2);
+        ReflectionTestUtils.setField(queue, "queueCapacity", 10);
+        ReflectionTestUtils.setField(queue, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(queue, "retryBaseSeconds", 15L);
+        queue.start();
+        return queue;
+    }
+
+    // Lets the submitted jobs finish
+    private static void drain(MeetingProvisioningQueue queue) throws InterruptedException {
+        queue.stop();
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(queue, "executor");
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private void assertRetryIn(Long bookingId, int attempts, Duration backoff, Instant before, Instant after) {
+        MeetingProvisioningJob job = jobs.row(bookingId);
+        assertThat(job.getStatus()).isEqualTo(MeetingJobStatus.PENDING);
+        assertThat(job.getAttempts()).isEqualTo(attempts);
+        assertThat(job.getLockedUntil()).isNull();
+        assertThat(job.getNextAttemptAt()).isBetween(before.plus(backoff), after.plus(backoff));
+    }
+
+    private static Booking booking(Long id, PaymentStatus paymentStatus) {
+        return Booking.builder().id(id).therapistId(1L).clientId(2L).sessionStartTime(START).paymentStatus(paymentStatus).build();
+    }
+}
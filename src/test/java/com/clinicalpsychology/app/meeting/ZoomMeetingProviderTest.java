@@ -0,0 +1,107 @@
+package com.clinicalpsychology.app.meeting;
+
+import com.clinicalpsychology.app.zoom.ZoomMeetingService;
+import com.clinicalpsychology.app.zoom.ZoomRateLimiter;
+import com.clinicalpsychology.app.zoom.ZoomTokenService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+
+// The Zoom calls behind the meeting pool against a mock server: pooled meetings are scheduled ones (type 2, never the
+// recurring type 3 that can't be moved or retired), moved with a PATCH and removed with a DELETE
+class ZoomMeetingProviderTest {
+
+    private static final Instant START = Instant.parse("2025-06-02T09:00:00Z");
+
+    private final RestClient.Builder restClientBuilder = RestClient.builder();
+    private final MockRestServiceServer server = MockRestServiceServer.bindTo(restClientBuilder).build();
+    private final ZoomTokenService zoomTokenService = mock(ZoomTokenService.class);
+
+    private final ZoomMeetingProvider provider = new ZoomMeetingProvider(
+            new ZoomMeetingService(zoomTokenService, mock(JavaMailSender.class), mock(MeetingNotificationService.class), restClientBuilder.build()),
+            new ZoomRateLimiter(5, 10));
+
+    @BeforeEach
+    void setUp() {
+        when(zoomTokenService.getAccessToken()).thenReturn("token");
+    }
+
+    @AfterEach
+    void verifyServer() {
+        server.verify();
+    }
+
+    @Test
+    void pooledMeetingIsAScheduledMeeting() throws Exception {
+        server.expect(requestTo("https://api.zoom.us/v2/users/me/meetings"))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(header("Authorization", "Bearer token"))
+                .andExpect(jsonPath("$.type").value(2))
+                .andExpect(jsonPath("$.start_time").exists())
+                .andExpect(jsonPath("$.duration").value(60))
+                .andRespond(withStatus(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON)
+                        .body("{\"id\":85746065432,\"start_url\":\"https://zoom.us/s/85746065432\",\"join_url\":\"https://zoom.us/j/85746065432\"}"));
+
+        MeetingLinks links = provider.createPooledMeeting();
+
+        assertThat(links).isEqualTo(new MeetingLinks("Zoom", "85746065432", "https://zoom.us/s/85746065432", "https://zoom.us/j/85746065432"));
+    }
+
+    @Test
+    void rescheduleMovesTheMeetingToTheSession() throws Exception {
+        server.expect(requestTo("https://api.zoom.us/v2/meetings/85746065432"))
+                .andExpect(method(HttpMethod.PATCH))
+                .andExpect(jsonPath("$.start_time").value("2025-06-02T09:00:00Z"))
+                .andExpect(jsonPath("$.duration").value(50))
+                .andRespond(withStatus(HttpStatus.NO_CONTENT));
+
+        provider.reschedule("85746065432", START, START.plusSeconds(50 * 60));
+    }
+
+    @Test
+    void deleteTreatsAnUnknownMeetingAsDeleted() throws Exception {
+        server.expect(requestTo("https://api.zoom.us/v2/meetings/1"))
+                .andExpect(method(HttpMethod.DELETE))
+                .andRespond(withStatus(HttpStatus.NO_CONTENT));
+        server.expect(requestTo("https://api.zoom.us/v2/meetings/2"))
+                .andExpect(method(HttpMethod.DELETE))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND).contentType(MediaType.APPLICATION_JSON)
+                        .body("{\"code\":3001,\"message\":\"Meeting does not exist: 2.\"}"));
+
+        provider.deleteMeeting("1");
+        provider.deleteMeeting("2");
+    }
+
+    @Test
+    void deleteFailureIsReported() {
+        server.expect(requestTo("https://api.zoom.us/v2/meetings/1"))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+
+        assertThatThrownBy(() -> provider.deleteMeeting("1")).isInstanceOf(HttpServerErrorException.class);
+    }
+
+    @Test
+    void callsStopWhenTheRateLimitIsUsedUp() throws Exception {
+        ZoomMeetingProvider limited = new ZoomMeetingProvider(mock(ZoomMeetingService.class), new ZoomRateLimiter(0.001, 1));
+
+        limited.deleteMeeting("1");
+
+        assertThatThrownBy(() -> limited.reschedule("1", START, START.plusSeconds(3600))).isInstanceOf(MeetingProviderBusyException.class);
+    }
+}
@@ -0,0 +1,193 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.config.BookingSlotIndexInitializer;
+import com.clinicalpsychology.app.dto.BookingDTO;
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.exception.ResourceAlreadyExistsException;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.model.ClientProfile;
+import com.clinicalpsychology.app.model.FixedTimeSlotNew;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import com.clinicalpsychology.app.repository.ClientProfileRepository;
+import com.clinicalpsychology.app.repository.FixedTimeSlotNewRepository;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import com.clinicalpsychology.app.util.PostgresRepositoryTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Hundreds of checkouts of the same slots at once against real Postgres. Every "instance" has its own SlotHoldRegistry, like separate
+// app nodes, so several of them get past the in-memory hold and the unique index has to pick the one winner.
+// Not transactional, every checkout commits on its own like a request would
+@PostgresRepositoryTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CheckoutReservationConcurrencyTest {
+
+    private static final int CHECKOUTS = 200;
+    private static final int INSTANCES = 8;
+    private static final Instant SLOT_START = Instant.parse("2025-01-01T09:00:00Z");
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final FixedTimeSlotNewRepository fixedTimeSlotNewRepository = mock(FixedTimeSlotNewRepository.class);
+    private final TherapistProfileRepository therapistProfileRepository = mock(TherapistProfileRepository.class);
+    private final ClientProfileRepository clientProfileRepository = mock(ClientProfileRepository.class);
+
+    private final List<CheckoutReservationService> instances = new ArrayList<>();
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        new BookingSlotIndexInitializer(jdbcTemplate, bookingRepository).createActiveSlotIndex();
+
+        when(fixedTimeSlotNewRepository.findById(10L)).thenReturn(Optional.of(FixedTimeSlotNew.builder().id(10L).timeStart(SLOT_START).build()));
+        when(therapistProfileRepository.findById(1L)).thenReturn(Optional.of(TherapistProfile.builder().id(1L).timezone("UTC").build()));
+        when(clientProfileRepository.findById(any())).thenAnswer(call -> Optional.of(ClientProfile.builder().id(call.getArgument(0)).timeZone("UTC").build()));
+
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add(new CheckoutReservationService(bookingRepository, fixedTimeSlotNewRepository, therapistProfileRepository, clientProfileRepository,
+                    new SlotHoldRegistry(new SimpleMeterRegistry())));
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // The schema is shared with every other @PostgresRepositoryTest on the same context, which insert bookings the index would reject
+    @AfterEach
+    void tearDown() {
+        bookingRepository.deleteAll();
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX);
+    }
+
+    @Test
+    void parallelCheckoutsOfOneSlotHaveExactlyOneWinner() throws Exception {
+        Outcome outcome = checkoutAtOnce(i -> "2025-06-02");
+
+        assertThat(outcome.reserved).hasValue(1);
+        assertThat(outcome.rejected).hasValue(CHECKOUTS - 1);
+        assertThat(outcome.unexpected).isEmpty();
+        assertThat(bookingRepository.findAll()).singleElement()
+                .satisfies(booking -> assertThat(booking.getPaymentStatus()).isEqualTo(PaymentStatus.HOLD));
+    }
+
+    @Test
+    void parallelCheckoutsOfDifferentDaysEachGetTheirSlot() throws Exception {
+        Outcome outcome = checkoutAtOnce(i -> "2025-06-0" + (1 + i % 5));
+
+        assertThat(outcome.reserved).hasValue(5);
+        assertThat(outcome.rejected).hasValue(CHECKOUTS - 5);
+        assertThat(outcome.unexpected).isEmpty();
+        assertThat(bookingRepository.findAll()).extracting(Booking::getSessionStartTime).doesNotHaveDuplicates().hasSize(5);
+    }
+
+    @Test
+    void expiredHoldDoesNotBlockTheNextCheckout() throws Exception {
+        checkoutAtOnce(i -> "2025-06-02");
+        jdbcTemplate.update("UPDATE bookings SET hold_start_time = hold_start_time - interval '1 day'");
+
+        // A new instance, the in-memory holds of the first round are gone with the old ones
+        instances.clear();
+        instances.add(new CheckoutReservationService(bookingRepository, fixedTimeSlotNewRepository, therapistProfileRepository, clientProfileRepository,
+                new SlotHoldRegistry(new SimpleMeterRegistry())));
+        Outcome outcome = checkoutAtOnce(i -> "2025-06-02");
+
+        assertThat(outcome.reserved).hasValue(1);
+        assertThat(bookingRepository.findAll()).extracting(Booking::getPaymentStatus)
+                .containsExactlyInAnyOrder(PaymentStatus.EXPIRED, PaymentStatus.HOLD);
+    }
+
+    private record Outcome(AtomicInteger reserved, AtomicInteger rejected, List<Throwable> unexpected) {
+    }
+
+    private Outcome checkoutAtOnce(IntFunction<String> bookingDate) throws Exception {
+        Outcome outcome = new Outcome(new AtomicInteger(), new AtomicInteger(), new ArrayList<>());
+        List<Throwable> unexpected = Collections.synchronizedList(outcome.unexpected);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService clients = Executors.newFixedThreadPool(CHECKOUTS);
+        try {
+            List<Future<?>> checkouts = new ArrayList<>();
+            for (int i = 0; i < CHECKOUTS; i++) {
+                CheckoutReservationService instance = instances.get(i % instances.size());
+                BookingDTO bookingDTO = bookingDTO(100L + i, bookingDate.apply(i));
+                checkouts.add(clients.submit(() -> {
+                    start.await();
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> reserve(instance, bookingDTO));
+                        outcome.reserved.incrementAndGet();
+                    } catch (ResourceAlreadyExistsException e) {
+                        outcome.rejected.incrementAndGet();
+                    } catch (Exception e) {
+                        unexpected.add(e);
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> checkout : checkouts) {
+                checkout.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        return outcome;
+    }
+
+    private static void reserve(CheckoutReservationService instance, BookingDTO bookingDTO) {
+        try {
+            instance.reserve(bookingDTO);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static BookingDTO bookingDTO(Long clientId, String bookingDate) {
+        BookingDTO bookingDTO = new BookingDTO();
+        bookingDTO.setTherapistId(1L);
+        bookingDTO.setClientId(clientId);
+        bookingDTO.setTimeSlotId(10L);
+        bookingDTO.setBookingDate(bookingDate);
+        bookingDTO.setCategory("Anxiety");
+        bookingDTO.setConnectMethod("Zoom");
+        bookingDTO.setAmount(50.0);
+        bookingDTO.setCurrency("usd");
+        bookingDTO.setProductName("Session");
+        bookingDTO.setQuantity(1L);
+        return bookingDTO;
+    }
+}
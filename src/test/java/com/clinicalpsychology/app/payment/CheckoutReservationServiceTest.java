@@ -0,0 +1,134 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.dto.BookingDTO;
+import com.clinicalpsychology.app.exception.ResourceAlreadyExistsException;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.model.ClientProfile;
+import com.clinicalpsychology.app.model.FixedTimeSlotNew;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import com.clinicalpsychology.app.repository.ClientProfileRepository;
+import com.clinicalpsychology.app.repository.FixedTimeSlotNewRepository;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// reserve() runs in a transaction. The synchronization is driven by hand here to play the commit / rollback outcomes
+class CheckoutReservationServiceTest {
+
+    private final BookingRepository bookingRepository = mock(BookingRepository.class);
+    private final FixedTimeSlotNewRepository fixedTimeSlotNewRepository = mock(FixedTimeSlotNewRepository.class);
+    private final TherapistProfileRepository therapistProfileRepository = mock(TherapistProfileRepository.class);
+    private final ClientProfileRepository clientProfileRepository = mock(ClientProfileRepository.class);
+    private final SlotHoldRegistry slotHoldRegistry = new SlotHoldRegistry(new SimpleMeterRegistry());
+
+    private final CheckoutReservationService checkoutReservationService = new CheckoutReservationService(bookingRepository, fixedTimeSlotNewRepository,
+            therapistProfileRepository, clientProfileRepository, slotHoldRegistry);
+
+    private final BookingDTO bookingDTO = new BookingDTO();
+
+    @BeforeEach
+    void setUp() {
+        bookingDTO.setTherapistId(1L);
+        bookingDTO.setClientId(2L);
+        bookingDTO.setTimeSlotId(10L);
+        bookingDTO.setBookingDate("2025-06-02");
+        bookingDTO.setCategory("Anxiety");
+        bookingDTO.setConnectMethod("Zoom");
+        bookingDTO.setAmount(50.0);
+        bookingDTO.setCurrency("usd");
+        bookingDTO.setProductName("Session");
+        bookingDTO.setQuantity(1L);
+
+        when(fixedTimeSlotNewRepository.findById(10L)).thenReturn(Optional.of(FixedTimeSlotNew.builder().id(10L).timeStart(Instant.parse("2025-01-01T09:00:00Z")).build()));
+        when(clientProfileRepository.findById(2L)).thenReturn(Optional.of(ClientProfile.builder().id(2L).timeZone("UTC").build()));
+        when(therapistProfileRepository.findById(1L)).thenReturn(Optional.of(TherapistProfile.builder().id(1L).timezone("UTC").build()));
+        when(bookingRepository.findByTimeSlotIdAndSessionStartTimeAndPaymentStatusIn(any(), any(), any())).thenReturn(List.of());
+        when(bookingRepository.findByClientIdAndSessionStartTimeBetweenAndPaymentStatus(any(), any(), any(), any())).thenReturn(List.of());
+        when(bookingRepository.save(any())).thenAnswer(call -> {
+            Booking booking = call.getArgument(0);
+            booking.setId(7L);
+            return booking;
+        });
+
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void committedReservationKeepsTheHold() throws Exception {
+        CheckoutReservationService.CheckoutReservation reservation = checkoutReservationService.reserve(bookingDTO);
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(slotHoldRegistry.tryHold(reservation.slotKey())).isFalse();
+    }
+
+    @Test
+    void rollbackAtCommitReleasesTheHold() throws Exception {
+        CheckoutReservationService.CheckoutReservation reservation = checkoutReservationService.reserve(bookingDTO);
+
+        // reserve() returned fine, then the flush / commit failed
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(slotHoldRegistry.tryHold(reservation.slotKey())).isTrue();
+    }
+
+    @Test
+    void failureInsideTheTransactionReleasesOnlyOnRollback() {
+        doThrow(new QueryTimeoutException("db slow")).when(bookingRepository).save(any());
+        SlotHoldRegistry.SlotKey slotKey = new SlotHoldRegistry.SlotKey(1L, 10L, Instant.parse("2025-06-02T09:00:00Z"));
+
+        assertThatThrownBy(() -> checkoutReservationService.reserve(bookingDTO)).isInstanceOf(QueryTimeoutException.class);
+        // Still held until the transaction is over, a retry can't slip in before the rollback
+        assertThat(slotHoldRegistry.tryHold(slotKey)).isFalse();
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(slotHoldRegistry.tryHold(slotKey)).isTrue();
+    }
+
+    @Test
+    void withoutATransactionAFailureReleasesRightAway() {
+        TransactionSynchronizationManager.clearSynchronization();
+        doThrow(new QueryTimeoutException("db slow")).when(bookingRepository).save(any());
+
+        assertThatThrownBy(() -> checkoutReservationService.reserve(bookingDTO)).isInstanceOf(QueryTimeoutException.class);
+
+        assertThat(slotHoldRegistry.tryHold(new SlotHoldRegistry.SlotKey(1L, 10L, Instant.parse("2025-06-02T09:00:00Z")))).isTrue();
+    }
+
+    @Test
+    void slotHeldByAnotherCheckoutIsRejectedBeforeTheDb() {
+        slotHoldRegistry.tryHold(new SlotHoldRegistry.SlotKey(1L, 10L, Instant.parse("2025-06-02T09:00:00Z")));
+
+        assertThatThrownBy(() -> checkoutReservationService.reserve(bookingDTO)).isInstanceOf(ResourceAlreadyExistsException.class);
+        verify(bookingRepository, never()).save(any());
+        assertThat(TransactionSynchronizationManager.getSynchronizations()).isEmpty();
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}
@@ -0,0 +1,100 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CheckoutSessionEventTest {
+
+    private final CheckoutSessionHandler bookingHandler = handler("BOOK_THERAPIST");
+
+    private final StripeWebhookDispatcher dispatcher = new StripeWebhookDispatcher(new ObjectMapper(), List.of(bookingHandler));
+
+    @Test
+    void parsesTheSessionFieldsAndSkipsTheRest() throws Exception {
+        CheckoutSessionEvent event = dispatcher.parse("""
+                {"id":"evt_1","object":"event","api_version":"2024-06-20","livemode":false,
+                 "type":"checkout.session.completed",
+                 "data":{"object":{"id":"cs_test_1","object":"checkout.session","amount_total":5000,
+                   "payment_intent":"pi_1","customer_details":{"email":"c@example.com"},
+                   "metadata":{"bookingId":"7","purchaseType":"BOOK_THERAPIST"}}},
+                 "request":{"id":null}}
+                """);
+
+        assertThat(event.eventId()).isEqualTo("evt_1");
+        assertThat(event.type()).isEqualTo("checkout.session.completed");
+        assertThat(event.sessionId()).isEqualTo("cs_test_1");
+        assertThat(event.paymentIntentId()).isEqualTo("pi_1");
+        assertThat(event.metadata("bookingId")).isEqualTo("7");
+        assertThat(event.purchaseType()).isEqualTo("BOOK_THERAPIST");
+        assertThat(event.orderingKey()).isEqualTo("booking-7");
+    }
+
+    @Test
+    void missingMetadataAndPaymentIntentAreEmptyNotNull() throws Exception {
+        CheckoutSessionEvent event = dispatcher.parse("""
+                {"id":"evt_2","type":"checkout.session.expired","data":{"object":{"id":"cs_test_2","payment_intent":null}}}
+                """);
+
+        assertThat(event.metadata()).isEmpty();
+        assertThat(event.paymentIntentId()).isNull();
+        assertThat(event.purchaseType()).isNull();
+        assertThat(event.orderingKey()).isEqualTo("session-cs_test_2");
+    }
+
+    @Test
+    void eventWithoutASessionFallsBackToTheEventId() throws Exception {
+        CheckoutSessionEvent event = dispatcher.parse("""
+                {"id":"evt_3","type":"customer.created","data":{}}
+                """);
+
+        assertThat(event.sessionId()).isNull();
+        assertThat(event.metadata()).isEmpty();
+        assertThat(event.orderingKey()).isEqualTo("event-evt_3");
+    }
+
+    @Test
+    void malformedPayloadIsRejected() {
+        assertThatThrownBy(() -> dispatcher.parse("{\"id\":")).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void dispatchRoutesByPurchaseTypeIgnoringCase() throws Exception {
+        CheckoutSessionEvent event = new CheckoutSessionEvent("evt_1", "checkout.session.async_payment_failed", "cs_test_1", null,
+                Map.of("bookingId", "7", "purchaseType", "book_therapist"));
+
+        dispatcher.dispatch(event);
+
+        verify(bookingHandler).handleSessionEvent(event, PaymentStatus.FAILURE);
+    }
+
+    @Test
+    void dispatchDropsUnhandledTypesAndUnknownPurchaseTypes() throws Exception {
+        dispatcher.dispatch(new CheckoutSessionEvent("evt_1", "checkout.session.created", "cs_test_1", null, Map.of("purchaseType", "BOOK_THERAPIST")));
+        dispatcher.dispatch(new CheckoutSessionEvent("evt_2", "checkout.session.completed", "cs_test_2", null, Map.of("purchaseType", "GIFT_CARD")));
+        dispatcher.dispatch(new CheckoutSessionEvent("evt_3", "checkout.session.completed", "cs_test_3", null, Map.of()));
+
+        verify(bookingHandler, never()).handleSessionEvent(any(), any());
+    }
+
+    @Test
+    void twoHandlersForOnePurchaseTypeFailAtStartup() {
+        assertThatThrownBy(() -> new StripeWebhookDispatcher(new ObjectMapper(), List.of(handler("AI_CHAT"), handler("ai_chat"))))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static CheckoutSessionHandler handler(String purchaseType) {
+        CheckoutSessionHandler handler = mock(CheckoutSessionHandler.class);
+        when(handler.purchaseType()).thenReturn(purchaseType);
+        return handler;
+    }
+}
@@ -0,0 +1,115 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.config.ThreadingMode;
+import com.clinicalpsychology.app.dto.BookingDTO;
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.exception.UnexpectedServerException;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.model.ClientProfile;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import com.stripe.param.checkout.SessionCreateParams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class PaymentServiceTest {
+
+    private final BookingRepository bookingRepository = mock(BookingRepository.class);
+    private final CheckoutReservationService checkoutReservationService = mock(CheckoutReservationService.class);
+    private final StripeCheckoutGateway stripeCheckoutGateway = mock(StripeCheckoutGateway.class);
+    private final SlotHoldRegistry slotHoldRegistry = new SlotHoldRegistry(new SimpleMeterRegistry());
+    private final HoldExpiryScheduler holdExpiryScheduler = mock(HoldExpiryScheduler.class);
+
+    private final PaymentService paymentService = new PaymentService(bookingRepository, checkoutReservationService, stripeCheckoutGateway,
+            slotHoldRegistry, holdExpiryScheduler, new SimpleMeterRegistry(), new ThreadingMode(false));
+
+    private final Booking booking = Booking.builder()
+            .id(7L)
+            .therapistId(1L)
+            .timeSlotId(10L)
+            .sessionStartTime(Instant.parse("2025-06-02T09:00:00Z"))
+            .holdStartTime(Instant.now())
+            .productName("Session")
+            .amount(50.0)
+            .quantity(1L)
+            .paymentStatus(PaymentStatus.HOLD)
+            .build();
+
+    private final SlotHoldRegistry.SlotKey slotKey = SlotHoldRegistry.SlotKey.of(booking);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(paymentService, "stripeApiKey", "sk_test");
+        ReflectionTestUtils.setField(paymentService, "successUrl", "https://example.com/success");
+        ReflectionTestUtils.setField(paymentService, "cancelUrl", "https://example.com/cancel");
+        ReflectionTestUtils.setField(paymentService, "stripeExecutorPoolSize", 1);
+        ReflectionTestUtils.setField(paymentService, "stripeExecutorQueueCapacity", 1);
+        ReflectionTestUtils.setField(paymentService, "checkoutTimeoutMs", 5000L);
+        when(stripeCheckoutGateway.maxSessionCallDuration()).thenReturn(Duration.ofSeconds(1));
+
+        slotHoldRegistry.tryHold(slotKey);
+        when(checkoutReservationService.reserve(any())).thenReturn(new CheckoutReservationService.CheckoutReservation(booking,
+                TherapistProfile.builder().email("t@example.com").name("T").timezone("UTC").build(),
+                ClientProfile.builder().email("c@example.com").name("C").timeZone("UTC").build(),
+                booking.getSessionStartTime().plus(Duration.ofHours(1)), slotKey));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ReflectionTestUtils.getField(paymentService, "stripeExecutor") != null) {
+            paymentService.shutdown();
+        }
+    }
+
+    @Test
+    void initRefusesARetryBudgetThatDoesNotFitTheTimeout() {
+        when(stripeCheckoutGateway.maxSessionCallDuration()).thenReturn(Duration.ofSeconds(5));
+
+        assertThatThrownBy(paymentService::init).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void sessionExpiresBeforeTheHold() throws Exception {
+        paymentService.init();
+        when(stripeCheckoutGateway.createSession(any(), anyString())).thenReturn(new StripeCheckoutGateway.CheckoutSession("cs_1", "https://stripe/cs_1"));
+
+        paymentService.checkoutProducts(new BookingDTO()).get();
+
+        ArgumentCaptor<SessionCreateParams> params = ArgumentCaptor.forClass(SessionCreateParams.class);
+        verify(stripeCheckoutGateway).createSession(params.capture(), anyString());
+        long expiresAt = params.getValue().getExpiresAt();
+        assertThat(expiresAt).isBetween(Instant.now().plus(Duration.ofMinutes(30)).getEpochSecond(),
+                Instant.now().plus(SlotHoldRegistry.HOLD_TTL).getEpochSecond() - 1);
+        verify(bookingRepository).updateStripeSessionId(7L, "cs_1");
+        assertThat(slotHoldRegistry.tryHold(slotKey)).isFalse();
+    }
+
+    @Test
+    void failedSessionIdUpdateReleasesTheHold() throws Exception {
+        paymentService.init();
+        when(stripeCheckoutGateway.createSession(any(), anyString())).thenReturn(new StripeCheckoutGateway.CheckoutSession("cs_1", "https://stripe/cs_1"));
+        when(bookingRepository.updateStripeSessionId(7L, "cs_1")).thenThrow(new QueryTimeoutException("db down"));
+
+        CompletableFuture<?> checkout = paymentService.checkoutProducts(new BookingDTO());
+
+        assertThatThrownBy(checkout::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(UnexpectedServerException.class);
+        verify(bookingRepository).expireHold(7L, PaymentStatus.HOLD, PaymentStatus.EXPIRED);
+        assertThat(slotHoldRegistry.tryHold(slotKey)).isTrue();
+    }
+}
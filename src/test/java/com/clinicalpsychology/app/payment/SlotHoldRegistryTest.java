@@ -0,0 +1,102 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.util.MutableClock;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlotHoldRegistryTest {
+
+    private static final SlotHoldRegistry.SlotKey SLOT = new SlotHoldRegistry.SlotKey(1L, 10L, Instant.parse("2025-06-02T09:00:00Z"));
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-06-01T12:00:00Z"));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SlotHoldRegistry registry = new SlotHoldRegistry(meterRegistry, clock);
+
+    @Test
+    void secondHoldOnTheSameSlotIsRejected() {
+        assertThat(registry.tryHold(SLOT)).isTrue();
+        assertThat(registry.tryHold(SLOT)).isFalse();
+
+        assertThat(meterRegistry.get("slot.hold.requests").tag("result", "accepted").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("slot.hold.requests").tag("result", "rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void otherSlotsAreNotAffected() {
+        assertThat(registry.tryHold(SLOT)).isTrue();
+
+        assertThat(registry.tryHold(new SlotHoldRegistry.SlotKey(1L, 10L, SLOT.sessionStart().plus(Duration.ofDays(1))))).isTrue();
+        assertThat(registry.tryHold(new SlotHoldRegistry.SlotKey(2L, 11L, SLOT.sessionStart()))).isTrue();
+    }
+
+    @Test
+    void releasedSlotCanBeHeldAgain() {
+        registry.tryHold(SLOT);
+
+        registry.release(SLOT);
+
+        assertThat(registry.tryHold(SLOT)).isTrue();
+    }
+
+    @Test
+    void holdRunsOutAfterTheTtl() {
+        registry.tryHold(SLOT);
+
+        clock.advance(SlotHoldRegistry.HOLD_TTL.minusSeconds(1));
+        assertThat(registry.tryHold(SLOT)).isFalse();
+
+        clock.advance(Duration.ofSeconds(1));
+        assertThat(registry.tryHold(SLOT)).isTrue();
+    }
+
+    @Test
+    void purgeDropsOnlyExpiredHolds() {
+        registry.tryHold(SLOT);
+        clock.advance(Duration.ofMinutes(10));
+        SlotHoldRegistry.SlotKey later = new SlotHoldRegistry.SlotKey(2L, 20L, SLOT.sessionStart());
+        registry.tryHold(later);
+
+        clock.advance(SlotHoldRegistry.HOLD_TTL.minus(Duration.ofMinutes(9)));
+        registry.purgeExpired();
+
+        assertThat(meterRegistry.get("slot.hold.active").gauge().value()).isEqualTo(1);
+        assertThat(registry.tryHold(later)).isFalse();
+    }
+
+    @Test
+    void concurrentClientsGetExactlyOneHold() throws Exception {
+
+        int clients = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+
+        try {
+            for (int i = 0; i < clients; i++) {
+                executor.submit(() -> {
+                    start.await();
+                    if (registry.tryHold(SLOT)) {
+                        accepted.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(accepted).hasValue(1);
+    }
+}
@@ -0,0 +1,127 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.config.BookingSlotIndexInitializer;
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.meeting.MeetingProvisioningQueue;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class StripeWebhookHandlerServiceTest {
+
+    private final BookingRepository bookingRepository = mock(BookingRepository.class);
+    private final MeetingProvisioningQueue meetingProvisioningQueue = mock(MeetingProvisioningQueue.class);
+    private final SlotHoldRegistry slotHoldRegistry = new SlotHoldRegistry(new SimpleMeterRegistry());
+
+    private final StripeCheckoutGateway stripeCheckoutGateway = mock(StripeCheckoutGateway.class);
+
+    private final StripeWebhookHandlerService handler = new StripeWebhookHandlerService(bookingRepository, meetingProvisioningQueue, slotHoldRegistry, stripeCheckoutGateway);
+
+    private final Booking booking = Booking.builder()
+            .id(7L)
+            .therapistId(1L)
+            .timeSlotId(10L)
+            .sessionStartTime(Instant.parse("2025-06-02T09:00:00Z"))
+            .stripeSessionId("cs_test_1")
+            .paymentStatus(PaymentStatus.HOLD)
+            .build();
+
+    @Test
+    void expiredCheckoutReleasesTheInMemoryHold() throws Exception {
+        when(bookingRepository.findByStripeSessionId("cs_test_1")).thenReturn(booking);
+        slotHoldRegistry.tryHold(SlotHoldRegistry.SlotKey.of(booking));
+
+        handler.handleSessionEvent(event("checkout.session.expired"), PaymentStatus.EXPIRED);
+
+        assertThat(booking.getPaymentStatus()).isEqualTo(PaymentStatus.EXPIRED);
+        assertThat(slotHoldRegistry.tryHold(SlotHoldRegistry.SlotKey.of(booking))).isTrue();
+    }
+
+    @Test
+    void failedPaymentReleasesTheInMemoryHold() throws Exception {
+        when(bookingRepository.findByStripeSessionId("cs_test_1")).thenReturn(booking);
+        slotHoldRegistry.tryHold(SlotHoldRegistry.SlotKey.of(booking));
+
+        handler.handleSessionEvent(event("checkout.session.async_payment_failed"), PaymentStatus.FAILURE);
+
+        assertThat(slotHoldRegistry.tryHold(SlotHoldRegistry.SlotKey.of(booking))).isTrue();
+    }
+
+    @Test
+    void paymentForAHoldCompletesTheBookingAndQueuesTheMeeting() throws Exception {
+        when(bookingRepository.findByStripeSessionId("cs_test_1")).thenReturn(booking);
+
+        handler.handleSessionEvent(event("checkout.session.completed"), PaymentStatus.COMPLETED);
+
+        assertThat(booking.getPaymentStatus()).isEqualTo(PaymentStatus.COMPLETED);
+        assertThat(booking.getStripePaymentIntentId()).isEqualTo("pi_1");
+        verify(bookingRepository).save(booking);
+        verify(meetingProvisioningQueue).enqueue(7L);
+    }
+
+    @Test
+    void latePaymentTakesTheSlotBackWhenItIsStillFree() throws Exception {
+        booking.setPaymentStatus(PaymentStatus.EXPIRED);
+        when(bookingRepository.findByStripeSessionId("cs_test_1")).thenReturn(booking);
+        when(bookingRepository.completeLapsedBooking(eq(7L), eq("pi_1"), eq(PaymentStatus.COMPLETED), any())).thenReturn(1);
+
+        handler.handleSessionEvent(event("checkout.session.completed"), PaymentStatus.COMPLETED);
+
+        verify(meetingProvisioningQueue).enqueue(7L);
+        verify(bookingRepository, never()).save(any());
+        verifyNoInteractions(stripeCheckoutGateway);
+    }
+
+    @Test
+    void latePaymentIsRefundedWhenTheSlotWasTakenMeanwhile() throws Exception {
+        booking.setPaymentStatus(PaymentStatus.EXPIRED);
+        when(bookingRepository.findByStripeSessionId("cs_test_1")).thenReturn(booking);
+        when(bookingRepository.completeLapsedBooking(eq(7L), eq("pi_1"), eq(PaymentStatus.COMPLETED), any()))
+                .thenThrow(new DataIntegrityViolationException("update", new SQLException("duplicate key value violates unique constraint \"" + BookingSlotIndexInitializer.ACTIVE_SLOT_INDEX + "\"")));
+        when(stripeCheckoutGateway.refund("pi_1", "refund-late-booking-7")).thenReturn("re_1");
+
+        handler.handleSessionEvent(event("checkout.session.completed"), PaymentStatus.COMPLETED);
+
+        verify(bookingRepository).markRefunded(7L, "pi_1", "re_1", PaymentStatus.REFUNDED);
+        verify(meetingProvisioningQueue, never()).enqueue(any());
+    }
+
+    @Test
+    void otherConstraintFailuresAreRetriedNotRefunded() {
+        booking.setPaymentStatus(PaymentStatus.EXPIRED);
+        when(bookingRepository.findByStripeSessionId("cs_test_1")).thenReturn(booking);
+        when(bookingRepository.completeLapsedBooking(eq(7L), eq("pi_1"), eq(PaymentStatus.COMPLETED), any()))
+                .thenThrow(new DataIntegrityViolationException("update", new SQLException("connection reset")));
+
+        assertThatThrownBy(() -> handler.handleSessionEvent(event("checkout.session.completed"), PaymentStatus.COMPLETED))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        verifyNoInteractions(stripeCheckoutGateway);
+    }
+
+    @Test
+    void alreadyRefundedLatePaymentIsSkipped() throws Exception {
+        booking.setPaymentStatus(PaymentStatus.REFUNDED);
+        when(bookingRepository.findByStripeSessionId("cs_test_1")).thenReturn(booking);
+
+        handler.handleSessionEvent(event("checkout.session.completed"), PaymentStatus.COMPLETED);
+
+        verifyNoInteractions(stripeCheckoutGateway, meetingProvisioningQueue);
+        verify(bookingRepository, never()).completeLapsedBooking(any(), any(), any(), any());
+    }
+
+    private static CheckoutSessionEvent event(String type) {
+        return new CheckoutSessionEvent("evt_1", type, "cs_test_1", "pi_1", Map.of("bookingId", "7", "purchaseType", "BOOK_THERAPIST"));
+    }
+}
@@ -0,0 +1,243 @@
+package com.clinicalpsychology.app.payment;
+
+import com.clinicalpsychology.app.config.ThreadingMode;
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.enums.WebhookEventStatus;
+import com.clinicalpsychology.app.model.StripeWebhookEvent;
+import com.clinicalpsychology.app.repository.StripeWebhookEventRepository;
+import com.clinicalpsychology.app.util.PostgresRepositoryTest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// The inbox and worker against the real stripe_webhook_events table (claim, findDue and the ordering check are queries), with the
+// real dispatcher in front of a mocked handler. Not transactional, the worker threads must see the committed rows
+@PostgresRepositoryTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StripeWebhookWorkerTest {
+
+    @Autowired
+    private StripeWebhookEventRepository stripeWebhookEventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final CheckoutSessionHandler handler = mock(CheckoutSessionHandler.class);
+    private StripeWebhookDispatcher dispatcher;
+
+    // Events the handler saw, in order, and the ones it fails on
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+
+    private StripeWebhookWorker worker;
+    private StripeWebhookInbox inbox;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(handler.purchaseType()).thenReturn("BOOK_THERAPIST");
+        doAnswer(call -> {
+            CheckoutSessionEvent event = call.getArgument(0);
+            handled.add(event.eventId());
+            if (failing.contains(event.eventId())) {
+                throw new IllegalStateException("Zoom is down");
+            }
+            return null;
+        }).when(handler).handleSessionEvent(any(), any());
+        dispatcher = new StripeWebhookDispatcher(new ObjectMapper(), List.of(handler));
+
+        worker = worker(20);
+        inbox = new StripeWebhookInbox(stripeWebhookEventRepository, worker, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.stop();
+        stripeWebhookEventRepository.deleteAll();
+    }
+
+    @Test
+    void redeliveredEventIsDroppedAndProcessedOnce() throws Exception {
+        assertThat(inbox.receive(event("evt_1", 7), payload("evt_1", 7))).isTrue();
+        assertThat(inbox.receive(event("evt_1", 7), payload("evt_1", 7))).isFalse();
+
+        StripeWebhookEvent stored = await("evt_1", event -> event.getStatus() == WebhookEventStatus.PROCESSED);
+
+        assertThat(stored.getAttempts()).isEqualTo(1);
+        assertThat(stripeWebhookEventRepository.count()).isEqualTo(1);
+        assertThat(handled).containsExactly("evt_1");
+        verify(handler).handleSessionEvent(any(), eq(PaymentStatus.COMPLETED));
+    }
+
+    @Test
+    void laterEventOfABookingWaitsForTheEarlierOne() throws Exception {
+        failing.add("evt_1");
+        inbox.receive(event("evt_1", 7), payload("evt_1", 7));
+        await("evt_1", event -> event.getAttempts() == 1);
+
+        inbox.receive(event("evt_2", 7), payload("evt_2", 7));
+        inbox.receive(event("evt_3", 8), payload("evt_3", 8));
+
+        // evt_2 is put back ORDERING_WAIT without an attempt, another booking's event isn't held up
+        StripeWebhookEvent waiting = await("evt_2", event -> event.getNextAttemptAt().isAfter(event.getCreatedAt().plusSeconds(1)));
+        assertThat(waiting.getStatus()).isEqualTo(WebhookEventStatus.PENDING);
+        assertThat(waiting.getAttempts()).isZero();
+        await("evt_3", event -> event.getStatus() == WebhookEventStatus.PROCESSED);
+        assertThat(handled).containsExactly("evt_1", "evt_3");
+
+        // evt_1's retry comes due and goes through, then evt_2 once its wait is over
+        failing.clear();
+        makeDue("evt_1");
+        worker.poll();
+        await("evt_1", event -> event.getStatus() == WebhookEventStatus.PROCESSED);
+        makeDue("evt_2");
+        worker.poll();
+        await("evt_2", event -> event.getStatus() == WebhookEventStatus.PROCESSED);
+
+        assertThat(handled).containsExactly("evt_1", "evt_3", "evt_1", "evt_2");
+    }
+
+    @Test
+    void backoffDoublesPerAttemptUpToAnHour() throws Exception {
+        failing.addAll(List.of("evt_1", "evt_2", "evt_3"));
+        store("evt_1", 1, 0);
+        store("evt_2", 2, 2);
+        // 60s * 2^10 would be 17 hours
+        store("evt_3", 3, 10);
+
+        Instant before = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        worker.poll();
+
+        assertRetryIn("evt_1", 1, Duration.ofSeconds(60), before);
+        assertRetryIn("evt_2", 3, Duration.ofSeconds(240), before);
+        assertRetryIn("evt_3", 11, Duration.ofHours(1), before);
+    }
+
+    @Test
+    void lastAttemptFailsTheEventForGood() throws Exception {
+        worker.stop();
+        worker = worker(3);
+        failing.add("evt_1");
+        store("evt_1", 7, 2);
+
+        worker.poll();
+
+        StripeWebhookEvent failed = await("evt_1", event -> event.getStatus() == WebhookEventStatus.FAILED);
+        assertThat(failed.getAttempts()).isEqualTo(3);
+        assertThat(failed.getLastError()).isEqualTo("IllegalStateException: Zoom is down");
+
+        // Never offered again, not even far in the future
+        assertThat(stripeWebhookEventRepository.findDue(Instant.now().plus(Duration.ofDays(1)), WebhookEventStatus.PENDING,
+                WebhookEventStatus.PROCESSING, Limit.of(10))).isEmpty();
+    }
+
+    @Test
+    void processingEventIsOnlyTakenOverOnceItsLeaseRanOut() throws Exception {
+        store("evt_1", 7, 0);
+        store("evt_2", 8, 0);
+        jdbcTemplate.update("UPDATE stripe_webhook_events SET status = 'PROCESSING', locked_until = ? WHERE id = 'evt_1'",
+                Timestamp.from(Instant.now().plus(Duration.ofMinutes(5))));
+        jdbcTemplate.update("UPDATE stripe_webhook_events SET status = 'PROCESSING', locked_until = ? WHERE id = 'evt_2'",
+                Timestamp.from(Instant.now().minusSeconds(1)));
+
+        worker.poll();
+
+        await("evt_2", event -> event.getStatus() == WebhookEventStatus.PROCESSED);
+        assertThat(stripeWebhookEventRepository.findById("evt_1").orElseThrow().getStatus()).isEqualTo(WebhookEventStatus.PROCESSING);
+        assertThat(handled).containsExactly("evt_2");
+    }
+
+    @Test
+    void twoInstancesSubmittingTheSameEventProcessItOnce() throws Exception {
+        StripeWebhookWorker other = worker(8);
+        try {
+            Instant receivedAt = store("evt_1", 7, 0);
+
+            for (int i = 0; i < 10; i++) {
+                worker.submit("evt_1", "booking-7", receivedAt);
+                other.submit("evt_1", "booking-7", receivedAt);
+            }
+
+            await("evt_1", event -> event.getStatus() == WebhookEventStatus.PROCESSED);
+            Thread.sleep(200);
+            assertThat(handled).containsExactly("evt_1");
+        } finally {
+            other.stop();
+        }
+    }
+
+    private StripeWebhookWorker worker(int maxAttempts) {
+        StripeWebhookWorker stripeWebhookWorker = new StripeWebhookWorker(stripeWebhookEventRepository, dispatcher, new SimpleMeterRegistry(), new ThreadingMode(false));
+        ReflectionTestUtils.setField(stripeWebhookWorker, "workers", 2);
+        ReflectionTestUtils.setField(stripeWebhookWorker, "queueCapacity", 10);
+        ReflectionTestUtils.setField(stripeWebhookWorker, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(stripeWebhookWorker, "retryBaseSeconds", 60L);
+        stripeWebhookWorker.start();
+        return stripeWebhookWorker;
+    }
+
+    // Stored like the inbox does, but not submitted, the test decides when the worker sees it
+    private Instant store(String id, long bookingId, int attempts) {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        stripeWebhookEventRepository.insertIfAbsent(id, "checkout.session.completed", "BOOK_THERAPIST", "booking-" + bookingId, payload(id, bookingId), now);
+        jdbcTemplate.update("UPDATE stripe_webhook_events SET attempts = ? WHERE id = ?", attempts, id);
+        return now;
+    }
+
+    private void makeDue(String id) {
+        jdbcTemplate.update("UPDATE stripe_webhook_events SET next_attempt_at = now() WHERE id = ?", id);
+    }
+
+    private void assertRetryIn(String id, int attempts, Duration backoff, Instant before) throws Exception {
+        StripeWebhookEvent event = await(id, e -> e.getAttempts() == attempts);
+        assertThat(event.getStatus()).isEqualTo(WebhookEventStatus.PENDING);
+        assertThat(event.getNextAttemptAt()).isBetween(before.plus(backoff), Instant.now().plus(backoff));
+        assertThat(event.getLastError()).contains("Zoom is down");
+    }
+
+    private StripeWebhookEvent await(String id, Predicate<StripeWebhookEvent> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            StripeWebhookEvent event = stripeWebhookEventRepository.findById(id).orElse(null);
+            if (event != null && condition.test(event)) {
+                return event;
+            }
+            Thread.sleep(20);
+        }
+        return fail("Stripe event " + id + " never got there: " + stripeWebhookEventRepository.findById(id).orElse(null));
+    }
+
+    private static CheckoutSessionEvent event(String id, long bookingId) {
+        return new CheckoutSessionEvent(id, "checkout.session.completed", "cs_" + id, null, Map.of("bookingId", String.valueOf(bookingId), "purchaseType", "BOOK_THERAPIST"));
+    }
+
+    private static String payload(String id, long bookingId) {
+        return """
+                {"id":"%s","type":"checkout.session.completed","data":{"object":{"id":"cs_%s","metadata":{"bookingId":"%d","purchaseType":"BOOK_THERAPIST"}}}}
+                """.formatted(id, id, bookingId);
+    }
+}
@@ -0,0 +1,72 @@
+package com.clinicalpsychology.app.repository;
+
+import com.clinicalpsychology.app.dto.TherapistDirectoryEntryDTO;
+import com.clinicalpsychology.app.service.TherapistDirectoryIndex;
+import com.clinicalpsychology.app.util.PostgresRepositoryTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static com.clinicalpsychology.app.repository.TherapistSearchQueryBenchmarkTest.PROFILES;
+import static com.clinicalpsychology.app.repository.TherapistSearchQueryBenchmarkTest.RUNS;
+import static com.clinicalpsychology.app.repository.TherapistSearchQueryBenchmarkTest.measure;
+import static com.clinicalpsychology.app.repository.TherapistSearchQueryBenchmarkTest.percentile;
+import static com.clinicalpsychology.app.repository.TherapistSearchQueryBenchmarkTest.searches;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// p50 / p99 of one search page (page + total + facets) answered by TherapistDirectoryIndex against the same page from the indexed
+// SQL query, on the data of TherapistSearchQueryBenchmarkTest. Name, location and category searches, the in-memory engine has no q.
+// Only runs with mvn test -Pbenchmark, see docs/therapist-search-index.md
+@Tag("benchmark")
+@PostgresRepositoryTest
+class TherapistDirectoryIndexBenchmarkTest {
+
+    private static final List<Double> PRICE_BUCKETS = List.of(50.0, 100.0, 200.0);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TherapistProfileRepository therapistProfileRepository;
+
+    private TherapistDirectoryIndex index;
+
+    @BeforeEach
+    void setUp() {
+        TherapistSearchQueryBenchmarkTest.seed(jdbcTemplate, PROFILES);
+        index = TherapistDirectoryIndex.build(therapistProfileRepository.findDirectoryRows().stream().map(TherapistDirectoryEntryDTO::from).toList(), PRICE_BUCKETS);
+    }
+
+    @Test
+    void inMemorySearchAgainstTheSqlQuery() {
+        List<String[]> searches = searches(i -> i % 3);
+
+        // Both engines find the same therapists
+        for (String[] search : searches.subList(0, 20)) {
+            assertThat(index.therapistIds(index.match(search[0], search[1], search[2], null, null)))
+                    .containsExactlyInAnyOrderElementsOf(therapistProfileRepository.searchTherapistIds(search[0], search[1], null, null, search[2], null));
+        }
+
+        long[] sql = measure(searches, search -> {
+            therapistProfileRepository.searchTherapists(search[0], search[1], null, null, search[2], null, 21, 0);
+            therapistProfileRepository.countSearchTherapists(search[0], search[1], null, null, search[2], null);
+            // The SQL path gets its facets from the ids of all matches
+            index.facets(index.positionsOf(therapistProfileRepository.searchTherapistIds(search[0], search[1], null, null, search[2], null)));
+        });
+        long[] inMemory = measure(searches, search -> {
+            BitSet matched = index.match(search[0], search[1], search[2], null, null);
+            List<TherapistDirectoryEntryDTO> results = index.results(matched, search[0]);
+            assertThat(results.subList(0, Math.min(21, results.size()))).doesNotContainNull();
+            index.facets(matched);
+        });
+
+        System.out.printf("Therapist search page with total and facets, %d profiles, %d searches%n", PROFILES, RUNS);
+        System.out.printf("  SQL (indexed) page + count + facet ids   p50 %8.3f ms  p99 %8.3f ms%n", percentile(sql, 50), percentile(sql, 99));
+        System.out.printf("  TherapistDirectoryIndex                  p50 %8.3f ms  p99 %8.3f ms%n", percentile(inMemory, 50), percentile(inMemory, 99));
+    }
+}
@@ -0,0 +1,146 @@
+package com.clinicalpsychology.app.repository;
+
+import com.clinicalpsychology.app.config.TherapistSearchIndexInitializer;
+import com.clinicalpsychology.app.util.PostgresRepositoryTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// p50 / p99 of the therapist search at 100k profiles: the query this replaced (LIKE on the joined categories + DISTINCT) against
+// searchTherapists + countSearchTherapists on the trigram / full text indexes. Each search filters on one of name, location or
+// category, like the search page. The old query had no free text, so q is only timed on the new one.
+// Only runs with mvn test -Pbenchmark, see docs/therapist-search-index.md
+@Tag("benchmark")
+@PostgresRepositoryTest
+class TherapistSearchQueryBenchmarkTest {
+
+    static final int PROFILES = 100_000;
+    private static final int WARMUP = 10;
+    static final int RUNS = 150;
+
+    // The old JPQL query's SQL, with the nulls cast like the native query so Postgres can bind them
+    private static final String OLD_QUERY = """
+            SELECT DISTINCT t.* FROM therapist_profile t
+            JOIN therapist_profile_categories c ON c.therapist_profile_id = t.id
+            WHERE (lower(t.name) LIKE lower('%' || CAST(? AS text) || '%') OR CAST(? AS text) IS NULL)
+              AND (lower(t.location) LIKE lower('%' || CAST(? AS text) || '%') OR CAST(? AS text) IS NULL)
+              AND (lower(c.category) LIKE lower('%' || CAST(? AS text) || '%') OR CAST(? AS text) IS NULL)
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TherapistProfileRepository therapistProfileRepository;
+
+    @BeforeEach
+    void setUp() {
+        seed(jdbcTemplate, PROFILES);
+    }
+
+    // profiles approved therapists with two categories and a language each, search columns backfilled and indexed.
+    // Also used by TherapistDirectoryIndexBenchmarkTest
+    static void seed(JdbcTemplate jdbcTemplate, int profiles) {
+        jdbcTemplate.update("""
+                INSERT INTO therapist_profile (name, phone, email, linkedin_url, profile_url, resume_url, years_of_experience, password, summary,
+                    amount, terms, terms_and_conditions, timezone, location, approval_status, account_status, created_at, updated_at, is_active)
+                SELECT 'Dr ' || substr(md5(i::text), 1, 10), '+1' || i, 't' || i || '@example.com', 'https://linkedin.com/in/t' || i,
+                    'https://example.com/t.png', 'https://example.com/t.pdf', '5', 'secret', 'Summary of therapist ' || i,
+                    20 + i % 180, true, true, 'UTC', 'City ' || i % 500, 'ACCEPTED', 'ACTIVE', now(), now(), true
+                FROM generate_series(1, ?) AS i
+                """, profiles);
+        jdbcTemplate.update("""
+                INSERT INTO therapist_profile_categories (therapist_profile_id, category)
+                SELECT id, 'Category ' || id % 200 FROM therapist_profile
+                UNION ALL SELECT id, 'Category ' || (id * 7) % 200 FROM therapist_profile
+                """);
+        jdbcTemplate.update("INSERT INTO therapist_profile_languages (therapist_profile_id, language) SELECT id, 'Language ' || id % 30 FROM therapist_profile");
+
+        TherapistSearchIndexInitializer initializer = new TherapistSearchIndexInitializer(jdbcTemplate);
+        ReflectionTestUtils.setField(initializer, "enabled", true);
+        initializer.createSearchIndexes();
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    void searchLatencyAtOneHundredThousandProfiles() {
+        List<String[]> searches = searches(i -> i % 3);
+        List<String[]> freeText = searches(i -> 3);
+
+        long[] old = measure(searches, search -> jdbcTemplate.queryForList(OLD_QUERY, search[0], search[0], search[1], search[1], search[2], search[2]));
+        long[] indexed = measure(searches, this::searchPage);
+        long[] indexedFreeText = measure(freeText, this::searchPage);
+
+        System.out.printf("Therapist search, %d profiles, %d searches of each kind%n", PROFILES, RUNS);
+        System.out.printf("  old LIKE + join + DISTINCT   p50 %7.1f ms  p99 %7.1f ms%n", percentile(old, 50), percentile(old, 99));
+        System.out.printf("  indexed page + count         p50 %7.1f ms  p99 %7.1f ms%n", percentile(indexed, 50), percentile(indexed, 99));
+        System.out.printf("  indexed page + count, q      p50 %7.1f ms  p99 %7.1f ms%n", percentile(indexedFreeText, 50), percentile(indexedFreeText, 99));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM therapist_profile WHERE search_categories IS NULL", Long.class)).isZero();
+    }
+
+    private void searchPage(String[] search) {
+        therapistProfileRepository.searchTherapists(search[0], search[1], null, null, search[2], search[3], 20, 0);
+        therapistProfileRepository.countSearchTherapists(search[0], search[1], null, null, search[2], search[3]);
+    }
+
+    // kind of the i-th search: 0 name, 1 location, 2 category, 3 q. Fixed seed, so every run searches the same terms
+    static List<String[]> searches(IntUnaryOperator kind) {
+        Random random = new Random(42);
+        List<String[]> searches = new ArrayList<>();
+        for (int i = 0; i < WARMUP + RUNS; i++) {
+            int profile = 1 + random.nextInt(PROFILES);
+            String[] search = new String[4];
+            switch (kind.applyAsInt(i)) {
+                case 0 -> search[0] = md5(profile).substring(2, 8);
+                case 1 -> search[1] = "city " + profile % 500;
+                case 2 -> search[2] = "category " + profile % 200;
+                default -> search[3] = "language " + profile % 30;
+            }
+            searches.add(search);
+        }
+        return searches;
+    }
+
+    static long[] measure(List<String[]> searches, Consumer<String[]> search) {
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < searches.size(); i++) {
+            long start = System.nanoTime();
+            search.accept(searches.get(i));
+            if (i >= WARMUP) {
+                nanos[i - WARMUP] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    static double percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1)] / 1_000_000.0;
+    }
+
+    private static String md5(int value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return String.format("%032x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.AdminDashboardDTO;
+import com.clinicalpsychology.app.dto.TherapistProfileDTO;
+import com.clinicalpsychology.app.enums.ApprovalStatus;
+import com.clinicalpsychology.app.enums.ProfileChangeType;
+import com.clinicalpsychology.app.event.ClientRegisteredEvent;
+import com.clinicalpsychology.app.event.TherapistProfileChangedEvent;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.ClientProfileRepository;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class AdminDashboardCounterServiceTest {
+
+    private final TherapistProfileRepository therapistProfileRepository = mock(TherapistProfileRepository.class);
+    private final ClientProfileRepository clientProfileRepository = mock(ClientProfileRepository.class);
+
+    private final AdminDashboardCounterService counterService = new AdminDashboardCounterService(therapistProfileRepository, clientProfileRepository);
+
+    private final List<TherapistProfile> pending = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        pending.add(therapist(1L, ApprovalStatus.PENDING));
+        pending.add(therapist(2L, ApprovalStatus.PENDING));
+
+        when(therapistProfileRepository.countByApprovalStatus(ApprovalStatus.ACCEPTED)).thenReturn(10L);
+        when(therapistProfileRepository.countByApprovalStatus(ApprovalStatus.PENDING)).thenReturn(2L);
+        when(therapistProfileRepository.countByApprovalStatus(ApprovalStatus.REJECTED)).thenReturn(1L);
+        when(therapistProfileRepository.findByApprovalStatus(ApprovalStatus.PENDING)).thenAnswer(call -> List.copyOf(pending));
+        when(clientProfileRepository.count()).thenReturn(30L);
+    }
+
+    @Test
+    void loadReadsEveryCounterAndThePendingList() {
+        counterService.load();
+
+        AdminDashboardDTO dashboard = counterService.snapshot();
+        assertThat(dashboard.getNoOfTherapistApproved()).isEqualTo(10);
+        assertThat(dashboard.getNoOfTherapistNotApproved()).isEqualTo(2);
+        assertThat(dashboard.getNoOfClients()).isEqualTo(30);
+        assertThat(dashboard.getTherapistProfileDTOS()).extracting(TherapistProfileDTO::getTherapistId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void eventsMoveTheCountersWithoutACount() {
+        counterService.load();
+        clearInvocations(therapistProfileRepository, clientProfileRepository);
+
+        TherapistProfile registered = therapist(3L, ApprovalStatus.PENDING);
+        when(therapistProfileRepository.findById(3L)).thenReturn(Optional.of(registered));
+        counterService.onTherapistChanged(new TherapistProfileChangedEvent(3L, ProfileChangeType.REGISTERED, null, ApprovalStatus.PENDING));
+        counterService.onClientRegistered(new ClientRegisteredEvent(31L));
+
+        AdminDashboardDTO dashboard = counterService.snapshot();
+        assertThat(dashboard.getNoOfTherapistNotApproved()).isEqualTo(3);
+        assertThat(dashboard.getNoOfClients()).isEqualTo(31);
+        assertThat(dashboard.getTherapistProfileDTOS()).extracting(TherapistProfileDTO::getTherapistId).containsExactly(1L, 2L, 3L);
+
+        registered.setApprovalStatus(ApprovalStatus.ACCEPTED);
+        counterService.onTherapistChanged(new TherapistProfileChangedEvent(3L, ProfileChangeType.APPROVAL_CHANGED, ApprovalStatus.PENDING, ApprovalStatus.ACCEPTED));
+        counterService.onTherapistChanged(new TherapistProfileChangedEvent(1L, ProfileChangeType.DELETED, ApprovalStatus.PENDING, null));
+
+        dashboard = counterService.snapshot();
+        assertThat(dashboard.getNoOfTherapistApproved()).isEqualTo(11);
+        assertThat(dashboard.getNoOfTherapistNotApproved()).isEqualTo(1);
+        assertThat(dashboard.getTherapistProfileDTOS()).extracting(TherapistProfileDTO::getTherapistId).containsExactly(2L);
+        verify(therapistProfileRepository, never()).countByApprovalStatus(any());
+        verify(clientProfileRepository, never()).count();
+    }
+
+    @Test
+    void updateOnlyReloadsTherapistsOnThePendingList() {
+        counterService.load();
+
+        counterService.onTherapistChanged(new TherapistProfileChangedEvent(5L, ProfileChangeType.UPDATED, ApprovalStatus.ACCEPTED, ApprovalStatus.ACCEPTED));
+        verify(therapistProfileRepository, never()).findById(5L);
+
+        TherapistProfile renamed = therapist(2L, ApprovalStatus.PENDING);
+        renamed.setName("Renamed");
+        when(therapistProfileRepository.findById(2L)).thenReturn(Optional.of(renamed));
+        counterService.onTherapistChanged(new TherapistProfileChangedEvent(2L, ProfileChangeType.UPDATED, ApprovalStatus.PENDING, ApprovalStatus.PENDING));
+
+        assertThat(counterService.snapshot().getTherapistProfileDTOS()).extracting(TherapistProfileDTO::getName).containsExactly("Therapist 1", "Renamed");
+    }
+
+    @Test
+    void snapshotDuringARecountSeesTheOldStateNotAHalfBuiltOne() {
+        counterService.load();
+        AtomicReference<AdminDashboardDTO> during = new AtomicReference<>();
+
+        pending.add(therapist(3L, ApprovalStatus.PENDING));
+        when(clientProfileRepository.count()).thenAnswer(call -> {
+            during.set(counterService.snapshot());
+            return 40L;
+        });
+        counterService.reconcile();
+
+        assertThat(during.get().getTherapistProfileDTOS()).extracting(TherapistProfileDTO::getTherapistId).containsExactly(1L, 2L);
+        assertThat(during.get().getNoOfClients()).isEqualTo(30);
+        assertThat(counterService.snapshot().getTherapistProfileDTOS()).extracting(TherapistProfileDTO::getTherapistId).containsExactly(1L, 2L, 3L);
+        assertThat(counterService.snapshot().getNoOfClients()).isEqualTo(40);
+    }
+
+    @Test
+    void eventDuringARecountMakesItReadAgain() {
+        counterService.load();
+        AtomicBoolean registeredMidway = new AtomicBoolean();
+
+        // The client commits after our first read of the clients table, so only the second read sees it
+        when(clientProfileRepository.count()).thenAnswer(call -> {
+            if (registeredMidway.compareAndSet(false, true)) {
+                counterService.onClientRegistered(new ClientRegisteredEvent(31L));
+                return 30L;
+            }
+            return 31L;
+        });
+        counterService.reconcile();
+
+        assertThat(counterService.snapshot().getNoOfClients()).isEqualTo(31);
+        verify(clientProfileRepository, times(3)).count();
+    }
+
+    private static TherapistProfile therapist(Long id, ApprovalStatus approvalStatus) {
+        return TherapistProfile.builder()
+                .id(id)
+                .name("Therapist " + id)
+                .email("t" + id + "@example.com")
+                .timezone("UTC")
+                .approvalStatus(approvalStatus)
+                .timeSlots(List.of())
+                .build();
+    }
+}
@@ -0,0 +1,186 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.ClientAppointmentsDTO;
+import com.clinicalpsychology.app.dto.KeysetPageDTO;
+import com.clinicalpsychology.app.dto.TherapistAppointmentsDTO;
+import com.clinicalpsychology.app.email.EmailTemplates;
+import com.clinicalpsychology.app.enums.ApprovalStatus;
+import com.clinicalpsychology.app.enums.PaymentStatus;
+import com.clinicalpsychology.app.model.Booking;
+import com.clinicalpsychology.app.model.ClientProfile;
+import com.clinicalpsychology.app.model.TherapistProfile;
+import com.clinicalpsychology.app.repository.BookingRepository;
+import com.clinicalpsychology.app.repository.ClientProfileRepository;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import com.clinicalpsychology.app.util.PostgresRepositoryTest;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// The admin session pages must cost a fixed number of statements per page (profile page + one booking join), however many
+// bookings the profiles have. A lazy lookup per booking or per profile creeping back in shows up here as a higher count
+@PostgresRepositoryTest
+class AdminServiceQueryCountTest {
+
+    private static final int PROFILES = 5;
+
+    @Autowired
+    private TherapistProfileRepository therapistProfileRepository;
+
+    @Autowired
+    private ClientProfileRepository clientProfileRepository;
+
+    @Autowired
+    private BookingRepository bookingRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private AdminService adminService;
+    private Statistics statistics;
+
+    private final List<TherapistProfile> therapists = new ArrayList<>();
+    private final List<ClientProfile> clients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        adminService = new AdminService(therapistProfileRepository, clientProfileRepository, bookingRepository, mock(EmailService.class),
+                mock(EmailTemplates.class), mock(AdminDashboardCounterService.class), mock(ApplicationEventPublisher.class));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        for (int i = 0; i < PROFILES; i++) {
+            therapists.add(therapistProfileRepository.save(therapist(i)));
+            clients.add(clientProfileRepository.save(client(i)));
+        }
+    }
+
+    @Test
+    void therapistSessionsPageIsTwoStatementsWhateverTheBookingCount() throws Exception {
+        book(1);
+        assertThat(therapistPageStatements()).isEqualTo(2);
+
+        book(20);
+        KeysetPageDTO<TherapistAppointmentsDTO> page = adminService.getAllTherapistSessions(null, PROFILES, null, null).getData();
+        assertThat(page.getItems()).hasSize(PROFILES);
+        assertThat(page.getItems()).allSatisfy(therapist -> assertThat(therapist.getTherapistDashboardDTOS()).hasSize(PROFILES * 21));
+        assertThat(therapistPageStatements()).isEqualTo(2);
+    }
+
+    @Test
+    void clientSessionsPageIsTwoStatementsWhateverTheBookingCount() throws Exception {
+        book(1);
+        assertThat(clientPageStatements()).isEqualTo(2);
+
+        book(20);
+        KeysetPageDTO<ClientAppointmentsDTO> page = adminService.getAllClientSessions(null, PROFILES, null, null).getData();
+        assertThat(page.getItems()).hasSize(PROFILES);
+        assertThat(page.getItems()).allSatisfy(client -> assertThat(client.getClientDashboardDTOS()).hasSize(PROFILES * 21));
+        assertThat(clientPageStatements()).isEqualTo(2);
+    }
+
+    @Test
+    void onlyCompletedBookingsOfThePageAreLoaded() throws Exception {
+        book(1);
+        bookingRepository.save(booking(therapists.get(0), clients.get(0), 99, PaymentStatus.HOLD));
+        entityManager.flush();
+        entityManager.clear();
+
+        KeysetPageDTO<TherapistAppointmentsDTO> page = adminService.getAllTherapistSessions(null, 2, null, null).getData();
+
+        assertThat(page.getItems()).extracting(TherapistAppointmentsDTO::getTherapistId)
+                .containsExactly(therapists.get(0).getId(), therapists.get(1).getId());
+        assertThat(page.getItems().get(0).getTherapistDashboardDTOS()).hasSize(PROFILES);
+        assertThat(page.isHasNext()).isTrue();
+    }
+
+    private long therapistPageStatements() throws Exception {
+        statistics.clear();
+        adminService.getAllTherapistSessions(null, PROFILES, null, null);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private long clientPageStatements() throws Exception {
+        statistics.clear();
+        adminService.getAllClientSessions(null, PROFILES, null, null);
+        return statistics.getPrepareStatementCount();
+    }
+
+    // n completed bookings for every therapist / client pair
+    private void book(int n) {
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (TherapistProfile therapist : therapists) {
+                for (ClientProfile client : clients) {
+                    bookings.add(booking(therapist, client, i, PaymentStatus.COMPLETED));
+                }
+            }
+        }
+        bookingRepository.saveAll(bookings);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static Booking booking(TherapistProfile therapist, ClientProfile client, int n, PaymentStatus paymentStatus) {
+        return Booking.builder()
+                .therapistId(therapist.getId())
+                .clientId(client.getId())
+                .timeSlotId(1L)
+                .clientTimezone("UTC")
+                .sessionStartTime(Instant.parse("2025-06-02T09:00:00Z").plus(Duration.ofHours(n)))
+                .category("Anxiety")
+                .connectMethod("Zoom")
+                .amount(50.0)
+                .currency("usd")
+                .productName("Session")
+                .quantity(1L)
+                .paymentStatus(paymentStatus)
+                .build();
+    }
+
+    private static TherapistProfile therapist(int n) {
+        return TherapistProfile.builder()
+                .name("Therapist " + n)
+                .phone("+1555000" + n)
+                .email("t" + n + "@example.com")
+                .linkedinUrl("https://linkedin.com/in/t" + n)
+                .profileUrl("https://example.com/t" + n + ".png")
+                .resumeUrl("https://example.com/t" + n + ".pdf")
+                .yearsOfExperience("5")
+                .password("secret")
+                .categories(List.of("Anxiety"))
+                .languages(List.of("English"))
+                .summary("Summary")
+                .amount(50.0)
+                .terms(true)
+                .termsAndConditions(true)
+                .timezone("UTC")
+                .approvalStatus(ApprovalStatus.ACCEPTED)
+                .build();
+    }
+
+    private static ClientProfile client(int n) {
+        return ClientProfile.builder()
+                .name("Client " + n)
+                .email("c" + n + "@example.com")
+                .password("secret")
+                .phone("+1555100" + n)
+                .timeZone("UTC")
+                .build();
+    }
+}
@@ -0,0 +1,120 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.SlotTimeDTO;
+import com.clinicalpsychology.app.repository.FixedTimeSlotNewRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TherapistAvailabilityIndexTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    private static final ZoneId LONDON = ZoneId.of("Europe/London");
+
+    private final FixedTimeSlotNewRepository repository = mock(FixedTimeSlotNewRepository.class);
+    private final TherapistAvailabilityIndex index = new TherapistAvailabilityIndex(repository);
+
+    @Test
+    void startsFollowTheClientsWallClockAcrossADstChange() {
+        // Created in January: 14:00Z is 09:00 EST
+        when(repository.findAllSlotTimes()).thenReturn(List.of(slot(1L, 10L, "2025-01-15T14:00:00Z")));
+
+        // US clocks go forward on Sunday 2025-03-09
+        List<TherapistAvailabilityIndex.SlotOccurrence> occurrences = index.occurrences(
+                Instant.parse("2025-03-08T00:00:00Z"), Instant.parse("2025-03-10T23:00:00Z"), Set.of(10L), NEW_YORK);
+
+        // 09:00 local every day: 14:00Z before the change, 13:00Z after it
+        assertThat(occurrences).extracting(TherapistAvailabilityIndex.SlotOccurrence::start).containsExactly(
+                Instant.parse("2025-03-08T14:00:00Z"),
+                Instant.parse("2025-03-09T13:00:00Z"),
+                Instant.parse("2025-03-10T13:00:00Z"));
+    }
+
+    @Test
+    void startsAreTheInstantsCheckoutBooks() {
+        Instant timeStart = Instant.parse("2025-01-15T14:30:00Z");
+        when(repository.findAllSlotTimes()).thenReturn(List.of(slot(1L, 10L, timeStart.toString())));
+
+        List<TherapistAvailabilityIndex.SlotOccurrence> occurrences = index.occurrences(
+                Instant.parse("2025-10-24T00:00:00Z"), Instant.parse("2025-10-28T00:00:00Z"), Set.of(10L), LONDON);
+
+        // UK clocks go back on 2025-10-26, checkout does bookingDate.atTime(localTime).atZone(zone)
+        assertThat(occurrences).extracting(TherapistAvailabilityIndex.SlotOccurrence::start).containsExactly(
+                LocalDate.parse("2025-10-24").atTime(TherapistAvailabilityIndex.localTime(timeStart, LONDON)).atZone(LONDON).toInstant(),
+                LocalDate.parse("2025-10-25").atTime(TherapistAvailabilityIndex.localTime(timeStart, LONDON)).atZone(LONDON).toInstant(),
+                LocalDate.parse("2025-10-26").atTime(TherapistAvailabilityIndex.localTime(timeStart, LONDON)).atZone(LONDON).toInstant(),
+                LocalDate.parse("2025-10-27").atTime(TherapistAvailabilityIndex.localTime(timeStart, LONDON)).atZone(LONDON).toInstant());
+        // 14:30 local: BST (13:30Z) before the change, GMT (14:30Z) after it
+        assertThat(occurrences.get(1).start()).isEqualTo(Instant.parse("2025-10-25T13:30:00Z"));
+        assertThat(occurrences.get(2).start()).isEqualTo(Instant.parse("2025-10-26T14:30:00Z"));
+    }
+
+    @Test
+    void windowBoundsAreInclusiveAndOnlyRequestedTherapistsAreReturned() {
+        when(repository.findAllSlotTimes()).thenReturn(List.of(
+                slot(1L, 10L, "2025-06-01T09:00:00Z"),
+                slot(2L, 10L, "2025-06-01T11:00:00Z"),
+                slot(3L, 20L, "2025-06-01T10:00:00Z"),
+                slot(4L, 30L, "2025-06-01T10:00:00Z")));
+
+        List<TherapistAvailabilityIndex.SlotOccurrence> occurrences = index.occurrences(
+                Instant.parse("2025-06-02T09:00:00Z"), Instant.parse("2025-06-02T10:00:00Z"), Set.of(10L, 20L), ZoneId.of("UTC"));
+
+        assertThat(occurrences).containsExactlyInAnyOrder(
+                new TherapistAvailabilityIndex.SlotOccurrence(1L, 10L, Instant.parse("2025-06-02T09:00:00Z")),
+                new TherapistAvailabilityIndex.SlotOccurrence(3L, 20L, Instant.parse("2025-06-02T10:00:00Z")));
+    }
+
+    @Test
+    void windowCrossingLocalMidnightPicksUpBothDays() {
+        // 23:30 and 00:30 in New York (summer, EDT)
+        when(repository.findAllSlotTimes()).thenReturn(List.of(
+                slot(1L, 10L, "2025-07-01T03:30:00Z"),
+                slot(2L, 10L, "2025-07-01T04:30:00Z")));
+
+        List<TherapistAvailabilityIndex.SlotOccurrence> occurrences = index.occurrences(
+                Instant.parse("2025-07-10T03:00:00Z"), Instant.parse("2025-07-10T05:00:00Z"), Set.of(10L), NEW_YORK);
+
+        assertThat(occurrences).extracting(TherapistAvailabilityIndex.SlotOccurrence::start).containsExactlyInAnyOrder(
+                Instant.parse("2025-07-10T03:30:00Z"),
+                Instant.parse("2025-07-10T04:30:00Z"));
+    }
+
+    @Test
+    void rebuildPicksUpChangedSlots() {
+        when(repository.findAllSlotTimes()).thenReturn(List.of(slot(1L, 10L, "2025-06-01T09:00:00Z")));
+        index.load();
+        when(repository.findAllSlotTimes()).thenReturn(List.of());
+
+        index.reconcile();
+
+        assertThat(index.occurrences(Instant.parse("2025-06-02T00:00:00Z"), Instant.parse("2025-06-03T00:00:00Z"), Set.of(10L), NEW_YORK)).isEmpty();
+    }
+
+    private static SlotTimeDTO slot(Long slotId, Long therapistId, String timeStart) {
+        return new SlotTimeDTO() {
+            @Override
+            public Long getSlotId() {
+                return slotId;
+            }
+
+            @Override
+            public Long getTherapistId() {
+                return therapistId;
+            }
+
+            @Override
+            public Instant getTimeStart() {
+                return Instant.parse(timeStart);
+            }
+        };
+    }
+}
@@ -0,0 +1,250 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.TherapistDirectoryEntryDTO;
+import com.clinicalpsychology.app.dto.TherapistSearchResultDTO;
+import com.clinicalpsychology.app.dto.TherapistSearchRowDTO;
+import com.clinicalpsychology.app.enums.ApprovalStatus;
+import com.clinicalpsychology.app.enums.ProfileChangeType;
+import com.clinicalpsychology.app.event.TherapistProfileChangedEvent;
+import com.clinicalpsychology.app.repository.TherapistProfileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+// The approved therapists "table" is a map behind the repository mock. Changes are made to it and then announced with the event
+// the services publish, the cache and the searches run through it have to follow
+class TherapistDirectoryCacheTest {
+
+    private final Map<Long, TherapistSearchRowDTO> table = new ConcurrentSkipListMap<>();
+    private final TherapistProfileRepository therapistProfileRepository = mock(TherapistProfileRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TherapistDirectoryCache cache;
+
+    // Runs of the search loaders, i.e. cache misses
+    private final AtomicInteger searches = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(therapistProfileRepository.findDirectoryRows()).thenAnswer(call -> List.copyOf(table.values()));
+        when(therapistProfileRepository.findDirectoryRow(anyLong())).thenAnswer(call -> Optional.ofNullable(table.get(call.<Long>getArgument(0))));
+
+        table.put(1L, row(1L, "Anna Smith", "London", 40.0, "Anxiety"));
+        table.put(2L, row(2L, "Ben Stone", "London", 80.0, "Couples"));
+        table.put(3L, row(3L, "Cara Lund", "Paris", 120.0, "Anxiety"));
+
+        cache = new TherapistDirectoryCache(therapistProfileRepository, meterRegistry, List.of(50.0, 100.0, 200.0));
+    }
+
+    @Test
+    void directoryIsLoadedOnceAndThenServedFromMemory() {
+        cache.warmUp();
+
+        assertThat(ids(cache.getDirectory())).containsExactly(1L, 2L, 3L);
+        assertThat(ids(cache.getDirectory())).containsExactly(1L, 2L, 3L);
+
+        verify(therapistProfileRepository, times(1)).findDirectoryRows();
+        assertThat(meterRegistry.get("therapist.directory.cache.requests").tag("cache", "directory").tag("result", "hit").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("therapist.directory.cache.size").gauge().value()).isEqualTo(3);
+    }
+
+    @Test
+    void firstRequestLoadsTheDirectory() {
+        assertThat(ids(cache.getDirectory())).containsExactly(1L, 2L, 3L);
+
+        assertThat(meterRegistry.get("therapist.directory.cache.requests").tag("cache", "directory").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void approvedTherapistIsPatchedInWithoutAReload() {
+        cache.warmUp();
+        assertThat(search("london")).containsExactly(1L, 2L);
+
+        table.put(4L, row(4L, "Dora Kane", "London", 60.0, "Grief"));
+        cache.onTherapistChanged(new TherapistProfileChangedEvent(4L, ProfileChangeType.APPROVAL_CHANGED, ApprovalStatus.PENDING, ApprovalStatus.ACCEPTED));
+
+        assertThat(ids(cache.getDirectory())).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(search("london")).containsExactlyInAnyOrder(1L, 2L, 4L);
+        // Only the changed row is read
+        verify(therapistProfileRepository, times(1)).findDirectoryRows();
+        verify(therapistProfileRepository).findDirectoryRow(4L);
+    }
+
+    @Test
+    void updatedTherapistMovesToTheSearchesOfTheirNewLocation() {
+        cache.warmUp();
+        assertThat(search("london")).containsExactly(1L, 2L);
+        assertThat(search("paris")).containsExactly(3L);
+
+        table.put(2L, row(2L, "Ben Stone", "Paris", 80.0, "Couples"));
+        cache.onTherapistChanged(new TherapistProfileChangedEvent(2L, ProfileChangeType.UPDATED, ApprovalStatus.ACCEPTED, ApprovalStatus.ACCEPTED));
+
+        assertThat(search("london")).containsExactly(1L);
+        assertThat(search("paris")).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(cache.getDirectoryIndex().get(2L).getLocation()).isEqualTo("Paris");
+    }
+
+    @Test
+    void rejectedAndDeletedTherapistsDropOut() {
+        cache.warmUp();
+
+        // No longer approved, the directory query doesn't return the row any more
+        table.remove(1L);
+        cache.onTherapistChanged(new TherapistProfileChangedEvent(1L, ProfileChangeType.APPROVAL_CHANGED, ApprovalStatus.ACCEPTED, ApprovalStatus.REJECTED));
+        // Deleted, nothing to read
+        table.remove(3L);
+        cache.onTherapistChanged(new TherapistProfileChangedEvent(3L, ProfileChangeType.DELETED, ApprovalStatus.ACCEPTED, null));
+
+        assertThat(ids(cache.getDirectory())).containsExactly(2L);
+        assertThat(search("london")).containsExactly(2L);
+        verify(therapistProfileRepository, never()).findDirectoryRow(3L);
+    }
+
+    @Test
+    void eventBeforeTheFirstLoadLoadsTheWholeDirectory() {
+        table.put(4L, row(4L, "Dora Kane", "London", 60.0, "Grief"));
+        cache.onTherapistChanged(new TherapistProfileChangedEvent(4L, ProfileChangeType.REGISTERED, null, ApprovalStatus.ACCEPTED));
+
+        assertThat(ids(cache.getDirectory())).containsExactly(1L, 2L, 3L, 4L);
+        verify(therapistProfileRepository, times(1)).findDirectoryRows();
+        verify(therapistProfileRepository, never()).findDirectoryRow(anyLong());
+    }
+
+    @Test
+    void searchIsCachedUntilTheNextChange() {
+        cache.warmUp();
+
+        search("london");
+        search("london");
+        assertThat(searches).hasValue(1);
+
+        cache.onTherapistChanged(new TherapistProfileChangedEvent(2L, ProfileChangeType.UPDATED, ApprovalStatus.ACCEPTED, ApprovalStatus.ACCEPTED));
+        search("london");
+        assertThat(searches).hasValue(2);
+    }
+
+    @Test
+    void searchThatRanDuringAChangeIsNotCached() {
+        cache.warmUp();
+
+        // The change lands while the search is still reading the old directory, so the generation moved on under it
+        TherapistSearchResultDTO stale = cache.search("london", () -> {
+            TherapistSearchResultDTO result = result("london");
+            table.remove(1L);
+            cache.onTherapistChanged(new TherapistProfileChangedEvent(1L, ProfileChangeType.APPROVAL_CHANGED, ApprovalStatus.ACCEPTED, ApprovalStatus.REJECTED));
+            return result;
+        });
+
+        assertThat(ids(stale.getItems())).containsExactly(1L, 2L);
+        assertThat(search("london")).containsExactly(2L);
+        assertThat(searches).hasValue(2);
+    }
+
+    @Test
+    void leastRecentlyUsedSearchIsDroppedFirst() {
+        cache.warmUp();
+        for (int i = 0; i < 1000; i++) {
+            cache.search("key-" + i, () -> result("london"));
+        }
+        assertThat(searches).hasValue(1000);
+
+        // key-0 is used again, so key-1 is now the oldest and makes room for key-1000
+        cache.search("key-0", () -> result("london"));
+        cache.search("key-1000", () -> result("london"));
+        assertThat(searches).hasValue(1001);
+
+        cache.search("key-0", () -> result("london"));
+        assertThat(searches).hasValue(1001);
+        cache.search("key-1", () -> result("london"));
+        assertThat(searches).hasValue(1002);
+        assertThat(meterRegistry.get("therapist.directory.cache.searches").gauge().value()).isEqualTo(1000);
+    }
+
+    @Test
+    void reconcilePicksUpChangesThatHadNoEvent() {
+        cache.warmUp();
+        search("paris");
+
+        // A seeder or a manual edit, nobody published anything
+        table.put(4L, row(4L, "Dora Kane", "Paris", 60.0, "Grief"));
+        assertThat(search("paris")).containsExactly(3L);
+
+        cache.reconcile();
+
+        assertThat(search("paris")).containsExactlyInAnyOrder(3L, 4L);
+        verify(therapistProfileRepository, times(2)).findDirectoryRows();
+    }
+
+    // Same path as TherapistProfileService.searchInMemory, keyed by the filter
+    private List<Long> search(String location) {
+        return ids(cache.search(location, () -> result(location)).getItems());
+    }
+
+    private TherapistSearchResultDTO result(String location) {
+        searches.incrementAndGet();
+        TherapistDirectoryIndex index = cache.getDirectoryIndex();
+        List<TherapistDirectoryEntryDTO> items = index.results(index.match(null, location, null, null, null), null);
+        return TherapistSearchResultDTO.builder().items(items).page(0).size(items.size()).build();
+    }
+
+    private static List<Long> ids(List<TherapistDirectoryEntryDTO> entries) {
+        return entries.stream().map(TherapistDirectoryEntryDTO::getTherapistId).toList();
+    }
+
+    private static TherapistSearchRowDTO row(Long id, String name, String location, Double amount, String category) {
+        return new Row(id, name, location, amount, new String[]{category});
+    }
+
+    private record Row(Long therapistId, String name, String location, Double amount, String[] categories) implements TherapistSearchRowDTO {
+
+        @Override
+        public Long getTherapistId() {
+            return therapistId;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getProfileUrl() {
+            return null;
+        }
+
+        @Override
+        public Double getAmount() {
+            return amount;
+        }
+
+        @Override
+        public String getLocation() {
+            return location;
+        }
+
+        @Override
+        public String getSummary() {
+            return null;
+        }
+
+        @Override
+        public String[] getCategories() {
+            return categories;
+        }
+
+        @Override
+        public String[] getLanguages() {
+            return new String[]{"English"};
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.clinicalpsychology.app.service;
+
+import com.clinicalpsychology.app.dto.TherapistDirectoryEntryDTO;
+import com.clinicalpsychology.app.dto.TherapistSearchFacetsDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TherapistDirectoryIndexTest {
+
+    private static final List<Double> BUCKETS = List.of(50.0, 100.0, 200.0);
+
+    private final TherapistDirectoryIndex index = TherapistDirectoryIndex.build(List.of(
+            entry(4L, "Dana Reyes", 200.0, "Berlin", List.of("Anxiety"), List.of("German")),
+            entry(1L, "Anna Smith", 40.0, "London", List.of("Anxiety", "Depression"), List.of("English")),
+            entry(2L, "Ben Stone", 50.0, "London", List.of("Couples"), List.of("English", "French")),
+            entry(3L, "Cara Smithers", 100.0, "Paris", List.of("Depression"), List.of("French")),
+            entry(5L, "Eve Null", null, "Paris", List.of("Anxiety"), List.of("French")),
+            entry(6L, "Finn Nocat", 70.0, "London", List.of(), List.of("English"))
+    ), BUCKETS);
+
+    @Test
+    void entriesAreKeptInIdOrder() {
+        assertThat(index.entries()).extracting(TherapistDirectoryEntryDTO::getTherapistId).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(index.get(3L).getName()).isEqualTo("Cara Smithers");
+        assertThat(index.get(99L)).isNull();
+    }
+
+    @Test
+    void therapistsWithoutCategoriesNeverMatch() {
+        assertThat(ids(index.match(null, null, null, null, null))).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void filtersAreAndedAndContainsMatched() {
+        assertThat(ids(index.match(null, "lon", null, null, null))).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(ids(index.match(null, null, "anx", null, null))).containsExactlyInAnyOrder(1L, 4L, 5L);
+        assertThat(ids(index.match(null, "london", "anxiety", null, null))).containsExactly(1L);
+        assertThat(ids(index.match("smith", null, null, null, null))).containsExactlyInAnyOrder(1L, 3L);
+    }
+
+    @Test
+    void priceRangeIsInclusiveAndSkipsTherapistsWithoutPrice() {
+        assertThat(ids(index.match(null, null, null, 50.0, 100.0))).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(ids(index.match(null, null, null, 100.0, null))).containsExactlyInAnyOrder(3L, 4L);
+        assertThat(ids(index.match(null, null, null, null, 45.0))).containsExactly(1L);
+    }
+
+    @Test
+    void bucketLabelsAreHalfOpenAndNullPricesAreNotCounted() {
+        TherapistSearchFacetsDTO facets = index.facets(index.match(null, null, null, null, null));
+
+        // 50 and 100 sit at the start of their bucket, Eve has no price
+        assertThat(facets.getPriceBuckets()).containsExactly(
+                Map.entry("0-<50", 1),
+                Map.entry("50-<100", 1),
+                Map.entry("100-<200", 1),
+                Map.entry("200+", 1));
+    }
+
+    @Test
+    void bucketLabelSentBackAsFilterSelectsExactlyTheBucket() {
+        // price=50-<100 is parsed to 50 .. nextDown(100)
+        BitSet bucket = index.match(null, null, null, 50.0, Math.nextDown(100.0));
+
+        assertThat(ids(bucket)).containsExactly(2L);
+        assertThat(index.facets(bucket).getPriceBuckets()).containsExactly(Map.entry("50-<100", 1));
+    }
+
+    @Test
+    void facetsCountOnlyTheMatchedTherapists() {
+        TherapistSearchFacetsDTO facets = index.facets(index.match(null, "london", null, null, null));
+
+        assertThat(facets.getCategories()).containsExactly(
+                Map.entry("Anxiety", 1), Map.entry("Couples", 1), Map.entry("Depression", 1));
+        assertThat(facets.getLanguages()).containsExactly(Map.entry("English", 2), Map.entry("French", 1));
+        assertThat(facets.getLocations()).containsExactly(Map.entry("London", 2));
+    }
+
+    @Test
+    void nameSearchIsOrderedBySimilarityThenId() {
+        List<TherapistDirectoryEntryDTO> results = index.search("smith", null, null, null, null);
+
+        assertThat(results).extracting(TherapistDirectoryEntryDTO::getTherapistId).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void resultsOfOneMatchGiveTheSameAnswerAsSearch() {
+        BitSet matched = index.match("smith", null, null, null, null);
+
+        assertThat(index.results(matched, "smith")).isEqualTo(index.search("smith", null, null, null, null));
+    }
+
+    @Test
+    void replacingATherapistPatchesOnlyThatEntry() {
+        TherapistDirectoryEntryDTO moved = entry(2L, "Ben Stone", 250.0, "Berlin", List.of("Grief"), List.of("German"));
+
+        assertSameAsRebuilt(index.withEntry(2L, moved), 1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(index.withEntry(2L, moved).facets(index.withEntry(2L, moved).match(null, null, null, null, null)).getCategories())
+                .containsEntry("Grief", 1)
+                .doesNotContainKey("Couples");
+    }
+
+    @Test
+    void insertingInTheMiddleAndAtTheEndKeepsIdOrder() {
+        TherapistDirectoryEntryDTO middle = entry(3L, "Cara Smithers", 100.0, "Paris", List.of("Depression"), List.of("French"));
+        TherapistDirectoryIndex withoutThree = index.withEntry(3L, null);
+
+        TherapistDirectoryIndex reinserted = withoutThree.withEntry(3L, middle);
+        TherapistDirectoryIndex appended = index.withEntry(9L, entry(9L, "Ida Smith", 75.0, "Rome", List.of("Anxiety"), List.of("Italian")));
+
+        assertThat(reinserted.entries()).extracting(TherapistDirectoryEntryDTO::getTherapistId).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        assertSameAsRebuilt(reinserted, 1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(appended.get(9L).getName()).isEqualTo("Ida Smith");
+        assertSameAsRebuilt(appended, 1L, 2L, 3L, 4L, 5L, 6L, 9L);
+    }
+
+    @Test
+    void removingATherapistShiftsTheRest() {
+        TherapistDirectoryIndex removed = index.withEntry(1L, null);
+
+        assertThat(removed.get(1L)).isNull();
+        assertSameAsRebuilt(removed, 2L, 3L, 4L, 5L, 6L);
+        // the old index is untouched
+        assertThat(index.get(1L)).isNotNull();
+        assertThat(ids(index.match(null, "london", "anxiety", null, null))).containsExactly(1L);
+    }
+
+    @Test
+    void removingAnUnknownTherapistIsANoOp() {
+        assertThat(index.withEntry(42L, null)).isSameAs(index);
+    }
+
+    // The patched index has to answer exactly like one built from scratch over the same entries
+    private void assertSameAsRebuilt(TherapistDirectoryIndex patched, Long... expectedIds) {
+
+        TherapistDirectoryIndex rebuilt = TherapistDirectoryIndex.build(patched.entries(), BUCKETS);
+
+        assertThat(patched.entries()).extracting(TherapistDirectoryEntryDTO::getTherapistId).containsExactly(expectedIds);
+        assertThat(patched.size()).isEqualTo(rebuilt.size());
+
+        List<Object[]> filters = List.of(
+                new Object[]{null, null, null, null, null},
+                new Object[]{null, "lon", null, null, null},
+                new Object[]{null, null, "anx", null, null},
+                new Object[]{"smith", null, null, null, null},
+                new Object[]{null, null, null, 50.0, 100.0},
+                new Object[]{null, null, null, 100.0, null},
+                new Object[]{null, null, null, null, 60.0});
+
+        for (Object[] filter : filters) {
+            BitSet patchedMatch = patched.match((String) filter[0], (String) filter[1], (String) filter[2], (Double) filter[3], (Double) filter[4]);
+            BitSet rebuiltMatch = rebuilt.match((String) filter[0], (String) filter[1], (String) filter[2], (Double) filter[3], (Double) filter[4]);
+
+            assertThat(patchedMatch).isEqualTo(rebuiltMatch);
+            assertThat(patched.results(patchedMatch, (String) filter[0])).isEqualTo(rebuilt.results(rebuiltMatch, (String) filter[0]));
+            assertThat(patched.facets(patchedMatch)).isEqualTo(rebuilt.facets(rebuiltMatch));
+        }
+    }
+
+    private List<Long> ids(BitSet matched) {
+        return index.therapistIds(matched).stream().sorted().toList();
+    }
+
+    private static TherapistDirectoryEntryDTO entry(Long id, String name, Double amount, String location, List<String> categories, List<String> languages) {
+        return TherapistDirectoryEntryDTO.builder()
+                .therapistId(id)
+                .name(name)
+                .amount(amount)
+                .location(location)
+                .categories(categories)
+                .languages(languages)
+                .build();
+    }
+}
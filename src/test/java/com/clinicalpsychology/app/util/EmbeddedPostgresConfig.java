@@ -0,0 +1,33 @@
+package com.clinicalpsychology.app.util;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// One real Postgres per test JVM (binaries come from a Maven artifact, no Docker), shared by every @PostgresRepositoryTest.
+// Each test context gets its own schema through ddl-auto=create-drop
+@TestConfiguration(proxyBeanMethods = false)
+public class EmbeddedPostgresConfig {
+
+    private static EmbeddedPostgres postgres;
+
+    @Bean
+    DataSource dataSource() {
+        return postgres().getPostgresDatabase();
+    }
+
+    public static synchronized EmbeddedPostgres postgres() {
+        if (postgres == null) {
+            try {
+                postgres = EmbeddedPostgres.builder().start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start the embedded Postgres", e);
+            }
+        }
+        return postgres;
+    }
+}
@@ -0,0 +1,104 @@
+package com.clinicalpsychology.app.util;
+
+import com.clinicalpsychology.app.exception.InvalidCursorException;
+import com.clinicalpsychology.app.exception.InvalidFieldValueException;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeysetPaginationTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2025-03-01T10:15:30Z");
+
+    @Test
+    void limitDefaultsAndRejectsOutOfRange() {
+        assertThat(KeysetPagination.limit(null).max()).isEqualTo(KeysetPagination.DEFAULT_PAGE_SIZE);
+        assertThat(KeysetPagination.limit(5).max()).isEqualTo(5);
+        assertThatThrownBy(() -> KeysetPagination.limit(0)).isInstanceOf(InvalidFieldValueException.class);
+        assertThatThrownBy(() -> KeysetPagination.limit(KeysetPagination.MAX_PAGE_SIZE + 1)).isInstanceOf(InvalidFieldValueException.class);
+    }
+
+    @Test
+    void sortAlwaysEndsWithId() {
+        assertThat(KeysetPagination.sort(null, null)).isEqualTo(Sort.by(Sort.Direction.ASC, "id"));
+        assertThat(KeysetPagination.sort("createdAt", "desc")).isEqualTo(Sort.by(Sort.Direction.DESC, "createdAt", "id"));
+        assertThatThrownBy(() -> KeysetPagination.sort("email", null)).isInstanceOf(InvalidFieldValueException.class);
+        assertThatThrownBy(() -> KeysetPagination.sort("id", "sideways")).isInstanceOf(InvalidFieldValueException.class);
+    }
+
+    @Test
+    void blankCursorStartsAtTheBeginning() {
+        KeysetScrollPosition position = KeysetPagination.position(null, KeysetPagination.sort(null, null));
+
+        assertThat(position.isInitial()).isTrue();
+    }
+
+    @Test
+    void cursorRoundTripsForTheSameSort() {
+        Sort sort = KeysetPagination.sort("createdAt", "desc");
+
+        String cursor = KeysetPagination.nextCursor(window(Map.of("createdAt", CREATED_AT, "id", 42L), true), sort);
+        KeysetScrollPosition position = KeysetPagination.position(cursor, sort);
+
+        assertThat(position.getKeys()).containsEntry("createdAt", CREATED_AT).containsEntry("id", 42L).hasSize(2);
+        assertThat(position.scrollsForward()).isTrue();
+    }
+
+    @Test
+    void noCursorOnTheLastPage() {
+        Sort sort = KeysetPagination.sort(null, null);
+
+        assertThat(KeysetPagination.nextCursor(window(Map.of("id", 42L), false), sort)).isNull();
+    }
+
+    @Test
+    void cursorFromAnotherSortKeyIsRejected() {
+        String idCursor = KeysetPagination.nextCursor(window(Map.of("id", 42L), true), KeysetPagination.sort("id", "asc"));
+
+        assertThatThrownBy(() -> KeysetPagination.position(idCursor, KeysetPagination.sort("createdAt", "asc")))
+                .isInstanceOf(InvalidCursorException.class);
+    }
+
+    @Test
+    void cursorFromAnotherDirectionIsRejected() {
+        String ascCursor = KeysetPagination.nextCursor(window(Map.of("id", 42L), true), KeysetPagination.sort("id", "asc"));
+
+        assertThatThrownBy(() -> KeysetPagination.position(ascCursor, KeysetPagination.sort("id", "desc")))
+                .isInstanceOf(InvalidCursorException.class);
+    }
+
+    @Test
+    void garbageAndTamperedCursorsAreRejected() {
+        Sort sort = KeysetPagination.sort("createdAt", "asc");
+
+        assertThatThrownBy(() -> KeysetPagination.position("%%not-base64%%", sort)).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> KeysetPagination.position(encode("id=1"), sort)).isInstanceOf(InvalidCursorException.class);
+        // right sort header but the createdAt key is missing
+        assertThatThrownBy(() -> KeysetPagination.position(encode("sort=createdAt,id:ASC|id=1"), sort)).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> KeysetPagination.position(encode("sort=createdAt,id:ASC|createdAt=yesterday|id=1"), sort)).isInstanceOf(InvalidCursorException.class);
+    }
+
+    private static Window<String> window(Map<String, Object> lastKeys, boolean hasNext) {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        // keep the sort order of the keys stable, the way spring data hands them back
+        if (lastKeys.containsKey("createdAt")) keys.put("createdAt", lastKeys.get("createdAt"));
+        keys.put("id", lastKeys.get("id"));
+        return Window.from(List.of("row"), index -> ScrollPosition.forward(keys), hasNext);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
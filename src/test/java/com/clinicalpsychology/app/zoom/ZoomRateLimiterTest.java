@@ -0,0 +1,102 @@
+package com.clinicalpsychology.app.zoom;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZoomRateLimiterTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000L);
+
+    // 5 per second, burst of 10
+    private final ZoomRateLimiter limiter = new ZoomRateLimiter(5, 10, nanos::get);
+
+    @Test
+    void burstIsAvailableStraightAway() {
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.tryAcquire()).isZero();
+        }
+        assertThat(limiter.tryAcquire()).isEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    void waitShrinksAsTokensRefill() {
+        drain();
+
+        advance(Duration.ofMillis(150));
+        assertThat(limiter.tryAcquire()).isEqualTo(Duration.ofMillis(50));
+
+        advance(Duration.ofMillis(50));
+        assertThat(limiter.tryAcquire()).isZero();
+        assertThat(limiter.tryAcquire()).isEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    void aRejectedCallTakesNothing() {
+        drain();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire()).isPositive();
+        }
+
+        advance(Duration.ofMillis(200));
+        assertThat(limiter.tryAcquire()).isZero();
+    }
+
+    @Test
+    void idleTimeRefillsUpToTheBurstOnly() {
+        drain();
+
+        advance(Duration.ofMinutes(10));
+
+        int granted = 0;
+        while (limiter.tryAcquire().isZero()) {
+            granted++;
+        }
+        assertThat(granted).isEqualTo(10);
+    }
+
+    @Test
+    void concurrentCallersNeverGetMoreThanTheBurst() throws Exception {
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            for (int i = 0; i < 64; i++) {
+                executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    if (limiter.tryAcquire().isZero()) {
+                        granted.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(granted).hasValue(10);
+    }
+
+    private void drain() {
+        while (limiter.tryAcquire().isZero()) {
+            // empty the bucket
+        }
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,171 @@
+package com.clinicalpsychology.app.zoom;
+
+import com.clinicalpsychology.app.util.MutableClock;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs against a local token endpoint (zoom.oauth.token-url), so the real RestClient call and response parsing are covered
+class ZoomTokenServiceTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-06-01T12:00:00Z"));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+    private volatile boolean failing;
+    // Runs inside the stub before it answers, lets a test hold the exchange open
+    private volatile Runnable beforeResponse = () -> { };
+
+    private HttpServer server;
+    private ZoomTokenService tokenService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/oauth/token", this::token);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        tokenService = new ZoomTokenService(RestClient.create(), meterRegistry, clock);
+        ReflectionTestUtils.setField(tokenService, "accountId", "acc");
+        ReflectionTestUtils.setField(tokenService, "clientId", "client");
+        ReflectionTestUtils.setField(tokenService, "clientSecret", "secret");
+        ReflectionTestUtils.setField(tokenService, "tokenUrl", "http://127.0.0.1:" + server.getAddress().getPort() + "/oauth/token");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void tokenIsCachedUntilItIsDueForRefresh() {
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-1");
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-1");
+        assertThat(requests).hasValue(1);
+        assertThat(authorizations).containsExactly("Basic " + Base64.getEncoder().encodeToString("client:secret".getBytes(StandardCharsets.UTF_8)));
+
+        clock.advance(Duration.ofMinutes(54));
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-1");
+        assertThat(requests).hasValue(1);
+
+        clock.advance(Duration.ofMinutes(1));
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-2");
+        assertThat(requests).hasValue(2);
+    }
+
+    @Test
+    void backgroundRefreshOnlyRunsWhenDue() {
+        tokenService.refreshIfDue();
+        assertThat(requests).hasValue(0);
+
+        tokenService.getAccessToken();
+        tokenService.refreshIfDue();
+        assertThat(requests).hasValue(1);
+
+        clock.advance(Duration.ofMinutes(56));
+        tokenService.refreshIfDue();
+        assertThat(requests).hasValue(2);
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-2");
+    }
+
+    @Test
+    void concurrentCallersShareOneRefresh() throws Exception {
+        List<Thread> callers = new ArrayList<>();
+        ConcurrentLinkedQueue<String> tokens = new ConcurrentLinkedQueue<>();
+
+        // Answer only once every other caller is parked on the refresh in flight
+        beforeResponse = () -> awaitParked(callers, callers.size() - 1);
+
+        for (int i = 0; i < 8; i++) {
+            callers.add(new Thread(() -> tokens.add(tokenService.getAccessToken())));
+        }
+        callers.forEach(Thread::start);
+        for (Thread caller : callers) {
+            caller.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertThat(tokens).hasSize(8).containsOnly("token-1");
+        assertThat(requests).hasValue(1);
+    }
+
+    @Test
+    void failedRefreshFallsBackToTheCachedTokenAndCoolsDown() {
+        tokenService.getAccessToken();
+        clock.advance(Duration.ofMinutes(56));
+        failing = true;
+
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-1");
+        assertThat(requests).hasValue(2);
+
+        // Within the cooldown neither callers nor the background refresh hit Zoom again
+        clock.advance(ZoomTokenService.REFRESH_FAILURE_COOLDOWN.minusSeconds(1));
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-1");
+        tokenService.refreshIfDue();
+        assertThat(requests).hasValue(2);
+
+        clock.advance(Duration.ofSeconds(1));
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-1");
+        assertThat(requests).hasValue(3);
+
+        failing = false;
+        clock.advance(ZoomTokenService.REFRESH_FAILURE_COOLDOWN);
+        assertThat(tokenService.getAccessToken()).isEqualTo("token-4");
+        assertThat(meterRegistry.get("zoom.token.refreshes").tag("result", "failure").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void expiredTokenIsNotUsedWhenTheRefreshFails() {
+        tokenService.getAccessToken();
+        clock.advance(Duration.ofMinutes(60));
+        failing = true;
+
+        assertThatThrownBy(tokenService::getAccessToken).isInstanceOf(HttpServerErrorException.class);
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+
+        int n = requests.incrementAndGet();
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        beforeResponse.run();
+
+        byte[] body = failing
+                ? "{\"reason\":\"down\"}".getBytes(StandardCharsets.UTF_8)
+                : ("{\"access_token\":\"token-" + n + "\",\"token_type\":\"bearer\",\"expires_in\":3600}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(failing ? 503 : 200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private static void awaitParked(List<Thread> callers, int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (callers.stream().filter(t -> t.getState() == Thread.State.WAITING).count() < count && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}